@@ -0,0 +1,111 @@
+package com.example.warehouse.benchmark;
+
+import com.example.warehouse.WarehouseApplication;
+import com.example.warehouse.entity.MaterialTypeEntity;
+import com.example.warehouse.entity.WarehouseEntity;
+import com.example.warehouse.repository.MaterialTypeRepository;
+import com.example.warehouse.repository.WarehouseRepository;
+import com.example.warehouse.service.MaterialInventoryService;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The application without a web server on an in-memory H2 database, seeded with {@code warehouses} warehouses that
+ * each hold {@link #INITIAL_QUANTITY} of {@code skus} material types, so removals and moves never run dry during
+ * a measurement.
+ */
+final class BenchmarkInventory implements AutoCloseable {
+
+    static final int INITIAL_QUANTITY = 1_000_000_000;
+
+    private final ConfigurableApplicationContext context;
+    private final MaterialInventoryService service;
+    private final long[] warehouseIds;
+    private final long[] materialTypeIds;
+
+    private BenchmarkInventory(ConfigurableApplicationContext context, long[] warehouseIds, long[] materialTypeIds) {
+        this.context = context;
+        this.service = context.getBean(MaterialInventoryService.class);
+        this.warehouseIds = warehouseIds;
+        this.materialTypeIds = materialTypeIds;
+    }
+
+    static BenchmarkInventory start(String engine, int warehouses, int skus) throws IOException {
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(WarehouseApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "logging.level.root=WARN",
+                        "spring.datasource.url=jdbc:h2:mem:benchmark-" + System.nanoTime() + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+                        "spring.datasource.username=sa",
+                        "spring.datasource.password=",
+                        "spring.jpa.hibernate.ddl-auto=create-drop",
+                        // jpa-combined is the jpa engine with adds and removals going through the write combiner
+                        "warehouse.inventory.engine=" + (engine.equals("jpa-combined") ? "jpa" : engine),
+                        "warehouse.inventory.write-combining.enabled=" + engine.equals("jpa-combined"),
+                        "warehouse.ledger.journal-dir=" + Files.createTempDirectory("benchmark-ledger"),
+                        "warehouse.journal.dir=" + Files.createTempDirectory("benchmark-journal"))
+                .run();
+        WarehouseRepository warehouseRepository = context.getBean(WarehouseRepository.class);
+        MaterialTypeRepository materialTypeRepository = context.getBean(MaterialTypeRepository.class);
+        long[] warehouseIds = new long[warehouses];
+        for (int i = 0; i < warehouses; i++) {
+            warehouseIds[i] = warehouseRepository.save(new WarehouseEntity(null, "Benchmark warehouse " + i)).getId();
+        }
+        List<MaterialTypeEntity> materialTypes = new ArrayList<>(skus);
+        for (int i = 0; i < skus; i++) {
+            materialTypes.add(new MaterialTypeEntity(null, "Benchmark material " + i, "benchmark", "icon-" + i + ".png", Integer.MAX_VALUE));
+        }
+        long[] materialTypeIds = materialTypeRepository.saveAll(materialTypes).stream().mapToLong(MaterialTypeEntity::getId).toArray();
+        BenchmarkInventory inventory = new BenchmarkInventory(context, warehouseIds, materialTypeIds);
+        for (long warehouseId : warehouseIds) {
+            for (long materialTypeId : materialTypeIds) {
+                inventory.service.addMaterialToWarehouse(warehouseId, materialTypeId, INITIAL_QUANTITY);
+            }
+        }
+        return inventory;
+    }
+
+    ConfigurableApplicationContext context() {
+        return context;
+    }
+
+    MaterialInventoryService service() {
+        return service;
+    }
+
+    long warehouse(int index) {
+        return warehouseIds[index];
+    }
+
+    long materialType(int index) {
+        return materialTypeIds[index];
+    }
+
+    long randomWarehouse() {
+        return warehouseIds[ThreadLocalRandom.current().nextInt(warehouseIds.length)];
+    }
+
+    long randomMaterialType() {
+        return materialTypeIds[ThreadLocalRandom.current().nextInt(materialTypeIds.length)];
+    }
+
+    //a pair of distinct warehouses, {source, destination}
+    long[] randomRoute() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int source = random.nextInt(warehouseIds.length);
+        int destination = (source + 1 + random.nextInt(warehouseIds.length - 1)) % warehouseIds.length;
+        return new long[]{warehouseIds[source], warehouseIds[destination]};
+    }
+
+    @Override
+    public void close() {
+        context.close();
+    }
+}
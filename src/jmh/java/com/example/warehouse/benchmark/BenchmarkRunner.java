@@ -0,0 +1,49 @@
+package com.example.warehouse.benchmark;
+
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Runs JMH with the usual command line, defaulting to what we track between releases: allocation rates from the
+ * GC profiler, unless other profilers are given with {@code -prof}, and JSON results in
+ * {@code target/jmh-results/}, unless {@code -rf}/{@code -rff} say otherwise. The JSON files can be compared with
+ * any JMH result viewer.
+ */
+public final class BenchmarkRunner {
+
+    private BenchmarkRunner() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        if (commandLine.shouldHelp() || commandLine.shouldList() || commandLine.shouldListProfilers()
+                || commandLine.shouldListResultFormats() || commandLine.shouldListWithParams()) {
+            Main.main(args);
+            return;
+        }
+        ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine);
+        if (commandLine.getProfilers().isEmpty()) {
+            options.addProfiler(GCProfiler.class);
+        }
+        if (!commandLine.getResultFormat().hasValue() && !commandLine.getResult().hasValue()) {
+            options.resultFormat(ResultFormatType.JSON).result(resultFile().toString());
+        }
+        new Runner(options.build()).run();
+    }
+
+    private static Path resultFile() throws IOException {
+        Path directory = Files.createDirectories(Path.of("target", "jmh-results"));
+        return directory.resolve("jmh-" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")) + ".json");
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.warehouse.benchmark;
+
+import com.example.warehouse.dto.MaterialInventoryDto;
+import com.example.warehouse.service.MaterialInventoryService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Many threads changing the stock of the same material type in the same two warehouses, the row lock (jpa) or
+ * shard lock (ledger) every operation queues on. Moves go both ways, so they also exercise the lock ordering.
+ * jpa-combined shows how far the write combiner takes adds and removals past the row lock; moves aren't combined.
+ * <p>
+ * Run with: {@code mvn -Pbenchmark test-compile exec:exec -Djmh.args="HotSkuBenchmark -t 32"}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Threads(16)
+@Fork(1)
+public class HotSkuBenchmark {
+
+    @Param({"jpa", "jpa-combined", "ledger"})
+    private String engine;
+
+    private BenchmarkInventory inventory;
+    private MaterialInventoryService service;
+    private long first;
+    private long second;
+    private long hotMaterialType;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        inventory = BenchmarkInventory.start(engine, 2, 1);
+        service = inventory.service();
+        first = inventory.warehouse(0);
+        second = inventory.warehouse(1);
+        hotMaterialType = inventory.materialType(0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        inventory.close();
+    }
+
+    @Benchmark
+    public MaterialInventoryDto addHot() {
+        return service.addMaterialToWarehouse(first, hotMaterialType, 1);
+    }
+
+    @Benchmark
+    public MaterialInventoryDto removeHot() {
+        return service.removeMaterialFromWarehouse(first, hotMaterialType, 1);
+    }
+
+    @Benchmark
+    public MaterialInventoryDto moveHot() {
+        return ThreadLocalRandom.current().nextBoolean()
+                ? service.moveMaterialBetweenWarehouses(first, second, hotMaterialType, 1)
+                : service.moveMaterialBetweenWarehouses(second, first, hotMaterialType, 1);
+    }
+}
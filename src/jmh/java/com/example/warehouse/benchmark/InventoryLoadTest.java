@@ -0,0 +1,183 @@
+package com.example.warehouse.benchmark;
+
+import com.example.warehouse.WarehouseApplication;
+import com.example.warehouse.entity.MaterialTypeEntity;
+import com.example.warehouse.entity.WarehouseEntity;
+import com.example.warehouse.repository.MaterialTypeRepository;
+import com.example.warehouse.repository.WarehouseRepository;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Closed-loop HTTP load against the inventory API, reporting throughput and latency percentiles.
+ * <p>
+ * By default the application is started in process once per mode ({@code platform}: Tomcat's thread pool,
+ * {@code virtual}: the virtual-threads profile, Java 21 only), seeded with one warehouse and {@code skus}
+ * material types, and loaded for the same duration, so both modes are compared on the same machine and data.
+ * The in-memory H2 database barely blocks, point {@code datasource-url} at a MySQL server to see the effect of
+ * real JDBC waits. With {@code base-url} an already running server is loaded instead.
+ * <p>
+ * Run with: {@code mvn -Pbenchmark test-compile exec:exec -Dbenchmark.main=com.example.warehouse.benchmark.InventoryLoadTest
+ * -Djmh.args="--concurrency=800 --duration=30"}
+ */
+public class InventoryLoadTest {
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parse(args);
+        int concurrency = Integer.parseInt(options.getOrDefault("concurrency", "400"));
+        Duration warmup = Duration.ofSeconds(Long.parseLong(options.getOrDefault("warmup", "10")));
+        Duration duration = Duration.ofSeconds(Long.parseLong(options.getOrDefault("duration", "30")));
+        double writeRatio = Double.parseDouble(options.getOrDefault("write-ratio", "0.2"));
+
+        if (options.containsKey("base-url")) {
+            List<Long> materialTypeIds = Arrays.stream(options.get("material-type-ids").split(","))
+                    .map(Long::valueOf).toList();
+            Target target = new Target(options.get("base-url"), Long.valueOf(options.get("warehouse-id")), materialTypeIds);
+            print("external", run(target, concurrency, warmup, duration, writeRatio));
+            return;
+        }
+
+        int skus = Integer.parseInt(options.getOrDefault("skus", "100"));
+        for (String mode : options.getOrDefault("modes", "platform,virtual").split(",")) {
+            if (mode.equals("virtual") && Runtime.version().feature() < 21) {
+                System.out.println("skipping virtual: Java " + Runtime.version().feature() + " has no virtual threads");
+                continue;
+            }
+            try (ConfigurableApplicationContext context = start(mode, options)) {
+                Target target = seed(context, skus);
+                print(mode, run(target, concurrency, warmup, duration, writeRatio));
+            }
+        }
+    }
+
+    private static ConfigurableApplicationContext start(String mode, Map<String, String> options) {
+        List<String> properties = new ArrayList<>(List.of(
+                "server.port=0",
+                "logging.level.root=WARN",
+                "warehouse.reference-cache.preload=true",
+                "spring.datasource.url=" + options.getOrDefault("datasource-url", "jdbc:h2:mem:load-" + mode + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1"),
+                "spring.datasource.username=" + options.getOrDefault("datasource-username", "sa"),
+                "spring.datasource.password=" + options.getOrDefault("datasource-password", ""),
+                "spring.jpa.hibernate.ddl-auto=" + (options.containsKey("datasource-url") ? "update" : "create-drop")));
+        SpringApplicationBuilder builder = new SpringApplicationBuilder(WarehouseApplication.class)
+                .properties(properties.toArray(String[]::new));
+        if (mode.equals("virtual")) {
+            builder.profiles("virtual-threads");
+        }
+        return builder.run();
+    }
+
+    private static Target seed(ConfigurableApplicationContext context, int skus) {
+        WarehouseEntity warehouse = context.getBean(WarehouseRepository.class)
+                .save(new WarehouseEntity(null, "load-" + System.nanoTime()));
+        List<Long> materialTypeIds = new ArrayList<>(skus);
+        MaterialTypeRepository materialTypeRepository = context.getBean(MaterialTypeRepository.class);
+        for (int i = 0; i < skus; i++) {
+            materialTypeIds.add(materialTypeRepository
+                    .save(new MaterialTypeEntity(null, "load-" + System.nanoTime() + "-" + i, "load test", "icon", Integer.MAX_VALUE))
+                    .getId());
+        }
+        int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+        return new Target("http://localhost:" + port, warehouse.getId(), materialTypeIds);
+    }
+
+    private static Result run(Target target, int concurrency, Duration warmup, Duration duration, double writeRatio) throws Exception {
+        HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+        // every SKU starts with stock, so removals can't run dry while adds and removes alternate
+        for (Long materialTypeId : target.materialTypeIds()) {
+            client.send(target.add(materialTypeId, 1_000_000), HttpResponse.BodyHandlers.discarding());
+        }
+        load(client, target, concurrency, warmup, writeRatio);
+        return load(client, target, concurrency, duration, writeRatio);
+    }
+
+    private static Result load(HttpClient client, Target target, int concurrency, Duration duration, double writeRatio) throws InterruptedException {
+        Semaphore inFlight = new Semaphore(concurrency);
+        ConcurrentLinkedQueue<Long> latencies = new ConcurrentLinkedQueue<>();
+        AtomicLong errors = new AtomicLong();
+        long start = System.nanoTime();
+        long end = start + duration.toNanos();
+        while (System.nanoTime() < end) {
+            inFlight.acquire();
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            Long materialTypeId = target.materialTypeIds().get(random.nextInt(target.materialTypeIds().size()));
+            HttpRequest request = random.nextDouble() >= writeRatio ? target.list()
+                    : random.nextBoolean() ? target.add(materialTypeId, 1) : target.remove(materialTypeId, 1);
+            long sent = System.nanoTime();
+            client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, failure) -> {
+                latencies.add(System.nanoTime() - sent);
+                if (failure != null || response.statusCode() >= 400) {
+                    errors.incrementAndGet();
+                }
+                inFlight.release();
+            });
+        }
+        inFlight.acquire(concurrency);
+        long[] sorted = latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+        return new Result(sorted, errors.get(), System.nanoTime() - start);
+    }
+
+    private static void print(String mode, Result result) {
+        System.out.printf("%-9s %10.1f req/s   p50 %8.2f ms   p99 %8.2f ms   max %8.2f ms   errors %d of %d%n",
+                mode, result.throughput(), result.percentileMillis(0.50), result.percentileMillis(0.99),
+                result.percentileMillis(1.0), result.errors(), result.latencies().length);
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            String[] option = arg.replaceFirst("^--", "").split("=", 2);
+            options.put(option[0], option.length > 1 ? option[1] : "true");
+        }
+        return options;
+    }
+
+    private record Target(String baseUrl, Long warehouseId, List<Long> materialTypeIds) {
+
+        HttpRequest list() {
+            return HttpRequest.newBuilder(URI.create(baseUrl + "/api/warehouses/" + warehouseId + "/materials")).GET().build();
+        }
+
+        HttpRequest add(Long materialTypeId, int quantity) {
+            return HttpRequest.newBuilder(URI.create(baseUrl + "/api/warehouses/" + warehouseId + "/materials/" + materialTypeId + "?quantityToAdd=" + quantity))
+                    .POST(HttpRequest.BodyPublishers.noBody()).build();
+        }
+
+        HttpRequest remove(Long materialTypeId, int quantity) {
+            return HttpRequest.newBuilder(URI.create(baseUrl + "/api/warehouses/" + warehouseId + "/materials/" + materialTypeId + "?quantityToRemove=" + quantity))
+                    .DELETE().build();
+        }
+    }
+
+    private record Result(long[] latencies, long errors, long elapsedNanos) {
+
+        double throughput() {
+            return latencies.length / (elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1));
+        }
+
+        double percentileMillis(double percentile) {
+            if (latencies.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.min(latencies.length - 1, Math.ceil(percentile * latencies.length) - 1);
+            return latencies[Math.max(0, index)] / 1_000_000.0;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.warehouse.benchmark;
+
+import com.example.warehouse.dto.MaterialInventoryDto;
+import com.example.warehouse.dto.WarehouseMaterialsDto;
+import com.example.warehouse.event.InventoryAction;
+import com.example.warehouse.event.InventoryChangeEvent;
+import com.example.warehouse.service.MaterialInventoryService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single-threaded cost of the inventory service operations on random warehouses and material types, for both
+ * inventory engines. {@code publishEvent} is the outbox write every change pays for: publishing an
+ * {@link InventoryChangeEvent} in a transaction of its own.
+ * <p>
+ * Run with: {@code mvn -Pbenchmark test-compile exec:exec -Djmh.args="InventoryServiceBenchmark -p skus=1000"}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class InventoryServiceBenchmark {
+
+    @Param({"jpa", "ledger"})
+    private String engine;
+
+    @Param({"4"})
+    private int warehouses;
+
+    @Param({"100", "5000"})
+    private int skus;
+
+    private BenchmarkInventory inventory;
+    private MaterialInventoryService service;
+    private ApplicationEventPublisher eventPublisher;
+    private TransactionTemplate transactionTemplate;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        inventory = BenchmarkInventory.start(engine, warehouses, skus);
+        service = inventory.service();
+        eventPublisher = inventory.context();
+        transactionTemplate = new TransactionTemplate(inventory.context().getBean(PlatformTransactionManager.class));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        inventory.close();
+    }
+
+    @Benchmark
+    public MaterialInventoryDto addMaterialToWarehouse() {
+        return service.addMaterialToWarehouse(inventory.randomWarehouse(), inventory.randomMaterialType(), 1);
+    }
+
+    @Benchmark
+    public MaterialInventoryDto removeMaterialFromWarehouse() {
+        return service.removeMaterialFromWarehouse(inventory.randomWarehouse(), inventory.randomMaterialType(), 1);
+    }
+
+    @Benchmark
+    public MaterialInventoryDto moveMaterialBetweenWarehouses() {
+        long[] route = inventory.randomRoute();
+        return service.moveMaterialBetweenWarehouses(route[0], route[1], inventory.randomMaterialType(), 1);
+    }
+
+    @Benchmark
+    public WarehouseMaterialsDto getWarehouseMaterials() {
+        return service.getWarehouseMaterials(inventory.randomWarehouse());
+    }
+
+    @Benchmark
+    public void publishEvent() {
+        long warehouseId = inventory.randomWarehouse();
+        long materialTypeId = inventory.randomMaterialType();
+        transactionTemplate.executeWithoutResult(status -> eventPublisher.publishEvent(
+                new InventoryChangeEvent(this, warehouseId, materialTypeId, 1, InventoryAction.ADD, BenchmarkInventory.INITIAL_QUANTITY)));
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.warehouse.benchmark;
+
+import com.example.warehouse.cache.MaterialTypeSnapshot;
+import com.example.warehouse.cache.WarehouseSnapshot;
+import com.example.warehouse.dto.MaterialInventoryDto;
+import com.example.warehouse.dto.WarehouseMaterialsDto;
+import com.example.warehouse.entity.MaterialInventoryEntity;
+import com.example.warehouse.entity.MaterialTypeEntity;
+import com.example.warehouse.entity.WarehouseEntity;
+import com.example.warehouse.mapper.InventoryMapper;
+import org.mapstruct.factory.Mappers;
+import org.modelmapper.ModelMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds a getWarehouseMaterials response from inventory rows, once with the reflective ModelMapper the service used
+ * to call and once with the generated InventoryMapper. Run with {@code -prof gc} to compare allocation rates too.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MappingBenchmark {
+
+    @Param({"100", "5000"})
+    private int skuCount;
+
+    private final ModelMapper modelMapper = new ModelMapper();
+    private final InventoryMapper inventoryMapper = Mappers.getMapper(InventoryMapper.class);
+
+    private WarehouseEntity warehouse;
+    private WarehouseSnapshot warehouseSnapshot;
+    private List<MaterialInventoryEntity> inventories;
+    private Map<Long, MaterialTypeSnapshot> materialTypes;
+
+    @Setup
+    public void setUp() {
+        warehouse = new WarehouseEntity(1L, "Distribution center 1");
+        warehouseSnapshot = WarehouseSnapshot.of(warehouse);
+        inventories = new ArrayList<>(skuCount);
+        materialTypes = new HashMap<>();
+        for (long i = 1; i <= skuCount; i++) {
+            MaterialTypeEntity materialType = new MaterialTypeEntity(i, "Material " + i,
+                    "Description of material " + i, "icon-" + i + ".png", 10_000);
+            materialTypes.put(i, MaterialTypeSnapshot.of(materialType));
+            inventories.add(new MaterialInventoryEntity(i, warehouse, materialType, (int) (i % 1000), 0));
+        }
+    }
+
+    @Benchmark
+    public WarehouseMaterialsDto modelMapper() {
+        List<MaterialInventoryDto> materials = new ArrayList<>(inventories.size());
+        for (MaterialInventoryEntity inventory : inventories) {
+            materials.add(modelMapper.map(inventory, MaterialInventoryDto.class));
+        }
+        return new WarehouseMaterialsDto(warehouse.getId(), warehouse.getName(), materials);
+    }
+
+    @Benchmark
+    public WarehouseMaterialsDto generatedMapper() {
+        List<MaterialInventoryDto> materials = new ArrayList<>(inventories.size());
+        for (MaterialInventoryEntity inventory : inventories) {
+            materials.add(inventoryMapper.toMaterialInventoryDto(inventory, warehouseSnapshot,
+                    materialTypes.get(inventory.getMaterialType().getId())));
+        }
+        return inventoryMapper.toWarehouseMaterialsDto(warehouseSnapshot, materials);
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.warehouse.benchmark;
+
+import com.example.warehouse.dto.TransferLegDto;
+import com.example.warehouse.dto.TransferOrderResultDto;
+import com.example.warehouse.service.MaterialInventoryService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time for one rebalancing run of {@code legs} random one-unit moves, issued as single moves and as one transfer
+ * order, for both inventory engines.
+ * <p>
+ * Run with: {@code mvn -Pbenchmark test-compile exec:exec -Djmh.args="TransferOrderBenchmark"}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class TransferOrderBenchmark {
+
+    @Param({"jpa", "ledger"})
+    private String engine;
+
+    @Param({"8"})
+    private int warehouses;
+
+    @Param({"1000"})
+    private int skus;
+
+    @Param({"100", "5000"})
+    private int legs;
+
+    private BenchmarkInventory inventory;
+    private MaterialInventoryService service;
+    private List<TransferLegDto> run;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        inventory = BenchmarkInventory.start(engine, warehouses, skus);
+        service = inventory.service();
+    }
+
+    @Setup(Level.Invocation)
+    public void nextRun() {
+        run = new ArrayList<>(legs);
+        for (int i = 0; i < legs; i++) {
+            long[] route = inventory.randomRoute();
+            run.add(new TransferLegDto(route[0], route[1], inventory.randomMaterialType(), 1));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        inventory.close();
+    }
+
+    @Benchmark
+    public void singleMoves(Blackhole blackhole) {
+        for (TransferLegDto leg : run) {
+            blackhole.consume(service.moveMaterialBetweenWarehouses(leg.getSourceWarehouseId(), leg.getDestinationWarehouseId(),
+                    leg.getMaterialTypeId(), leg.getQuantity()));
+        }
+    }
+
+    @Benchmark
+    public TransferOrderResultDto transferOrder() {
+        return service.applyTransferOrder(run);
+    }
+}
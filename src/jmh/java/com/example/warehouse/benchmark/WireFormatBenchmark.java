@@ -0,0 +1,78 @@
+package com.example.warehouse.benchmark;
+
+import com.example.warehouse.config.WireFormatConfig;
+import com.example.warehouse.dto.MaterialInventoryDto;
+import com.example.warehouse.dto.MaterialTypeDto;
+import com.example.warehouse.dto.WarehouseDto;
+import com.example.warehouse.dto.WarehouseMaterialsDto;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encodes a getWarehouseMaterials response the way the server does and decodes it the way a client without the DTO
+ * classes would, for every representation the API offers. The encoded size of each is printed once per trial.
+ * Run with {@code -prof gc} to compare allocation rates too.
+ * <p>
+ * Run with: {@code mvn -Pbenchmark test-compile exec:exec -Djmh.args="WireFormatBenchmark"}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WireFormatBenchmark {
+
+    @Param({"json", "cbor", "slim-json", "slim-cbor"})
+    private String format;
+
+    @Param({"100", "5000"})
+    private int skuCount;
+
+    private ObjectMapper mapper;
+    private WarehouseMaterialsDto listing;
+    private byte[] encoded;
+
+    @Setup
+    public void setUp() throws IOException {
+        ObjectMapper base = format.endsWith("cbor") ? new ObjectMapper(new CBORFactory()) : new ObjectMapper();
+        mapper = format.startsWith("slim") ? WireFormatConfig.slim(base) : base;
+
+        WarehouseDto warehouse = new WarehouseDto(1L, "Distribution center 1");
+        List<MaterialInventoryDto> materials = new ArrayList<>(skuCount);
+        for (long i = 1; i <= skuCount; i++) {
+            MaterialTypeDto materialType = new MaterialTypeDto(i, "Material " + i, "Description of material " + i, "icon-" + i + ".png", 10_000);
+            materials.add(new MaterialInventoryDto(1_000_000L + i, warehouse, materialType, (int) (i % 1000), i % 50));
+        }
+        listing = new WarehouseMaterialsDto(warehouse.getId(), warehouse.getName(), materials);
+        encoded = mapper.writeValueAsBytes(listing);
+        System.out.println(format + ": " + encoded.length + " bytes for " + skuCount + " materials");
+    }
+
+    @Benchmark
+    public byte[] encode() throws IOException {
+        return mapper.writeValueAsBytes(listing);
+    }
+
+    @Benchmark
+    public JsonNode decode() throws IOException {
+        return mapper.readTree(encoded);
+    }
+}
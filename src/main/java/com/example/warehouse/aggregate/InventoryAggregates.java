@@ -0,0 +1,210 @@
+package com.example.warehouse.aggregate;
+
+import com.example.warehouse.cache.MaterialTypeSnapshot;
+import com.example.warehouse.cache.ReferenceDataCache;
+import com.example.warehouse.cache.WarehouseSnapshot;
+import com.example.warehouse.dto.MaterialTotalsDto;
+import com.example.warehouse.dto.WarehouseUtilizationDto;
+import com.example.warehouse.event.InventoryChangeEvent;
+import com.example.warehouse.exceptions.MaterialTypeNotFoundException;
+import com.example.warehouse.shard.ShardDirectory;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per material type totals across all warehouses, kept in memory so planning questions never scan
+ * {@code material_inventory}.
+ * <p>
+ * Every committed {@link InventoryChangeEvent} adds its change to the aggregate of the material type. Changes
+ * commute, so the order in which commits reach the listener does not matter. The aggregates are loaded with one
+ * scan once the application is ready and reconciled against the table on a schedule: an aggregate that drifted
+ * (a change committed while the application stopped, a listener that failed) is replaced by the scanned values,
+ * unless it changed during the scan or a transaction changing it has not completed yet, then it is left to the
+ * next run. A committed change only reaches the aggregate after the commit, so the scan can see it first.
+ */
+@Component
+@ConditionalOnProperty(name = "warehouse.aggregates.enabled", havingValue = "true", matchIfMissing = true)
+public class InventoryAggregates {
+
+    private static final Logger log = LoggerFactory.getLogger(InventoryAggregates.class);
+
+    private final Map<Long, MaterialAggregate> aggregates = new ConcurrentHashMap<>();
+    private final JdbcTemplate jdbcTemplate;
+    private final ReferenceDataCache referenceDataCache;
+    private final ObjectProvider<ShardDirectory> shardDirectory;
+    private final Counter repaired;
+
+    public InventoryAggregates(JdbcTemplate jdbcTemplate, ReferenceDataCache referenceDataCache,
+                               ObjectProvider<ShardDirectory> shardDirectory, MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.referenceDataCache = referenceDataCache;
+        this.shardDirectory = shardDirectory;
+        this.repaired = Counter.builder("inventory.aggregates.repaired")
+                .description("Material type aggregates found out of line with material_inventory and repaired")
+                .register(meterRegistry);
+    }
+
+    //applied after commit, the ledger engine publishes from its write-behind transactions so there always is one
+    //to wait for; until the transaction completes the change is pending and keeps reconciliation off the aggregate
+    @EventListener
+    public void onInventoryChange(InventoryChangeEvent event) {
+        MaterialAggregate aggregate = aggregates.computeIfAbsent(event.getMaterialTypeId(), id -> new MaterialAggregate());
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            synchronized (aggregate) {
+                aggregate.apply(event.getWarehouseId(), event.getChangeQuantity());
+            }
+            return;
+        }
+        synchronized (aggregate) {
+            aggregate.begin();
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                synchronized (aggregate) {
+                    if (status == STATUS_COMMITTED) {
+                        aggregate.apply(event.getWarehouseId(), event.getChangeQuantity());
+                    }
+                    aggregate.end();
+                }
+            }
+        });
+    }
+
+    public List<MaterialTotalsDto> getTotals() {
+        List<MaterialTotalsDto> totals = new ArrayList<>(aggregates.size());
+        aggregates.forEach((materialTypeId, aggregate) -> referenceDataCache.findMaterialType(materialTypeId)
+                .map(materialType -> totals(materialType, aggregate))
+                .filter(materialTotals -> materialTotals.getWarehouseCount() > 0)
+                .ifPresent(totals::add));
+        totals.sort(Comparator.comparing(MaterialTotalsDto::getMaterialTypeId));
+        return totals;
+    }
+
+    public MaterialTotalsDto getTotals(Long materialTypeId) {
+        MaterialTypeSnapshot materialType = materialType(materialTypeId);
+        MaterialAggregate aggregate = aggregates.get(materialTypeId);
+        return aggregate == null ? new MaterialTotalsDto(materialTypeId, materialType.name(), 0, 0, materialType.maxCapacity(), 0)
+                : totals(materialType, aggregate);
+    }
+
+    /**
+     * @param fullest true for the warehouses closest to maxCapacity first, false for the ones holding the least
+     *                (warehouses without any of the material are not listed)
+     */
+    public List<WarehouseUtilizationDto> getWarehouseUtilization(Long materialTypeId, boolean fullest, int limit) {
+        MaterialTypeSnapshot materialType = materialType(materialTypeId);
+        MaterialAggregate aggregate = aggregates.get(materialTypeId);
+        if (aggregate == null) {
+            return List.of();
+        }
+        List<MaterialAggregate.Position> top;
+        synchronized (aggregate) {
+            top = aggregate.top(limit, fullest);
+        }
+        List<WarehouseUtilizationDto> utilization = new ArrayList<>(top.size());
+        for (MaterialAggregate.Position position : top) {
+            String warehouseName = referenceDataCache.findWarehouse(position.warehouseId()).map(WarehouseSnapshot::name).orElse(null);
+            utilization.add(new WarehouseUtilizationDto(position.warehouseId(), warehouseName, position.quantity(),
+                    ratio(position.quantity(), materialType.maxCapacity())));
+        }
+        return utilization;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        reconcile();
+    }
+
+    /**
+     * Compares every aggregate with a scan of material_inventory and repairs the ones that drifted.
+     *
+     * @return the number of aggregates repaired
+     */
+    @Scheduled(initialDelayString = "${warehouse.aggregates.reconcile-interval-ms:300000}",
+            fixedDelayString = "${warehouse.aggregates.reconcile-interval-ms:300000}")
+    public int reconcile() {
+        Map<Long, Long> versions = new HashMap<>();
+        aggregates.forEach((materialTypeId, aggregate) -> {
+            synchronized (aggregate) {
+                versions.put(materialTypeId, aggregate.version());
+            }
+        });
+        Map<Long, Map<Long, Integer>> scanned = new HashMap<>();
+        RowCallbackHandler scan = row -> {
+            scanned.computeIfAbsent(row.getLong(1), id -> new HashMap<>()).put(row.getLong(2), row.getInt(3));
+        };
+        String sql = "select material_type_id, warehouse_id, quantity from material_inventory where quantity <> 0";
+        //with sharding the table is spread over the shards
+        ShardDirectory directory = shardDirectory.getIfAvailable();
+        if (directory == null) {
+            jdbcTemplate.query(sql, scan);
+        } else {
+            directory.queryInventory(sql, "warehouse_id", scan);
+        }
+        int repairs = 0;
+        Set<Long> materialTypeIds = new HashSet<>(scanned.keySet());
+        materialTypeIds.addAll(aggregates.keySet());
+        for (Long materialTypeId : materialTypeIds) {
+            Map<Long, Integer> expected = scanned.getOrDefault(materialTypeId, Map.of());
+            MaterialAggregate aggregate = aggregates.computeIfAbsent(materialTypeId, id -> new MaterialAggregate());
+            synchronized (aggregate) {
+                if (aggregate.quantities().equals(expected) || aggregate.pending() > 0
+                        || aggregate.version() != versions.getOrDefault(materialTypeId, 0L)) {
+                    continue;
+                }
+                for (Long warehouseId : new ArrayList<>(aggregate.quantities().keySet())) {
+                    aggregate.set(warehouseId, 0);
+                }
+                expected.forEach(aggregate::set);
+            }
+            repairs++;
+        }
+        if (repairs > 0) {
+            repaired.increment(repairs);
+            log.info("Repaired the inventory totals of {} material types", repairs);
+        }
+        return repairs;
+    }
+
+    private MaterialTypeSnapshot materialType(Long materialTypeId) {
+        return referenceDataCache.findMaterialType(materialTypeId)
+                .orElseThrow(() -> new MaterialTypeNotFoundException("Material type not found with ID: " + materialTypeId));
+    }
+
+    private static MaterialTotalsDto totals(MaterialTypeSnapshot materialType, MaterialAggregate aggregate) {
+        long total;
+        int warehouseCount;
+        synchronized (aggregate) {
+            total = aggregate.total();
+            warehouseCount = aggregate.warehouseCount();
+        }
+        return new MaterialTotalsDto(materialType.id(), materialType.name(), total, warehouseCount, materialType.maxCapacity(),
+                ratio(total, (long) warehouseCount * materialType.maxCapacity()));
+    }
+
+    private static double ratio(long quantity, long capacity) {
+        return capacity <= 0 ? 0 : (double) quantity / capacity;
+    }
+}
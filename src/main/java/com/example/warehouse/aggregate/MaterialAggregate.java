@@ -0,0 +1,87 @@
+package com.example.warehouse.aggregate;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * The stock of one material type across all warehouses: the network-wide total and the warehouses holding it,
+ * ordered by quantity. Not thread safe, {@link InventoryAggregates} locks it.
+ */
+class MaterialAggregate {
+
+    record Position(long warehouseId, int quantity) {
+    }
+
+    private static final Comparator<Position> BY_QUANTITY = Comparator.comparingInt(Position::quantity)
+            .thenComparingLong(Position::warehouseId);
+
+    private final Map<Long, Integer> quantities = new HashMap<>();
+    private final TreeSet<Position> byQuantity = new TreeSet<>(BY_QUANTITY);
+    private long total;
+    //incremented on every change, reconciliation only repairs an aggregate nothing changed during its scan
+    private long version;
+    //changes of transactions not completed yet, the table may already hold them while the aggregate doesn't
+    private int pending;
+
+    void apply(long warehouseId, int change) {
+        set(warehouseId, quantities.getOrDefault(warehouseId, 0) + change);
+        version++;
+    }
+
+    void begin() {
+        pending++;
+        version++;
+    }
+
+    void end() {
+        pending--;
+        version++;
+    }
+
+    void set(long warehouseId, int quantity) {
+        Integer previous = quantities.remove(warehouseId);
+        if (previous != null) {
+            byQuantity.remove(new Position(warehouseId, previous));
+            total -= previous;
+        }
+        if (quantity != 0) {
+            quantities.put(warehouseId, quantity);
+            byQuantity.add(new Position(warehouseId, quantity));
+            total += quantity;
+        }
+    }
+
+    long total() {
+        return total;
+    }
+
+    int warehouseCount() {
+        return quantities.size();
+    }
+
+    long version() {
+        return version;
+    }
+
+    int pending() {
+        return pending;
+    }
+
+    Map<Long, Integer> quantities() {
+        return quantities;
+    }
+
+    List<Position> top(int limit, boolean fullest) {
+        List<Position> top = new ArrayList<>(Math.min(limit, byQuantity.size()));
+        Iterator<Position> positions = fullest ? byQuantity.descendingIterator() : byQuantity.iterator();
+        while (positions.hasNext() && top.size() < limit) {
+            top.add(positions.next());
+        }
+        return top;
+    }
+}
@@ -0,0 +1,16 @@
+package com.example.warehouse.alert;
+
+import com.example.warehouse.dto.AlertDto;
+
+import java.time.Instant;
+
+/**
+ * A rule breached by the inventory of one warehouse and material type, raised at the time of the change that
+ * breached it.
+ */
+public record Alert(AlertRule rule, Long warehouseId, Long materialTypeId, int quantity, Instant raisedAt) {
+
+    public AlertDto toDto() {
+        return new AlertDto(rule.id(), warehouseId, materialTypeId, rule.condition(), rule.threshold(), quantity, raisedAt);
+    }
+}
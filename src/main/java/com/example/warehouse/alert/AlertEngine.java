@@ -0,0 +1,133 @@
+package com.example.warehouse.alert;
+
+import com.example.warehouse.cache.MaterialTypeSnapshot;
+import com.example.warehouse.cache.ReferenceDataCache;
+import com.example.warehouse.outbox.InventoryChangeRecord;
+import com.example.warehouse.outbox.InventoryEventSink;
+import com.example.warehouse.repository.AlertRuleRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Evaluates the alert rules against every committed inventory change and hands raised and cleared alerts to the
+ * {@link AlertSink}s.
+ * <p>
+ * Only the rules matching the warehouse and material type of a change are looked at, see {@link AlertRuleIndex}.
+ * A rule is evaluated per inventory: it raises an alert when a change breaches it and clears it only once a later
+ * change got back past the threshold by the rule's hysteresis, in between the inventory stays alerted whatever the
+ * changes. An inventory that already breaches a rule when the rule is created is alerted at its next change.
+ * <p>
+ * Changes come from the outbox, in order per warehouse, so it runs on the instance running the dispatcher. Rules
+ * created on other instances are picked up when the rules are reloaded. Active alerts are kept in memory.
+ */
+@Component
+@ConditionalOnProperty(name = "warehouse.alerts.enabled", havingValue = "true", matchIfMissing = true)
+public class AlertEngine implements InventoryEventSink {
+
+    private record AlertKey(Long ruleId, Long warehouseId, Long materialTypeId) {
+    }
+
+    private final AlertRuleIndex rules = new AlertRuleIndex();
+    private final Map<AlertKey, Alert> active = new ConcurrentHashMap<>();
+    private final AlertRuleRepository ruleRepository;
+    private final ReferenceDataCache referenceDataCache;
+    private final List<AlertSink> sinks;
+    private final Counter raised;
+    private final Counter cleared;
+
+    public AlertEngine(AlertRuleRepository ruleRepository, ReferenceDataCache referenceDataCache, List<AlertSink> sinks,
+                       MeterRegistry meterRegistry) {
+        this.ruleRepository = ruleRepository;
+        this.referenceDataCache = referenceDataCache;
+        this.sinks = sinks;
+        this.raised = Counter.builder("inventory.alerts.raised")
+                .description("Alerts raised by a change breaching an alert rule")
+                .register(meterRegistry);
+        this.cleared = Counter.builder("inventory.alerts.cleared")
+                .description("Alerts cleared by a change getting back past the threshold and hysteresis")
+                .register(meterRegistry);
+        Gauge.builder("inventory.alerts.active", active, Map::size)
+                .description("Alerts raised and not yet cleared")
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        reloadRules();
+    }
+
+    @Scheduled(initialDelayString = "${warehouse.alerts.rule-refresh-ms:60000}",
+            fixedDelayString = "${warehouse.alerts.rule-refresh-ms:60000}")
+    public void reloadRules() {
+        rules.replaceAll(ruleRepository.findAll().stream().map(AlertRule::of).toList());
+        active.keySet().removeIf(key -> !rules.contains(key.ruleId()));
+    }
+
+    void ruleAdded(AlertRule rule) {
+        rules.put(rule);
+    }
+
+    // the alerts of a deleted rule are dropped without being cleared
+    void ruleRemoved(Long ruleId) {
+        rules.remove(ruleId);
+        active.keySet().removeIf(key -> key.ruleId().equals(ruleId));
+    }
+
+    //the alerts not yet cleared, oldest first, of one warehouse or all if it's null
+    public List<Alert> activeAlerts(Long warehouseId) {
+        return active.values().stream()
+                .filter(alert -> warehouseId == null || Objects.equals(alert.warehouseId(), warehouseId))
+                .sorted(Comparator.comparing(Alert::raisedAt))
+                .toList();
+    }
+
+    //an alert only changes state once the sinks have it, a failing sink gets the change again
+    @Override
+    public void deliver(List<InventoryChangeRecord> records) throws Exception {
+        for (InventoryChangeRecord change : records) {
+            evaluate(change);
+        }
+    }
+
+    private void evaluate(InventoryChangeRecord change) throws Exception {
+        List<AlertRule> matching = rules.matching(change.warehouseId(), change.materialTypeId());
+        if (matching.isEmpty()) {
+            return;
+        }
+        MaterialTypeSnapshot materialType = referenceDataCache.findMaterialType(change.materialTypeId()).orElse(null);
+        if (materialType == null) {
+            return;
+        }
+        int quantity = change.quantityAfter();
+        for (AlertRule rule : matching) {
+            AlertKey key = new AlertKey(rule.id(), change.warehouseId(), change.materialTypeId());
+            Alert current = active.get(key);
+            if (current == null && rule.breached(quantity, materialType.maxCapacity())) {
+                Alert alert = new Alert(rule, change.warehouseId(), change.materialTypeId(), quantity, change.occurredAt());
+                for (AlertSink sink : sinks) {
+                    sink.raised(alert);
+                }
+                active.put(key, alert);
+                raised.increment();
+            } else if (current != null && rule.recovered(quantity, materialType.maxCapacity())) {
+                for (AlertSink sink : sinks) {
+                    sink.cleared(current, quantity);
+                }
+                active.remove(key);
+                cleared.increment();
+            }
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.warehouse.alert;
+
+import com.example.warehouse.dto.AlertCondition;
+import com.example.warehouse.dto.AlertRuleDto;
+import com.example.warehouse.entity.AlertRuleEntity;
+
+/**
+ * An alert rule as the {@link AlertEngine} evaluates it, a null warehouse or material type matches every one.
+ */
+public record AlertRule(Long id, Long warehouseId, Long materialTypeId, AlertCondition condition, int threshold, int hysteresis) {
+
+    public static AlertRule of(AlertRuleEntity entity) {
+        return new AlertRule(entity.getId(), entity.getWarehouseId(), entity.getMaterialTypeId(),
+                entity.getCondition(), entity.getThreshold(), entity.getHysteresis());
+    }
+
+    boolean breached(int quantity, int maxCapacity) {
+        return switch (condition) {
+            case QUANTITY_BELOW -> quantity < threshold;
+            case CAPACITY_ABOVE_PERCENT -> (long) quantity * 100 > (long) threshold * maxCapacity;
+        };
+    }
+
+    // the quantity has to get past the threshold by the hysteresis, so a quantity hovering around it doesn't flap
+    boolean recovered(int quantity, int maxCapacity) {
+        return switch (condition) {
+            case QUANTITY_BELOW -> quantity >= threshold + hysteresis;
+            case CAPACITY_ABOVE_PERCENT -> (long) quantity * 100 <= (long) (threshold - hysteresis) * maxCapacity;
+        };
+    }
+
+    public AlertRuleDto toDto() {
+        return new AlertRuleDto(id, warehouseId, materialTypeId, condition, threshold, hysteresis);
+    }
+}
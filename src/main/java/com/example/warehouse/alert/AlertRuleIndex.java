@@ -0,0 +1,74 @@
+package com.example.warehouse.alert;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Alert rules by the warehouse and material type they apply to. A change is matched by looking up its exact pair
+ * and the three wildcard pairs, so it costs the number of matching rules however many rules there are.
+ * <p>
+ * The rules of a pair are an immutable list that is replaced as a whole, lookups never lock.
+ */
+class AlertRuleIndex {
+
+    private record Scope(Long warehouseId, Long materialTypeId) {
+    }
+
+    private final Map<Scope, List<AlertRule>> byScope = new ConcurrentHashMap<>();
+    private final Map<Long, AlertRule> byId = new ConcurrentHashMap<>();
+
+    List<AlertRule> matching(Long warehouseId, Long materialTypeId) {
+        List<AlertRule> matching = new ArrayList<>();
+        matching.addAll(byScope.getOrDefault(new Scope(warehouseId, materialTypeId), List.of()));
+        matching.addAll(byScope.getOrDefault(new Scope(warehouseId, null), List.of()));
+        matching.addAll(byScope.getOrDefault(new Scope(null, materialTypeId), List.of()));
+        matching.addAll(byScope.getOrDefault(new Scope(null, null), List.of()));
+        return matching;
+    }
+
+    boolean contains(Long ruleId) {
+        return byId.containsKey(ruleId);
+    }
+
+    synchronized void put(AlertRule rule) {
+        remove(rule.id());
+        byId.put(rule.id(), rule);
+        byScope.compute(scopeOf(rule), (scope, rules) -> {
+            List<AlertRule> scoped = rules == null ? new ArrayList<>() : new ArrayList<>(rules);
+            scoped.add(rule);
+            return List.copyOf(scoped);
+        });
+    }
+
+    synchronized void remove(Long ruleId) {
+        AlertRule removed = byId.remove(ruleId);
+        if (removed != null) {
+            byScope.computeIfPresent(scopeOf(removed), (scope, rules) -> {
+                List<AlertRule> scoped = rules.stream().filter(rule -> !rule.id().equals(ruleId)).toList();
+                return scoped.isEmpty() ? null : scoped;
+            });
+        }
+    }
+
+    // pair by pair, so a lookup in the meantime sees either the old or the new rules of a pair, never none
+    synchronized void replaceAll(Collection<AlertRule> all) {
+        Map<Scope, List<AlertRule>> grouped = new HashMap<>();
+        for (AlertRule rule : all) {
+            grouped.computeIfAbsent(scopeOf(rule), scope -> new ArrayList<>()).add(rule);
+        }
+        grouped.forEach((scope, rules) -> byScope.put(scope, List.copyOf(rules)));
+        byScope.keySet().retainAll(grouped.keySet());
+        Map<Long, AlertRule> ids = new HashMap<>();
+        all.forEach(rule -> ids.put(rule.id(), rule));
+        byId.putAll(ids);
+        byId.keySet().retainAll(ids.keySet());
+    }
+
+    private static Scope scopeOf(AlertRule rule) {
+        return new Scope(rule.warehouseId(), rule.materialTypeId());
+    }
+}
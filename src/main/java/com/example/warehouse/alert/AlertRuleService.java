@@ -0,0 +1,74 @@
+package com.example.warehouse.alert;
+
+import com.example.warehouse.cache.ReferenceDataCache;
+import com.example.warehouse.dto.AlertCondition;
+import com.example.warehouse.dto.AlertDto;
+import com.example.warehouse.dto.AlertRuleDto;
+import com.example.warehouse.entity.AlertRuleEntity;
+import com.example.warehouse.exceptions.AlertRuleNotFoundException;
+import com.example.warehouse.exceptions.MaterialTypeNotFoundException;
+import com.example.warehouse.exceptions.WarehouseNotFoundException;
+import com.example.warehouse.repository.AlertRuleRepository;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+/**
+ * Low-stock and near-capacity alert rules, stored in {@code alert_rule} and evaluated by the {@link AlertEngine}.
+ */
+@Service
+@ConditionalOnProperty(name = "warehouse.alerts.enabled", havingValue = "true", matchIfMissing = true)
+public class AlertRuleService {
+
+    private final AlertRuleRepository ruleRepository;
+    private final AlertEngine alertEngine;
+    private final ReferenceDataCache referenceDataCache;
+
+    public AlertRuleService(AlertRuleRepository ruleRepository, AlertEngine alertEngine, ReferenceDataCache referenceDataCache) {
+        this.ruleRepository = ruleRepository;
+        this.alertEngine = alertEngine;
+        this.referenceDataCache = referenceDataCache;
+    }
+
+    public AlertRuleDto createRule(AlertRuleDto request) {
+        if (request.getWarehouseId() != null) {
+            referenceDataCache.findWarehouse(request.getWarehouseId())
+                    .orElseThrow(() -> new WarehouseNotFoundException("Warehouse not found with ID: " + request.getWarehouseId()));
+        }
+        if (request.getMaterialTypeId() != null) {
+            referenceDataCache.findMaterialType(request.getMaterialTypeId())
+                    .orElseThrow(() -> new MaterialTypeNotFoundException("Material type not found with ID: " + request.getMaterialTypeId()));
+        }
+        if (request.getCondition() == AlertCondition.CAPACITY_ABOVE_PERCENT && request.getThreshold() > 100) {
+            throw new IllegalArgumentException("A capacity threshold is a percentage of maxCapacity, got " + request.getThreshold());
+        }
+        if (request.getCondition() == AlertCondition.CAPACITY_ABOVE_PERCENT && request.getHysteresis() > request.getThreshold()) {
+            throw new IllegalArgumentException("Hysteresis " + request.getHysteresis() + " would keep the alert from ever clearing below " + request.getThreshold() + " percent");
+        }
+
+        AlertRuleEntity saved = ruleRepository.save(new AlertRuleEntity(null, request.getWarehouseId(), request.getMaterialTypeId(),
+                request.getCondition(), request.getThreshold(), request.getHysteresis()));
+        AlertRule rule = AlertRule.of(saved);
+        alertEngine.ruleAdded(rule);
+        return rule.toDto();
+    }
+
+    public AlertRuleDto getRule(Long ruleId) {
+        return ruleRepository.findById(ruleId)
+                .map(entity -> AlertRule.of(entity).toDto())
+                .orElseThrow(() -> new AlertRuleNotFoundException("Alert rule not found with ID: " + ruleId));
+    }
+
+    public void deleteRule(Long ruleId) {
+        if (!ruleRepository.existsById(ruleId)) {
+            throw new AlertRuleNotFoundException("Alert rule not found with ID: " + ruleId);
+        }
+        ruleRepository.deleteById(ruleId);
+        alertEngine.ruleRemoved(ruleId);
+    }
+
+    public List<AlertDto> getActiveAlerts(Long warehouseId) {
+        return alertEngine.activeAlerts(warehouseId).stream().map(Alert::toDto).toList();
+    }
+}
@@ -0,0 +1,15 @@
+package com.example.warehouse.alert;
+
+/**
+ * Receiver of raised and cleared alerts, every bean implementing it gets all of them.
+ * <p>
+ * Calls come from outbox lanes: the alerts of one warehouse arrive in order, those of different warehouses may
+ * arrive concurrently. A sink that throws has the changes redelivered, so other sinks may see an alert twice.
+ */
+public interface AlertSink {
+
+    void raised(Alert alert) throws Exception;
+
+    //the quantity that ended the alert, the alert itself carries the one that raised it
+    void cleared(Alert alert, int quantity) throws Exception;
+}
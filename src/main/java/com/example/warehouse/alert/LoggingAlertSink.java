@@ -0,0 +1,25 @@
+package com.example.warehouse.alert;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConditionalOnProperty(name = "warehouse.alerts.enabled", havingValue = "true", matchIfMissing = true)
+public class LoggingAlertSink implements AlertSink {
+
+    private static final Logger log = LoggerFactory.getLogger(LoggingAlertSink.class);
+
+    @Override
+    public void raised(Alert alert) {
+        log.warn("Alert raised: {} {} for Warehouse ID: {}, Material Type ID: {}, quantity {} (rule {})",
+                alert.rule().condition(), alert.rule().threshold(), alert.warehouseId(), alert.materialTypeId(), alert.quantity(), alert.rule().id());
+    }
+
+    @Override
+    public void cleared(Alert alert, int quantity) {
+        log.info("Alert cleared: {} {} for Warehouse ID: {}, Material Type ID: {}, quantity {} (rule {})",
+                alert.rule().condition(), alert.rule().threshold(), alert.warehouseId(), alert.materialTypeId(), quantity, alert.rule().id());
+    }
+}
@@ -0,0 +1,14 @@
+package com.example.warehouse.cache;
+
+import com.example.warehouse.entity.MaterialTypeEntity;
+
+/**
+ * Immutable copy of a material type as held by the {@link ReferenceDataCache}.
+ */
+public record MaterialTypeSnapshot(Long id, String name, String description, String icon, int maxCapacity) {
+
+    public static MaterialTypeSnapshot of(MaterialTypeEntity materialType) {
+        return new MaterialTypeSnapshot(materialType.getId(), materialType.getName(), materialType.getDescription(),
+                materialType.getIcon(), materialType.getMaxCapacity());
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.warehouse.cache;
+
+import com.example.warehouse.repository.MaterialTypeRepository;
+import com.example.warehouse.repository.WarehouseRepository;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Read-through cache for warehouses and material types, which are read on every inventory mutation but almost never
+ * change. Entries are bounded in number and expire after a TTL, JPA writes to either entity evict them right away
+ * (see {@link ReferenceDataCacheInvalidator}).
+ * <p>
+ * With preloading enabled every row is loaded at startup and entries are refreshed in the background once the TTL
+ * has passed instead of expiring, so validating an existing id never waits on the database. The maximum size must
+ * then be larger than the number of rows, or evicted entries are loaded again on demand.
+ * Missing ids are never cached, so an unknown id always costs a lookup.
+ */
+@Component
+public class ReferenceDataCache {
+
+    private final WarehouseRepository warehouseRepository;
+    private final MaterialTypeRepository materialTypeRepository;
+    private final boolean preload;
+    private final LoadingCache<Long, WarehouseSnapshot> warehouses;
+    private final LoadingCache<Long, MaterialTypeSnapshot> materialTypes;
+
+    public ReferenceDataCache(WarehouseRepository warehouseRepository,
+                              MaterialTypeRepository materialTypeRepository,
+                              MeterRegistry meterRegistry,
+                              @Value("${warehouse.reference-cache.maximum-size:10000}") long maximumSize,
+                              @Value("${warehouse.reference-cache.ttl:10m}") Duration ttl,
+                              @Value("${warehouse.reference-cache.preload:false}") boolean preload) {
+        this.warehouseRepository = warehouseRepository;
+        this.materialTypeRepository = materialTypeRepository;
+        this.preload = preload;
+        this.warehouses = CaffeineCacheMetrics.monitor(meterRegistry,
+                newCache(maximumSize, ttl, preload).build(id -> warehouseRepository.findById(id)
+                        .map(WarehouseSnapshot::of)
+                        .orElse(null)),
+                "warehouses");
+        this.materialTypes = CaffeineCacheMetrics.monitor(meterRegistry,
+                newCache(maximumSize, ttl, preload).build(id -> materialTypeRepository.findById(id)
+                        .map(MaterialTypeSnapshot::of)
+                        .orElse(null)),
+                "materialTypes");
+    }
+
+    public Optional<WarehouseSnapshot> findWarehouse(Long warehouseId) {
+        // Caffeine rejects null keys, a missing id simply finds nothing
+        return warehouseId == null ? Optional.empty() : Optional.ofNullable(warehouses.get(warehouseId));
+    }
+
+    public Optional<MaterialTypeSnapshot> findMaterialType(Long materialTypeId) {
+        return materialTypeId == null ? Optional.empty() : Optional.ofNullable(materialTypes.get(materialTypeId));
+    }
+
+    public double warehouseHitRatio() {
+        return warehouses.stats().hitRate();
+    }
+
+    public double materialTypeHitRatio() {
+        return materialTypes.stats().hitRate();
+    }
+
+    public void evictWarehouse(Long warehouseId) {
+        warehouses.invalidate(warehouseId);
+    }
+
+    public void evictMaterialType(Long materialTypeId) {
+        materialTypes.invalidate(materialTypeId);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void preloadOnStartup() {
+        if (!preload) {
+            return;
+        }
+        warehouseRepository.findAll().forEach(warehouse -> warehouses.put(warehouse.getId(), WarehouseSnapshot.of(warehouse)));
+        materialTypeRepository.findAll().forEach(materialType -> materialTypes.put(materialType.getId(), MaterialTypeSnapshot.of(materialType)));
+    }
+
+    private static Caffeine<Object, Object> newCache(long maximumSize, Duration ttl, boolean preload) {
+        Caffeine<Object, Object> builder = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .recordStats();
+        // a preloaded cache keeps serving the old value while it reloads, a lazy one just forgets it
+        return preload ? builder.refreshAfterWrite(ttl) : builder.expireAfterWrite(ttl);
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.warehouse.cache;
+
+import com.example.warehouse.entity.MaterialTypeEntity;
+import com.example.warehouse.entity.WarehouseEntity;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * JPA entity listener that evicts cached warehouses and material types when they are written.
+ * The entry is evicted when the change is flushed and once more after commit, because a reader on another
+ * transaction may have cached the old row in between.
+ */
+public class ReferenceDataCacheInvalidator {
+
+    // looked up lazily, the cache depends on repositories which in turn need this listener to be created
+    private final ObjectProvider<ReferenceDataCache> referenceDataCache;
+
+    public ReferenceDataCacheInvalidator(ObjectProvider<ReferenceDataCache> referenceDataCache) {
+        this.referenceDataCache = referenceDataCache;
+    }
+
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    public void onWrite(Object entity) {
+        ReferenceDataCache cache = referenceDataCache.getIfAvailable();
+        if (cache == null) {
+            return;
+        }
+        Runnable evict;
+        if (entity instanceof WarehouseEntity warehouse) {
+            evict = () -> cache.evictWarehouse(warehouse.getId());
+        } else if (entity instanceof MaterialTypeEntity materialType) {
+            evict = () -> cache.evictMaterialType(materialType.getId());
+        } else {
+            return;
+        }
+        evict.run();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    evict.run();
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.example.warehouse.cache;
+
+import com.example.warehouse.entity.WarehouseEntity;
+
+/**
+ * Immutable copy of a warehouse as held by the {@link ReferenceDataCache}.
+ */
+public record WarehouseSnapshot(Long id, String name) {
+
+    public static WarehouseSnapshot of(WarehouseEntity warehouse) {
+        return new WarehouseSnapshot(warehouse.getId(), warehouse.getName());
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.warehouse.config;
+
+import com.example.warehouse.cache.ReferenceDataCache;
+import com.example.warehouse.metrics.RequestSqlMetricsFilter;
+import com.example.warehouse.metrics.SqlStatementCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+//per-request SQL counts and cache hit ratios, the operation timers are InventoryOperationMetrics
+@Configuration
+@ConditionalOnProperty(name = "warehouse.metrics.enabled", havingValue = "true", matchIfMissing = true)
+public class MetricsConfig {
+
+    @Bean
+    HibernatePropertiesCustomizer sqlStatementCounter() {
+        return properties -> properties.put(AvailableSettings.STATEMENT_INSPECTOR, new SqlStatementCounter());
+    }
+
+    @Bean
+    FilterRegistrationBean<RequestSqlMetricsFilter> requestSqlMetricsFilter(MeterRegistry meterRegistry) {
+        FilterRegistrationBean<RequestSqlMetricsFilter> registration = new FilterRegistrationBean<>(new RequestSqlMetricsFilter(meterRegistry));
+        registration.addUrlPatterns("/api/*");
+        return registration;
+    }
+
+    @Bean
+    MeterBinder referenceCacheHitRatio(ReferenceDataCache referenceDataCache) {
+        return registry -> {
+            Gauge.builder("cache.hit.ratio", referenceDataCache, ReferenceDataCache::warehouseHitRatio)
+                    .tag("cache", "warehouses")
+                    .register(registry);
+            Gauge.builder("cache.hit.ratio", referenceDataCache, ReferenceDataCache::materialTypeHitRatio)
+                    .tag("cache", "materialTypes")
+                    .register(registry);
+        };
+    }
+}
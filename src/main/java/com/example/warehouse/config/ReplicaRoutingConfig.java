@@ -0,0 +1,100 @@
+package com.example.warehouse.config;
+
+import com.example.warehouse.replica.ReadYourWritesFilter;
+import com.example.warehouse.replica.ReplicaHeartbeat;
+import com.example.warehouse.replica.ReplicaPool;
+import com.example.warehouse.replica.ReplicaRoutingDataSource;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sends read-only transactions to read replicas and everything else to the primary of spring.datasource.
+ * <p>
+ * The connection handed to a transaction is only fetched at its first statement, when it is known whether the
+ * transaction is read-only. Reads only go to replicas within the staleness bound, and to the primary for clients
+ * that changed something in the last moments, see {@link ReadYourWritesFilter}.
+ */
+@Configuration
+@ConditionalOnProperty(name = "warehouse.datasource.replicas.enabled", havingValue = "true")
+public class ReplicaRoutingConfig {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    @Bean(destroyMethod = "close")
+    ReplicaPool replicaPool(DataSourceProperties properties,
+                            @Value("${warehouse.datasource.replicas.urls}") List<String> urls,
+                            @Value("${warehouse.datasource.replicas.username:${spring.datasource.username:}}") String username,
+                            @Value("${warehouse.datasource.replicas.password:${spring.datasource.password:}}") String password,
+                            @Value("${warehouse.datasource.replicas.pool-size:10}") int poolSize,
+                            @Value("${warehouse.datasource.replicas.max-lag-ms:5000}") long maxLagMillis,
+                            ObjectProvider<MeterRegistry> meterRegistry) {
+        List<HikariDataSource> replicas = new ArrayList<>();
+        for (String url : urls) {
+            HikariDataSource replica = new HikariDataSource();
+            replica.setPoolName("replica-" + replicas.size());
+            replica.setJdbcUrl(url.trim());
+            replica.setUsername(username);
+            replica.setPassword(password);
+            replica.setDriverClassName(properties.determineDriverClassName());
+            replica.setMaximumPoolSize(poolSize);
+            // a replica that is down must neither hold up the start nor the reads, they go elsewhere until it's back
+            replica.setInitializationFailTimeout(-1);
+            replica.setConnectionTimeout(2_000);
+            replica.setReadOnly(true);
+            replicas.add(replica);
+        }
+        ReplicaPool replicaPool = new ReplicaPool(replicas, maxLagMillis);
+        meterRegistry.ifAvailable(registry -> {
+            for (int i = 0; i < replicaPool.size(); i++) {
+                int replica = i;
+                Gauge.builder("warehouse.datasource.replica.lag", () -> replicaPool.lagMillis(replica) == Long.MAX_VALUE ? Double.NaN : replicaPool.lagMillis(replica))
+                        .description("How far the replica was behind the primary at the last heartbeat, NaN if it couldn't be measured")
+                        .baseUnit("milliseconds")
+                        .tag("replica", replicas.get(replica).getPoolName())
+                        .register(registry);
+            }
+        });
+        return replicaPool;
+    }
+
+    @Bean
+    @Primary
+    DataSource dataSource(@Qualifier("primaryDataSource") DataSource primary, ReplicaPool replicaPool) {
+        LazyConnectionDataSourceProxy routing = new LazyConnectionDataSourceProxy(primary);
+        routing.setReadOnlyDataSource(new ReplicaRoutingDataSource(primary, replicaPool));
+        return routing;
+    }
+
+    @Bean
+    ReplicaHeartbeat replicaHeartbeat(@Qualifier("primaryDataSource") DataSource primary, ReplicaPool replicaPool) {
+        return new ReplicaHeartbeat(new JdbcTemplate(primary), replicaPool);
+    }
+
+    @Bean
+    FilterRegistrationBean<ReadYourWritesFilter> readYourWritesFilter(@Value("${warehouse.datasource.replicas.sticky-ms:10000}") long stickyMillis) {
+        FilterRegistrationBean<ReadYourWritesFilter> registration = new FilterRegistrationBean<>(new ReadYourWritesFilter(stickyMillis));
+        registration.addUrlPatterns("/api/*");
+        return registration;
+    }
+}
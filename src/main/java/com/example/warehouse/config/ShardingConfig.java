@@ -0,0 +1,125 @@
+package com.example.warehouse.config;
+
+import com.example.warehouse.cache.ReferenceDataCache;
+import com.example.warehouse.shard.ShardDirectory;
+import com.example.warehouse.shard.ShardRebalancer;
+import com.example.warehouse.shard.ShardReferenceData;
+import com.example.warehouse.shard.ShardRoutingDataSource;
+import com.example.warehouse.shard.ShardSchema;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.jpa.boot.internal.EntityManagerFactoryBuilderImpl;
+import org.hibernate.jpa.boot.spi.IntegratorProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Spreads the inventory over several databases by warehouse. spring.datasource is the home shard, which also holds
+ * the shard directory, the shards in {@code warehouse.inventory.sharding.urls} follow it in that order. Every shard
+ * has the full schema and a copy of the reference data; the inventory of a warehouse, its outbox rows and its
+ * cross-shard moves are on the shard the {@link ShardDirectory} places it on.
+ * <p>
+ * Only the jpa engine routes by shard, and neither the read replicas nor the connection queue can be used at the
+ * same time: the queue wraps data source beans, which would replace the routing data source and miss the pools of
+ * the other shards.
+ */
+@Configuration
+@ConditionalOnProperty(name = "warehouse.inventory.sharding.enabled", havingValue = "true")
+public class ShardingConfig {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    HikariDataSource homeShardDataSource(DataSourceProperties properties,
+                                         @Value("${warehouse.datasource.replicas.enabled:false}") boolean replicas,
+                                         @Value("${warehouse.datasource.queue.enabled:false}") boolean queue,
+                                         @Value("${warehouse.inventory.engine:jpa}") String engine) {
+        if (replicas) {
+            throw new IllegalStateException("warehouse.inventory.sharding.enabled and warehouse.datasource.replicas.enabled can't both be set");
+        }
+        if (queue) {
+            throw new IllegalStateException("warehouse.inventory.sharding.enabled and warehouse.datasource.queue.enabled can't both be set");
+        }
+        if (!engine.equals("jpa")) {
+            throw new IllegalStateException("warehouse.inventory.sharding.enabled needs warehouse.inventory.engine=jpa");
+        }
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    @Bean(destroyMethod = "close")
+    @Primary
+    ShardRoutingDataSource dataSource(@Qualifier("homeShardDataSource") DataSource home,
+                                      DataSourceProperties properties,
+                                      @Value("${warehouse.inventory.sharding.urls}") List<String> urls,
+                                      @Value("${warehouse.inventory.sharding.username:${spring.datasource.username:}}") String username,
+                                      @Value("${warehouse.inventory.sharding.password:${spring.datasource.password:}}") String password,
+                                      @Value("${warehouse.inventory.sharding.pool-size:10}") int poolSize) {
+        List<DataSource> shards = new ArrayList<>();
+        shards.add(home);
+        for (String url : urls) {
+            HikariDataSource shard = new HikariDataSource();
+            shard.setPoolName("shard-" + shards.size());
+            shard.setJdbcUrl(url.trim());
+            shard.setUsername(username);
+            shard.setPassword(password);
+            shard.setDriverClassName(properties.determineDriverClassName());
+            shard.setMaximumPoolSize(poolSize);
+            shards.add(shard);
+        }
+        return new ShardRoutingDataSource(shards);
+    }
+
+    @Bean
+    ShardSchema shardSchema() {
+        return new ShardSchema();
+    }
+
+    // Hibernate hands the mapping it built to its integrators
+    @Bean
+    HibernatePropertiesCustomizer shardSchemaIntegrator(ShardSchema shardSchema) {
+        return properties -> properties.put(EntityManagerFactoryBuilderImpl.INTEGRATOR_PROVIDER, (IntegratorProvider) () -> List.of(shardSchema));
+    }
+
+    @Bean
+    ShardReferenceData shardReferenceData(ShardRoutingDataSource dataSource) {
+        return new ShardReferenceData(dataSource.shards());
+    }
+
+    // the entity manager factory is only asked for so the home shard has its schema and the mapping is known
+    @Bean
+    ShardDirectory shardDirectory(ShardRoutingDataSource dataSource, EntityManagerFactory entityManagerFactory, ShardSchema shardSchema,
+                                  ShardReferenceData shardReferenceData, ReferenceDataCache referenceDataCache,
+                                  @Value("${spring.jpa.hibernate.ddl-auto:none}") String ddlAuto,
+                                  @Value("${warehouse.inventory.sharding.relocation-wait-ms:10000}") long relocationWaitMillis) {
+        List<DataSource> shards = dataSource.shards();
+        // the other shards get the schema treatment the home shard gets, short of dropping anything
+        if (!ddlAuto.equals("none") && !ddlAuto.equals("validate")) {
+            shards.subList(1, shards.size()).forEach(shardSchema::update);
+        }
+        shardReferenceData.syncAll();
+        ShardDirectory directory = new ShardDirectory(shards, referenceDataCache, relocationWaitMillis);
+        directory.bootstrap();
+        return directory;
+    }
+
+    @Bean
+    ShardRebalancer shardRebalancer(ShardDirectory shardDirectory, ShardReferenceData shardReferenceData,
+                                    ShardRoutingDataSource dataSource, MeterRegistry meterRegistry,
+                                    @Value("${warehouse.inventory.sharding.settle-ms:3000}") long settleMillis,
+                                    @Value("${warehouse.inventory.sharding.relocation-timeout-ms:30000}") long relocationTimeoutMillis,
+                                    @Value("${warehouse.inventory.sharding.rebalance.enabled:false}") boolean scheduled) {
+        return new ShardRebalancer(shardDirectory, shardReferenceData, dataSource.shards(), meterRegistry,
+                settleMillis, relocationTimeoutMillis, scheduled);
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.warehouse.config;
+
+import com.example.warehouse.dto.MaterialInventoryDto;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+
+//an inventory as flat ids, for clients that keep their own copy of the warehouses and material types
+final class SlimInventorySerializer extends StdSerializer<MaterialInventoryDto> {
+
+    SlimInventorySerializer() {
+        super(MaterialInventoryDto.class);
+    }
+
+    @Override
+    public void serialize(MaterialInventoryDto inventory, JsonGenerator generator, SerializerProvider provider) throws IOException {
+        generator.writeStartObject(inventory);
+        writeIfPresent(generator, "inventoryId", inventory.getInventoryId());
+        writeIfPresent(generator, "warehouseId", inventory.getWarehouse() == null ? null : inventory.getWarehouse().getId());
+        writeIfPresent(generator, "materialTypeId", inventory.getMaterialType() == null ? null : inventory.getMaterialType().getId());
+        if (inventory.getQuantity() != null) {
+            generator.writeNumberField("quantity", inventory.getQuantity());
+        }
+        writeIfPresent(generator, "version", inventory.getVersion());
+        generator.writeEndObject();
+    }
+
+    // absent fields are left out instead of written as null, every byte counts for the clients asking for this
+    private static void writeIfPresent(JsonGenerator generator, String name, Long value) throws IOException {
+        if (value != null) {
+            generator.writeNumberField(name, value);
+        }
+    }
+}
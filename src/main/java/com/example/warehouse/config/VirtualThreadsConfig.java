@@ -0,0 +1,66 @@
+package com.example.warehouse.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+
+@Configuration
+public class VirtualThreadsConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(VirtualThreadsConfig.class);
+
+    //wraps the pool so callers queue for a connection instead of failing when the pool is exhausted
+    @Bean
+    @ConditionalOnProperty(name = "warehouse.datasource.queue.enabled", havingValue = "true")
+    static BeanPostProcessor connectionLimitingDataSourcePostProcessor(
+            @Value("${warehouse.datasource.queue.max-connections:0}") int maxConnections,
+            @Value("${warehouse.datasource.queue.timeout:60s}") Duration queueTimeout,
+            ObjectProvider<MeterRegistry> meterRegistry) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                // only the pools themselves: a proxy or router in front of a pool (this one included) hands out that
+                // pool's connections, and a permit taken there as well would count every connection twice
+                if (!(bean instanceof DataSource dataSource) || bean instanceof DelegatingDataSource
+                        || bean instanceof AbstractRoutingDataSource) {
+                    return bean;
+                }
+                // by default exactly as many callers as the pool has connections get through; Hikari reports -1 until
+                // it validates its settings on the first connection, which means its default of 10
+                int permits = maxConnections > 0 ? maxConnections
+                        : bean instanceof HikariDataSource hikari && hikari.getMaximumPoolSize() > 0 ? hikari.getMaximumPoolSize() : 10;
+                ConnectionLimitingDataSource limited = new ConnectionLimitingDataSource(dataSource, permits, queueTimeout);
+                meterRegistry.ifAvailable(registry -> Gauge.builder("warehouse.datasource.queue.waiting", limited, ConnectionLimitingDataSource::getQueueLength)
+                        .description("Callers waiting for a database connection")
+                        .register(registry));
+                return limited;
+            }
+        };
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void checkVirtualThreads(ApplicationReadyEvent event) {
+        boolean requested = event.getApplicationContext().getEnvironment()
+                .getProperty("spring.threads.virtual.enabled", Boolean.class, false);
+        // Spring Boot silently keeps platform threads on older runtimes
+        if (requested && Runtime.version().feature() < 21) {
+            log.warn("spring.threads.virtual.enabled is set but Java {} has no virtual threads, requests run on platform threads",
+                    Runtime.version().feature());
+        }
+    }
+}
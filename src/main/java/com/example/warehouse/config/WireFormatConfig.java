@@ -0,0 +1,72 @@
+package com.example.warehouse.config;
+
+import com.example.warehouse.dto.MaterialInventoryDto;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.AbstractJackson2HttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
+
+/**
+ * Representations for high-volume clients, chosen with the Accept header (and Content-Type for request bodies).
+ * <ul>
+ *     <li>{@code application/cbor}: the same documents as JSON, binary encoded</li>
+ *     <li>{@link #SLIM_JSON} and {@link #SLIM_CBOR}: every inventory is written as its inventory, warehouse and
+ *     material type ids, quantity and version, without the nested warehouse and material type</li>
+ * </ul>
+ * Everything that isn't an inventory, like the warehouse id and name of a listing, looks the same in all of them.
+ */
+@Configuration
+public class WireFormatConfig implements WebMvcConfigurer {
+
+    public static final MediaType SLIM_JSON = MediaType.parseMediaType("application/vnd.warehouse.slim+json");
+    public static final MediaType SLIM_CBOR = MediaType.parseMediaType("application/vnd.warehouse.slim+cbor");
+
+    private final ObjectMapper objectMapper;
+    private final ObjectMapper cborMapper;
+
+    public WireFormatConfig(ObjectMapper objectMapper, Jackson2ObjectMapperBuilder objectMapperBuilder) {
+        this.objectMapper = objectMapper;
+        // the same modules and settings as the JSON mapper, only the encoding differs
+        this.cborMapper = objectMapperBuilder.createXmlMapper(false).factory(new CBORFactory()).build();
+    }
+
+    // a copy of the given mapper that writes inventories slim
+    public static ObjectMapper slim(ObjectMapper mapper) {
+        return mapper.copy().registerModule(new SimpleModule("slim-inventory")
+                .addSerializer(MaterialInventoryDto.class, new SlimInventorySerializer()));
+    }
+
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        // Spring registers a CBOR converter of its own once Jackson CBOR is on the classpath, configured with defaults
+        converters.removeIf(MappingJackson2CborHttpMessageConverter.class::isInstance);
+        // ahead of the JSON converter, which would otherwise answer application/*+json with the full documents
+        converters.add(0, new SlimConverter(objectMapper, SLIM_JSON));
+        converters.add(1, new SlimConverter(cborMapper, SLIM_CBOR));
+        MappingJackson2CborHttpMessageConverter cbor = new MappingJackson2CborHttpMessageConverter(cborMapper);
+        // like application/*+json for JSON, this is what lets a client negotiate the slim CBOR type
+        cbor.setSupportedMediaTypes(List.of(MediaType.APPLICATION_CBOR, MediaType.parseMediaType("application/*+cbor")));
+        converters.add(cbor);
+    }
+
+    private static final class SlimConverter extends AbstractJackson2HttpMessageConverter {
+
+        SlimConverter(ObjectMapper mapper, MediaType mediaType) {
+            super(slim(mapper), mediaType);
+        }
+
+        // never picked for */* or a missing Accept header, only clients that name the slim type get it
+        @Override
+        public boolean canWrite(Class<?> clazz, MediaType mediaType) {
+            return mediaType != null && !mediaType.isWildcardType() && !mediaType.isWildcardSubtype() && super.canWrite(clazz, mediaType);
+        }
+    }
+}
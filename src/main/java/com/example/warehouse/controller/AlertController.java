@@ -0,0 +1,69 @@
+package com.example.warehouse.controller;
+
+import com.example.warehouse.alert.AlertRuleService;
+import com.example.warehouse.dto.AlertDto;
+import com.example.warehouse.dto.AlertRuleDto;
+import jakarta.validation.Valid;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/alerts")
+@ConditionalOnProperty(name = "warehouse.alerts.enabled", havingValue = "true", matchIfMissing = true)
+public class AlertController {
+
+    private final AlertRuleService alertRuleService;
+
+    public AlertController(AlertRuleService alertRuleService) {
+        this.alertRuleService = alertRuleService;
+    }
+
+    /**
+     * Creates an alert rule, evaluated against every inventory change from then on.
+     *
+     * @param request the condition, threshold and hysteresis, and the warehouse and material type it applies to (all if left out)
+     * @return the created rule, 404 for an unknown warehouse or material type
+     */
+    @PostMapping("/rules")
+    public ResponseEntity<AlertRuleDto> createRule(@Valid @RequestBody AlertRuleDto request) {
+        return ResponseEntity.status(HttpStatus.CREATED).body(alertRuleService.createRule(request));
+    }
+
+    /**
+     * Retrieves an alert rule.
+     *
+     * @param ruleId the ID of the rule
+     * @return the rule, or 404 if there is none with that ID
+     */
+    @GetMapping("/rules/{ruleId}")
+    public ResponseEntity<AlertRuleDto> getRule(@PathVariable Long ruleId) {
+        return ResponseEntity.ok(alertRuleService.getRule(ruleId));
+    }
+
+    /**
+     * Deletes an alert rule, its active alerts are dropped.
+     *
+     * @param ruleId the ID of the rule
+     * @return no content, or 404 if there is no rule with that ID
+     */
+    @DeleteMapping("/rules/{ruleId}")
+    public ResponseEntity<Void> deleteRule(@PathVariable Long ruleId) {
+        alertRuleService.deleteRule(ruleId);
+        return ResponseEntity.noContent().build();
+    }
+
+    /**
+     * Retrieves the alerts raised and not yet cleared, oldest first.
+     *
+     * @param warehouseId only the alerts of this warehouse, all if left out
+     * @return the active alerts
+     */
+    @GetMapping
+    public ResponseEntity<List<AlertDto>> getActiveAlerts(@RequestParam(required = false) Long warehouseId) {
+        return ResponseEntity.ok(alertRuleService.getActiveAlerts(warehouseId));
+    }
+}
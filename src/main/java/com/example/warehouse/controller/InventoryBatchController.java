@@ -0,0 +1,49 @@
+package com.example.warehouse.controller;
+
+import com.example.warehouse.dto.InventoryBatchRequestDto;
+import com.example.warehouse.dto.InventoryBatchResultDto;
+import com.example.warehouse.dto.TransferOrderRequestDto;
+import com.example.warehouse.dto.TransferOrderResultDto;
+import com.example.warehouse.service.MaterialInventoryService;
+import jakarta.validation.Valid;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+
+@RestController
+@RequestMapping("/api/inventory")
+public class InventoryBatchController {
+
+    private final MaterialInventoryService materialInventoryService;
+
+    public InventoryBatchController(MaterialInventoryService materialInventoryService) {
+        this.materialInventoryService = materialInventoryService;
+    }
+
+    /**
+     * Applies a batch of add, remove and move lines across any number of warehouses in one transaction.
+     * Each line is reported separately, a line that fails validation does not fail the rest of the batch.
+     *
+     * @param request the lines to apply, in order
+     * @return the result of every line in request order, with the updated inventory for successful lines
+     */
+    @PostMapping("/batch")
+    public ResponseEntity<InventoryBatchResultDto> applyInventoryBatch(@Valid @RequestBody InventoryBatchRequestDto request) {
+        InventoryBatchResultDto result = materialInventoryService.applyInventoryBatch(request.getLines());
+        return ResponseEntity.ok(result);
+    }
+
+    /**
+     * Moves material along every leg of a transfer order as one unit: either all legs are applied or none.
+     * The legs are checked against the inventory as it was before the order, so their order doesn't matter,
+     * and every inventory gets one change with the net effect of the legs touching it.
+     *
+     * @param request the legs, each moving one material type from a source to a destination warehouse
+     * @return how many legs and units were moved and how many inventories changed
+     */
+    @PostMapping("/transfer-orders")
+    public ResponseEntity<TransferOrderResultDto> applyTransferOrder(@Valid @RequestBody TransferOrderRequestDto request) {
+        TransferOrderResultDto result = materialInventoryService.applyTransferOrder(request.getLegs());
+        return ResponseEntity.ok(result);
+    }
+}
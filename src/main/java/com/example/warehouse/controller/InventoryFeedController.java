@@ -0,0 +1,43 @@
+package com.example.warehouse.controller;
+
+import com.example.warehouse.feed.InventoryFeedHub;
+import com.example.warehouse.replica.ReadYourWritesFilter;
+import com.example.warehouse.service.MaterialInventoryService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+
+@RestController
+@RequestMapping("/api/warehouses/{warehouseId}/feed")
+public class InventoryFeedController {
+
+    private final MaterialInventoryService materialInventoryService;
+    private final InventoryFeedHub inventoryFeedHub;
+
+    public InventoryFeedController(MaterialInventoryService materialInventoryService, InventoryFeedHub inventoryFeedHub) {
+        this.materialInventoryService = materialInventoryService;
+        this.inventoryFeedHub = inventoryFeedHub;
+    }
+
+    /**
+     * Subscribes to the inventory changes of a warehouse as server-sent events.
+     * A new client first receives a "snapshot" event with all materials of the warehouse, followed by a "delta"
+     * event for every change. Each delta carries the resulting quantity, and every event id is a sequence number
+     * that grows over time.
+     *
+     * @param warehouseId the ID of the warehouse to follow
+     * @param lastEventId the id of the last event received, sent by the browser on reconnect. If it is still
+     *                    buffered only the missed deltas are sent, otherwise a new snapshot
+     * @return the event stream, or a 404 error if the warehouse is not found
+     */
+    @GetMapping(produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter subscribe(@PathVariable Long warehouseId,
+                                @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId) throws JsonProcessingException {
+        materialInventoryService.getWarehouse(warehouseId);
+        // a lagging replica could miss a change whose delta went out before this subscriber was registered
+        return inventoryFeedHub.subscribe(warehouseId, lastEventId,
+                () -> ReadYourWritesFilter.readFromPrimary(() -> materialInventoryService.getWarehouseMaterials(warehouseId)));
+    }
+}
@@ -1,12 +1,25 @@
 package com.example.warehouse.controller;
 
 import com.example.warehouse.dto.MaterialInventoryDto;
+import com.example.warehouse.dto.MaterialInventoryPageDto;
 import com.example.warehouse.dto.WarehouseMaterialsDto;
+import com.example.warehouse.exceptions.InventoryVersionMismatchException;
 import com.example.warehouse.exceptions.WarehouseNotFoundException;
+import com.example.warehouse.idempotency.IdempotencyStore;
+import com.example.warehouse.service.InventoryVersion;
 import com.example.warehouse.service.MaterialInventoryService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
 
 
@@ -14,10 +27,19 @@ import java.util.List;
 @RequestMapping("/api/warehouses/{warehouseId}/materials")
 public class MaterialInventoryController {
 
+    private static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+
     private final MaterialInventoryService materialInventoryService;
+    private final IdempotencyStore idempotencyStore;
+    // one JSON document per line, flushed when Jackson's buffer fills rather than after every row
+    private final ObjectWriter ndjsonWriter;
 
-    public MaterialInventoryController(MaterialInventoryService materialInventoryService) {
+    public MaterialInventoryController(MaterialInventoryService materialInventoryService, IdempotencyStore idempotencyStore, ObjectMapper objectMapper) {
         this.materialInventoryService = materialInventoryService;
+        this.idempotencyStore = idempotencyStore;
+        this.ndjsonWriter = objectMapper.writerFor(MaterialInventoryDto.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE)
+                .withRootValueSeparator("\n");
     }
 
     /**
@@ -26,14 +48,21 @@ public class MaterialInventoryController {
      * @param warehouseId    the ID of the warehouse where the material will be added
      * @param materialTypeId the ID of the material type to be added
      * @param quantityToAdd  the quantity of the material to add
-     * @return the updated inventory as a DTO, or an error message if unsuccessful
+     * @param idempotencyKey optional client-chosen key, a retry with the same key gets the first response back
+     * @param ifMatch        optional ETag of the inventory, the add fails with 412 if the inventory changed since
+     * @return the updated inventory as a DTO with its ETag, or an error message if unsuccessful
      */
     @PostMapping("/{materialTypeId}")
     public ResponseEntity<MaterialInventoryDto> addMaterialToWarehouse(@PathVariable Long warehouseId,
                                                                        @PathVariable Long materialTypeId,
-                                                                       @RequestParam int quantityToAdd) {
-        MaterialInventoryDto result = materialInventoryService.addMaterialToWarehouse(warehouseId, materialTypeId, quantityToAdd);
-        return ResponseEntity.ok(result);
+                                                                       @RequestParam int quantityToAdd,
+                                                                       @RequestHeader(name = IDEMPOTENCY_KEY, required = false) String idempotencyKey,
+                                                                       @RequestHeader(name = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        InventoryVersion expectedVersion = parseIfMatch(ifMatch);
+        return withETag(idempotencyStore.execute(idempotencyKey, fingerprint("add:" + warehouseId + ":" + materialTypeId + ":" + quantityToAdd, ifMatch), () -> {
+            MaterialInventoryDto result = materialInventoryService.addMaterialToWarehouse(warehouseId, materialTypeId, quantityToAdd, expectedVersion);
+            return ResponseEntity.ok(result);
+        }));
     }
 
 
@@ -43,17 +72,24 @@ public class MaterialInventoryController {
      * @param warehouseId      the ID of the warehouse from which the material will be removed
      * @param materialTypeId   the ID of the material type to be removed
      * @param quantityToRemove the quantity of the material to remove
-     * @return the updated inventory as a DTO, or null if the entire inventory is depleted
+     * @param idempotencyKey   optional client-chosen key, a retry with the same key gets the first response back
+     * @param ifMatch          optional ETag of the inventory, the removal fails with 412 if the inventory changed since
+     * @return the updated inventory as a DTO with its ETag, or null if the entire inventory is depleted
      */
     @DeleteMapping("/{materialTypeId}")
     public ResponseEntity<MaterialInventoryDto> removeMaterialFromWarehouse(@PathVariable Long warehouseId,
                                                                             @PathVariable Long materialTypeId,
-                                                                            @RequestParam int quantityToRemove) {
-        MaterialInventoryDto result = materialInventoryService.removeMaterialFromWarehouse(warehouseId, materialTypeId, quantityToRemove);
-        if (result == null) {
-            return ResponseEntity.noContent().build();
-        }
-        return ResponseEntity.ok(result);
+                                                                            @RequestParam int quantityToRemove,
+                                                                            @RequestHeader(name = IDEMPOTENCY_KEY, required = false) String idempotencyKey,
+                                                                            @RequestHeader(name = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        InventoryVersion expectedVersion = parseIfMatch(ifMatch);
+        return withETag(idempotencyStore.execute(idempotencyKey, fingerprint("remove:" + warehouseId + ":" + materialTypeId + ":" + quantityToRemove, ifMatch), () -> {
+            MaterialInventoryDto result = materialInventoryService.removeMaterialFromWarehouse(warehouseId, materialTypeId, quantityToRemove, expectedVersion);
+            if (result == null) {
+                return ResponseEntity.noContent().build();
+            }
+            return ResponseEntity.ok(result);
+        }));
     }
 
     /**
@@ -63,15 +99,23 @@ public class MaterialInventoryController {
      * @param destinationWarehouseId the ID of the destination warehouse
      * @param materialTypeId         the ID of the material type to move
      * @param quantityToMove         the quantity of the material to move
-     * @return the updated inventory of the destination warehouse as a DTO
+     * @param idempotencyKey         optional client-chosen key, a retry with the same key gets the first response back
+     * @param ifMatch                optional ETag of the source inventory, the move fails with 412 if it changed since
+     * @return the updated inventory of the destination warehouse as a DTO with its ETag
      */
     @PatchMapping("/{materialTypeId}/transfer-to/{destinationWarehouseId}")
     public ResponseEntity<MaterialInventoryDto> moveMaterialBetweenWarehouses(@PathVariable Long warehouseId,
                                                                               @PathVariable Long destinationWarehouseId,
                                                                               @PathVariable Long materialTypeId,
-                                                                              @RequestParam int quantityToMove) {
-        MaterialInventoryDto result = materialInventoryService.moveMaterialBetweenWarehouses(warehouseId, destinationWarehouseId, materialTypeId, quantityToMove);
-        return ResponseEntity.ok(result);
+                                                                              @RequestParam int quantityToMove,
+                                                                              @RequestHeader(name = IDEMPOTENCY_KEY, required = false) String idempotencyKey,
+                                                                              @RequestHeader(name = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        InventoryVersion expectedSourceVersion = parseIfMatch(ifMatch);
+        return withETag(idempotencyStore.execute(idempotencyKey,
+                fingerprint("move:" + warehouseId + ":" + destinationWarehouseId + ":" + materialTypeId + ":" + quantityToMove, ifMatch), () -> {
+            MaterialInventoryDto result = materialInventoryService.moveMaterialBetweenWarehouses(warehouseId, destinationWarehouseId, materialTypeId, quantityToMove, expectedSourceVersion);
+            return ResponseEntity.ok(result);
+        }));
     }
 
 
@@ -88,4 +132,82 @@ public class MaterialInventoryController {
         return ResponseEntity.ok(result);
 
     }
+
+    /**
+     * Retrieves one page of the materials stored in a warehouse, ordered by inventory ID.
+     *
+     * @param warehouseId the ID of the warehouse whose materials are listed
+     * @param after       the nextCursor of the previous page, or nothing for the first page
+     * @param limit       the maximum number of materials on the page, at most 1000
+     * @return the page of materials and the cursor of the next page, which is null on the last page
+     */
+    @GetMapping("/page")
+    public ResponseEntity<MaterialInventoryPageDto> getWarehouseMaterialsPage(@PathVariable Long warehouseId,
+                                                                              @RequestParam(required = false) Long after,
+                                                                              @RequestParam(defaultValue = "100") int limit) {
+        MaterialInventoryPageDto result = materialInventoryService.getWarehouseMaterialsPage(warehouseId, after, limit);
+        return ResponseEntity.ok(result);
+    }
+
+    /**
+     * Streams all materials stored in a warehouse as newline delimited JSON, one material per line.
+     * Rows are written while they are read from the database, so memory use does not depend on the warehouse size.
+     *
+     * @param warehouseId the ID of the warehouse whose materials are streamed
+     * @return the streamed materials, or a 404 error if the warehouse is not found
+     */
+    @GetMapping(value = "/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamWarehouseMaterials(@PathVariable Long warehouseId) {
+        // checked up front, once the body runs the 200 status is already on its way to the client
+        materialInventoryService.getWarehouse(warehouseId);
+        StreamingResponseBody body = outputStream -> {
+            try (SequenceWriter writer = ndjsonWriter.writeValues(outputStream)) {
+                materialInventoryService.streamWarehouseMaterials(warehouseId, material -> {
+                    try {
+                        writer.write(material);
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                });
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
+    // requests without If-Match keep the fingerprint they had before conditional requests existed
+    private static String fingerprint(String request, String ifMatch) {
+        return ifMatch == null ? request : request + ":" + ifMatch;
+    }
+
+    // the inventory id is part of the tag, so an inventory that was removed and created again never matches an old one
+    private static ResponseEntity<MaterialInventoryDto> withETag(ResponseEntity<MaterialInventoryDto> response) {
+        MaterialInventoryDto body = response.getBody();
+        if (body == null || body.getVersion() == null) {
+            return response;
+        }
+        return ResponseEntity.status(response.getStatusCode())
+                .headers(response.getHeaders())
+                .eTag(body.getInventoryId() + "-" + body.getVersion())
+                .body(body);
+    }
+
+    /**
+     * @return the version named by the If-Match header, or null if there is none or it is *
+     */
+    private static InventoryVersion parseIfMatch(String ifMatch) {
+        if (ifMatch == null || ifMatch.isBlank() || ifMatch.trim().equals("*")) {
+            return null;
+        }
+        // If-Match compares strongly, so a weak tag, a list or a tag this API never hands out can't match
+        String tag = ifMatch.trim();
+        int dash = tag.indexOf('-');
+        if (tag.length() > 2 && tag.startsWith("\"") && tag.endsWith("\"") && dash > 1) {
+            try {
+                return new InventoryVersion(Long.parseLong(tag.substring(1, dash)), Long.parseLong(tag.substring(dash + 1, tag.length() - 1)));
+            } catch (NumberFormatException ignored) {
+                // falls through to the failed precondition
+            }
+        }
+        throw new InventoryVersionMismatchException("If-Match " + ifMatch + " doesn't match any version of the inventory");
+    }
 }
@@ -0,0 +1,64 @@
+package com.example.warehouse.controller;
+
+import com.example.warehouse.aggregate.InventoryAggregates;
+import com.example.warehouse.dto.MaterialTotalsDto;
+import com.example.warehouse.dto.WarehouseUtilizationDto;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/materials")
+@ConditionalOnProperty(name = "warehouse.aggregates.enabled", havingValue = "true", matchIfMissing = true)
+public class MaterialTotalsController {
+
+    private static final int MAX_LIMIT = 1000;
+
+    private final InventoryAggregates inventoryAggregates;
+
+    public MaterialTotalsController(InventoryAggregates inventoryAggregates) {
+        this.inventoryAggregates = inventoryAggregates;
+    }
+
+    /**
+     * Retrieves the network-wide totals of every material type held in any warehouse.
+     *
+     * @return the total quantity, number of warehouses holding it and utilization per material type
+     */
+    @GetMapping("/totals")
+    public ResponseEntity<List<MaterialTotalsDto>> getTotals() {
+        return ResponseEntity.ok(inventoryAggregates.getTotals());
+    }
+
+    /**
+     * Retrieves the network-wide totals of one material type.
+     *
+     * @param materialTypeId the ID of the material type
+     * @return the total quantity across all warehouses and its utilization of their capacity, 404 for an unknown material type
+     */
+    @GetMapping("/{materialTypeId}/totals")
+    public ResponseEntity<MaterialTotalsDto> getTotals(@PathVariable Long materialTypeId) {
+        return ResponseEntity.ok(inventoryAggregates.getTotals(materialTypeId));
+    }
+
+    /**
+     * Retrieves the warehouses holding a material type, ordered by how close they are to its maxCapacity.
+     *
+     * @param materialTypeId the ID of the material type
+     * @param order          fullest (default) or emptiest first
+     * @param limit          the maximum number of warehouses listed, at most 1000
+     * @return the quantity and utilization of each warehouse, 404 for an unknown material type
+     */
+    @GetMapping("/{materialTypeId}/warehouses")
+    public ResponseEntity<List<WarehouseUtilizationDto>> getWarehouseUtilization(@PathVariable Long materialTypeId,
+                                                                                 @RequestParam(defaultValue = "fullest") String order,
+                                                                                 @RequestParam(defaultValue = "10") int limit) {
+        if (!order.equals("fullest") && !order.equals("emptiest")) {
+            return ResponseEntity.badRequest().build();
+        }
+        int boundedLimit = Math.max(1, Math.min(limit, MAX_LIMIT));
+        return ResponseEntity.ok(inventoryAggregates.getWarehouseUtilization(materialTypeId, order.equals("fullest"), boundedLimit));
+    }
+}
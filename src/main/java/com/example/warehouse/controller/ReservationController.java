@@ -0,0 +1,72 @@
+package com.example.warehouse.controller;
+
+import com.example.warehouse.dto.MaterialInventoryDto;
+import com.example.warehouse.dto.ReservationDto;
+import com.example.warehouse.dto.ReservationRequestDto;
+import com.example.warehouse.reservation.ReservationService;
+import jakarta.validation.Valid;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+
+@RestController
+@RequestMapping("/api/reservations")
+public class ReservationController {
+
+    private final ReservationService reservationService;
+
+    public ReservationController(ReservationService reservationService) {
+        this.reservationService = reservationService;
+    }
+
+    /**
+     * Reserves capacity for an inbound delivery or holds stock for an outbound pick until it is confirmed,
+     * cancelled or expires.
+     *
+     * @param request the type, warehouse, material type, quantity and optionally the TTL of the reservation
+     * @return the created reservation, or 400 if the capacity or stock is not available
+     */
+    @PostMapping
+    public ResponseEntity<ReservationDto> createReservation(@Valid @RequestBody ReservationRequestDto request) {
+        return ResponseEntity.status(HttpStatus.CREATED).body(reservationService.createReservation(request));
+    }
+
+    /**
+     * Retrieves an open reservation.
+     *
+     * @param reservationId the ID of the reservation
+     * @return the reservation, or 404 if it is no longer open
+     */
+    @GetMapping("/{reservationId}")
+    public ResponseEntity<ReservationDto> getReservation(@PathVariable Long reservationId) {
+        return ResponseEntity.ok(reservationService.getReservation(reservationId));
+    }
+
+    /**
+     * Confirms a reservation: reserved capacity is filled with the delivered stock, held stock is removed.
+     *
+     * @param reservationId the ID of the reservation
+     * @return the updated inventory as a DTO, no content if a confirmed hold emptied it, 404 if the reservation is no longer open
+     */
+    @PostMapping("/{reservationId}/confirm")
+    public ResponseEntity<MaterialInventoryDto> confirmReservation(@PathVariable Long reservationId) {
+        MaterialInventoryDto result = reservationService.confirmReservation(reservationId);
+        if (result == null) {
+            return ResponseEntity.noContent().build();
+        }
+        return ResponseEntity.ok(result);
+    }
+
+    /**
+     * Cancels a reservation, releasing its capacity or stock.
+     *
+     * @param reservationId the ID of the reservation
+     * @return no content, or 404 if the reservation is no longer open
+     */
+    @DeleteMapping("/{reservationId}")
+    public ResponseEntity<Void> cancelReservation(@PathVariable Long reservationId) {
+        reservationService.cancelReservation(reservationId);
+        return ResponseEntity.noContent().build();
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.warehouse.controller;
+
+import com.example.warehouse.dto.HistoryResolution;
+import com.example.warehouse.dto.StockHistoryDto;
+import com.example.warehouse.history.StockHistoryService;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.Instant;
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/history")
+@ConditionalOnProperty(name = "warehouse.history.enabled", havingValue = "true", matchIfMissing = true)
+public class StockHistoryController {
+
+    private final StockHistoryService stockHistoryService;
+
+    public StockHistoryController(StockHistoryService stockHistoryService) {
+        this.stockHistoryService = stockHistoryService;
+    }
+
+    /**
+     * Retrieves the stock history of a material type in a warehouse, of a material type across all warehouses
+     * (materialTypeId only), or of every material type in a warehouse (warehouseId only).
+     *
+     * @param warehouseId    the ID of the warehouse
+     * @param materialTypeId the ID of the material type
+     * @param from           the start of the range, ISO-8601
+     * @param to             the end of the range, exclusive, now if left out
+     * @param resolution     RAW, MINUTE, HOUR or DAY, chosen from the length of the range if left out
+     * @return one series per warehouse and material type, with the minimum, maximum and last quantity of every bucket
+     * that had changes; 400 without either ID, 404 for an unknown warehouse or material type
+     */
+    @GetMapping
+    public ResponseEntity<List<StockHistoryDto>> getHistory(@RequestParam(required = false) Long warehouseId,
+                                                            @RequestParam(required = false) Long materialTypeId,
+                                                            @RequestParam Instant from,
+                                                            @RequestParam(required = false) Instant to,
+                                                            @RequestParam(required = false) HistoryResolution resolution) {
+        return ResponseEntity.ok(stockHistoryService.getHistory(warehouseId, materialTypeId, from, to == null ? Instant.now() : to, resolution));
+    }
+}
@@ -0,0 +1,8 @@
+package com.example.warehouse.dto;
+
+public enum AlertCondition {
+    //quantity below the threshold, cleared once it is back at threshold + hysteresis units
+    QUANTITY_BELOW,
+    //quantity above threshold percent of the material type's maxCapacity, cleared once it is down to threshold - hysteresis percent
+    CAPACITY_ABOVE_PERCENT
+}
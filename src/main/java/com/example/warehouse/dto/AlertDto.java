@@ -0,0 +1,23 @@
+package com.example.warehouse.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.Instant;
+
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+public class AlertDto {
+    private Long ruleId;
+    private Long warehouseId;
+    private Long materialTypeId;
+    private AlertCondition condition;
+    private int threshold;
+    //the quantity of the change that raised the alert
+    private int quantity;
+    private Instant raisedAt;
+}
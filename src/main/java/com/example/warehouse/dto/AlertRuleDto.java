@@ -0,0 +1,28 @@
+package com.example.warehouse.dto;
+
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+public class AlertRuleDto {
+    //assigned when the rule is created
+    private Long ruleId;
+    //null applies the rule to every warehouse
+    private Long warehouseId;
+    //null applies the rule to every material type
+    private Long materialTypeId;
+    @NotNull(message = "Alert condition must be specified")
+    private AlertCondition condition;
+    @Min(value = 0, message = "Threshold can't be negative")
+    private int threshold;
+    //how far past the threshold the quantity has to get back before the alert clears
+    @Min(value = 0, message = "Hysteresis can't be negative")
+    private int hysteresis;
+}
@@ -0,0 +1,20 @@
+package com.example.warehouse.dto;
+
+public enum HistoryResolution {
+    //every change as it was made
+    RAW(0),
+    MINUTE(60_000L),
+    HOUR(3_600_000L),
+    //UTC days
+    DAY(86_400_000L);
+
+    private final long millis;
+
+    HistoryResolution(long millis) {
+        this.millis = millis;
+    }
+
+    public long millis() {
+        return millis;
+    }
+}
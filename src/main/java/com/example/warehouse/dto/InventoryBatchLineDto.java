@@ -0,0 +1,19 @@
+package com.example.warehouse.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+public class InventoryBatchLineDto {
+    private InventoryOperation operation;
+    private Long warehouseId;
+    // only used by MOVE lines, warehouseId is the source warehouse in that case
+    private Long destinationWarehouseId;
+    private Long materialTypeId;
+    private int quantity;
+}
@@ -0,0 +1,18 @@
+package com.example.warehouse.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+public class InventoryBatchLineResultDto {
+    private int line;
+    private boolean success;
+    private String error;
+    // inventory after the line was applied, for MOVE lines this is the destination inventory
+    private MaterialInventoryDto inventory;
+}
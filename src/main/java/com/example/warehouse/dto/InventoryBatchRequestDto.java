@@ -0,0 +1,20 @@
+package com.example.warehouse.dto;
+
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+public class InventoryBatchRequestDto {
+    @NotEmpty(message = "Batch must contain at least one line")
+    @Size(max = 10000, message = "Batch must not exceed 10000 lines")
+    private List<InventoryBatchLineDto> lines;
+}
@@ -0,0 +1,18 @@
+package com.example.warehouse.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+public class InventoryBatchResultDto {
+    private int succeeded;
+    private int failed;
+    private List<InventoryBatchLineResultDto> results;
+}
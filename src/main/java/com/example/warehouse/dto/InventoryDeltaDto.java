@@ -0,0 +1,23 @@
+package com.example.warehouse.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.Instant;
+
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+public class InventoryDeltaDto {
+    private long sequence;
+    private Long warehouseId;
+    private Long materialTypeId;
+    private int changeQuantity;
+    //the quantity after the change, setting it instead of adding changeQuantity makes replays harmless
+    private int quantity;
+    private String action;
+    private Instant occurredAt;
+}
@@ -0,0 +1,7 @@
+package com.example.warehouse.dto;
+
+public enum InventoryOperation {
+    ADD,
+    REMOVE,
+    MOVE
+}
@@ -20,4 +20,6 @@ public class MaterialInventoryDto {
     private MaterialTypeDto materialType;
     @Min(value = 0, message = "Quantity must not be negative")
     private Integer quantity;
+    //changes with every change of the inventory, also sent as the ETag
+    private Long version;
 }
@@ -0,0 +1,20 @@
+package com.example.warehouse.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+public class MaterialInventoryPageDto {
+    private Long id;
+    private String name;
+    private List<MaterialInventoryDto> materials;
+    // pass as 'after' to get the next page, null on the last page
+    private Long nextCursor;
+}
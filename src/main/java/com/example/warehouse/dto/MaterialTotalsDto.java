@@ -0,0 +1,21 @@
+package com.example.warehouse.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+public class MaterialTotalsDto {
+    private Long materialTypeId;
+    private String name;
+    private long totalQuantity;
+    //warehouses holding any of the material
+    private int warehouseCount;
+    private int maxCapacity;
+    //totalQuantity against the capacity of the warehouses holding it
+    private double utilization;
+}
@@ -0,0 +1,21 @@
+package com.example.warehouse.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.Instant;
+
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+public class ReservationDto {
+    private Long reservationId;
+    private ReservationType type;
+    private Long warehouseId;
+    private Long materialTypeId;
+    private int quantity;
+    private Instant expiresAt;
+}
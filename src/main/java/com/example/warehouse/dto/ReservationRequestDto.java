@@ -0,0 +1,26 @@
+package com.example.warehouse.dto;
+
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+public class ReservationRequestDto {
+    @NotNull(message = "Reservation type must be specified")
+    private ReservationType type;
+    @NotNull(message = "Warehouse must be specified")
+    private Long warehouseId;
+    @NotNull(message = "Material Type must be specified")
+    private Long materialTypeId;
+    @Min(value = 1, message = "Quantity must be positive")
+    private int quantity;
+    //how long the reservation is held unless confirmed or cancelled, the configured default if not given
+    @Min(value = 1, message = "TTL must be positive")
+    private Long ttlSeconds;
+}
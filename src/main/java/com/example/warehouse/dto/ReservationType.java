@@ -0,0 +1,8 @@
+package com.example.warehouse.dto;
+
+public enum ReservationType {
+    //free capacity held for an inbound delivery, confirming it adds the stock
+    CAPACITY,
+    //stock held for an outbound pick, confirming it removes the stock
+    STOCK
+}
@@ -0,0 +1,21 @@
+package com.example.warehouse.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+public class StockHistoryDto {
+    //null for the total of the material type across all warehouses
+    private Long warehouseId;
+    private Long materialTypeId;
+    private HistoryResolution resolution;
+    //only buckets with changes are listed, the quantity stays at the last one until the next
+    private List<StockHistoryPointDto> points;
+}
@@ -0,0 +1,21 @@
+package com.example.warehouse.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.Instant;
+
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+public class StockHistoryPointDto {
+    //the time of the change, or the start of the bucket for rollups
+    private Instant timestamp;
+    private long minQuantity;
+    private long maxQuantity;
+    //the quantity at the end of the bucket
+    private long lastQuantity;
+}
@@ -0,0 +1,23 @@
+package com.example.warehouse.dto;
+
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+public class TransferLegDto {
+    @NotNull(message = "Source warehouse must be specified")
+    private Long sourceWarehouseId;
+    @NotNull(message = "Destination warehouse must be specified")
+    private Long destinationWarehouseId;
+    @NotNull(message = "Material Type must be specified")
+    private Long materialTypeId;
+    @Min(value = 1, message = "Quantity must be positive")
+    private int quantity;
+}
@@ -0,0 +1,21 @@
+package com.example.warehouse.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+public class TransferOrderRequestDto {
+    @NotEmpty(message = "Transfer order must contain at least one leg")
+    @Size(max = 10000, message = "Transfer order must not exceed 10000 legs")
+    private List<@Valid TransferLegDto> legs;
+}
@@ -0,0 +1,18 @@
+package com.example.warehouse.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+public class TransferOrderResultDto {
+    private int legs;
+    private long unitsMoved;
+    //inventories whose quantity changed, legs that cancel each other out leave an inventory unchanged
+    private int inventoriesChanged;
+    private int inventoriesEmptied;
+}
@@ -0,0 +1,18 @@
+package com.example.warehouse.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+public class WarehouseUtilizationDto {
+    private Long warehouseId;
+    private String warehouseName;
+    private int quantity;
+    //quantity against the maxCapacity of the material type
+    private double utilization;
+}
@@ -0,0 +1,38 @@
+package com.example.warehouse.entity;
+
+import com.example.warehouse.dto.AlertCondition;
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Entity
+@Table(name = "alert_rule")
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+public class AlertRuleEntity {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    //null applies the rule to every warehouse
+    @Column(name = "warehouse_id")
+    private Long warehouseId;
+
+    //null applies the rule to every material type
+    @Column(name = "material_type_id")
+    private Long materialTypeId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "alert_condition", nullable = false, length = 30)
+    private AlertCondition condition;
+
+    @Column(nullable = false)
+    private int threshold;
+
+    @Column(nullable = false)
+    private int hysteresis;
+}
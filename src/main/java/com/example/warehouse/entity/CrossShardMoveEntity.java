@@ -0,0 +1,56 @@
+package com.example.warehouse.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.Instant;
+
+/**
+ * A move between warehouses on different shards. The shard of the source holds the move as PENDING from the
+ * withdrawal until the move is settled, the shard of the destination holds it as DEPOSITED once the quantity
+ * arrived there, or as VOIDED when the move was given up before it could.
+ */
+@Entity
+@Table(name = "cross_shard_move", indexes = @Index(name = "idx_state_created_at", columnList = "state, created_at"))
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+public class CrossShardMoveEntity {
+
+    public enum State {
+        PENDING, DEPOSITED, VOIDED
+    }
+
+    // the same id on both shards, so the destination can tell whether the move it is asked about arrived
+    @Id
+    private Long id;
+
+    @Column(nullable = false)
+    private Long sourceWarehouseId;
+
+    @Column(nullable = false)
+    private Long destinationWarehouseId;
+
+    @Column(nullable = false)
+    private Long materialTypeId;
+
+    @Column(nullable = false)
+    private int quantity;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 10)
+    private State state;
+
+    @Column(nullable = false)
+    private Instant createdAt;
+}
@@ -0,0 +1,44 @@
+package com.example.warehouse.entity;
+
+import com.example.warehouse.event.InventoryAction;
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.hibernate.annotations.GenericGenerator;
+
+import java.time.Instant;
+
+@Entity
+@Table(name = "inventory_outbox")
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+public class InventoryOutboxEntity {
+    // time ordered, so draining by id keeps the order in which changes were made
+    @Id
+    @GeneratedValue(generator = "outbox_id")
+    @GenericGenerator(name = "outbox_id", type = InventoryIdGenerator.class)
+    private Long id;
+
+    @Column(nullable = false)
+    private Long warehouseId;
+
+    @Column(nullable = false)
+    private Long materialTypeId;
+
+    @Column(nullable = false)
+    private int changeQuantity;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private InventoryAction action;
+
+    @Column(nullable = false)
+    private int quantityAfter;
+
+    @Column(nullable = false)
+    private Instant createdAt;
+}
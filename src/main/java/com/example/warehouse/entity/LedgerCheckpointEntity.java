@@ -0,0 +1,26 @@
+package com.example.warehouse.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+// one row, written by the ledger engine together with every batch, tells which journal segments are in the database
+@Entity
+@Table(name = "ledger_checkpoint")
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+public class LedgerCheckpointEntity {
+    @Id
+    private Integer id;
+
+    // number of the newest journal segment whose batch is committed
+    @Column(nullable = false)
+    private long segment;
+}
@@ -5,19 +5,25 @@ import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
+import org.hibernate.annotations.ColumnDefault;
+import org.hibernate.annotations.GenericGenerator;
 
 @Entity
 @Table(name = "material_inventory", indexes = {
         @Index(name = "idx_warehouse", columnList = "warehouse_id"),
         @Index(name = "idx_material_type", columnList = "material_type_id")
+}, uniqueConstraints = {
+        @UniqueConstraint(name = "uk_warehouse_material_type", columnNames = {"warehouse_id", "material_type_id"})
 })
 @NoArgsConstructor
 @AllArgsConstructor
 @Setter
 @Getter
 public class MaterialInventoryEntity {
+    // IDENTITY would disable JDBC insert batching, ids are generated in the application instead
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(generator = "inventory_id")
+    @GenericGenerator(name = "inventory_id", type = InventoryIdGenerator.class)
     private Long inventoryId;
 
     @ManyToOne(fetch = FetchType.LAZY)
@@ -30,6 +36,12 @@ public class MaterialInventoryEntity {
 
     private Integer quantity;
 
+    // bumped by every change, including the bulk updates, so a client can tell whether the row changed since it read it
+    @Version
+    @ColumnDefault("0")
+    @Column(nullable = false)
+    private long version;
+
     public MaterialInventoryEntity(WarehouseEntity warehouse, MaterialTypeEntity materialType, int quantity) {
         this.warehouse = warehouse;
         this.materialType =materialType;
@@ -0,0 +1,26 @@
+package com.example.warehouse.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+// one row, stamped on the primary by ReplicaHeartbeat, a replica's copy of it tells how far behind the replica is
+@Entity
+@Table(name = "replica_heartbeat")
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+public class ReplicaHeartbeatEntity {
+    @Id
+    private Integer id;
+
+    // epoch millis of the last heartbeat
+    @Column(nullable = false)
+    private long beatAt;
+}
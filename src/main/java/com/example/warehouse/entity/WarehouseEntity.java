@@ -1,5 +1,7 @@
 package com.example.warehouse.entity;
 
+import com.example.warehouse.cache.ReferenceDataCacheInvalidator;
+import com.example.warehouse.shard.ShardReferenceReplicator;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
@@ -7,6 +9,7 @@ import lombok.NoArgsConstructor;
 import lombok.Setter;
 
 @Entity
+@EntityListeners({ReferenceDataCacheInvalidator.class, ShardReferenceReplicator.class})
 @Table(name = "warehouses")
 @NoArgsConstructor
 @AllArgsConstructor
@@ -0,0 +1,28 @@
+package com.example.warehouse.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+// which shard holds the inventory of a warehouse, read and written by ShardDirectory on the home shard only
+@Entity
+@Table(name = "warehouse_shard")
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+public class WarehouseShardEntity {
+    @Id
+    private Long warehouseId;
+
+    @Column(nullable = false)
+    private int shard;
+
+    // the shard the warehouse is being relocated to, null while it isn't
+    private Integer movingTo;
+}
@@ -0,0 +1,48 @@
+package com.example.warehouse.event;
+
+/**
+ * What an {@link InventoryChangeEvent} did to the inventory. The code is what compact binary formats store,
+ * the label is what the API shows.
+ */
+public enum InventoryAction {
+    ADD((byte) 1, "add"),
+    REMOVE((byte) 2, "remove"),
+    MOVE_FROM((byte) 3, "move from"),
+    MOVE_TO((byte) 4, "move to"),
+    //the net change of one inventory made by a transfer order
+    TRANSFER((byte) 5, "transfer"),
+    //the quantity of a move between shards given back to the source after the destination refused it
+    MOVE_REVERTED((byte) 6, "move reverted");
+
+    private static final InventoryAction[] BY_CODE = new InventoryAction[7];
+
+    static {
+        for (InventoryAction action : values()) {
+            BY_CODE[action.code] = action;
+        }
+    }
+
+    private final byte code;
+    private final String label;
+
+    InventoryAction(byte code, String label) {
+        this.code = code;
+        this.label = label;
+    }
+
+    public byte code() {
+        return code;
+    }
+
+    public String label() {
+        return label;
+    }
+
+    public static InventoryAction fromCode(byte code) {
+        InventoryAction action = code > 0 && code < BY_CODE.length ? BY_CODE[code] : null;
+        if (action == null) {
+            throw new IllegalArgumentException("Unknown inventory action code: " + code);
+        }
+        return action;
+    }
+}
@@ -4,19 +4,34 @@ package com.example.warehouse.event;
 import lombok.Getter;
 import org.springframework.context.ApplicationEvent;
 
+import java.time.Clock;
+
 @Getter
 public class InventoryChangeEvent extends ApplicationEvent {
     private final Long warehouseId;
     private final Long materialTypeId;
     private final int changeQuantity;
-    private final String action;
+    private final InventoryAction action;
+    //quantity of the inventory once the change is applied, 0 if the record was removed
+    private final int quantityAfter;
 
-    public InventoryChangeEvent(Object source, Long warehouseId, Long materialTypeId, int changeQuantity, String action) {
+    public InventoryChangeEvent(Object source, Long warehouseId, Long materialTypeId, int changeQuantity, InventoryAction action, int quantityAfter) {
         super(source);
         this.warehouseId = warehouseId;
         this.materialTypeId = materialTypeId;
         this.changeQuantity = changeQuantity;
         this.action = action;
+        this.quantityAfter = quantityAfter;
+    }
+
+    //for changes that were made earlier than they are published
+    public InventoryChangeEvent(Object source, Long warehouseId, Long materialTypeId, int changeQuantity, InventoryAction action, int quantityAfter, Clock clock) {
+        super(source, clock);
+        this.warehouseId = warehouseId;
+        this.materialTypeId = materialTypeId;
+        this.changeQuantity = changeQuantity;
+        this.action = action;
+        this.quantityAfter = quantityAfter;
     }
 
 }
\ No newline at end of file
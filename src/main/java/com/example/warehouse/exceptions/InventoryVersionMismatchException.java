@@ -0,0 +1,7 @@
+package com.example.warehouse.exceptions;
+
+public class InventoryVersionMismatchException extends RuntimeException {
+    public InventoryVersionMismatchException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.warehouse.feed;
+
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter.DataWithMediaType;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+
+/**
+ * A server-sent event encoded once and written as is to every subscriber.
+ */
+record FeedFrame(long sequence, Set<DataWithMediaType> data) {
+
+    static FeedFrame of(long sequence, String event, String json) {
+        return new FeedFrame(sequence, encode("id:" + sequence + "\nevent:" + event + "\ndata:" + json + "\n\n"));
+    }
+
+    static FeedFrame comment(String comment) {
+        return new FeedFrame(-1, encode(":" + comment + "\n\n"));
+    }
+
+    private static Set<DataWithMediaType> encode(String frame) {
+        // bytes go through the byte array converter untouched
+        return Set.of(new DataWithMediaType(frame.getBytes(StandardCharsets.UTF_8), MediaType.TEXT_EVENT_STREAM));
+    }
+}
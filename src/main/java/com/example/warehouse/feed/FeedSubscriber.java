@@ -0,0 +1,101 @@
+package com.example.warehouse.feed;
+
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * One open feed connection. Frames are queued by the outbox lane and written by the sender pool, so a slow
+ * client never holds up delivery to the others. A client that falls more than a queue behind is disconnected
+ * and resumes from the replay buffer when it reconnects.
+ */
+class FeedSubscriber {
+
+    private final SseEmitter emitter;
+    private final BlockingQueue<FeedFrame> pending;
+    private final Executor sender;
+    private final AtomicBoolean draining = new AtomicBoolean();
+    //queued frames are held back until the snapshot is out
+    private volatile boolean started;
+    private volatile boolean closed;
+
+    FeedSubscriber(SseEmitter emitter, int queueSize, Executor sender) {
+        this.emitter = emitter;
+        this.pending = new ArrayBlockingQueue<>(queueSize);
+        this.sender = sender;
+    }
+
+    SseEmitter emitter() {
+        return emitter;
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    void offer(FeedFrame frame) {
+        if (closed) {
+            return;
+        }
+        if (!pending.offer(frame)) {
+            close();
+            return;
+        }
+        scheduleDrain();
+    }
+
+    void start(FeedFrame snapshot) {
+        if (snapshot != null && !write(snapshot)) {
+            return;
+        }
+        started = true;
+        scheduleDrain();
+    }
+
+    void close() {
+        if (!closed) {
+            closed = true;
+            pending.clear();
+            emitter.complete();
+        }
+    }
+
+    private void scheduleDrain() {
+        if (started && !closed && draining.compareAndSet(false, true)) {
+            sender.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        try {
+            FeedFrame frame;
+            while (!closed && (frame = pending.poll()) != null) {
+                if (!write(frame)) {
+                    return;
+                }
+            }
+        } finally {
+            draining.set(false);
+        }
+        // a frame may have been queued after the last poll but before the flag was cleared
+        if (!pending.isEmpty()) {
+            scheduleDrain();
+        }
+    }
+
+    private boolean write(FeedFrame frame) {
+        try {
+            emitter.send(frame.data());
+            return true;
+        } catch (IOException | IllegalStateException ex) {
+            closed = true;
+            pending.clear();
+            emitter.completeWithError(ex);
+            return false;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.warehouse.feed;
+
+import com.example.warehouse.dto.InventoryDeltaDto;
+import com.example.warehouse.dto.WarehouseMaterialsDto;
+import com.example.warehouse.outbox.InventoryChangeRecord;
+import com.example.warehouse.outbox.InventoryEventSink;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Pushes committed inventory changes to the subscribers of each warehouse as server-sent events.
+ * <p>
+ * Every change is encoded once into a frame that is shared by all subscribers of the warehouse and kept in a
+ * replay buffer, so a client reconnecting with {@code Last-Event-ID} only gets what it missed. A client whose last
+ * event is no longer buffered gets a new snapshot instead. Changes arrive through the outbox, so only the instance
+ * running the outbox dispatcher has events to push.
+ */
+@Component
+public class InventoryFeedHub implements InventoryEventSink {
+
+    private static final FeedFrame HEARTBEAT = FeedFrame.comment("keep-alive");
+
+    private final Map<Long, WarehouseFeed> feeds = new ConcurrentHashMap<>();
+    private final ObjectWriter deltaWriter;
+    private final ObjectWriter snapshotWriter;
+    private final ExecutorService sender;
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+    private final int replaySize;
+    private final int subscriberQueueSize;
+    private final Duration timeout;
+
+    public InventoryFeedHub(ObjectMapper objectMapper,
+                            MeterRegistry meterRegistry,
+                            @Value("${warehouse.feed.replay-size:1024}") int replaySize,
+                            @Value("${warehouse.feed.subscriber-queue-size:256}") int subscriberQueueSize,
+                            @Value("${warehouse.feed.sender-threads:4}") int senderThreads,
+                            @Value("${warehouse.feed.timeout:30m}") Duration timeout) {
+        this.deltaWriter = objectMapper.writerFor(InventoryDeltaDto.class);
+        this.snapshotWriter = objectMapper.writerFor(WarehouseMaterialsDto.class);
+        this.replaySize = replaySize;
+        this.subscriberQueueSize = subscriberQueueSize;
+        this.timeout = timeout;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.sender = Executors.newFixedThreadPool(senderThreads, runnable -> {
+            Thread thread = new Thread(runnable, "feed-sender-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        Gauge.builder("inventory.feed.subscribers", subscriberCount, AtomicInteger::get)
+                .description("Open inventory feed connections")
+                .register(meterRegistry);
+    }
+
+    //called on the outbox lane of the warehouse, so the records of one warehouse never arrive concurrently
+    @Override
+    public void deliver(List<InventoryChangeRecord> records) throws JsonProcessingException {
+        for (InventoryChangeRecord record : records) {
+            WarehouseFeed feed = feed(record.warehouseId());
+            long sequence = feed.nextSequence(record.sequence());
+            InventoryDeltaDto delta = new InventoryDeltaDto(sequence, record.warehouseId(), record.materialTypeId(),
+                    record.changeQuantity(), record.quantityAfter(), record.action().label(), record.occurredAt());
+            feed.publish(FeedFrame.of(sequence, "delta", deltaWriter.writeValueAsString(delta)));
+        }
+    }
+
+    /**
+     * Opens a feed for the warehouse. Unless the client can be resumed from the replay buffer, the first event is
+     * a snapshot of the warehouse taken after the subscription was registered, so no change can fall in between.
+     *
+     * @param warehouseId the warehouse to follow
+     * @param lastEventId the id of the last event the client received, or null for a new client
+     * @param snapshot    reads the current state of the warehouse
+     */
+    public SseEmitter subscribe(Long warehouseId, Long lastEventId, Supplier<WarehouseMaterialsDto> snapshot) throws JsonProcessingException {
+        SseEmitter emitter = new SseEmitter(timeout.toMillis());
+        FeedSubscriber subscriber = new FeedSubscriber(emitter, subscriberQueueSize, sender);
+        WarehouseFeed feed = feed(warehouseId);
+
+        Runnable cleanup = () -> {
+            feed.unsubscribe(subscriber);
+            if (!subscriber.isClosed()) {
+                subscriber.close();
+            }
+        };
+        emitter.onCompletion(() -> {
+            feed.unsubscribe(subscriber);
+            subscriberCount.decrementAndGet();
+        });
+        emitter.onTimeout(cleanup);
+        emitter.onError(error -> cleanup.run());
+        subscriberCount.incrementAndGet();
+
+        long snapshotSequence = feed.subscribe(subscriber, lastEventId);
+        if (snapshotSequence < 0) {
+            subscriber.start(null);
+            return emitter;
+        }
+        // deltas published while the snapshot is read are queued and sent after it, applying them again is harmless
+        boolean started = false;
+        try {
+            subscriber.start(FeedFrame.of(snapshotSequence, "snapshot", snapshotWriter.writeValueAsString(snapshot.get())));
+            started = true;
+        } finally {
+            if (!started) {
+                feed.unsubscribe(subscriber);
+                subscriberCount.decrementAndGet();
+            }
+        }
+        return emitter;
+    }
+
+    //keeps idle connections from being closed by proxies
+    @Scheduled(fixedDelayString = "${warehouse.feed.heartbeat-interval-ms:15000}")
+    public void heartbeat() {
+        for (WarehouseFeed feed : feeds.values()) {
+            for (FeedSubscriber subscriber : feed.subscribers()) {
+                subscriber.offer(HEARTBEAT);
+            }
+        }
+    }
+
+    private WarehouseFeed feed(Long warehouseId) {
+        return feeds.computeIfAbsent(warehouseId, id -> new WarehouseFeed(replaySize));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        feeds.values().forEach(feed -> feed.subscribers().forEach(FeedSubscriber::close));
+        sender.shutdown();
+    }
+}
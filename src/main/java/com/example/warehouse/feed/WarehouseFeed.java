@@ -0,0 +1,83 @@
+package com.example.warehouse.feed;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Sequence, replay buffer and subscribers of one warehouse.
+ */
+class WarehouseFeed {
+
+    private final int replaySize;
+    private final ArrayDeque<FeedFrame> replay;
+    private final List<FeedSubscriber> subscribers = new CopyOnWriteArrayList<>();
+    private long sequence;
+
+    WarehouseFeed(int replaySize) {
+        this.replaySize = replaySize;
+        this.replay = new ArrayDeque<>(replaySize);
+    }
+
+    /**
+     * The sequence the next event gets. Outbox ids already grow over time and across restarts, but two
+     * transactions can commit in the opposite order of their ids, so the feed never lets the sequence go back.
+     */
+    synchronized long nextSequence(long outboxSequence) {
+        sequence = Math.max(sequence + 1, outboxSequence);
+        return sequence;
+    }
+
+    synchronized void publish(FeedFrame frame) {
+        if (replay.size() == replaySize) {
+            replay.removeFirst();
+        }
+        replay.addLast(frame);
+        for (FeedSubscriber subscriber : subscribers) {
+            subscriber.offer(frame);
+        }
+    }
+
+    /**
+     * Registers the subscriber and queues the events it missed.
+     *
+     * @return the current sequence if the subscriber needs a snapshot first, or -1 if it was resumed from the replay buffer
+     */
+    synchronized long subscribe(FeedSubscriber subscriber, Long lastEventId) {
+        subscribers.add(subscriber);
+        if (lastEventId != null && canResume(lastEventId)) {
+            for (FeedFrame frame : replay) {
+                if (frame.sequence() > lastEventId) {
+                    subscriber.offer(frame);
+                }
+            }
+            return -1;
+        }
+        return sequence;
+    }
+
+    void unsubscribe(FeedSubscriber subscriber) {
+        subscribers.remove(subscriber);
+    }
+
+    List<FeedSubscriber> subscribers() {
+        return subscribers;
+    }
+
+    private boolean canResume(long lastEventId) {
+        // sequences have gaps, so only an id still in the buffer proves nothing after it was dropped.
+        // 0 is the sequence of a feed without events, which says nothing once the instance restarted
+        if (lastEventId == 0) {
+            return false;
+        }
+        if (lastEventId == sequence) {
+            return true;
+        }
+        for (FeedFrame frame : replay) {
+            if (frame.sequence() == lastEventId) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,189 @@
+package com.example.warehouse.history;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * An immutable file of history buckets for many series, stored by column.
+ * <p>
+ * A header (magic, version, column count, series count) is followed by the index, one fixed-width entry per series
+ * sorted by {@link SeriesKey} (warehouse id, material type id, data offset, bucket count), so a series or all series
+ * of a warehouse are found by binary search. The data of a series is one column after the other: the bucket starts,
+ * then the last quantities, then for rollups the minimum and maximum quantities. Every column holds its first value
+ * and then the differences to the previous one as zig-zag varints, which makes the usual small steps one byte each.
+ */
+final class HistoryBlock {
+
+    private static final int MAGIC = 0x48495354;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 13;
+    private static final int INDEX_ENTRY_SIZE = 24;
+
+    private HistoryBlock() {
+    }
+
+    /**
+     * Writes the series to the file, replacing it in one step. Raw changes only need the starts and last quantities.
+     */
+    static void write(Path path, SortedMap<SeriesKey, List<HistoryBucket>> series, boolean raw) throws IOException {
+        int columns = raw ? 2 : 4;
+        ByteBuffer data = ByteBuffer.allocate(1024);
+        ByteBuffer index = ByteBuffer.allocate(series.size() * INDEX_ENTRY_SIZE);
+        for (Map.Entry<SeriesKey, List<HistoryBucket>> entry : series.entrySet()) {
+            List<HistoryBucket> buckets = entry.getValue();
+            index.putLong(entry.getKey().warehouseId()).putLong(entry.getKey().materialTypeId())
+                    .putInt(data.position()).putInt(buckets.size());
+            for (int column = 0; column < columns; column++) {
+                long previous = 0;
+                for (HistoryBucket bucket : buckets) {
+                    long value = column(bucket, column);
+                    data = ensure(data, 10);
+                    putVarLong(data, zigZag(value - previous));
+                    previous = value;
+                }
+            }
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).put((byte) columns).putInt(series.size());
+        Files.createDirectories(path.getParent());
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            for (ByteBuffer buffer : new ByteBuffer[]{header.flip(), index.flip(), data.flip()}) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads the series from {@code fromKey} to {@code toKey} inclusive, with only the buckets starting in [from, to).
+     */
+    static SortedMap<SeriesKey, List<HistoryBucket>> read(Path path, SeriesKey fromKey, SeriesKey toKey, long from, long to) throws IOException {
+        SortedMap<SeriesKey, List<HistoryBucket>> series = new TreeMap<>();
+        if (!Files.exists(path)) {
+            return series;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IOException(path + " is not a history block");
+            }
+            int columns = buffer.get(8);
+            int count = buffer.getInt(9);
+            int dataStart = HEADER_SIZE + count * INDEX_ENTRY_SIZE;
+
+            // the first entry not below fromKey
+            int low = 0;
+            int high = count;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (keyAt(buffer, middle).compareTo(fromKey) < 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            for (int entry = low; entry < count; entry++) {
+                SeriesKey key = keyAt(buffer, entry);
+                if (key.compareTo(toKey) > 0) {
+                    break;
+                }
+                int offset = buffer.getInt(HEADER_SIZE + entry * INDEX_ENTRY_SIZE + 16);
+                int buckets = buffer.getInt(HEADER_SIZE + entry * INDEX_ENTRY_SIZE + 20);
+                List<HistoryBucket> selected = decode(buffer.slice(dataStart + offset, buffer.capacity() - dataStart - offset), columns, buckets, from, to);
+                if (!selected.isEmpty()) {
+                    series.put(key, selected);
+                }
+            }
+        }
+        return series;
+    }
+
+    static SortedMap<SeriesKey, List<HistoryBucket>> readAll(Path path) throws IOException {
+        return read(path, new SeriesKey(Long.MIN_VALUE, Long.MIN_VALUE), new SeriesKey(Long.MAX_VALUE, Long.MAX_VALUE), Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    private static List<HistoryBucket> decode(ByteBuffer data, int columns, int count, long from, long to) {
+        long[][] values = new long[4][count];
+        for (int column = 0; column < columns; column++) {
+            long previous = 0;
+            for (int i = 0; i < count; i++) {
+                previous += unZigZag(getVarLong(data));
+                values[column][i] = previous;
+            }
+        }
+        List<HistoryBucket> buckets = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            if (values[0][i] >= from && values[0][i] < to) {
+                buckets.add(columns == 2
+                        ? HistoryBucket.of(values[0][i], values[1][i])
+                        : new HistoryBucket(values[0][i], values[2][i], values[3][i], values[1][i]));
+            }
+        }
+        return buckets;
+    }
+
+    private static long column(HistoryBucket bucket, int column) {
+        return switch (column) {
+            case 0 -> bucket.start();
+            case 1 -> bucket.last();
+            case 2 -> bucket.min();
+            default -> bucket.max();
+        };
+    }
+
+    private static SeriesKey keyAt(ByteBuffer buffer, int entry) {
+        int position = HEADER_SIZE + entry * INDEX_ENTRY_SIZE;
+        return new SeriesKey(buffer.getLong(position), buffer.getLong(position + 8));
+    }
+
+    private static ByteBuffer ensure(ByteBuffer buffer, int bytes) {
+        if (buffer.remaining() >= bytes) {
+            return buffer;
+        }
+        ByteBuffer grown = ByteBuffer.allocate(buffer.capacity() * 2);
+        return grown.put(buffer.flip());
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void putVarLong(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static long getVarLong(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.example.warehouse.history;
+
+/**
+ * The quantities of a series within one bucket of a resolution, starting at {@code start} (epoch millis). A raw
+ * change is a bucket of its own with all three quantities the same.
+ */
+public record HistoryBucket(long start, long min, long max, long last) {
+
+    static HistoryBucket of(long timestamp, long quantity) {
+        return new HistoryBucket(timestamp, quantity, quantity, quantity);
+    }
+
+    HistoryBucket add(long quantity) {
+        return new HistoryBucket(start, Math.min(min, quantity), Math.max(max, quantity), quantity);
+    }
+}
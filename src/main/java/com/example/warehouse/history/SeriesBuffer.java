@@ -0,0 +1,78 @@
+package com.example.warehouse.history;
+
+import com.example.warehouse.dto.HistoryResolution;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The changes of one series in a day that is not sealed yet, rolled up whenever they are read. Queries running
+ * side by side may sort it, so every access is synchronized.
+ */
+class SeriesBuffer {
+
+    private long[] timestamps = new long[8];
+    private long[] quantities = new long[8];
+    private int size;
+    private boolean ordered = true;
+
+    synchronized void add(long timestamp, long quantity) {
+        if (size == timestamps.length) {
+            timestamps = Arrays.copyOf(timestamps, size * 2);
+            quantities = Arrays.copyOf(quantities, size * 2);
+        }
+        // totals are fed by several outbox lanes, their changes may come in slightly out of time order
+        ordered &= size == 0 || timestamps[size - 1] <= timestamp;
+        timestamps[size] = timestamp;
+        quantities[size] = quantity;
+        size++;
+    }
+
+    /**
+     * The buckets of the resolution starting in [from, to), in time order.
+     */
+    synchronized List<HistoryBucket> buckets(HistoryResolution resolution, long from, long to) {
+        sort();
+        List<HistoryBucket> buckets = new ArrayList<>();
+        HistoryBucket bucket = null;
+        for (int i = 0; i < size; i++) {
+            long start = resolution == HistoryResolution.RAW ? timestamps[i] : timestamps[i] - Math.floorMod(timestamps[i], resolution.millis());
+            if (start < from || start >= to) {
+                continue;
+            }
+            if (bucket != null && bucket.start() == start && resolution != HistoryResolution.RAW) {
+                bucket = bucket.add(quantities[i]);
+            } else {
+                if (bucket != null) {
+                    buckets.add(bucket);
+                }
+                bucket = HistoryBucket.of(start, quantities[i]);
+            }
+        }
+        if (bucket != null) {
+            buckets.add(bucket);
+        }
+        return buckets;
+    }
+
+    // a stable insertion sort, the changes are almost in order
+    private void sort() {
+        if (ordered) {
+            return;
+        }
+        for (int i = 1; i < size; i++) {
+            long timestamp = timestamps[i];
+            long quantity = quantities[i];
+            int j = i - 1;
+            while (j >= 0 && timestamps[j] > timestamp) {
+                timestamps[j + 1] = timestamps[j];
+                quantities[j + 1] = quantities[j];
+                j--;
+            }
+            timestamps[j + 1] = timestamp;
+            quantities[j + 1] = quantity;
+        }
+        ordered = true;
+    }
+}
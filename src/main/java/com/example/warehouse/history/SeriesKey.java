@@ -0,0 +1,28 @@
+package com.example.warehouse.history;
+
+import java.util.Comparator;
+
+/**
+ * One time series of the history: the quantity of a material type in a warehouse, or with warehouse id
+ * {@link #ALL_WAREHOUSES} its total across all warehouses.
+ */
+public record SeriesKey(long warehouseId, long materialTypeId) implements Comparable<SeriesKey> {
+
+    public static final long ALL_WAREHOUSES = 0;
+
+    private static final Comparator<SeriesKey> ORDER = Comparator.comparingLong(SeriesKey::warehouseId)
+            .thenComparingLong(SeriesKey::materialTypeId);
+
+    public static SeriesKey total(long materialTypeId) {
+        return new SeriesKey(ALL_WAREHOUSES, materialTypeId);
+    }
+
+    public boolean isTotal() {
+        return warehouseId == ALL_WAREHOUSES;
+    }
+
+    @Override
+    public int compareTo(SeriesKey other) {
+        return ORDER.compare(this, other);
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.warehouse.history;
+
+import com.example.warehouse.cache.ReferenceDataCache;
+import com.example.warehouse.dto.HistoryResolution;
+import com.example.warehouse.dto.StockHistoryDto;
+import com.example.warehouse.dto.StockHistoryPointDto;
+import com.example.warehouse.exceptions.MaterialTypeNotFoundException;
+import com.example.warehouse.exceptions.WarehouseNotFoundException;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Stock history queries, served from the {@link StockHistoryStore} without touching the database.
+ */
+@Service
+@ConditionalOnProperty(name = "warehouse.history.enabled", havingValue = "true", matchIfMissing = true)
+public class StockHistoryService {
+
+    // raw changes of a busy pair over a longer span are more than a response should carry, rollups are for that
+    private static final Duration MAX_RAW_SPAN = Duration.ofDays(7);
+
+    private final StockHistorySink stockHistorySink;
+    private final ReferenceDataCache referenceDataCache;
+
+    public StockHistoryService(StockHistorySink stockHistorySink, ReferenceDataCache referenceDataCache) {
+        this.stockHistorySink = stockHistorySink;
+        this.referenceDataCache = referenceDataCache;
+    }
+
+    /**
+     * The history of a material type in a warehouse, of a material type across all warehouses if no warehouse is
+     * given, or of every material type in a warehouse if no material type is given.
+     *
+     * @param resolution the bucket size, chosen from the span if null: minutes up to a day, hours up to 90 days, days beyond
+     */
+    public List<StockHistoryDto> getHistory(Long warehouseId, Long materialTypeId, Instant from, Instant to, HistoryResolution resolution) {
+        if (warehouseId == null && materialTypeId == null) {
+            throw new IllegalArgumentException("A warehouseId, a materialTypeId or both are needed");
+        }
+        if (!from.isBefore(to)) {
+            throw new IllegalArgumentException("from " + from + " is not before to " + to);
+        }
+        HistoryResolution chosen = resolution != null ? resolution : resolutionFor(Duration.between(from, to));
+        if (chosen == HistoryResolution.RAW && Duration.between(from, to).compareTo(MAX_RAW_SPAN) > 0) {
+            throw new IllegalArgumentException("Raw changes can be listed for at most " + MAX_RAW_SPAN.toDays() + " days, use a rollup resolution");
+        }
+        if (warehouseId != null) {
+            referenceDataCache.findWarehouse(warehouseId)
+                    .orElseThrow(() -> new WarehouseNotFoundException("Warehouse not found with ID: " + warehouseId));
+        }
+        if (materialTypeId != null) {
+            referenceDataCache.findMaterialType(materialTypeId)
+                    .orElseThrow(() -> new MaterialTypeNotFoundException("Material type not found with ID: " + materialTypeId));
+        }
+
+        try {
+            StockHistoryStore store = stockHistorySink.store();
+            if (materialTypeId == null) {
+                return store.queryWarehouse(warehouseId, chosen, from, to).entrySet().stream()
+                        .map(series -> toDto(series.getKey(), chosen, series.getValue()))
+                        .toList();
+            }
+            SeriesKey key = warehouseId == null ? SeriesKey.total(materialTypeId) : new SeriesKey(warehouseId, materialTypeId);
+            return List.of(toDto(key, chosen, store.query(key, chosen, from, to)));
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Can't read the stock history", ex);
+        }
+    }
+
+    static HistoryResolution resolutionFor(Duration span) {
+        if (span.compareTo(Duration.ofDays(1)) <= 0) {
+            return HistoryResolution.MINUTE;
+        }
+        return span.compareTo(Duration.ofDays(90)) <= 0 ? HistoryResolution.HOUR : HistoryResolution.DAY;
+    }
+
+    private static StockHistoryDto toDto(SeriesKey key, HistoryResolution resolution, List<HistoryBucket> buckets) {
+        List<StockHistoryPointDto> points = buckets.stream()
+                .map(bucket -> new StockHistoryPointDto(Instant.ofEpochMilli(bucket.start()), bucket.min(), bucket.max(), bucket.last()))
+                .toList();
+        return new StockHistoryDto(key.isTotal() ? null : key.warehouseId(), key.materialTypeId(), resolution, points);
+    }
+}
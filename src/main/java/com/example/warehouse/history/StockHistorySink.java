@@ -0,0 +1,127 @@
+package com.example.warehouse.history;
+
+import com.example.warehouse.outbox.InventoryChangeRecord;
+import com.example.warehouse.outbox.InventoryEventSink;
+import com.example.warehouse.shard.ShardDirectory;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records every committed inventory change in the {@link StockHistoryStore}, outside of the database.
+ * <p>
+ * A new store starts from a baseline snapshot of {@code material_inventory}. Records are kept by quantity after
+ * the change and taken once per outbox sequence, so a change delivered twice does no harm. Head logs are forced
+ * to disk on a schedule, finished days are sealed on another.
+ */
+@Component
+@ConditionalOnProperty(name = "warehouse.history.enabled", havingValue = "true", matchIfMissing = true)
+public class StockHistorySink implements InventoryEventSink {
+
+    private static final Logger log = LoggerFactory.getLogger(StockHistorySink.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectProvider<ShardDirectory> shardDirectory;
+    private final Path directory;
+    private final Duration sealDelay;
+    private final Duration rawRetention;
+    private final Duration minuteRetention;
+    private final Duration hourRetention;
+    private StockHistoryStore store;
+
+    public StockHistorySink(JdbcTemplate jdbcTemplate,
+                            ObjectProvider<ShardDirectory> shardDirectory,
+                            @Value("${warehouse.history.dir:stock-history}") Path directory,
+                            @Value("${warehouse.history.seal-delay:1h}") Duration sealDelay,
+                            @Value("${warehouse.history.raw-retention:30d}") Duration rawRetention,
+                            @Value("${warehouse.history.minute-retention:90d}") Duration minuteRetention,
+                            @Value("${warehouse.history.hour-retention:730d}") Duration hourRetention) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.shardDirectory = shardDirectory;
+        this.directory = directory;
+        this.sealDelay = sealDelay;
+        this.rawRetention = rawRetention;
+        this.minuteRetention = minuteRetention;
+        this.hourRetention = hourRetention;
+    }
+
+    @Override
+    public void deliver(List<InventoryChangeRecord> records) throws IOException {
+        StockHistoryStore store = store();
+        for (InventoryChangeRecord record : records) {
+            store.append(record.sequence(), record.occurredAt().toEpochMilli(), record.warehouseId(), record.materialTypeId(), record.quantityAfter());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${warehouse.history.force-interval-ms:1000}")
+    public void force() throws IOException {
+        StockHistoryStore store = openedStore();
+        if (store != null) {
+            store.force();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${warehouse.history.seal-interval-ms:60000}")
+    public void seal() throws IOException {
+        StockHistoryStore store = openedStore();
+        if (store != null) {
+            int sealed = store.seal(Instant.now());
+            if (sealed > 0) {
+                log.info("Sealed {} day(s) of stock history in {}", sealed, directory.toAbsolutePath());
+            }
+        }
+    }
+
+    @PreDestroy
+    public synchronized void close() throws IOException {
+        if (store != null) {
+            store.force();
+            store.close();
+        }
+    }
+
+    //the store queries are served from, opened now if no change was delivered yet
+    synchronized StockHistoryStore store() throws IOException {
+        if (store == null) {
+            StockHistoryStore opened = new StockHistoryStore(directory, sealDelay, rawRetention, minuteRetention, hourRetention);
+            if (opened.isEmpty()) {
+                Instant takenAt = Instant.now();
+                Map<SeriesKey, Long> quantities = new HashMap<>();
+                RowCallbackHandler snapshot = row -> {
+                    quantities.put(new SeriesKey(row.getLong(1), row.getLong(2)), row.getLong(3));
+                };
+                String sql = "select warehouse_id, material_type_id, quantity from material_inventory where quantity > 0";
+                //with sharding the baseline is taken from every shard, not just the one being dispatched
+                ShardDirectory sharding = shardDirectory.getIfAvailable();
+                if (sharding == null) {
+                    jdbcTemplate.query(sql, snapshot);
+                } else {
+                    sharding.queryInventory(sql, "warehouse_id", snapshot);
+                }
+                opened.writeBaseline(quantities, takenAt);
+                log.info("Started stock history in {} from {} stock positions", directory.toAbsolutePath(), quantities.size());
+            }
+            store = opened;
+        }
+        return store;
+    }
+
+    private synchronized StockHistoryStore openedStore() {
+        return store;
+    }
+}
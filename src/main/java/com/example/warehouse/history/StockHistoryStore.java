@@ -0,0 +1,456 @@
+package com.example.warehouse.history;
+
+import com.example.warehouse.dto.HistoryResolution;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * Stock history: the quantity of every (warehouse, material type) pair and the total of every material type across
+ * warehouses over time, kept in local files per UTC day.
+ * <p>
+ * Changes of a day go to its head, an append-only log that is replayed when the store is opened, and are kept in
+ * memory until the day is sealed, {@code sealDelay} after it ended. Sealing writes the day's changes, its minute
+ * buckets and its hour buckets to one {@link HistoryBlock} each and merges its day buckets into the block of the
+ * month, so a query over a year at day resolution reads twelve small files. A change that arrives for a day
+ * already being sealed is recorded at the start of the first open day instead.
+ * <p>
+ * Changes of a pair are taken once, by outbox sequence. Buckets without a change are left out, the quantity stayed
+ * at the last one of the bucket before. Raw changes, minute and hour buckets are deleted after their retention,
+ * day buckets are kept.
+ */
+public class StockHistoryStore implements AutoCloseable {
+
+    private static final String HEAD_PREFIX = "head-";
+    private static final String HEAD_SUFFIX = ".log";
+    private static final String BLOCK_SUFFIX = ".ts";
+    private static final String STATE_FILE = "state.dat";
+    // position, sequence, timestamp, warehouse id, material type id, quantity, total of the material type
+    private static final int LOG_RECORD_SIZE = 56;
+    private static final HistoryResolution[] DAILY_BLOCKS = {HistoryResolution.RAW, HistoryResolution.MINUTE, HistoryResolution.HOUR};
+
+    private final Path directory;
+    private final Duration sealDelay;
+    private final Map<HistoryResolution, Duration> retention;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final TreeMap<LocalDate, Head> heads = new TreeMap<>();
+    private final Map<SeriesKey, Long> quantities = new HashMap<>();
+    private final Map<SeriesKey, Long> sequences = new HashMap<>();
+    private LocalDate lastSealed;
+    private LocalDate sealing;
+    private LocalDate earliest;
+    private long position;
+
+    public StockHistoryStore(Path directory, Duration sealDelay, Duration rawRetention, Duration minuteRetention, Duration hourRetention) throws IOException {
+        this.directory = directory;
+        this.sealDelay = sealDelay;
+        this.retention = Map.of(HistoryResolution.RAW, rawRetention, HistoryResolution.MINUTE, minuteRetention, HistoryResolution.HOUR, hourRetention);
+        for (HistoryResolution resolution : HistoryResolution.values()) {
+            Files.createDirectories(blockDirectory(resolution));
+        }
+        readState();
+        replayHeads();
+        earliest = Stream.of(HistoryResolution.values())
+                .flatMap(resolution -> blockNames(resolution).stream().map(name -> firstDay(resolution, name)))
+                .reduce(heads.isEmpty() ? null : heads.firstKey(), StockHistoryStore::min);
+    }
+
+    /**
+     * Records the quantity of a pair after a change, and the total of its material type that follows from it.
+     * A change with a sequence not above the last one taken for the pair was already recorded and is ignored.
+     */
+    public void append(long sequence, long timestamp, long warehouseId, long materialTypeId, long quantity) throws IOException {
+        SeriesKey key = new SeriesKey(warehouseId, materialTypeId);
+        lock.writeLock().lock();
+        try {
+            if (sequence <= sequences.getOrDefault(key, Long.MIN_VALUE)) {
+                return;
+            }
+            SeriesKey totalKey = SeriesKey.total(materialTypeId);
+            long total = quantities.getOrDefault(totalKey, 0L) + quantity - quantities.getOrDefault(key, 0L);
+            LocalDate day = day(timestamp);
+            LocalDate firstOpen = firstOpenDay();
+            if (firstOpen != null && day.isBefore(firstOpen)) {
+                day = firstOpen;
+                timestamp = start(firstOpen);
+            }
+
+            Head head = head(day);
+            ByteBuffer record = ByteBuffer.allocate(LOG_RECORD_SIZE);
+            record.putLong(++position).putLong(sequence).putLong(timestamp).putLong(warehouseId).putLong(materialTypeId)
+                    .putLong(quantity).putLong(total).flip();
+            while (record.hasRemaining()) {
+                head.log.write(record);
+            }
+            apply(head, key, totalKey, sequence, timestamp, quantity, total);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Records the quantities the history starts from, as changes at the time they were taken.
+     */
+    public void writeBaseline(Map<SeriesKey, Long> baseline, Instant takenAt) throws IOException {
+        for (Map.Entry<SeriesKey, Long> entry : new TreeMap<>(baseline).entrySet()) {
+            append(0, takenAt.toEpochMilli(), entry.getKey().warehouseId(), entry.getKey().materialTypeId(), entry.getValue());
+        }
+    }
+
+    public boolean isEmpty() {
+        lock.readLock().lock();
+        try {
+            return position == 0 && lastSealed == null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void force() throws IOException {
+        lock.readLock().lock();
+        try {
+            for (Head head : heads.values()) {
+                head.log.force(false);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Seals every day that ended more than the seal delay before {@code now}, oldest first.
+     *
+     * @return the number of days sealed
+     */
+    public int seal(Instant now) throws IOException {
+        int sealed = 0;
+        while (true) {
+            Head head;
+            lock.writeLock().lock();
+            try {
+                if (heads.isEmpty() || sealing != null || Instant.ofEpochMilli(start(heads.firstKey().plusDays(1))).plus(sealDelay).isAfter(now)) {
+                    return sealed;
+                }
+                head = heads.firstEntry().getValue();
+                sealing = head.day;
+            } finally {
+                lock.writeLock().unlock();
+            }
+
+            // nothing is added to a day being sealed, so the files are built without holding up appends and queries
+            try {
+                seal(head, now);
+            } finally {
+                lock.writeLock().lock();
+                sealing = null;
+                lock.writeLock().unlock();
+            }
+            sealed++;
+        }
+    }
+
+    /**
+     * The buckets of one series starting in [from, to), in time order.
+     */
+    public List<HistoryBucket> query(SeriesKey key, HistoryResolution resolution, Instant from, Instant to) throws IOException {
+        return query(key, key, resolution, from, to).getOrDefault(key, List.of());
+    }
+
+    /**
+     * The buckets of every material type held in the warehouse that changed between from and to, per material type.
+     */
+    public SortedMap<SeriesKey, List<HistoryBucket>> queryWarehouse(long warehouseId, HistoryResolution resolution, Instant from, Instant to) throws IOException {
+        return query(new SeriesKey(warehouseId, Long.MIN_VALUE), new SeriesKey(warehouseId, Long.MAX_VALUE), resolution, from, to);
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            for (Head head : heads.values()) {
+                head.log.close();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private SortedMap<SeriesKey, List<HistoryBucket>> query(SeriesKey fromKey, SeriesKey toKey, HistoryResolution resolution, Instant from, Instant to) throws IOException {
+        long fromMillis = from.toEpochMilli();
+        long toMillis = to.toEpochMilli();
+        SortedMap<SeriesKey, List<HistoryBucket>> series = new TreeMap<>();
+        lock.readLock().lock();
+        try {
+            if (earliest == null || toMillis <= fromMillis) {
+                return series;
+            }
+            LocalDate firstDay = max(day(fromMillis), earliest);
+            LocalDate lastDay = min(day(toMillis - 1), max(lastSealed, heads.isEmpty() ? null : heads.lastKey()));
+            if (resolution == HistoryResolution.DAY) {
+                // sealed days are in the month blocks, the open ones all come after them
+                for (YearMonth month = YearMonth.from(firstDay); !month.isAfter(YearMonth.from(lastDay)); month = month.plusMonths(1)) {
+                    merge(series, HistoryBlock.read(blockDirectory(resolution).resolve(month + BLOCK_SUFFIX), fromKey, toKey, fromMillis, toMillis));
+                }
+                for (Head head : heads.subMap(firstDay, true, lastDay, true).values()) {
+                    merge(series, head.buckets(fromKey, toKey, resolution, fromMillis, toMillis));
+                }
+                return series;
+            }
+            for (LocalDate day = firstDay; !day.isAfter(lastDay); day = day.plusDays(1)) {
+                Head head = heads.get(day);
+                merge(series, head != null
+                        ? head.buckets(fromKey, toKey, resolution, fromMillis, toMillis)
+                        : HistoryBlock.read(blockDirectory(resolution).resolve(day + BLOCK_SUFFIX), fromKey, toKey, fromMillis, toMillis));
+            }
+            return series;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void seal(Head head, Instant now) throws IOException {
+        List<Path> built = new ArrayList<>();
+        for (HistoryResolution resolution : DAILY_BLOCKS) {
+            Path temporary = blockDirectory(resolution).resolve(head.day + BLOCK_SUFFIX + ".sealing");
+            HistoryBlock.write(temporary, head.buckets(resolution), resolution == HistoryResolution.RAW);
+            built.add(temporary);
+        }
+        // the day buckets of the month so far, with the day's replacing any left by an earlier attempt to seal it
+        Path monthBlock = blockDirectory(HistoryResolution.DAY).resolve(YearMonth.from(head.day) + BLOCK_SUFFIX);
+        SortedMap<SeriesKey, List<HistoryBucket>> month = HistoryBlock.readAll(monthBlock);
+        long dayStart = start(head.day);
+        month.values().forEach(buckets -> buckets.removeIf(bucket -> bucket.start() == dayStart));
+        head.buckets(HistoryResolution.DAY).forEach((key, buckets) -> month.computeIfAbsent(key, k -> new ArrayList<>()).addAll(buckets));
+        month.values().forEach(buckets -> buckets.sort((first, second) -> Long.compare(first.start(), second.start())));
+        Path monthTemporary = monthBlock.resolveSibling(monthBlock.getFileName() + ".sealing");
+        HistoryBlock.write(monthTemporary, month, false);
+        built.add(monthTemporary);
+
+        lock.writeLock().lock();
+        try {
+            for (Path temporary : built) {
+                String name = temporary.getFileName().toString();
+                Files.move(temporary, temporary.resolveSibling(name.substring(0, name.length() - ".sealing".length())),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            lastSealed = head.day;
+            writeState();
+            heads.remove(head.day);
+            head.log.close();
+            Files.delete(headLog(head.day));
+            applyRetention(now);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void apply(Head head, SeriesKey key, SeriesKey totalKey, long sequence, long timestamp, long quantity, long total) {
+        head.series(key).add(timestamp, quantity);
+        head.series(totalKey).add(timestamp, total);
+        quantities.put(key, quantity);
+        quantities.put(totalKey, total);
+        sequences.put(key, sequence);
+    }
+
+    // the first day a change may still be added to, null while every day is open
+    private LocalDate firstOpenDay() {
+        LocalDate closed = max(lastSealed, sealing);
+        return closed == null ? null : closed.plusDays(1);
+    }
+
+    private Head head(LocalDate day) throws IOException {
+        Head head = heads.get(day);
+        if (head == null) {
+            head = new Head(day, FileChannel.open(headLog(day), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND));
+            heads.put(day, head);
+            earliest = min(earliest, day);
+        }
+        return head;
+    }
+
+    // the quantities and sequences as of the position, the head logs hold what came after it
+    private void writeState() throws IOException {
+        ByteBuffer state = ByteBuffer.allocate(24 + quantities.size() * 32);
+        state.putLong(lastSealed.toEpochDay()).putLong(position).putInt(quantities.size()).putInt(0);
+        quantities.forEach((key, quantity) -> state.putLong(key.warehouseId()).putLong(key.materialTypeId())
+                .putLong(quantity).putLong(sequences.getOrDefault(key, Long.MIN_VALUE)));
+        Path temporary = directory.resolve(STATE_FILE + ".tmp");
+        Files.write(temporary, state.array());
+        Files.move(temporary, directory.resolve(STATE_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void readState() throws IOException {
+        Path file = directory.resolve(STATE_FILE);
+        if (!Files.exists(file)) {
+            return;
+        }
+        ByteBuffer state = ByteBuffer.wrap(Files.readAllBytes(file));
+        lastSealed = LocalDate.ofEpochDay(state.getLong());
+        position = state.getLong();
+        int count = state.getInt();
+        state.getInt();
+        for (int i = 0; i < count; i++) {
+            SeriesKey key = new SeriesKey(state.getLong(), state.getLong());
+            quantities.put(key, state.getLong());
+            long sequence = state.getLong();
+            if (!key.isTotal()) {
+                sequences.put(key, sequence);
+            }
+        }
+    }
+
+    // the logs of sealed days are what is left when the store stopped right after sealing them
+    private void replayHeads() throws IOException {
+        long statePosition = position;
+        List<long[]> records = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.filter(path -> isHeadLog(path.getFileName().toString())).toList()) {
+                String name = file.getFileName().toString();
+                LocalDate day = LocalDate.parse(name.substring(HEAD_PREFIX.length(), name.length() - HEAD_SUFFIX.length()));
+                if (lastSealed != null && !day.isAfter(lastSealed)) {
+                    Files.delete(file);
+                    continue;
+                }
+                // a record torn by a crash is dropped, with the change it was going to record
+                ByteBuffer log = ByteBuffer.wrap(Files.readAllBytes(file));
+                while (log.remaining() >= LOG_RECORD_SIZE) {
+                    long[] record = new long[8];
+                    for (int i = 0; i < 7; i++) {
+                        record[i] = log.getLong();
+                    }
+                    record[7] = day.toEpochDay();
+                    records.add(record);
+                }
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                    channel.truncate(log.position());
+                }
+            }
+        }
+        records.sort((first, second) -> Long.compare(first[0], second[0]));
+        for (long[] record : records) {
+            Head head = head(LocalDate.ofEpochDay(record[7]));
+            SeriesKey key = new SeriesKey(record[3], record[4]);
+            SeriesKey totalKey = SeriesKey.total(record[4]);
+            if (record[0] > statePosition) {
+                apply(head, key, totalKey, record[1], record[2], record[5], record[6]);
+            } else {
+                head.series(key).add(record[2], record[5]);
+                head.series(totalKey).add(record[2], record[6]);
+            }
+            position = Math.max(position, record[0]);
+        }
+    }
+
+    private void applyRetention(Instant now) throws IOException {
+        for (HistoryResolution resolution : DAILY_BLOCKS) {
+            LocalDate oldestKept = day(now.minus(retention.get(resolution)).toEpochMilli());
+            for (String name : blockNames(resolution)) {
+                if (firstDay(resolution, name).isBefore(oldestKept)) {
+                    Files.deleteIfExists(blockDirectory(resolution).resolve(name));
+                }
+            }
+        }
+    }
+
+    private List<String> blockNames(HistoryResolution resolution) {
+        try (Stream<Path> files = Files.list(blockDirectory(resolution))) {
+            return files.map(path -> path.getFileName().toString()).filter(name -> name.endsWith(BLOCK_SUFFIX)).toList();
+        } catch (IOException ex) {
+            throw new IllegalStateException("Can't list the history blocks in " + blockDirectory(resolution), ex);
+        }
+    }
+
+    private static LocalDate firstDay(HistoryResolution resolution, String blockName) {
+        String date = blockName.substring(0, blockName.length() - BLOCK_SUFFIX.length());
+        try {
+            return resolution == HistoryResolution.DAY ? YearMonth.parse(date).atDay(1) : LocalDate.parse(date);
+        } catch (DateTimeParseException ex) {
+            throw new IllegalStateException("Unexpected history block " + blockName, ex);
+        }
+    }
+
+    private static boolean isHeadLog(String name) {
+        return name.startsWith(HEAD_PREFIX) && name.endsWith(HEAD_SUFFIX);
+    }
+
+    private Path headLog(LocalDate day) {
+        return directory.resolve(HEAD_PREFIX + day + HEAD_SUFFIX);
+    }
+
+    private Path blockDirectory(HistoryResolution resolution) {
+        return directory.resolve(resolution.name().toLowerCase());
+    }
+
+    private static LocalDate day(long timestamp) {
+        return LocalDate.ofEpochDay(Math.floorDiv(timestamp, HistoryResolution.DAY.millis()));
+    }
+
+    private static long start(LocalDate day) {
+        return day.atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+    }
+
+    private static LocalDate min(LocalDate first, LocalDate second) {
+        return first == null ? second : second == null || first.isBefore(second) ? first : second;
+    }
+
+    private static LocalDate max(LocalDate first, LocalDate second) {
+        return first == null ? second : second == null || first.isAfter(second) ? first : second;
+    }
+
+    private static void merge(SortedMap<SeriesKey, List<HistoryBucket>> series, SortedMap<SeriesKey, List<HistoryBucket>> more) {
+        more.forEach((key, buckets) -> series.computeIfAbsent(key, k -> new ArrayList<>()).addAll(buckets));
+    }
+
+    // the changes of an open day and the log they are recorded in
+    private static final class Head {
+        private final LocalDate day;
+        private final FileChannel log;
+        private final Map<SeriesKey, SeriesBuffer> series = new HashMap<>();
+
+        private Head(LocalDate day, FileChannel log) {
+            this.day = day;
+            this.log = log;
+        }
+
+        SeriesBuffer series(SeriesKey key) {
+            return series.computeIfAbsent(key, k -> new SeriesBuffer());
+        }
+
+        SortedMap<SeriesKey, List<HistoryBucket>> buckets(HistoryResolution resolution) {
+            return buckets(new SeriesKey(Long.MIN_VALUE, Long.MIN_VALUE), new SeriesKey(Long.MAX_VALUE, Long.MAX_VALUE),
+                    resolution, Long.MIN_VALUE, Long.MAX_VALUE);
+        }
+
+        SortedMap<SeriesKey, List<HistoryBucket>> buckets(SeriesKey fromKey, SeriesKey toKey, HistoryResolution resolution, long from, long to) {
+            SortedMap<SeriesKey, List<HistoryBucket>> buckets = new TreeMap<>();
+            series.forEach((key, buffer) -> {
+                if (key.compareTo(fromKey) >= 0 && key.compareTo(toKey) <= 0) {
+                    List<HistoryBucket> selected = buffer.buckets(resolution, from, to);
+                    if (!selected.isEmpty()) {
+                        buckets.put(key, selected);
+                    }
+                }
+            });
+            return buckets;
+        }
+    }
+}
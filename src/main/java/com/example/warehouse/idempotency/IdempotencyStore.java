@@ -0,0 +1,192 @@
+package com.example.warehouse.idempotency;
+
+import com.example.warehouse.dto.MaterialInventoryDto;
+import com.example.warehouse.exceptions.IdempotencyKeyInUseException;
+import com.example.warehouse.exceptions.IdempotencyKeyReusedException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Remembers the responses of mutations sent with an {@code Idempotency-Key} header, so a client retrying after a
+ * timeout gets the original response instead of changing the inventory twice.
+ * <p>
+ * Completed keys live in a bounded in-memory cache and expire a fixed time after the first request, a lookup is
+ * a single hash map read. Keys of requests still running are kept apart and never evicted, so the size bound
+ * can't let a duplicate through while the first request runs. A key can only be replayed for the same request, reusing it for another one is rejected, and a
+ * duplicate arriving while the first request is still running is rejected as in use. Failed requests are not
+ * remembered, their retries run again. With {@code warehouse.idempotency.file} set, completed keys survive a
+ * restart of this instance.
+ */
+@Component
+public class IdempotencyStore {
+
+    private static final Logger log = LoggerFactory.getLogger(IdempotencyStore.class);
+
+    private final Cache<String, Entry> entries;
+    private final Map<String, Entry> inFlight = new ConcurrentHashMap<>();
+    private final Duration ttl;
+    private final ObjectMapper objectMapper;
+    private final Path file;
+
+    public IdempotencyStore(ObjectMapper objectMapper,
+                            MeterRegistry meterRegistry,
+                            @Value("${warehouse.idempotency.maximum-size:100000}") long maximumSize,
+                            @Value("${warehouse.idempotency.ttl:24h}") Duration ttl,
+                            @Value("${warehouse.idempotency.file:}") String file) {
+        this.objectMapper = objectMapper;
+        this.ttl = ttl;
+        this.file = file.isBlank() ? null : Path.of(file);
+        this.entries = CaffeineCacheMetrics.monitor(meterRegistry, Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new Expiry<String, Entry>() {
+                    // counted from the first request, even for entries restored from the file
+                    @Override
+                    public long expireAfterCreate(String key, Entry entry, long currentTime) {
+                        return Math.max(0, entry.createdAtMillis + ttl.toMillis() - System.currentTimeMillis()) * 1_000_000;
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, Entry entry, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, Entry entry, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build(), "idempotencyKeys");
+    }
+
+    /**
+     * Runs the request unless the key was seen before, in which case the response of the first request is returned.
+     *
+     * @param key         the client's idempotency key, null to just run the request
+     * @param fingerprint identifies the request, e.g. its method, path and parameters
+     */
+    public ResponseEntity<MaterialInventoryDto> execute(String key, String fingerprint, Supplier<ResponseEntity<MaterialInventoryDto>> request) {
+        if (key == null) {
+            return request.get();
+        }
+        Entry completed = entries.getIfPresent(key);
+        if (completed != null) {
+            return replay(key, fingerprint, completed);
+        }
+        Entry entry = new Entry(fingerprint, System.currentTimeMillis(), 0, null);
+        Entry existing = inFlight.putIfAbsent(key, entry);
+        if (existing != null) {
+            return replay(key, fingerprint, existing);
+        }
+        // the first request may have completed between the two lookups
+        completed = entries.getIfPresent(key);
+        if (completed != null) {
+            inFlight.remove(key, entry);
+            return replay(key, fingerprint, completed);
+        }
+        ResponseEntity<MaterialInventoryDto> response;
+        try {
+            response = request.get();
+        } catch (RuntimeException e) {
+            inFlight.remove(key, entry);
+            throw e;
+        }
+        entry.complete(response.getStatusCode().value(), response.getBody());
+        // cached before it leaves the in-flight map, a duplicate always finds it in one of them
+        entries.put(key, entry);
+        inFlight.remove(key, entry);
+        return response;
+    }
+
+    private ResponseEntity<MaterialInventoryDto> replay(String key, String fingerprint, Entry existing) {
+        if (!existing.fingerprint.equals(fingerprint)) {
+            throw new IdempotencyKeyReusedException("Idempotency key " + key + " was already used for another request");
+        }
+        if (existing.status == 0) {
+            throw new IdempotencyKeyInUseException("A request with idempotency key " + key + " is still being processed");
+        }
+        return ResponseEntity.status(existing.status).header("Idempotent-Replayed", "true").body(existing.body);
+    }
+
+    @PostConstruct
+    public void restore() {
+        if (file == null || !Files.exists(file)) {
+            return;
+        }
+        try {
+            List<StoredEntry> stored = objectMapper.readValue(file.toFile(), new TypeReference<>() {
+            });
+            long oldest = System.currentTimeMillis() - ttl.toMillis();
+            stored.stream()
+                    .filter(entry -> entry.createdAtMillis() > oldest)
+                    .forEach(entry -> entries.put(entry.key(), new Entry(entry.fingerprint(), entry.createdAtMillis(), entry.status(), entry.body())));
+            log.info("Restored {} idempotency keys from {}", entries.estimatedSize(), file);
+        } catch (IOException e) {
+            log.warn("Could not restore idempotency keys from {}, starting without them", file, e);
+        }
+    }
+
+    @PreDestroy
+    public void persist() {
+        if (file == null) {
+            return;
+        }
+        List<StoredEntry> stored = new ArrayList<>();
+        entries.asMap().forEach((key, entry) ->
+                stored.add(new StoredEntry(key, entry.fingerprint, entry.createdAtMillis, entry.status, entry.body)));
+        try {
+            Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+            objectMapper.writeValue(temporary.toFile(), stored);
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Could not save idempotency keys to {}", file, e);
+        }
+    }
+
+    private static final class Entry {
+        private final String fingerprint;
+        private final long createdAtMillis;
+        //0 while the first request is running
+        private volatile int status;
+        private volatile MaterialInventoryDto body;
+
+        private Entry(String fingerprint, long createdAtMillis, int status, MaterialInventoryDto body) {
+            this.fingerprint = fingerprint;
+            this.createdAtMillis = createdAtMillis;
+            this.status = status;
+            this.body = body;
+        }
+
+        // body first, a reader that sees the status also sees the body
+        private void complete(int status, MaterialInventoryDto body) {
+            this.body = body;
+            this.status = status;
+        }
+    }
+
+    record StoredEntry(String key, String fingerprint, long createdAtMillis, int status, MaterialInventoryDto body) {
+    }
+}
@@ -0,0 +1,174 @@
+package com.example.warehouse.journal;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Audit journal of stock movements: numbered, memory-mapped segments of fixed-width {@link JournalRecord}s.
+ * <p>
+ * When a segment fills up the journal rolls over to the next one and writes a {@link JournalSnapshot} of every
+ * quantity after the full segment. Only the newest {@code retainedSegments} full segments are kept, older ones are
+ * folded into the snapshots and deleted, so quantities can be replayed for any point in time back to the oldest
+ * snapshot kept. Snapshot 0 is the baseline the journal started from.
+ * <p>
+ * Records of one warehouse and material type are in the order they were made. Appending is thread safe, reading
+ * works on a directory another process is appending to.
+ */
+public class InventoryJournal implements AutoCloseable {
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final int retainedSegments;
+    private JournalSegment current;
+    private long currentNumber;
+
+    public InventoryJournal(Path directory, int segmentBytes, int retainedSegments) throws IOException {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.retainedSegments = Math.max(1, retainedSegments);
+        Files.createDirectories(directory);
+    }
+
+    public synchronized void append(JournalRecord record) throws IOException {
+        if (current == null) {
+            currentNumber = Math.max(1, numbers(SEGMENT_PREFIX).stream().mapToLong(Long::longValue).max().orElse(1));
+            current = JournalSegment.openForAppend(file(SEGMENT_PREFIX, currentNumber), segmentBytes);
+        }
+        if (!current.append(record)) {
+            long full = currentNumber;
+            current.close();
+            current = JournalSegment.openForAppend(file(SEGMENT_PREFIX, ++currentNumber), segmentBytes);
+            current.append(record);
+            snapshotAfter(full);
+            compact();
+        }
+    }
+
+    public synchronized void force() {
+        if (current != null) {
+            current.force();
+        }
+    }
+
+    public boolean isEmpty() throws IOException {
+        return numbers(SEGMENT_PREFIX).isEmpty() && numbers(SNAPSHOT_PREFIX).isEmpty();
+    }
+
+    /**
+     * Records the quantities the journal starts from, before its first record.
+     */
+    public void writeBaseline(Map<StockPosition, Integer> quantities, Instant takenAt) throws IOException {
+        new JournalSnapshot(0, takenAt.toEpochMilli(), new HashMap<>(quantities)).write(file(SNAPSHOT_PREFIX, 0));
+    }
+
+    /**
+     * The quantity of every (warehouse, material type) pair holding stock at the given point in time.
+     *
+     * @throws IllegalStateException if the journal was compacted past that point in time
+     */
+    public Map<StockPosition, Integer> quantitiesAt(Instant pointInTime) throws IOException {
+        long timestamp = pointInTime.toEpochMilli();
+        JournalSnapshot start = null;
+        List<Long> snapshots = numbers(SNAPSHOT_PREFIX);
+        for (int i = snapshots.size() - 1; i >= 0 && start == null; i--) {
+            JournalSnapshot snapshot = JournalSnapshot.read(file(SNAPSHOT_PREFIX, snapshots.get(i)), snapshots.get(i));
+            if (snapshot.maxTimestamp() <= timestamp) {
+                start = snapshot;
+            }
+        }
+        if (start == null) {
+            if (!numbers(SEGMENT_PREFIX).contains(1L)) {
+                throw new IllegalStateException("The journal in " + directory + " was compacted past " + pointInTime);
+            }
+            start = JournalSnapshot.empty();
+        }
+        JournalSnapshot state = start;
+        for (long segment : numbers(SEGMENT_PREFIX)) {
+            if (segment > start.segment()) {
+                JournalSegment.read(file(SEGMENT_PREFIX, segment), record -> {
+                    if (record.timestamp() <= timestamp) {
+                        state.apply(record);
+                    }
+                });
+            }
+        }
+        return state.quantities();
+    }
+
+    /**
+     * @return the oldest point in time quantities can be replayed for, or empty if the journal has no records yet
+     */
+    public Optional<Instant> earliestPointInTime() throws IOException {
+        List<Long> snapshots = numbers(SNAPSHOT_PREFIX);
+        if (!snapshots.isEmpty() && !numbers(SEGMENT_PREFIX).contains(1L)) {
+            return Optional.of(Instant.ofEpochMilli(JournalSnapshot.read(file(SNAPSHOT_PREFIX, snapshots.get(0)), snapshots.get(0)).maxTimestamp()));
+        }
+        return numbers(SEGMENT_PREFIX).isEmpty() ? Optional.empty() : Optional.of(Instant.EPOCH);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (current != null) {
+            current.close();
+            current = null;
+        }
+    }
+
+    private void snapshotAfter(long segment) throws IOException {
+        // start from the newest snapshot before the segment and replay what came after it
+        JournalSnapshot state = JournalSnapshot.empty();
+        for (long snapshot : numbers(SNAPSHOT_PREFIX)) {
+            if (snapshot < segment) {
+                state = JournalSnapshot.read(file(SNAPSHOT_PREFIX, snapshot), snapshot);
+            }
+        }
+        for (long number : numbers(SEGMENT_PREFIX)) {
+            if (number > state.segment() && number <= segment) {
+                JournalSegment.read(file(SEGMENT_PREFIX, number), state::apply);
+            }
+        }
+        state.advanceTo(segment).write(file(SNAPSHOT_PREFIX, segment));
+    }
+
+    // keeps the newest full segments and the snapshot right before them, everything older is in that snapshot
+    private void compact() throws IOException {
+        long oldestRetained = currentNumber - retainedSegments;
+        if (oldestRetained <= 1) {
+            return;
+        }
+        for (long segment : numbers(SEGMENT_PREFIX)) {
+            if (segment < oldestRetained) {
+                Files.deleteIfExists(file(SEGMENT_PREFIX, segment));
+            }
+        }
+        for (long snapshot : numbers(SNAPSHOT_PREFIX)) {
+            if (snapshot < oldestRetained - 1) {
+                Files.deleteIfExists(file(SNAPSHOT_PREFIX, snapshot));
+            }
+        }
+    }
+
+    private Path file(String prefix, long number) {
+        return directory.resolve(String.format("%s%020d.dat", prefix, number));
+    }
+
+    private List<Long> numbers(String prefix) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.startsWith(prefix) && name.endsWith(".dat"))
+                    .map(name -> Long.parseLong(name.substring(prefix.length(), name.length() - 4)))
+                    .sorted()
+                    .toList();
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.warehouse.journal;
+
+import com.example.warehouse.outbox.InventoryChangeRecord;
+import com.example.warehouse.outbox.InventoryEventSink;
+import com.example.warehouse.shard.ShardDirectory;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Appends every committed inventory change to the {@link InventoryJournal}, outside of the database.
+ * <p>
+ * A new journal starts from a baseline snapshot of {@code material_inventory}. Records are replayed by quantity
+ * after the change, so a change delivered twice by the outbox or already contained in the baseline does no harm.
+ * Appends only go to the page cache, the journal is forced to disk on a schedule.
+ */
+@Component
+@ConditionalOnProperty(name = "warehouse.journal.enabled", havingValue = "true", matchIfMissing = true)
+public class InventoryJournalSink implements InventoryEventSink {
+
+    private static final Logger log = LoggerFactory.getLogger(InventoryJournalSink.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectProvider<ShardDirectory> shardDirectory;
+    private final Path directory;
+    private final int segmentBytes;
+    private final int retainedSegments;
+    private InventoryJournal journal;
+
+    public InventoryJournalSink(JdbcTemplate jdbcTemplate,
+                                ObjectProvider<ShardDirectory> shardDirectory,
+                                @Value("${warehouse.journal.dir:inventory-journal}") Path directory,
+                                @Value("${warehouse.journal.segment-size-bytes:16777216}") int segmentBytes,
+                                @Value("${warehouse.journal.retained-segments:16}") int retainedSegments) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.shardDirectory = shardDirectory;
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.retainedSegments = retainedSegments;
+    }
+
+    @Override
+    public void deliver(List<InventoryChangeRecord> records) throws IOException {
+        InventoryJournal journal = journal();
+        for (InventoryChangeRecord record : records) {
+            journal.append(new JournalRecord(record.sequence(), record.occurredAt().toEpochMilli(), record.warehouseId(),
+                    record.materialTypeId(), record.changeQuantity(), record.quantityAfter(), record.action()));
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${warehouse.journal.force-interval-ms:1000}")
+    public void force() {
+        InventoryJournal journal;
+        synchronized (this) {
+            journal = this.journal;
+        }
+        if (journal != null) {
+            journal.force();
+        }
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        if (journal != null) {
+            journal.force();
+            journal.close();
+        }
+    }
+
+    //opened on the first delivery, when the schema is guaranteed to exist
+    private synchronized InventoryJournal journal() throws IOException {
+        if (journal == null) {
+            InventoryJournal opened = new InventoryJournal(directory, segmentBytes, retainedSegments);
+            if (opened.isEmpty()) {
+                Instant takenAt = Instant.now();
+                Map<StockPosition, Integer> quantities = new HashMap<>();
+                RowCallbackHandler snapshot = row -> {
+                    quantities.put(new StockPosition(row.getLong(1), row.getLong(2)), row.getInt(3));
+                };
+                String sql = "select warehouse_id, material_type_id, quantity from material_inventory where quantity > 0";
+                //with sharding the baseline is taken from every shard, not just the one being dispatched
+                ShardDirectory sharding = shardDirectory.getIfAvailable();
+                if (sharding == null) {
+                    jdbcTemplate.query(sql, snapshot);
+                } else {
+                    sharding.queryInventory(sql, "warehouse_id", snapshot);
+                }
+                opened.writeBaseline(quantities, takenAt);
+                log.info("Started inventory journal in {} from {} stock positions", directory.toAbsolutePath(), quantities.size());
+            }
+            journal = opened;
+        }
+        return journal;
+    }
+}
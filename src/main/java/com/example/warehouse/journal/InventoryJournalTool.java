@@ -0,0 +1,183 @@
+package com.example.warehouse.journal;
+
+import com.example.warehouse.entity.InventoryIdGenerator;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Command line tool working on an inventory journal directory, without starting the application:
+ * <pre>
+ * replay --dir DIR [--at INSTANT] [--apply --url JDBC_URL --user USER --password PASSWORD]
+ *     prints the quantities at the point in time (default now), with --apply makes material_inventory match them
+ * verify --dir DIR --url JDBC_URL --user USER --password PASSWORD
+ *     compares material_inventory with the journal, exits with 1 if they differ
+ * </pre>
+ * Run it from the application jar with
+ * {@code java -cp warehouse.jar -Dloader.main=com.example.warehouse.journal.InventoryJournalTool
+ * org.springframework.boot.loader.launch.PropertiesLauncher verify --dir ...}.
+ * Changes still waiting in the outbox are not in the journal yet, verify while no inventory is being changed.
+ */
+public final class InventoryJournalTool {
+
+    private InventoryJournalTool() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            usage();
+            return;
+        }
+        Map<String, String> options = options(args);
+        String command = args[0];
+        int status = switch (command) {
+            case "replay" -> replay(options);
+            case "verify" -> verify(options);
+            default -> {
+                usage();
+                yield 2;
+            }
+        };
+        System.exit(status);
+    }
+
+    static int replay(Map<String, String> options) throws Exception {
+        Instant at = options.containsKey("at") ? Instant.parse(options.get("at")) : Instant.now();
+        Map<StockPosition, Integer> quantities = quantitiesAt(options, at);
+        if (!options.containsKey("apply")) {
+            new TreeSet<>(quantities.keySet()).forEach(position -> System.out.printf("%d\t%d\t%d%n",
+                    position.warehouseId(), position.materialTypeId(), quantities.get(position)));
+            return 0;
+        }
+        try (Connection connection = connect(options)) {
+            apply(connection, quantities);
+        }
+        System.out.printf("material_inventory set to %d stock positions as of %s%n", quantities.size(), at);
+        return 0;
+    }
+
+    static int verify(Map<String, String> options) throws Exception {
+        Map<StockPosition, Integer> expected = quantitiesAt(options, Instant.now());
+        Map<StockPosition, Integer> actual;
+        try (Connection connection = connect(options)) {
+            actual = liveQuantities(connection);
+        }
+        TreeSet<StockPosition> positions = new TreeSet<>(expected.keySet());
+        positions.addAll(actual.keySet());
+        int mismatches = 0;
+        for (StockPosition position : positions) {
+            int journal = expected.getOrDefault(position, 0);
+            int live = actual.getOrDefault(position, 0);
+            if (journal != live) {
+                mismatches++;
+                System.out.printf("warehouse %d, material type %d: journal %d, material_inventory %d%n",
+                        position.warehouseId(), position.materialTypeId(), journal, live);
+            }
+        }
+        System.out.printf("%d stock positions checked, %d mismatches%n", positions.size(), mismatches);
+        return mismatches == 0 ? 0 : 1;
+    }
+
+    static Map<StockPosition, Integer> liveQuantities(Connection connection) throws SQLException {
+        Map<StockPosition, Integer> quantities = new HashMap<>();
+        try (PreparedStatement statement = connection.prepareStatement(
+                "select warehouse_id, material_type_id, quantity from material_inventory where quantity > 0");
+             ResultSet rows = statement.executeQuery()) {
+            while (rows.next()) {
+                quantities.put(new StockPosition(rows.getLong(1), rows.getLong(2)), rows.getInt(3));
+            }
+        }
+        return quantities;
+    }
+
+    //one transaction: update what exists, insert what is missing, delete what the journal has no stock for
+    static void apply(Connection connection, Map<StockPosition, Integer> quantities) throws SQLException {
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try (PreparedStatement update = connection.prepareStatement(
+                "update material_inventory set quantity = ? where warehouse_id = ? and material_type_id = ?");
+             PreparedStatement insert = connection.prepareStatement(
+                     "insert into material_inventory (inventory_id, warehouse_id, material_type_id, quantity) values (?, ?, ?, ?)");
+             PreparedStatement delete = connection.prepareStatement(
+                     "delete from material_inventory where warehouse_id = ? and material_type_id = ?")) {
+            Map<StockPosition, Integer> live = liveQuantities(connection);
+            InventoryIdGenerator idGenerator = new InventoryIdGenerator();
+            for (Map.Entry<StockPosition, Integer> entry : quantities.entrySet()) {
+                StockPosition position = entry.getKey();
+                if (live.containsKey(position)) {
+                    update.setInt(1, entry.getValue());
+                    update.setLong(2, position.warehouseId());
+                    update.setLong(3, position.materialTypeId());
+                    update.addBatch();
+                } else {
+                    insert.setLong(1, (Long) idGenerator.generate(null, null));
+                    insert.setLong(2, position.warehouseId());
+                    insert.setLong(3, position.materialTypeId());
+                    insert.setInt(4, entry.getValue());
+                    insert.addBatch();
+                }
+            }
+            for (StockPosition position : live.keySet()) {
+                if (!quantities.containsKey(position)) {
+                    delete.setLong(1, position.warehouseId());
+                    delete.setLong(2, position.materialTypeId());
+                    delete.addBatch();
+                }
+            }
+            update.executeBatch();
+            insert.executeBatch();
+            delete.executeBatch();
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    private static Map<StockPosition, Integer> quantitiesAt(Map<String, String> options, Instant at) throws Exception {
+        try (InventoryJournal journal = new InventoryJournal(Path.of(required(options, "dir")), 0, Integer.MAX_VALUE)) {
+            return journal.quantitiesAt(at);
+        }
+    }
+
+    private static Connection connect(Map<String, String> options) throws SQLException {
+        return DriverManager.getConnection(required(options, "url"), options.get("user"), options.get("password"));
+    }
+
+    private static String required(Map<String, String> options, String name) {
+        String value = options.get(name);
+        if (value == null) {
+            throw new IllegalArgumentException("Missing --" + name);
+        }
+        return value;
+    }
+
+    private static Map<String, String> options(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 1; i < args.length; i++) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument " + args[i]);
+            }
+            String name = args[i].substring(2);
+            boolean hasValue = i + 1 < args.length && !args[i + 1].startsWith("--");
+            options.put(name, hasValue ? args[++i] : "");
+        }
+        return options;
+    }
+
+    private static void usage() {
+        System.err.println("""
+                usage: InventoryJournalTool replay --dir DIR [--at INSTANT] [--apply --url JDBC_URL --user USER --password PASSWORD]
+                       InventoryJournalTool verify --dir DIR --url JDBC_URL --user USER --password PASSWORD""");
+    }
+}
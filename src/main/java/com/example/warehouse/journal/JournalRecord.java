@@ -0,0 +1,68 @@
+package com.example.warehouse.journal;
+
+import com.example.warehouse.event.InventoryAction;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+/**
+ * One stock movement in the audit journal, stored as a fixed-width record of {@value #SIZE} bytes:
+ * <pre>
+ *  0  sequence        long   outbox sequence of the change, never 0
+ *  8  timestamp       long   epoch milliseconds the change was made
+ * 16  warehouseId     long
+ * 24  materialTypeId  long
+ * 32  changeQuantity  int
+ * 36  quantityAfter   int
+ * 40  action          byte   {@link InventoryAction#code()}
+ * 41  padding         3 bytes
+ * 44  crc             int    CRC32 of bytes 0-43
+ * </pre>
+ * A zero sequence marks the unwritten rest of a segment, a wrong CRC a record torn by a crash.
+ */
+public record JournalRecord(long sequence,
+                            long timestamp,
+                            long warehouseId,
+                            long materialTypeId,
+                            int changeQuantity,
+                            int quantityAfter,
+                            InventoryAction action) {
+
+    public static final int SIZE = 48;
+    private static final int CRC_OFFSET = 44;
+
+    void writeTo(ByteBuffer buffer, int offset) {
+        buffer.putLong(offset, sequence);
+        buffer.putLong(offset + 8, timestamp);
+        buffer.putLong(offset + 16, warehouseId);
+        buffer.putLong(offset + 24, materialTypeId);
+        buffer.putInt(offset + 32, changeQuantity);
+        buffer.putInt(offset + 36, quantityAfter);
+        buffer.put(offset + 40, action.code());
+        buffer.put(offset + 41, (byte) 0);
+        buffer.putShort(offset + 42, (short) 0);
+        buffer.putInt(offset + CRC_OFFSET, crc(buffer, offset));
+    }
+
+    /**
+     * @return the record at the offset, or null if none was (completely) written there
+     */
+    static JournalRecord readFrom(ByteBuffer buffer, int offset) {
+        long sequence = buffer.getLong(offset);
+        if (sequence == 0 || buffer.getInt(offset + CRC_OFFSET) != crc(buffer, offset)) {
+            return null;
+        }
+        return new JournalRecord(sequence, buffer.getLong(offset + 8), buffer.getLong(offset + 16), buffer.getLong(offset + 24),
+                buffer.getInt(offset + 32), buffer.getInt(offset + 36), InventoryAction.fromCode(buffer.get(offset + 40)));
+    }
+
+    public StockPosition position() {
+        return new StockPosition(warehouseId, materialTypeId);
+    }
+
+    private static int crc(ByteBuffer buffer, int offset) {
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice(offset, CRC_OFFSET));
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.warehouse.journal;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+/**
+ * A journal segment file of fixed size, mapped into memory. Appending is a put into the mapping, the operating
+ * system writes it out, so the records survive a crash of the process; {@link #force()} also survives a power loss.
+ */
+class JournalSegment implements AutoCloseable {
+
+    private final Path path;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private int position;
+
+    private JournalSegment(Path path, MappedByteBuffer buffer) {
+        this.path = path;
+        this.buffer = buffer;
+        this.capacity = buffer.capacity() / JournalRecord.SIZE * JournalRecord.SIZE;
+        // continue after the last complete record
+        while (position < capacity && JournalRecord.readFrom(buffer, position) != null) {
+            position += JournalRecord.SIZE;
+        }
+    }
+
+    static JournalSegment openForAppend(Path path, int sizeBytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = Math.max(channel.size(), sizeBytes);
+            return new JournalSegment(path, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+        }
+    }
+
+    /**
+     * Hands every complete record of the segment file to the consumer, in the order they were appended.
+     */
+    static void read(Path path, Consumer<JournalRecord> consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            for (int offset = 0; offset + JournalRecord.SIZE <= buffer.capacity(); offset += JournalRecord.SIZE) {
+                JournalRecord record = JournalRecord.readFrom(buffer, offset);
+                if (record == null) {
+                    return;
+                }
+                consumer.accept(record);
+            }
+        }
+    }
+
+    Path path() {
+        return path;
+    }
+
+    /**
+     * @return false if the segment is full
+     */
+    boolean append(JournalRecord record) {
+        if (position + JournalRecord.SIZE > capacity) {
+            return false;
+        }
+        record.writeTo(buffer, position);
+        position += JournalRecord.SIZE;
+        return true;
+    }
+
+    void force() {
+        buffer.force();
+    }
+
+    @Override
+    public void close() {
+        // the mapping itself is released by the garbage collector, Java has no way to unmap it earlier
+        force();
+    }
+}
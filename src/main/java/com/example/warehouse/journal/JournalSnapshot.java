@@ -0,0 +1,98 @@
+package com.example.warehouse.journal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The quantity of every (warehouse, material type) pair after a given segment, so replays don't have to start at
+ * the first segment. Stored as a header (magic, version, newest timestamp, entry count) followed by fixed-width
+ * entries of warehouse id, material type id and quantity.
+ * A snapshot is only a valid start for points in time at or after the newest change it includes.
+ */
+final class JournalSnapshot {
+
+    private static final int MAGIC = 0x494E5653;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 20;
+    private static final int ENTRY_SIZE = 20;
+
+    private final long segment;
+    private final Map<StockPosition, Integer> quantities;
+    private long maxTimestamp;
+
+    JournalSnapshot(long segment, long maxTimestamp, Map<StockPosition, Integer> quantities) {
+        this.segment = segment;
+        this.maxTimestamp = maxTimestamp;
+        this.quantities = quantities;
+    }
+
+    static JournalSnapshot empty() {
+        return new JournalSnapshot(0, Long.MIN_VALUE, new HashMap<>());
+    }
+
+    long segment() {
+        return segment;
+    }
+
+    long maxTimestamp() {
+        return maxTimestamp;
+    }
+
+    Map<StockPosition, Integer> quantities() {
+        return quantities;
+    }
+
+    //the same quantities, as the state after a later segment
+    JournalSnapshot advanceTo(long laterSegment) {
+        return new JournalSnapshot(laterSegment, maxTimestamp, quantities);
+    }
+
+    void write(Path path) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + quantities.size() * ENTRY_SIZE);
+        buffer.putInt(MAGIC).putInt(VERSION).putLong(maxTimestamp).putInt(quantities.size());
+        quantities.forEach((position, quantity) -> buffer.putLong(position.warehouseId()).putLong(position.materialTypeId()).putInt(quantity));
+        buffer.flip();
+        // written next to the target and moved in place, a crash never leaves half a snapshot behind
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static JournalSnapshot read(Path path, long segment) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IOException("Not an inventory journal snapshot: " + path);
+            }
+            long maxTimestamp = buffer.getLong();
+            int count = buffer.getInt();
+            Map<StockPosition, Integer> quantities = new HashMap<>(count * 2);
+            for (int i = 0; i < count; i++) {
+                quantities.put(new StockPosition(buffer.getLong(), buffer.getLong()), buffer.getInt());
+            }
+            return new JournalSnapshot(segment, maxTimestamp, quantities);
+        }
+    }
+
+    void apply(JournalRecord record) {
+        maxTimestamp = Math.max(maxTimestamp, record.timestamp());
+        if (record.quantityAfter() == 0) {
+            quantities.remove(record.position());
+        } else {
+            quantities.put(record.position(), record.quantityAfter());
+        }
+    }
+}
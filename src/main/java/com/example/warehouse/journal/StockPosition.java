@@ -0,0 +1,17 @@
+package com.example.warehouse.journal;
+
+import java.util.Comparator;
+
+/**
+ * A (warehouse, material type) pair, the key of replayed quantities.
+ */
+public record StockPosition(long warehouseId, long materialTypeId) implements Comparable<StockPosition> {
+
+    private static final Comparator<StockPosition> ORDER = Comparator.comparingLong(StockPosition::warehouseId)
+            .thenComparingLong(StockPosition::materialTypeId);
+
+    @Override
+    public int compareTo(StockPosition other) {
+        return ORDER.compare(this, other);
+    }
+}
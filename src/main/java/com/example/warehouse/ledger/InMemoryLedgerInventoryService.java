@@ -0,0 +1,598 @@
+package com.example.warehouse.ledger;
+
+import com.example.warehouse.cache.MaterialTypeSnapshot;
+import com.example.warehouse.cache.ReferenceDataCache;
+import com.example.warehouse.cache.WarehouseSnapshot;
+import com.example.warehouse.dto.InventoryBatchLineDto;
+import com.example.warehouse.dto.InventoryBatchLineResultDto;
+import com.example.warehouse.dto.InventoryBatchResultDto;
+import com.example.warehouse.dto.MaterialInventoryDto;
+import com.example.warehouse.dto.MaterialInventoryPageDto;
+import com.example.warehouse.dto.TransferLegDto;
+import com.example.warehouse.dto.TransferOrderResultDto;
+import com.example.warehouse.dto.WarehouseDto;
+import com.example.warehouse.dto.WarehouseMaterialsDto;
+import com.example.warehouse.entity.MaterialInventoryEntity;
+import com.example.warehouse.event.InventoryAction;
+import com.example.warehouse.exceptions.*;
+import com.example.warehouse.mapper.InventoryMapper;
+import com.example.warehouse.metrics.VersionConflictMetrics;
+import com.example.warehouse.repository.MaterialInventoryRow;
+import com.example.warehouse.reservation.ReservationBook;
+import com.example.warehouse.service.InventoryKey;
+import com.example.warehouse.service.InventoryVersion;
+import com.example.warehouse.service.MaterialInventoryService;
+import com.example.warehouse.service.TransferPlan;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.id.IdentifierGenerator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Inventory engine that keeps every quantity in memory and writes to the database behind the caller's back.
+ * <p>
+ * Warehouses are hashed onto lock-striped {@link LedgerShard}s, so an add or remove is a journal append and a
+ * primitive map update under one shard lock, validated against the cached material types. Every
+ * {@code warehouse.ledger.flush-interval-ms} the changed rows are written to material_inventory in one batch,
+ * coalesced to their latest quantity, together with the change events for the outbox. Until then the changes are
+ * only in the local journal, which is replayed on startup.
+ * <p>
+ * The ledger owns the inventory: only one instance may run it against a database, and nothing else may write
+ * material_inventory while it does. Select it with {@code warehouse.inventory.engine=ledger}.
+ */
+@Service
+@ConditionalOnProperty(name = "warehouse.inventory.engine", havingValue = "ledger")
+public class InMemoryLedgerInventoryService implements MaterialInventoryService {
+
+    private static final Logger log = LoggerFactory.getLogger(InMemoryLedgerInventoryService.class);
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    private final LedgerShard[] shards;
+    private final LedgerJournal journal;
+    private final LedgerWriter writer;
+    private final JdbcTemplate jdbcTemplate;
+    private final ReferenceDataCache referenceDataCache;
+    private final InventoryMapper inventoryMapper;
+    private final ReservationBook reservationBook;
+    private final VersionConflictMetrics versionConflictMetrics;
+    private final IdentifierGenerator inventoryIdGenerator;
+    //a batch whose write failed, written again together with the next one
+    private LedgerBatch unwritten;
+
+    public InMemoryLedgerInventoryService(JdbcTemplate jdbcTemplate,
+                                          PlatformTransactionManager transactionManager,
+                                          ApplicationEventPublisher publisher,
+                                          EntityManagerFactory entityManagerFactory,
+                                          ReferenceDataCache referenceDataCache,
+                                          InventoryMapper inventoryMapper,
+                                          ReservationBook reservationBook,
+                                          VersionConflictMetrics versionConflictMetrics,
+                                          @Value("${warehouse.ledger.shards:16}") int shardCount,
+                                          @Value("${warehouse.ledger.journal-dir:ledger-journal}") Path journalDirectory) {
+        this.shards = new LedgerShard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new LedgerShard(1024);
+        }
+        this.journal = new LedgerJournal(journalDirectory);
+        this.writer = new LedgerWriter(jdbcTemplate, transactionManager, publisher, this);
+        this.jdbcTemplate = jdbcTemplate;
+        this.referenceDataCache = referenceDataCache;
+        this.inventoryMapper = inventoryMapper;
+        this.reservationBook = reservationBook;
+        this.versionConflictMetrics = versionConflictMetrics;
+        // the same generator Hibernate uses for material_inventory, it doesn't need a session
+        this.inventoryIdGenerator = (IdentifierGenerator) entityManagerFactory.unwrap(SessionFactoryImplementor.class)
+                .getMappingMetamodel().getEntityDescriptor(MaterialInventoryEntity.class).getGenerator();
+    }
+
+    //loads the database, then replays what the journal holds beyond it and writes that back right away.
+    //segments up to the checkpoint were committed but not deleted, their changes are in the database already
+    @PostConstruct
+    void recover() throws IOException {
+        jdbcTemplate.query("SELECT inventory_id, warehouse_id, material_type_id, quantity, version FROM material_inventory", row -> {
+            long warehouseId = row.getLong(2);
+            shardFor(warehouseId).load(LedgerShard.key(warehouseId, row.getLong(3)), row.getLong(1), row.getInt(4), row.getLong(5));
+        });
+        long writtenUpTo = jdbcTemplate.query("SELECT segment FROM ledger_checkpoint WHERE id = 1",
+                rows -> rows.next() ? rows.getLong(1) : 0L);
+        List<Path> segments = journal.replay(writtenUpTo, change -> {
+            LedgerShard shard = shardFor(change.warehouseId());
+            long key = LedgerShard.key(change.warehouseId(), change.materialTypeId());
+            int slot = shard.find(key);
+            shard.apply(slot < 0 ? shard.insert(key, change.inventoryId()) : slot, change);
+        });
+        if (!segments.isEmpty()) {
+            LedgerBatch batch = drain();
+            segments.forEach(batch::addSegment);
+            log.info("Replaying {} ledger changes from {} journal segments", batch.changes().size(), segments.size());
+            writer.write(batch);
+            journal.delete(segments);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${warehouse.ledger.flush-interval-ms:100}")
+    public synchronized void flush() {
+        LedgerBatch batch;
+        try {
+            batch = drain();
+        } catch (IOException e) {
+            log.warn("Rotating the ledger journal failed, will retry", e);
+            return;
+        }
+        if (unwritten != null) {
+            unwritten.merge(batch);
+            batch = unwritten;
+        }
+        if (batch.isEmpty() && batch.segments().isEmpty()) {
+            return;
+        }
+        try {
+            writer.write(batch);
+            unwritten = null;
+        } catch (RuntimeException ex) {
+            unwritten = batch;
+            log.warn("Writing {} ledger changes failed, will retry", batch.changes().size(), ex);
+            return;
+        }
+        try {
+            journal.delete(batch.segments());
+        } catch (IOException e) {
+            // the checkpoint committed with the batch keeps a restart from replaying these segments
+            log.warn("Deleting written ledger journal segments failed", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws IOException {
+        flush();
+        journal.close();
+    }
+
+    // all shards at once, so the rotated segment holds exactly the changes drained into the batch
+    private LedgerBatch drain() throws IOException {
+        LedgerBatch batch = new LedgerBatch();
+        for (LedgerShard shard : shards) {
+            shard.lock().lock();
+        }
+        try {
+            Path segment = journal.rotate();
+            if (segment != null) {
+                batch.addSegment(segment);
+            }
+            for (LedgerShard shard : shards) {
+                shard.drainTo(batch);
+            }
+        } finally {
+            for (int i = shards.length - 1; i >= 0; i--) {
+                shards[i].lock().unlock();
+            }
+        }
+        return batch;
+    }
+
+    //Method for adding material to warehouse
+    @Override
+    public MaterialInventoryDto addMaterialToWarehouse(Long warehouseId, Long materialTypeId, int quantityToAdd) {
+        return addMaterial(warehouseId, materialTypeId, quantityToAdd, 0, null);
+    }
+
+    //Method for adding material to warehouse, if its inventory is still in the version the client has seen
+    @Override
+    public MaterialInventoryDto addMaterialToWarehouse(Long warehouseId, Long materialTypeId, int quantityToAdd, InventoryVersion expectedVersion) {
+        return addMaterial(warehouseId, materialTypeId, quantityToAdd, 0, expectedVersion);
+    }
+
+    //Method for adding material to warehouse into capacity reserved for it
+    @Override
+    public MaterialInventoryDto addReservedMaterial(Long warehouseId, Long materialTypeId, int quantityToAdd, int reservedQuantity) {
+        return addMaterial(warehouseId, materialTypeId, quantityToAdd, reservedQuantity, null);
+    }
+
+    private MaterialInventoryDto addMaterial(Long warehouseId, Long materialTypeId, int quantityToAdd, int reservedQuantity, InventoryVersion expectedVersion) {
+        WarehouseSnapshot warehouse = validateWarehouseExists(warehouseId);
+        MaterialTypeSnapshot materialType = validateMaterialTypeExists(materialTypeId);
+        LedgerShard shard = shardFor(warehouseId);
+        Stock stock;
+        shard.lock().lock();
+        try {
+            stock = add(shard, warehouseId, materialType, quantityToAdd, reservedQuantity, expectedVersion);
+        } finally {
+            shard.lock().unlock();
+        }
+        return toDto(warehouse, materialType, stock);
+    }
+
+    //Method for removing material from warehouse
+    @Override
+    public MaterialInventoryDto removeMaterialFromWarehouse(Long warehouseId, Long materialTypeId, int quantityToRemove) {
+        return removeMaterial(warehouseId, materialTypeId, quantityToRemove, 0, null);
+    }
+
+    //Method for removing material from warehouse, if its inventory is still in the version the client has seen
+    @Override
+    public MaterialInventoryDto removeMaterialFromWarehouse(Long warehouseId, Long materialTypeId, int quantityToRemove, InventoryVersion expectedVersion) {
+        return removeMaterial(warehouseId, materialTypeId, quantityToRemove, 0, expectedVersion);
+    }
+
+    //Method for removing material held for a pick from warehouse
+    @Override
+    public MaterialInventoryDto removeHeldMaterial(Long warehouseId, Long materialTypeId, int quantityToRemove, int heldQuantity) {
+        return removeMaterial(warehouseId, materialTypeId, quantityToRemove, heldQuantity, null);
+    }
+
+    private MaterialInventoryDto removeMaterial(Long warehouseId, Long materialTypeId, int quantityToRemove, int heldQuantity, InventoryVersion expectedVersion) {
+        WarehouseSnapshot warehouse = validateWarehouseExists(warehouseId);
+        MaterialTypeSnapshot materialType = validateMaterialTypeExists(materialTypeId);
+        LedgerShard shard = shardFor(warehouseId);
+        Stock stock;
+        shard.lock().lock();
+        try {
+            stock = remove(shard, warehouseId, materialTypeId, quantityToRemove, heldQuantity, expectedVersion);
+        } finally {
+            shard.lock().unlock();
+        }
+        // an emptied inventory is removed, like in the database engine
+        return stock.quantity() == 0 ? null : toDto(warehouse, materialType, stock);
+    }
+
+    //method for moving material from one warehouse to another
+    @Override
+    public MaterialInventoryDto moveMaterialBetweenWarehouses(Long sourceWarehouseId, Long destinationWarehouseId, Long materialTypeId, int quantityToMove) {
+        return moveMaterialBetweenWarehouses(sourceWarehouseId, destinationWarehouseId, materialTypeId, quantityToMove, null);
+    }
+
+    //method for moving material from one warehouse to another, if the source inventory is still in the version the client has seen
+    @Override
+    public MaterialInventoryDto moveMaterialBetweenWarehouses(Long sourceWarehouseId, Long destinationWarehouseId, Long materialTypeId, int quantityToMove,
+                                                              InventoryVersion expectedSourceVersion) {
+        referenceDataCache.findWarehouse(sourceWarehouseId)
+                .orElseThrow(() -> new WarehouseNotFoundException("Source warehouse not found with ID: " + sourceWarehouseId));
+        WarehouseSnapshot destinationWarehouse = referenceDataCache.findWarehouse(destinationWarehouseId)
+                .orElseThrow(() -> new WarehouseNotFoundException("Destination warehouse not found with ID: " + destinationWarehouseId));
+        MaterialTypeSnapshot materialType = referenceDataCache.findMaterialType(materialTypeId)
+                .orElseThrow(() -> new MaterialTypeNotFoundException("Material type not found with ID: " + materialTypeId));
+        return toDto(destinationWarehouse, materialType, move(sourceWarehouseId, destinationWarehouseId, materialType, quantityToMove, expectedSourceVersion));
+    }
+
+    private Stock add(LedgerShard shard, long warehouseId, MaterialTypeSnapshot materialType, int quantityToAdd, int reservedQuantity,
+                      InventoryVersion expectedVersion) {
+        long key = LedgerShard.key(warehouseId, materialType.id());
+        int slot = shard.find(key);
+        checkVersion(shard, slot, warehouseId, materialType.id(), expectedVersion);
+        long newQuantity = (long) quantityOf(shard, slot) + quantityToAdd;
+        if (newQuantity > materialType.maxCapacity()) {
+            throw new CapacityExceededException("Quantity " + newQuantity + " exceeds the maximum capacity for this material type: " + materialType.name());
+        }
+        reservationBook.checkCapacity(warehouseId, materialType, newQuantity, reservedQuantity);
+        if (slot < 0) {
+            slot = shard.insert(key, nextInventoryId());
+        }
+        LedgerChange change = change(warehouseId, materialType.id(), shard.inventoryId(slot), (int) newQuantity, quantityToAdd, InventoryAction.ADD);
+        journal.append(change);
+        shard.apply(slot, change);
+        return new Stock(change.inventoryId(), change.quantityAfter(), shard.version(slot));
+    }
+
+    private Stock remove(LedgerShard shard, long warehouseId, long materialTypeId, int quantityToRemove, int heldQuantity,
+                         InventoryVersion expectedVersion) {
+        int slot = shard.find(LedgerShard.key(warehouseId, materialTypeId));
+        checkVersion(shard, slot, warehouseId, materialTypeId, expectedVersion);
+        int available = quantityOf(shard, slot);
+        if (available == 0) {
+            throw new InventoryNotFoundException("Inventory record not found for warehouse ID: " + warehouseId + " and material type ID: " + materialTypeId);
+        }
+        if (available < quantityToRemove) {
+            throw new InsufficientInventoryException("Attempting to remove " + quantityToRemove + " units, but only " + available + " units are available.");
+        }
+        reservationBook.checkAvailable(warehouseId, materialTypeId, available - quantityToRemove, heldQuantity);
+        LedgerChange change = change(warehouseId, materialTypeId, shard.inventoryId(slot), available - quantityToRemove, -quantityToRemove, InventoryAction.REMOVE);
+        journal.append(change);
+        shard.apply(slot, change);
+        return new Stock(change.inventoryId(), change.quantityAfter(), shard.version(slot));
+    }
+
+    private Stock move(long sourceWarehouseId, long destinationWarehouseId, MaterialTypeSnapshot materialType, int quantityToMove,
+                       InventoryVersion expectedSourceVersion) {
+        if (sourceWarehouseId == destinationWarehouseId) {
+            throw new IllegalArgumentException("Source and destination warehouse must differ, got " + sourceWarehouseId);
+        }
+        long materialTypeId = materialType.id();
+        LedgerShard source = shardFor(sourceWarehouseId);
+        LedgerShard destination = shardFor(destinationWarehouseId);
+        // shards are always locked in index order, so two opposite moves can't deadlock
+        LedgerShard first = shardIndex(sourceWarehouseId) <= shardIndex(destinationWarehouseId) ? source : destination;
+        LedgerShard second = first == source ? destination : source;
+        first.lock().lock();
+        second.lock().lock();
+        try {
+            int sourceSlot = source.find(LedgerShard.key(sourceWarehouseId, materialTypeId));
+            checkVersion(source, sourceSlot, sourceWarehouseId, materialTypeId, expectedSourceVersion);
+            int available = quantityOf(source, sourceSlot);
+            if (available == 0) {
+                throw new InventoryNotFoundException("Material not found in source warehouse with ID: " + sourceWarehouseId + " and Material Type ID: " + materialTypeId);
+            }
+            if (available < quantityToMove) {
+                throw new InsufficientInventoryException("Insufficient material in source warehouse. Attempting to move " + quantityToMove + " units, but only " + available + " units are available.");
+            }
+            long destinationKey = LedgerShard.key(destinationWarehouseId, materialTypeId);
+            int destinationSlot = destination.find(destinationKey);
+            long destinationNewQuantity = (long) quantityOf(destination, destinationSlot) + quantityToMove;
+            if (destinationNewQuantity > materialType.maxCapacity()) {
+                throw new CapacityExceededException("Destination warehouse cannot accommodate the materials due to max capacity constraints. Max capacity is " + materialType.maxCapacity() + ", attempted new quantity is " + destinationNewQuantity + ".");
+            }
+            reservationBook.checkAvailable(sourceWarehouseId, materialTypeId, available - quantityToMove, 0);
+            reservationBook.checkCapacity(destinationWarehouseId, materialType, destinationNewQuantity, 0);
+            if (destinationSlot < 0) {
+                destinationSlot = destination.insert(destinationKey, nextInventoryId());
+                // both warehouses can be on the same shard, which the insert may have grown
+                sourceSlot = source.find(LedgerShard.key(sourceWarehouseId, materialTypeId));
+            }
+            LedgerChange sourceChange = change(sourceWarehouseId, materialTypeId, source.inventoryId(sourceSlot), available - quantityToMove, -quantityToMove, InventoryAction.MOVE_FROM);
+            LedgerChange destinationChange = change(destinationWarehouseId, materialTypeId, destination.inventoryId(destinationSlot), (int) destinationNewQuantity, quantityToMove, InventoryAction.MOVE_TO);
+            // one journal record, a crash can't keep one side of the move without the other
+            journal.append(sourceChange, destinationChange);
+            source.apply(sourceSlot, sourceChange);
+            destination.apply(destinationSlot, destinationChange);
+            return new Stock(destinationChange.inventoryId(), destinationChange.quantityAfter(), destination.version(destinationSlot));
+        } finally {
+            second.lock().unlock();
+            first.lock().unlock();
+        }
+    }
+
+    //method for moving many materials between many warehouses as one unit
+    @Override
+    public TransferOrderResultDto applyTransferOrder(List<TransferLegDto> legs) {
+        TransferPlan plan = TransferPlan.of(legs, referenceDataCache);
+        // every shard the order touches, locked in index order like the two of a move
+        SortedSet<Integer> shardIndexes = new TreeSet<>();
+        plan.warehouseIds().forEach(warehouseId -> shardIndexes.add(shardIndex(warehouseId)));
+        List<LedgerShard> locked = new ArrayList<>(shardIndexes.size());
+        try {
+            for (int index : shardIndexes) {
+                shards[index].lock().lock();
+                locked.add(shards[index]);
+            }
+            // every inventory is checked before any of them changes
+            int[] quantitiesAfter = new int[plan.deltas().size()];
+            int i = 0;
+            for (InventoryKey key : plan.deltas().keySet()) {
+                LedgerShard shard = shardFor(key.warehouseId());
+                int quantity = quantityOf(shard, shard.find(LedgerShard.key(key.warehouseId(), key.materialTypeId())));
+                quantitiesAfter[i++] = plan.quantityAfter(key, quantity, reservationBook);
+            }
+
+            LedgerChange[] changes = new LedgerChange[quantitiesAfter.length];
+            int emptied = 0;
+            i = 0;
+            for (var delta : plan.deltas().entrySet()) {
+                InventoryKey key = delta.getKey();
+                LedgerShard shard = shardFor(key.warehouseId());
+                long ledgerKey = LedgerShard.key(key.warehouseId(), key.materialTypeId());
+                int slot = shard.find(ledgerKey);
+                if (slot < 0) {
+                    slot = shard.insert(ledgerKey, nextInventoryId());
+                }
+                changes[i] = change(key.warehouseId(), key.materialTypeId(), shard.inventoryId(slot), quantitiesAfter[i], delta.getValue().intValue(), InventoryAction.TRANSFER);
+                if (quantitiesAfter[i] == 0) {
+                    emptied++;
+                }
+                i++;
+            }
+            // one journal record, a crash keeps either the whole order or none of it
+            journal.append(changes);
+            // looked up again, an insert above may have grown a shard and moved its slots
+            for (LedgerChange change : changes) {
+                LedgerShard shard = shardFor(change.warehouseId());
+                shard.apply(shard.find(LedgerShard.key(change.warehouseId(), change.materialTypeId())), change);
+            }
+            return plan.toResult(emptied);
+        } finally {
+            for (int j = locked.size() - 1; j >= 0; j--) {
+                locked.get(j).lock().unlock();
+            }
+        }
+    }
+
+    // changes are applied under the shard lock, so reading under it sees all of them
+    @Override
+    public int getSettledQuantity(Long warehouseId, Long materialTypeId) {
+        LedgerShard shard = shardFor(warehouseId);
+        shard.lock().lock();
+        try {
+            return quantityOf(shard, shard.find(LedgerShard.key(warehouseId, materialTypeId)));
+        } finally {
+            shard.lock().unlock();
+        }
+    }
+
+    //method for getting a warehouse without its materials
+    @Override
+    public WarehouseDto getWarehouse(Long warehouseId) {
+        return inventoryMapper.toWarehouseDto(validateWarehouseExists(warehouseId));
+    }
+
+    //method for getting warehouse (its name and materials  there)
+    @Override
+    public WarehouseMaterialsDto getWarehouseMaterials(Long warehouseId) {
+        WarehouseSnapshot warehouse = validateWarehouseExists(warehouseId);
+        return inventoryMapper.toWarehouseMaterialsDto(warehouse, toDtos(warehouse, rowsOf(warehouseId)));
+    }
+
+    @Override
+    public List<MaterialInventoryDto> getMaterialsByWarehouseId(Long warehouseId) {
+        // inventory can only exist for an existing warehouse, an unknown one simply has no materials
+        Optional<WarehouseSnapshot> warehouse = referenceDataCache.findWarehouse(warehouseId);
+        return warehouse.map(snapshot -> toDtos(snapshot, rowsOf(warehouseId))).orElseGet(List::of);
+    }
+
+    //method for getting one page of a warehouse's materials, ordered by inventory id
+    @Override
+    public MaterialInventoryPageDto getWarehouseMaterialsPage(Long warehouseId, Long afterInventoryId, int limit) {
+        WarehouseSnapshot warehouse = validateWarehouseExists(warehouseId);
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        long after = afterInventoryId == null ? Long.MIN_VALUE : afterInventoryId;
+        List<MaterialInventoryRow> rows = rowsOf(warehouseId).stream()
+                .filter(row -> row.inventoryId() > after)
+                .limit(pageSize + 1L)
+                .collect(Collectors.toList());
+        boolean hasNext = rows.size() > pageSize;
+        if (hasNext) {
+            rows = rows.subList(0, pageSize);
+        }
+        Long nextCursor = hasNext ? rows.get(rows.size() - 1).inventoryId() : null;
+        return new MaterialInventoryPageDto(warehouse.id(), warehouse.name(), toDtos(warehouse, rows), nextCursor);
+    }
+
+    //method for handing every material of a warehouse to the consumer
+    @Override
+    public void streamWarehouseMaterials(Long warehouseId, Consumer<MaterialInventoryDto> consumer) {
+        WarehouseSnapshot warehouse = validateWarehouseExists(warehouseId);
+        toDtos(warehouse, rowsOf(warehouseId)).forEach(consumer);
+    }
+
+    //method for applying many add/remove/move lines, each line on its own like in the database engine
+    @Override
+    public InventoryBatchResultDto applyInventoryBatch(List<InventoryBatchLineDto> lines) {
+        List<InventoryBatchLineResultDto> results = new ArrayList<>(lines.size());
+        int failed = 0;
+        for (int i = 0; i < lines.size(); i++) {
+            try {
+                results.add(new InventoryBatchLineResultDto(i, true, null, applyBatchLine(lines.get(i))));
+            } catch (WarehouseNotFoundException | MaterialTypeNotFoundException | InventoryNotFoundException
+                     | InsufficientInventoryException | CapacityExceededException | IllegalArgumentException ex) {
+                failed++;
+                results.add(new InventoryBatchLineResultDto(i, false, ex.getMessage(), null));
+            }
+        }
+        return new InventoryBatchResultDto(lines.size() - failed, failed, results);
+    }
+
+    private MaterialInventoryDto applyBatchLine(InventoryBatchLineDto line) {
+        if (line.getOperation() == null) {
+            throw new IllegalArgumentException("Operation must be specified");
+        }
+        if (line.getQuantity() <= 0) {
+            throw new IllegalArgumentException("Quantity must be positive, got " + line.getQuantity());
+        }
+        WarehouseSnapshot warehouse = validateWarehouseExists(line.getWarehouseId());
+        MaterialTypeSnapshot materialType = validateMaterialTypeExists(line.getMaterialTypeId());
+        switch (line.getOperation()) {
+            case ADD -> {
+                return addMaterialToWarehouse(warehouse.id(), materialType.id(), line.getQuantity());
+            }
+            case REMOVE -> {
+                return removeMaterialFromWarehouse(warehouse.id(), materialType.id(), line.getQuantity());
+            }
+            case MOVE -> {
+                WarehouseSnapshot destination = referenceDataCache.findWarehouse(line.getDestinationWarehouseId())
+                        .orElseThrow(() -> new WarehouseNotFoundException("Destination warehouse not found with ID: " + line.getDestinationWarehouseId()));
+                return toDto(destination, materialType, move(warehouse.id(), destination.id(), materialType, line.getQuantity(), null));
+            }
+            default -> throw new IllegalArgumentException("Unsupported operation: " + line.getOperation());
+        }
+    }
+
+    // the rows are copied under the shard lock, the material types are looked up after releasing it
+    private List<MaterialInventoryRow> rowsOf(Long warehouseId) {
+        LedgerShard shard = shardFor(warehouseId);
+        List<Stock> stocks = new ArrayList<>();
+        List<Long> materialTypeIds = new ArrayList<>();
+        shard.lock().lock();
+        try {
+            for (int slot : shard.slotsOf(warehouseId)) {
+                stocks.add(new Stock(shard.inventoryId(slot), shard.quantity(slot), shard.version(slot)));
+                materialTypeIds.add(LedgerShard.materialTypeId(shard.key(slot)));
+            }
+        } finally {
+            shard.lock().unlock();
+        }
+        List<MaterialInventoryRow> rows = new ArrayList<>(stocks.size());
+        for (int i = 0; i < stocks.size(); i++) {
+            Stock stock = stocks.get(i);
+            referenceDataCache.findMaterialType(materialTypeIds.get(i))
+                    .ifPresent(materialType -> rows.add(toRow(materialType, stock)));
+        }
+        rows.sort(Comparator.comparing(MaterialInventoryRow::inventoryId));
+        return rows;
+    }
+
+    private List<MaterialInventoryDto> toDtos(WarehouseSnapshot warehouse, List<MaterialInventoryRow> rows) {
+        WarehouseDto warehouseDto = inventoryMapper.toWarehouseDto(warehouse);
+        return rows.stream()
+                .map(row -> inventoryMapper.toMaterialInventoryDto(row, warehouseDto))
+                .collect(Collectors.toList());
+    }
+
+    private MaterialInventoryDto toDto(WarehouseSnapshot warehouse, MaterialTypeSnapshot materialType, Stock stock) {
+        return inventoryMapper.toMaterialInventoryDto(toRow(materialType, stock), inventoryMapper.toWarehouseDto(warehouse));
+    }
+
+    private static MaterialInventoryRow toRow(MaterialTypeSnapshot materialType, Stock stock) {
+        return new MaterialInventoryRow(stock.inventoryId(), materialType.id(), materialType.name(),
+                materialType.description(), materialType.icon(), materialType.maxCapacity(), stock.quantity(), stock.version());
+    }
+
+    private static LedgerChange change(long warehouseId, long materialTypeId, long inventoryId, int quantityAfter, int changeQuantity, InventoryAction action) {
+        return new LedgerChange(warehouseId, materialTypeId, inventoryId, quantityAfter, changeQuantity, action, System.currentTimeMillis());
+    }
+
+    // an emptied row counts as absent, like the deleted row of the database engine
+    private void checkVersion(LedgerShard shard, int slot, long warehouseId, long materialTypeId, InventoryVersion expectedVersion) {
+        if (expectedVersion != null && (quantityOf(shard, slot) == 0 || !expectedVersion.matches(shard.inventoryId(slot), shard.version(slot)))) {
+            versionConflictMetrics.rejected(materialTypeId);
+            throw new InventoryVersionMismatchException("Inventory for warehouse ID: " + warehouseId + " and material type ID: " + materialTypeId
+                    + " is no longer in version " + expectedVersion.version() + " of inventory ID: " + expectedVersion.inventoryId());
+        }
+    }
+
+    private static int quantityOf(LedgerShard shard, int slot) {
+        return slot < 0 ? 0 : shard.quantity(slot);
+    }
+
+    private long nextInventoryId() {
+        return (Long) inventoryIdGenerator.generate(null, null);
+    }
+
+    private int shardIndex(long warehouseId) {
+        return Math.floorMod(Long.hashCode(warehouseId), shards.length);
+    }
+
+    private LedgerShard shardFor(long warehouseId) {
+        return shards[shardIndex(warehouseId)];
+    }
+
+    private WarehouseSnapshot validateWarehouseExists(Long warehouseId) {
+        return referenceDataCache.findWarehouse(warehouseId)
+                .orElseThrow(() -> new WarehouseNotFoundException("Warehouse not found with ID: " + warehouseId));
+    }
+
+    private MaterialTypeSnapshot validateMaterialTypeExists(Long materialTypeId) {
+        return referenceDataCache.findMaterialType(materialTypeId)
+                .orElseThrow(() -> new MaterialTypeNotFoundException("Material Type not found with ID: " + materialTypeId));
+    }
+
+    private record Stock(long inventoryId, int quantity, long version) {
+    }
+}
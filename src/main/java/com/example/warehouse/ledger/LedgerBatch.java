@@ -0,0 +1,56 @@
+package com.example.warehouse.ledger;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Everything waiting to be written to the database: the latest state of each changed row, the changes to publish,
+ * and the journal segments that can be deleted once it is committed. A batch that failed to write is merged into the
+ * next one, newer row states replace older ones.
+ */
+final class LedgerBatch {
+
+    record Row(long warehouseId, long materialTypeId, long inventoryId, int quantity, long version) {
+    }
+
+    private final Map<Long, Row> rows = new LinkedHashMap<>();
+    private final List<LedgerChange> changes = new ArrayList<>();
+    private final List<Path> segments = new ArrayList<>();
+
+    void putRow(long key, long inventoryId, int quantity, long version) {
+        rows.put(key, new Row(LedgerShard.warehouseId(key), LedgerShard.materialTypeId(key), inventoryId, quantity, version));
+    }
+
+    void addChanges(List<LedgerChange> newChanges) {
+        changes.addAll(newChanges);
+    }
+
+    void addSegment(Path segment) {
+        segments.add(segment);
+    }
+
+    void merge(LedgerBatch newer) {
+        rows.putAll(newer.rows);
+        changes.addAll(newer.changes);
+        segments.addAll(newer.segments);
+    }
+
+    boolean isEmpty() {
+        return rows.isEmpty() && changes.isEmpty();
+    }
+
+    Iterable<Row> rows() {
+        return rows.values();
+    }
+
+    List<LedgerChange> changes() {
+        return changes;
+    }
+
+    List<Path> segments() {
+        return segments;
+    }
+}
@@ -0,0 +1,16 @@
+package com.example.warehouse.ledger;
+
+import com.example.warehouse.event.InventoryAction;
+
+/**
+ * One applied inventory change: enough to rebuild the row (inventory id and resulting quantity) and to publish the
+ * change event once it is persisted.
+ */
+record LedgerChange(long warehouseId,
+                    long materialTypeId,
+                    long inventoryId,
+                    int quantityAfter,
+                    int changeQuantity,
+                    InventoryAction action,
+                    long timestamp) {
+}
@@ -0,0 +1,205 @@
+package com.example.warehouse.ledger;
+
+import com.example.warehouse.event.InventoryAction;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only local log of ledger changes, split into numbered segments.
+ * <p>
+ * A change is written before it is applied in memory, with a plain write so it survives a crash of the process once
+ * the call returns; {@link #force()} additionally flushes it to the disk. The writer rotates to a new segment whenever
+ * it takes a batch for the database, so a segment can be deleted as soon as the batch holding its changes is
+ * committed. The batch also records the number of its newest segment in ledger_checkpoint, in the same transaction,
+ * so a segment left behind by a crash between the commit and the delete is recognised as written and not replayed.
+ * <p>
+ * Each record is its length, the changes written together (both sides of a move), and a CRC32 of them, so a record
+ * torn by a crash ends the replay instead of applying half a move.
+ */
+class LedgerJournal implements AutoCloseable {
+
+    private static final String PREFIX = "journal-";
+    private static final String SUFFIX = ".log";
+    // a record holds at most Short.MAX_VALUE changes of 41 bytes, enough for a whole transfer order
+    private static final int MAX_RECORD_LENGTH = 2 * 1024 * 1024;
+
+    private final Path directory;
+    private long segmentNumber;
+    private Path segment;
+    private FileChannel channel;
+
+    LedgerJournal(Path directory) {
+        this.directory = directory;
+        try {
+            Files.createDirectories(directory);
+            segmentNumber = segments().stream().mapToLong(LedgerJournal::number).max().orElse(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can't open ledger journal in " + directory, e);
+        }
+    }
+
+    /**
+     * Reads the changes of all existing segments beyond the written ones, oldest first. Must be called before the
+     * first append.
+     *
+     * @param writtenUpTo number of the newest segment whose batch is committed, 0 if there is none
+     * @return all existing segments, to be deleted once their changes are persisted
+     */
+    List<Path> replay(long writtenUpTo, Consumer<LedgerChange> consumer) throws IOException {
+        // numbers are never reused, or a new segment could pass for one already written
+        segmentNumber = Math.max(segmentNumber, writtenUpTo);
+        List<Path> segments = segments();
+        for (Path existing : segments) {
+            if (number(existing) <= writtenUpTo) {
+                continue;
+            }
+            try (DataInputStream in = new DataInputStream(Files.newInputStream(existing))) {
+                List<LedgerChange> changes;
+                while ((changes = read(in)) != null) {
+                    changes.forEach(consumer);
+                }
+            }
+        }
+        return segments;
+    }
+
+    synchronized void append(LedgerChange... changes) {
+        try {
+            if (channel == null) {
+                open();
+            }
+            ByteBuffer record = encode(changes);
+            while (record.hasRemaining()) {
+                channel.write(record);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can't write to ledger journal " + segment, e);
+        }
+    }
+
+    /**
+     * Closes the current segment, later changes go to a new one.
+     *
+     * @return the closed segment, or null if nothing was written since the last rotation
+     */
+    synchronized Path rotate() throws IOException {
+        if (channel == null) {
+            return null;
+        }
+        channel.force(false);
+        channel.close();
+        channel = null;
+        return segment;
+    }
+
+    synchronized void force() throws IOException {
+        if (channel != null) {
+            channel.force(false);
+        }
+    }
+
+    void delete(List<Path> segments) throws IOException {
+        for (Path closed : segments) {
+            Files.deleteIfExists(closed);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.force(false);
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private void open() throws IOException {
+        segment = directory.resolve(String.format("%s%020d%s", PREFIX, ++segmentNumber, SUFFIX));
+        channel = FileChannel.open(segment, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().startsWith(PREFIX) && file.getFileName().toString().endsWith(SUFFIX))
+                    .sorted((a, b) -> Long.compare(number(a), number(b)))
+                    .toList();
+        }
+    }
+
+    static long number(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+
+    private static ByteBuffer encode(LedgerChange... changes) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * changes.length);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeShort(changes.length);
+        for (LedgerChange change : changes) {
+            out.writeLong(change.warehouseId());
+            out.writeLong(change.materialTypeId());
+            out.writeLong(change.inventoryId());
+            out.writeInt(change.quantityAfter());
+            out.writeInt(change.changeQuantity());
+            out.writeLong(change.timestamp());
+            out.writeByte(change.action().code());
+        }
+        byte[] payload = bytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return ByteBuffer.allocate(payload.length + 8)
+                .putInt(payload.length)
+                .put(payload)
+                .putInt((int) crc.getValue())
+                .flip();
+    }
+
+    private static List<LedgerChange> read(DataInputStream in) throws IOException {
+        try {
+            int length = in.readInt();
+            if (length <= 0 || length > MAX_RECORD_LENGTH) {
+                return null;
+            }
+            byte[] payload = in.readNBytes(length);
+            if (payload.length < length) {
+                return null;
+            }
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            if (in.readInt() != (int) crc.getValue()) {
+                return null;
+            }
+            DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload));
+            int count = record.readShort();
+            List<LedgerChange> changes = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                long warehouseId = record.readLong();
+                long materialTypeId = record.readLong();
+                long inventoryId = record.readLong();
+                int quantityAfter = record.readInt();
+                int changeQuantity = record.readInt();
+                long timestamp = record.readLong();
+                changes.add(new LedgerChange(warehouseId, materialTypeId, inventoryId, quantityAfter, changeQuantity, InventoryAction.fromCode(record.readByte()), timestamp));
+            }
+            return changes;
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package com.example.warehouse.ledger;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Inventory of the warehouses hashed to one shard: an open addressing table from the packed
+ * (warehouseId, materialTypeId) key to inventory id, quantity and version, kept in primitive arrays.
+ * <p>
+ * Nothing here is thread safe, every access has to hold {@link #lock()}. Keys are never removed, a row that ran
+ * empty keeps its slot and its inventory id with quantity 0, and counts as absent. The slots of every warehouse are
+ * also indexed, so listing one warehouse doesn't walk the table.
+ */
+final class LedgerShard {
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private long[] keys;
+    private long[] inventoryIds;
+    private int[] quantities;
+    //the row's version column, one up with every applied change
+    private long[] versions;
+    private boolean[] used;
+    private boolean[] dirty;
+    private int size;
+    private int mask;
+    //the slots of every warehouse, in the order they were inserted
+    private Map<Long, WarehouseSlots> slotsByWarehouse;
+
+    //slots changed since the last drain, and the changes themselves in the order they were made
+    private int[] dirtySlots;
+    private int dirtyCount;
+    private final List<LedgerChange> changes = new ArrayList<>();
+
+    LedgerShard(int initialCapacity) {
+        allocate(Integer.highestOneBit(Math.max(16, initialCapacity * 2 - 1)) << 1);
+    }
+
+    ReentrantLock lock() {
+        return lock;
+    }
+
+    static long key(long warehouseId, long materialTypeId) {
+        if (warehouseId < 0 || warehouseId > 0xFFFFFFFFL || materialTypeId < 0 || materialTypeId > 0xFFFFFFFFL) {
+            throw new IllegalStateException("Ids must fit in 32 bits for the ledger, got warehouse ID: " + warehouseId
+                    + " and material type ID: " + materialTypeId);
+        }
+        return warehouseId << 32 | materialTypeId;
+    }
+
+    static long warehouseId(long key) {
+        return key >>> 32;
+    }
+
+    static long materialTypeId(long key) {
+        return key & 0xFFFFFFFFL;
+    }
+
+    /**
+     * @return the slot of the key, or -1 if it was never stored
+     */
+    int find(long key) {
+        int slot = hash(key) & mask;
+        while (used[slot]) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    int insert(long key, long inventoryId) {
+        if ((size + 1) * 2 > keys.length) {
+            grow();
+        }
+        int slot = hash(key) & mask;
+        while (used[slot]) {
+            slot = (slot + 1) & mask;
+        }
+        used[slot] = true;
+        keys[slot] = key;
+        inventoryIds[slot] = inventoryId;
+        size++;
+        slotsByWarehouse.computeIfAbsent(warehouseId(key), id -> new WarehouseSlots()).add(slot);
+        return slot;
+    }
+
+    long key(int slot) {
+        return keys[slot];
+    }
+
+    long inventoryId(int slot) {
+        return inventoryIds[slot];
+    }
+
+    int quantity(int slot) {
+        return quantities[slot];
+    }
+
+    long version(int slot) {
+        return versions[slot];
+    }
+
+    //for rows loaded from the database, they don't need to be written back
+    void load(long key, long inventoryId, int quantity, long version) {
+        int slot = find(key);
+        if (slot < 0) {
+            slot = insert(key, inventoryId);
+        }
+        quantities[slot] = quantity;
+        versions[slot] = version;
+    }
+
+    void apply(int slot, LedgerChange change) {
+        inventoryIds[slot] = change.inventoryId();
+        quantities[slot] = change.quantityAfter();
+        versions[slot]++;
+        if (!dirty[slot]) {
+            dirty[slot] = true;
+            if (dirtyCount == dirtySlots.length) {
+                dirtySlots = Arrays.copyOf(dirtySlots, dirtyCount * 2);
+            }
+            dirtySlots[dirtyCount++] = slot;
+        }
+        changes.add(change);
+    }
+
+    /**
+     * Hands the latest state of every changed row and all changes since the last drain to the batch.
+     */
+    void drainTo(LedgerBatch batch) {
+        for (int i = 0; i < dirtyCount; i++) {
+            int slot = dirtySlots[i];
+            dirty[slot] = false;
+            batch.putRow(keys[slot], inventoryIds[slot], quantities[slot], versions[slot]);
+        }
+        dirtyCount = 0;
+        batch.addChanges(changes);
+        changes.clear();
+    }
+
+    /**
+     * Slots of the warehouse holding stock.
+     */
+    List<Integer> slotsOf(long warehouseId) {
+        WarehouseSlots indexed = slotsByWarehouse.get(warehouseId);
+        if (indexed == null) {
+            return List.of();
+        }
+        List<Integer> slots = new ArrayList<>(indexed.count);
+        for (int i = 0; i < indexed.count; i++) {
+            int slot = indexed.slots[i];
+            if (quantities[slot] > 0) {
+                slots.add(slot);
+            }
+        }
+        return slots;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        long[] oldInventoryIds = inventoryIds;
+        int[] oldQuantities = quantities;
+        long[] oldVersions = versions;
+        boolean[] oldUsed = used;
+        boolean[] oldDirty = dirty;
+        //the re-inserts below rebuild the warehouse index for the new slots
+        allocate(oldKeys.length * 2);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldUsed[i]) {
+                int slot = insert(oldKeys[i], oldInventoryIds[i]);
+                quantities[slot] = oldQuantities[i];
+                versions[slot] = oldVersions[i];
+                if (oldDirty[i]) {
+                    dirty[slot] = true;
+                    dirtySlots[dirtyCount++] = slot;
+                }
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        inventoryIds = new long[capacity];
+        quantities = new int[capacity];
+        versions = new long[capacity];
+        used = new boolean[capacity];
+        dirty = new boolean[capacity];
+        dirtySlots = new int[Math.max(16, capacity / 4)];
+        dirtyCount = 0;
+        size = 0;
+        mask = capacity - 1;
+        slotsByWarehouse = new HashMap<>();
+    }
+
+    private static final class WarehouseSlots {
+        private int[] slots = new int[4];
+        private int count;
+
+        void add(int slot) {
+            if (count == slots.length) {
+                slots = Arrays.copyOf(slots, count * 2);
+            }
+            slots[count++] = slot;
+        }
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.warehouse.ledger;
+
+import com.example.warehouse.event.InventoryChangeEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes a {@link LedgerBatch} to material_inventory in one transaction: an upsert per row that still holds stock and
+ * a delete per row that ran empty, both as JDBC batches. The batch's change events are published inside the same
+ * transaction, so the outbox receives them exactly when the rows are committed, and the newest journal segment of
+ * the batch is recorded in ledger_checkpoint, so the segments are never replayed once the batch is committed.
+ */
+class LedgerWriter {
+
+    private static final String UPSERT = "INSERT INTO material_inventory (inventory_id, warehouse_id, material_type_id, quantity, version) " +
+            "VALUES (?, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE quantity = VALUES(quantity), version = VALUES(version)";
+    private static final String DELETE = "DELETE FROM material_inventory WHERE warehouse_id = ? AND material_type_id = ?";
+    private static final String UPDATE_CHECKPOINT = "UPDATE ledger_checkpoint SET segment = ? WHERE id = 1";
+    private static final String INSERT_CHECKPOINT = "INSERT INTO ledger_checkpoint (id, segment) VALUES (1, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher publisher;
+    private final Object source;
+
+    LedgerWriter(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                 ApplicationEventPublisher publisher, Object source) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.publisher = publisher;
+        this.source = source;
+    }
+
+    void write(LedgerBatch batch) {
+        List<Object[]> upserts = new ArrayList<>();
+        List<Object[]> deletes = new ArrayList<>();
+        for (LedgerBatch.Row row : batch.rows()) {
+            if (row.quantity() > 0) {
+                upserts.add(new Object[]{row.inventoryId(), row.warehouseId(), row.materialTypeId(), row.quantity(), row.version()});
+            } else {
+                deletes.add(new Object[]{row.warehouseId(), row.materialTypeId()});
+            }
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            if (!upserts.isEmpty()) {
+                jdbcTemplate.batchUpdate(UPSERT, upserts);
+            }
+            if (!deletes.isEmpty()) {
+                jdbcTemplate.batchUpdate(DELETE, deletes);
+            }
+            for (LedgerChange change : batch.changes()) {
+                publisher.publishEvent(new InventoryChangeEvent(source, change.warehouseId(), change.materialTypeId(),
+                        change.changeQuantity(), change.action(), change.quantityAfter(),
+                        Clock.fixed(Instant.ofEpochMilli(change.timestamp()), ZoneOffset.UTC)));
+            }
+            // a failed batch is merged into the next one, so the newest segment covers all older ones as well
+            long writtenUpTo = batch.segments().stream().mapToLong(LedgerJournal::number).max().orElse(0);
+            if (writtenUpTo > 0 && jdbcTemplate.update(UPDATE_CHECKPOINT, writtenUpTo) == 0) {
+                jdbcTemplate.update(INSERT_CHECKPOINT, writtenUpTo);
+            }
+        });
+    }
+}
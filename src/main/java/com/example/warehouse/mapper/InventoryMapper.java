@@ -0,0 +1,57 @@
+package com.example.warehouse.mapper;
+
+import com.example.warehouse.cache.MaterialTypeSnapshot;
+import com.example.warehouse.cache.WarehouseSnapshot;
+import com.example.warehouse.dto.MaterialInventoryDto;
+import com.example.warehouse.dto.MaterialTypeDto;
+import com.example.warehouse.dto.WarehouseDto;
+import com.example.warehouse.dto.WarehouseMaterialsDto;
+import com.example.warehouse.entity.MaterialInventoryEntity;
+import com.example.warehouse.entity.MaterialTypeEntity;
+import com.example.warehouse.entity.WarehouseEntity;
+import com.example.warehouse.repository.MaterialInventoryRow;
+import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
+import org.mapstruct.MappingConstants;
+
+import java.util.List;
+
+/**
+ * Entity to DTO mappings, generated at compile time by MapStruct.
+ * Inventory rows are mapped together with cached warehouse and material type snapshots instead of following the
+ * entity's LAZY associations, so mapping never initializes a Hibernate proxy.
+ */
+@Mapper(componentModel = MappingConstants.ComponentModel.SPRING)
+public interface InventoryMapper {
+
+    WarehouseDto toWarehouseDto(WarehouseSnapshot warehouse);
+
+    WarehouseDto toWarehouseDto(WarehouseEntity warehouse);
+
+    MaterialTypeDto toMaterialTypeDto(MaterialTypeSnapshot materialType);
+
+    MaterialTypeDto toMaterialTypeDto(MaterialTypeEntity materialType);
+
+    @Mapping(target = "inventoryId", source = "inventory.inventoryId")
+    @Mapping(target = "quantity", source = "inventory.quantity")
+    @Mapping(target = "version", source = "inventory.version")
+    @Mapping(target = "warehouse", source = "warehouse")
+    @Mapping(target = "materialType", source = "materialType")
+    MaterialInventoryDto toMaterialInventoryDto(MaterialInventoryEntity inventory, WarehouseSnapshot warehouse, MaterialTypeSnapshot materialType);
+
+    @Mapping(target = "inventoryId", source = "row.inventoryId")
+    @Mapping(target = "quantity", source = "row.quantity")
+    @Mapping(target = "version", source = "row.version")
+    @Mapping(target = "warehouse", source = "warehouse")
+    @Mapping(target = "materialType.id", source = "row.materialTypeId")
+    @Mapping(target = "materialType.name", source = "row.materialTypeName")
+    @Mapping(target = "materialType.description", source = "row.materialTypeDescription")
+    @Mapping(target = "materialType.icon", source = "row.materialTypeIcon")
+    @Mapping(target = "materialType.maxCapacity", source = "row.maxCapacity")
+    MaterialInventoryDto toMaterialInventoryDto(MaterialInventoryRow row, WarehouseDto warehouse);
+
+    @Mapping(target = "id", source = "warehouse.id")
+    @Mapping(target = "name", source = "warehouse.name")
+    @Mapping(target = "materials", source = "materials")
+    WarehouseMaterialsDto toWarehouseMaterialsDto(WarehouseSnapshot warehouse, List<MaterialInventoryDto> materials);
+}
@@ -0,0 +1,92 @@
+package com.example.warehouse.metrics;
+
+import com.example.warehouse.exceptions.CapacityExceededException;
+import com.example.warehouse.exceptions.InsufficientInventoryException;
+import com.example.warehouse.exceptions.InventoryNotFoundException;
+import com.example.warehouse.exceptions.InventoryVersionMismatchException;
+import com.example.warehouse.exceptions.MaterialTypeNotFoundException;
+import com.example.warehouse.exceptions.WarehouseNotFoundException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times every {@link com.example.warehouse.service.MaterialInventoryService} call as {@code inventory.operations},
+ * tagged with the method as {@code operation} and how it ended as {@code outcome}. The timer counts double as
+ * counters, e.g. of removals rejected for insufficient inventory. Timers are created once per operation and
+ * outcome, a call only pays for two clock reads and a map lookup.
+ */
+@Aspect
+@Component
+@ConditionalOnProperty(name = "warehouse.metrics.enabled", havingValue = "true", matchIfMissing = true)
+public class InventoryOperationMetrics {
+
+    enum Outcome {
+        SUCCESS, CAPACITY_EXCEEDED, INSUFFICIENT_INVENTORY, NOT_FOUND, PRECONDITION_FAILED, CONFLICT, ERROR;
+
+        final String tag = name().toLowerCase(Locale.ROOT);
+
+        static Outcome of(Throwable failure) {
+            if (failure instanceof CapacityExceededException) {
+                return CAPACITY_EXCEEDED;
+            }
+            if (failure instanceof InsufficientInventoryException) {
+                return INSUFFICIENT_INVENTORY;
+            }
+            if (failure instanceof WarehouseNotFoundException || failure instanceof MaterialTypeNotFoundException
+                    || failure instanceof InventoryNotFoundException) {
+                return NOT_FOUND;
+            }
+            if (failure instanceof InventoryVersionMismatchException) {
+                return PRECONDITION_FAILED;
+            }
+            return failure instanceof ConcurrencyFailureException ? CONFLICT : ERROR;
+        }
+    }
+
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Timer[]> timers = new ConcurrentHashMap<>();
+
+    public InventoryOperationMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Around("execution(* com.example.warehouse.service.MaterialInventoryService.*(..))")
+    public Object time(ProceedingJoinPoint call) throws Throwable {
+        long start = System.nanoTime();
+        Outcome outcome = Outcome.SUCCESS;
+        try {
+            return call.proceed();
+        } catch (Throwable failure) {
+            outcome = Outcome.of(failure);
+            throw failure;
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            timers.computeIfAbsent(call.getSignature().getName(), this::register)[outcome.ordinal()]
+                    .record(elapsed, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private Timer[] register(String operation) {
+        Outcome[] outcomes = Outcome.values();
+        Timer[] operationTimers = new Timer[outcomes.length];
+        for (Outcome outcome : outcomes) {
+            operationTimers[outcome.ordinal()] = Timer.builder("inventory.operations")
+                    .description("Inventory service calls")
+                    .tag("operation", operation)
+                    .tag("outcome", outcome.tag)
+                    .register(meterRegistry);
+        }
+        return operationTimers;
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.warehouse.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+/**
+ * Counts writes that found an inventory row in another version than expected as {@code inventory.version.conflicts},
+ * tagged with the material type and with {@code outcome}: {@code retried} when the service ran the write again on
+ * its own, {@code rejected} when the client's If-Match didn't match. The per material type rates point at hot rows.
+ */
+@Component
+public class VersionConflictMetrics {
+
+    private final MeterRegistry meterRegistry;
+
+    public VersionConflictMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    public void retried(Long materialTypeId) {
+        counter(materialTypeId, "retried").increment();
+    }
+
+    public void rejected(Long materialTypeId) {
+        counter(materialTypeId, "rejected").increment();
+    }
+
+    // the registry keeps one counter per tag combination, asking again just looks it up
+    private Counter counter(Long materialTypeId, String outcome) {
+        return meterRegistry.counter("inventory.version.conflicts", "materialType", String.valueOf(materialTypeId), "outcome", outcome);
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.warehouse.outbox;
+
+import com.example.warehouse.entity.InventoryOutboxEntity;
+import com.example.warehouse.event.InventoryAction;
+
+import java.time.Instant;
+
+/**
+ * A committed inventory change as handed to {@link InventoryEventSink}s.
+ * The sequence is the outbox id, it grows with the time the change was made.
+ */
+public record InventoryChangeRecord(long sequence,
+                                    Long warehouseId,
+                                    Long materialTypeId,
+                                    int changeQuantity,
+                                    InventoryAction action,
+                                    int quantityAfter,
+                                    Instant occurredAt) {
+
+    public static InventoryChangeRecord of(InventoryOutboxEntity outbox) {
+        return new InventoryChangeRecord(outbox.getId(), outbox.getWarehouseId(), outbox.getMaterialTypeId(),
+                outbox.getChangeQuantity(), outbox.getAction(), outbox.getQuantityAfter(), outbox.getCreatedAt());
+    }
+}
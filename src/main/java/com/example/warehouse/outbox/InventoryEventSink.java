@@ -0,0 +1,15 @@
+package com.example.warehouse.outbox;
+
+import java.util.List;
+
+/**
+ * Consumer of committed inventory changes, fed by the {@link InventoryOutboxDispatcher}.
+ * <p>
+ * Each call carries the changes of a single warehouse in the order they were made, and calls for the same warehouse
+ * never overlap. Delivery is at least once: if any sink fails, the records are offered to every sink again on the
+ * next poll, so sinks have to tolerate duplicates (the sequence identifies a record).
+ */
+public interface InventoryEventSink {
+
+    void deliver(List<InventoryChangeRecord> records) throws Exception;
+}
@@ -0,0 +1,220 @@
+package com.example.warehouse.outbox;
+
+import com.example.warehouse.entity.InventoryOutboxEntity;
+import com.example.warehouse.repository.InventoryOutboxRepository;
+import com.example.warehouse.shard.ShardContext;
+import com.example.warehouse.shard.ShardDirectory;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drains the inventory outbox to the registered {@link InventoryEventSink}s.
+ * <p>
+ * Rows are read oldest first in batches and grouped by warehouse. Every warehouse always goes to the same
+ * single threaded lane, so its changes reach the sinks in order while different warehouses are delivered in
+ * parallel. The next batch is only read once the current one is delivered, which keeps a slow sink from piling
+ * up work in memory: the backlog stays in the table and shows up as lag. Delivered rows are deleted, failed ones
+ * are retried later. A warehouse whose delivery failed is left out of the reads for a delay that doubles with every
+ * further failure, up to {@code warehouse.outbox.max-retry-delay-ms}, so its rows don't fill every batch and hold up
+ * the other warehouses.
+ * <p>
+ * Only one dispatcher may run against a database, turn it off on the other instances with
+ * {@code warehouse.outbox.dispatcher.enabled=false}. With sharding every shard has an outbox of its own, they are
+ * drained one after the other.
+ */
+@Component
+@ConditionalOnProperty(name = "warehouse.outbox.dispatcher.enabled", havingValue = "true", matchIfMissing = true)
+public class InventoryOutboxDispatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(InventoryOutboxDispatcher.class);
+
+    private final InventoryOutboxRepository outboxRepository;
+    private final List<InventoryEventSink> sinks;
+    private final ObjectProvider<ShardDirectory> shardDirectory;
+    private final int batchSize;
+    private final long retryDelayMillis;
+    private final long maxRetryDelayMillis;
+    private final ExecutorService[] lanes;
+    //warehouses whose last delivery failed, only touched by the polling thread
+    private final Map<Long, FailingWarehouse> failing = new HashMap<>();
+    //creation time of the oldest row not yet delivered, 0 when the outbox was empty at the last poll
+    private final AtomicLong oldestPendingMillis = new AtomicLong();
+    private final Counter deliveredCounter;
+    private final Counter failedCounter;
+    private final Timer batchTimer;
+
+    public InventoryOutboxDispatcher(InventoryOutboxRepository outboxRepository,
+                                     List<InventoryEventSink> sinks,
+                                     ObjectProvider<ShardDirectory> shardDirectory,
+                                     MeterRegistry meterRegistry,
+                                     @Value("${warehouse.outbox.batch-size:500}") int batchSize,
+                                     @Value("${warehouse.outbox.lanes:4}") int laneCount,
+                                     @Value("${warehouse.outbox.poll-interval-ms:200}") long retryDelayMillis,
+                                     @Value("${warehouse.outbox.max-retry-delay-ms:30000}") long maxRetryDelayMillis) {
+        this.outboxRepository = outboxRepository;
+        this.sinks = sinks;
+        this.shardDirectory = shardDirectory;
+        this.batchSize = batchSize;
+        this.retryDelayMillis = retryDelayMillis;
+        this.maxRetryDelayMillis = maxRetryDelayMillis;
+        this.lanes = new ExecutorService[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            int lane = i;
+            lanes[i] = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "outbox-lane-" + lane);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        this.deliveredCounter = Counter.builder("inventory.outbox.delivered")
+                .description("Inventory changes delivered to all sinks")
+                .register(meterRegistry);
+        this.failedCounter = Counter.builder("inventory.outbox.failed")
+                .description("Inventory changes whose delivery failed and will be retried")
+                .register(meterRegistry);
+        this.batchTimer = Timer.builder("inventory.outbox.batch")
+                .description("Time to deliver one outbox batch")
+                .register(meterRegistry);
+        TimeGauge.builder("inventory.outbox.lag", oldestPendingMillis, TimeUnit.MILLISECONDS, oldest -> {
+                    long millis = oldest.get();
+                    return millis == 0 ? 0 : Math.max(0, System.currentTimeMillis() - millis);
+                })
+                .description("Age of the oldest inventory change not yet delivered")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${warehouse.outbox.poll-interval-ms:200}")
+    public void dispatch() {
+        ShardDirectory directory = shardDirectory.getIfAvailable();
+        if (directory == null) {
+            drain();
+            return;
+        }
+        //the lag is that of the shard furthest behind
+        long oldest = 0;
+        for (int shard = 0; shard < directory.shardCount(); shard++) {
+            ShardContext.run(shard, this::drain);
+            long shardOldest = oldestPendingMillis.get();
+            if (shardOldest != 0 && (oldest == 0 || shardOldest < oldest)) {
+                oldest = shardOldest;
+            }
+        }
+        oldestPendingMillis.set(oldest);
+    }
+
+    private void drain() {
+        //keep draining while full batches come back and everything is delivered
+        while (dispatchBatch()) {
+        }
+    }
+
+    /**
+     * Delivers one batch.
+     *
+     * @return true if the batch was full and completely delivered, so another one should be read right away
+     */
+    boolean dispatchBatch() {
+        long now = System.currentTimeMillis();
+        List<Long> waiting = new ArrayList<>();
+        long oldest = 0;
+        for (Map.Entry<Long, FailingWarehouse> entry : failing.entrySet()) {
+            if (entry.getValue().retryAtMillis() > now) {
+                waiting.add(entry.getKey());
+                oldest = oldest == 0 ? entry.getValue().oldestMillis() : Math.min(oldest, entry.getValue().oldestMillis());
+            }
+        }
+        List<InventoryOutboxEntity> batch = waiting.isEmpty()
+                ? outboxRepository.findAllByOrderByIdAsc(Limit.of(batchSize))
+                : outboxRepository.findByWarehouseIdNotInOrderByIdAsc(waiting, Limit.of(batchSize));
+        if (batch.isEmpty()) {
+            //the rows of the waiting warehouses are still pending
+            oldestPendingMillis.set(oldest);
+            return false;
+        }
+        long batchOldest = batch.get(0).getCreatedAt().toEpochMilli();
+        oldestPendingMillis.set(oldest == 0 ? batchOldest : Math.min(oldest, batchOldest));
+
+        Map<Long, List<InventoryChangeRecord>> byWarehouse = new LinkedHashMap<>();
+        for (InventoryOutboxEntity outbox : batch) {
+            byWarehouse.computeIfAbsent(outbox.getWarehouseId(), id -> new ArrayList<>())
+                    .add(InventoryChangeRecord.of(outbox));
+        }
+
+        return batchTimer.record(() -> {
+            Map<Long, Future<?>> deliveries = new LinkedHashMap<>();
+            byWarehouse.forEach((warehouseId, records) -> deliveries.put(warehouseId,
+                    lanes[Math.floorMod(warehouseId.hashCode(), lanes.length)].submit(() -> deliver(records))));
+
+            List<Long> deliveredIds = new ArrayList<>(batch.size());
+            boolean allDelivered = true;
+            for (Map.Entry<Long, Future<?>> delivery : deliveries.entrySet()) {
+                List<InventoryChangeRecord> records = byWarehouse.get(delivery.getKey());
+                try {
+                    delivery.getValue().get();
+                    records.forEach(record -> deliveredIds.add(record.sequence()));
+                    failing.remove(delivery.getKey());
+                } catch (ExecutionException e) {
+                    allDelivered = false;
+                    failedCounter.increment(records.size());
+                    FailingWarehouse previous = failing.get(delivery.getKey());
+                    int failures = previous == null ? 1 : previous.failures() + 1;
+                    long delay = Math.min(maxRetryDelayMillis, retryDelayMillis << Math.min(failures - 1, 20));
+                    failing.put(delivery.getKey(), new FailingWarehouse(failures, System.currentTimeMillis() + delay,
+                            records.get(0).occurredAt().toEpochMilli()));
+                    log.warn("Delivering {} inventory changes of warehouse {} failed, will retry in {} ms",
+                            records.size(), delivery.getKey(), delay, e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    allDelivered = false;
+                    break;
+                }
+            }
+
+            if (!deliveredIds.isEmpty()) {
+                outboxRepository.deleteAllByIdInBatch(deliveredIds);
+                deliveredCounter.increment(deliveredIds.size());
+            }
+            return allDelivered && batch.size() == batchSize;
+        });
+    }
+
+    private Void deliver(List<InventoryChangeRecord> records) throws Exception {
+        for (InventoryEventSink sink : sinks) {
+            sink.deliver(records);
+        }
+        return null;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (ExecutorService lane : lanes) {
+            lane.shutdown();
+        }
+    }
+
+    private record FailingWarehouse(int failures, long retryAtMillis, long oldestMillis) {
+    }
+}
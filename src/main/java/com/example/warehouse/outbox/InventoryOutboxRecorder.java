@@ -0,0 +1,30 @@
+package com.example.warehouse.outbox;
+
+import com.example.warehouse.entity.InventoryOutboxEntity;
+import com.example.warehouse.event.InventoryChangeEvent;
+import com.example.warehouse.repository.InventoryOutboxRepository;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Instant;
+
+/**
+ * Writes every {@link InventoryChangeEvent} to the outbox table as part of the transaction that published it,
+ * so a change is recorded exactly when it commits and never for a rolled back one.
+ */
+@Component
+public class InventoryOutboxRecorder {
+
+    private final InventoryOutboxRepository outboxRepository;
+
+    public InventoryOutboxRecorder(InventoryOutboxRepository outboxRepository) {
+        this.outboxRepository = outboxRepository;
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT)
+    public void record(InventoryChangeEvent event) {
+        outboxRepository.save(new InventoryOutboxEntity(null, event.getWarehouseId(), event.getMaterialTypeId(),
+                event.getChangeQuantity(), event.getAction(), event.getQuantityAfter(), Instant.ofEpochMilli(event.getTimestamp())));
+    }
+}
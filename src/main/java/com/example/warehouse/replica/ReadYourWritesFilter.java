@@ -0,0 +1,95 @@
+package com.example.warehouse.replica;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.function.Supplier;
+
+/**
+ * Keeps a client on the primary for a while after its own changes, so it never reads a replica that hasn't caught
+ * up with them yet. Every mutation answers with a cookie holding the time until which the client's reads go to the
+ * primary; the window has to cover the staleness bound, the heartbeat interval and how long a write takes.
+ * <p>
+ * Only reads on the request thread are pinned, an NDJSON stream written on an async thread reads from a replica.
+ * A read that must not miss any committed change, whoever made it, goes through {@link #readFromPrimary}.
+ */
+public class ReadYourWritesFilter extends OncePerRequestFilter {
+
+    public static final String COOKIE = "warehouse-primary-until";
+
+    private static final ThreadLocal<Boolean> PINNED = new ThreadLocal<>();
+
+    private final long stickyMillis;
+
+    public ReadYourWritesFilter(long stickyMillis) {
+        this.stickyMillis = stickyMillis;
+    }
+
+    static boolean pinnedToPrimary() {
+        return PINNED.get() != null;
+    }
+
+    /**
+     * Runs a read on the current thread against the primary, whether or not replicas are configured.
+     */
+    public static <T> T readFromPrimary(Supplier<T> read) {
+        if (pinnedToPrimary()) {
+            return read.get();
+        }
+        PINNED.set(Boolean.TRUE);
+        try {
+            return read.get();
+        } finally {
+            PINNED.remove();
+        }
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain) throws ServletException, IOException {
+        long now = System.currentTimeMillis();
+        if (!isRead(request.getMethod())) {
+            // set up front, once the write committed the response may already be on its way
+            Cookie cookie = new Cookie(COOKIE, Long.toString(now + stickyMillis));
+            cookie.setPath("/");
+            cookie.setHttpOnly(true);
+            cookie.setMaxAge((int) Math.ceil(stickyMillis / 1000.0));
+            response.addCookie(cookie);
+        } else if (isPinned(request, now)) {
+            PINNED.set(Boolean.TRUE);
+            try {
+                chain.doFilter(request, response);
+            } finally {
+                PINNED.remove();
+            }
+            return;
+        }
+        chain.doFilter(request, response);
+    }
+
+    private boolean isPinned(HttpServletRequest request, long now) {
+        if (request.getCookies() == null) {
+            return false;
+        }
+        for (Cookie cookie : request.getCookies()) {
+            if (COOKIE.equals(cookie.getName())) {
+                try {
+                    long pinnedUntil = Long.parseLong(cookie.getValue());
+                    // a made-up cookie can't pin a client for longer than a real one
+                    return pinnedUntil > now && pinnedUntil <= now + stickyMillis;
+                } catch (NumberFormatException ex) {
+                    return false;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean isRead(String method) {
+        return "GET".equals(method) || "HEAD".equals(method) || "OPTIONS".equals(method);
+    }
+}
@@ -0,0 +1,34 @@
+package com.example.warehouse.replica;
+
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+
+/**
+ * Stamps the heartbeat row on the primary and measures each replica by how old its copy of the row is. Replication
+ * applies changes in commit order, so a replica that has the heartbeat of time t has every change committed before t.
+ */
+public class ReplicaHeartbeat {
+
+    private final JdbcTemplate primary;
+    private final ReplicaPool replicaPool;
+
+    public ReplicaHeartbeat(JdbcTemplate primary, ReplicaPool replicaPool) {
+        this.primary = primary;
+        this.replicaPool = replicaPool;
+    }
+
+    @Scheduled(initialDelayString = "${warehouse.datasource.replicas.heartbeat-interval-ms:1000}",
+            fixedDelayString = "${warehouse.datasource.replicas.heartbeat-interval-ms:1000}")
+    public void beat() {
+        long now = System.currentTimeMillis();
+        if (primary.update("update replica_heartbeat set beat_at = ? where id = 1", now) == 0) {
+            try {
+                primary.update("insert into replica_heartbeat (id, beat_at) values (1, ?)", now);
+            } catch (DuplicateKeyException ex) {
+                // another instance stamped the first heartbeat at the same time, its stamp serves as well
+            }
+        }
+        replicaPool.measure(now);
+    }
+}
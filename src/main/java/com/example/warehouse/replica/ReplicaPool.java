@@ -0,0 +1,90 @@
+package com.example.warehouse.replica;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The read replicas with the lag last measured for each of them. Reads are spread round-robin over the replicas
+ * that are at most {@code maxLagMillis} behind the primary, a replica that couldn't be measured yet or at all
+ * gets no reads.
+ */
+public class ReplicaPool implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(ReplicaPool.class);
+
+    private static final String HEARTBEAT_QUERY = "select beat_at from replica_heartbeat where id = 1";
+
+    private final List<Replica> replicas;
+    private final long maxLagMillis;
+    private final AtomicInteger next = new AtomicInteger();
+
+    public ReplicaPool(List<HikariDataSource> dataSources, long maxLagMillis) {
+        this.replicas = dataSources.stream().map(Replica::new).toList();
+        this.maxLagMillis = maxLagMillis;
+    }
+
+    /**
+     * @return a replica within the staleness bound, or null if there is none
+     */
+    DataSource pick() {
+        int size = replicas.size();
+        int start = Math.floorMod(next.getAndIncrement(), size);
+        for (int i = 0; i < size; i++) {
+            Replica replica = replicas.get((start + i) % size);
+            if (replica.lagMillis <= maxLagMillis) {
+                return replica.dataSource;
+            }
+        }
+        return null;
+    }
+
+    // measures every replica against the heartbeat the primary was just given
+    void measure(long now) {
+        for (Replica replica : replicas) {
+            long lagMillis;
+            try {
+                Long beatAt = replica.jdbcTemplate.queryForObject(HEARTBEAT_QUERY, Long.class);
+                lagMillis = beatAt == null ? Long.MAX_VALUE : Math.max(0, now - beatAt);
+            } catch (DataAccessException ex) {
+                if (replica.lagMillis != Long.MAX_VALUE) {
+                    log.warn("Replica {} can't be measured, reads skip it until it can: {}", replica.dataSource.getJdbcUrl(), ex.getMessage());
+                }
+                lagMillis = Long.MAX_VALUE;
+            }
+            replica.lagMillis = lagMillis;
+        }
+    }
+
+    public int size() {
+        return replicas.size();
+    }
+
+    // Long.MAX_VALUE for a replica that couldn't be measured
+    public long lagMillis(int replica) {
+        return replicas.get(replica).lagMillis;
+    }
+
+    @Override
+    public void close() {
+        replicas.forEach(replica -> replica.dataSource.close());
+    }
+
+    private static final class Replica {
+
+        private final HikariDataSource dataSource;
+        private final JdbcTemplate jdbcTemplate;
+        private volatile long lagMillis = Long.MAX_VALUE;
+
+        private Replica(HikariDataSource dataSource) {
+            this.dataSource = dataSource;
+            this.jdbcTemplate = new JdbcTemplate(dataSource);
+        }
+    }
+}
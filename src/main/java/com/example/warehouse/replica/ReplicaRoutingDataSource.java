@@ -0,0 +1,37 @@
+package com.example.warehouse.replica;
+
+import org.springframework.jdbc.datasource.AbstractDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Where read-only transactions get their connections: a replica within the staleness bound, or the primary for a
+ * client that just wrote or when every replica is too far behind.
+ */
+public class ReplicaRoutingDataSource extends AbstractDataSource {
+
+    private final DataSource primary;
+    private final ReplicaPool replicaPool;
+
+    public ReplicaRoutingDataSource(DataSource primary, ReplicaPool replicaPool) {
+        this.primary = primary;
+        this.replicaPool = replicaPool;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return target().getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return target().getConnection(username, password);
+    }
+
+    private DataSource target() {
+        DataSource replica = ReadYourWritesFilter.pinnedToPrimary() ? null : replicaPool.pick();
+        return replica == null ? primary : replica;
+    }
+}
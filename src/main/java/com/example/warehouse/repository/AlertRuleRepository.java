@@ -0,0 +1,9 @@
+package com.example.warehouse.repository;
+
+import com.example.warehouse.entity.AlertRuleEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface AlertRuleRepository extends JpaRepository<AlertRuleEntity, Long> {
+}
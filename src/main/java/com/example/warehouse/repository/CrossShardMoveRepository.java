@@ -0,0 +1,47 @@
+package com.example.warehouse.repository;
+
+import com.example.warehouse.entity.CrossShardMoveEntity;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.List;
+
+@Repository
+public interface CrossShardMoveRepository extends JpaRepository<CrossShardMoveEntity, Long> {
+
+    // a plain insert rather than save, a move already recorded under the id must fail the transaction instead of being overwritten
+    @Modifying
+    @Query(value = "INSERT INTO cross_shard_move (id, source_warehouse_id, destination_warehouse_id, material_type_id, quantity, state, created_at) " +
+            "VALUES (:id, :sourceWarehouseId, :destinationWarehouseId, :materialTypeId, :quantity, :state, :createdAt)", nativeQuery = true)
+    int insert(@Param("id") Long id,
+               @Param("sourceWarehouseId") Long sourceWarehouseId,
+               @Param("destinationWarehouseId") Long destinationWarehouseId,
+               @Param("materialTypeId") Long materialTypeId,
+               @Param("quantity") int quantity,
+               @Param("state") String state,
+               @Param("createdAt") Instant createdAt);
+
+    List<CrossShardMoveEntity> findByStateAndCreatedAtBeforeOrderByIdAsc(CrossShardMoveEntity.State state, Instant before, Limit limit);
+
+    // settles a pending move exactly once, a second attempt deletes nothing
+    default int deletePending(Long id) {
+        return deleteInState(id, CrossShardMoveEntity.State.PENDING);
+    }
+
+    @Modifying
+    @Query("delete from CrossShardMoveEntity m where m.id = :id and m.state = :state")
+    int deleteInState(@Param("id") Long id, @Param("state") CrossShardMoveEntity.State state);
+
+    default int deleteSettledBefore(Instant before) {
+        return deleteNotInStateBefore(CrossShardMoveEntity.State.PENDING, before);
+    }
+
+    @Modifying
+    @Query("delete from CrossShardMoveEntity m where m.state <> :state and m.createdAt < :before")
+    int deleteNotInStateBefore(@Param("state") CrossShardMoveEntity.State state, @Param("before") Instant before);
+}
@@ -0,0 +1,17 @@
+package com.example.warehouse.repository;
+
+import com.example.warehouse.entity.InventoryOutboxEntity;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface InventoryOutboxRepository extends JpaRepository<InventoryOutboxEntity, Long> {
+
+    List<InventoryOutboxEntity> findAllByOrderByIdAsc(Limit limit);
+
+    List<InventoryOutboxEntity> findByWarehouseIdNotInOrderByIdAsc(Collection<Long> warehouseIds, Limit limit);
+}
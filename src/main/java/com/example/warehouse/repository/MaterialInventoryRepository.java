@@ -3,17 +3,122 @@ package com.example.warehouse.repository;
 import com.example.warehouse.entity.MaterialInventoryEntity;
 import com.example.warehouse.entity.MaterialTypeEntity;
 import com.example.warehouse.entity.WarehouseEntity;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
-public interface MaterialInventoryRepository extends JpaRepository<MaterialInventoryEntity, Long> {
+public interface MaterialInventoryRepository extends JpaRepository<MaterialInventoryEntity, Long>, MaterialInventoryRepositoryCustom {
 
 
     Optional<MaterialInventoryEntity> findByWarehouseAndMaterialType(WarehouseEntity warehouse, MaterialTypeEntity materialType);
 
     List<MaterialInventoryEntity> findByWarehouseId(Long warehouseId);
+
+    // one statement for the whole listing, however many material types the warehouse holds
+    @Query("select new com.example.warehouse.repository.MaterialInventoryRow(i.inventoryId, t.id, t.name, " +
+            "t.description, t.icon, t.maxCapacity, i.quantity, i.version) " +
+            "from MaterialInventoryEntity i join i.materialType t where i.warehouse.id = :warehouseId")
+    List<MaterialInventoryRow> findRowsByWarehouseId(@Param("warehouseId") Long warehouseId);
+
+    // keyset page: rows after the given inventory id, walked along idx_warehouse which ends in the primary key
+    @Query("select new com.example.warehouse.repository.MaterialInventoryRow(i.inventoryId, t.id, t.name, " +
+            "t.description, t.icon, t.maxCapacity, i.quantity, i.version) " +
+            "from MaterialInventoryEntity i join i.materialType t " +
+            "where i.warehouse.id = :warehouseId and i.inventoryId > :afterInventoryId order by i.inventoryId")
+    List<MaterialInventoryRow> findRowsByWarehouseIdAfter(@Param("warehouseId") Long warehouseId,
+                                                          @Param("afterInventoryId") Long afterInventoryId,
+                                                          Limit limit);
+
+    // read through a database cursor, the caller must consume and close the stream inside a transaction
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    @Query("select new com.example.warehouse.repository.MaterialInventoryRow(i.inventoryId, t.id, t.name, " +
+            "t.description, t.icon, t.maxCapacity, i.quantity, i.version) " +
+            "from MaterialInventoryEntity i join i.materialType t where i.warehouse.id = :warehouseId order by i.inventoryId")
+    Stream<MaterialInventoryRow> streamRowsByWarehouseId(@Param("warehouseId") Long warehouseId);
+
+    // rows are locked in key order, so two batches touching the same rows can't deadlock each other
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    List<MaterialInventoryEntity> findByWarehouseIdInAndMaterialTypeIdInOrderByWarehouseIdAscMaterialTypeIdAsc(Collection<Long> warehouseIds, Collection<Long> materialTypeIds);
+
+    // exactly the given rows of one warehouse, locked in material type order
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    List<MaterialInventoryEntity> findByWarehouseIdAndMaterialTypeIdInOrderByMaterialTypeIdAsc(Long warehouseId, Collection<Long> materialTypeIds);
+
+    Optional<MaterialInventoryEntity> findByWarehouseIdAndMaterialTypeId(Long warehouseId, Long materialTypeId);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select i from MaterialInventoryEntity i where i.warehouse.id = :warehouseId and i.materialType.id = :materialTypeId")
+    Optional<MaterialInventoryEntity> findForUpdate(@Param("warehouseId") Long warehouseId, @Param("materialTypeId") Long materialTypeId);
+
+    /**
+     * Changes the quantity in place, only if the result stays between 0 and maxCapacity.
+     *
+     * @return 1 if the row was updated, 0 if it doesn't exist or the new quantity would be out of bounds
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update MaterialInventoryEntity i set i.quantity = i.quantity + :delta, i.version = i.version + 1 " +
+            "where i.warehouse.id = :warehouseId and i.materialType.id = :materialTypeId " +
+            "and i.quantity + :delta >= 0 and i.quantity + :delta <= :maxCapacity")
+    int applyQuantityDelta(@Param("warehouseId") Long warehouseId,
+                           @Param("materialTypeId") Long materialTypeId,
+                           @Param("delta") int delta,
+                           @Param("maxCapacity") int maxCapacity);
+
+    /**
+     * Like {@link #applyQuantityDelta}, but only if the row is still the given inventory in the given version.
+     *
+     * @return 1 if the row was updated, 0 if it changed, doesn't exist or the new quantity would be out of bounds
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update MaterialInventoryEntity i set i.quantity = i.quantity + :delta, i.version = i.version + 1 " +
+            "where i.warehouse.id = :warehouseId and i.materialType.id = :materialTypeId " +
+            "and i.inventoryId = :inventoryId and i.version = :version " +
+            "and i.quantity + :delta >= 0 and i.quantity + :delta <= :maxCapacity")
+    int applyQuantityDeltaIfVersion(@Param("warehouseId") Long warehouseId,
+                                    @Param("materialTypeId") Long materialTypeId,
+                                    @Param("inventoryId") Long inventoryId,
+                                    @Param("version") long version,
+                                    @Param("delta") int delta,
+                                    @Param("maxCapacity") int maxCapacity);
+
+    /**
+     * Sets the quantity of a row read without a lock, unless it changed since.
+     *
+     * @return 1 if the row was updated, 0 if its version moved on
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update MaterialInventoryEntity i set i.quantity = :quantity, i.version = i.version + 1 " +
+            "where i.inventoryId = :inventoryId and i.version = :version")
+    int updateQuantityIfVersion(@Param("inventoryId") Long inventoryId,
+                                @Param("version") long version,
+                                @Param("quantity") int quantity);
+
+    /**
+     * Applies the net change of several writes to a row the caller has locked, counting every write as a version.
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update MaterialInventoryEntity i set i.quantity = i.quantity + :delta, i.version = i.version + :writes " +
+            "where i.inventoryId = :inventoryId")
+    int applyCombinedDelta(@Param("inventoryId") Long inventoryId,
+                           @Param("delta") int delta,
+                           @Param("writes") int writes);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("delete from MaterialInventoryEntity i " +
+            "where i.warehouse.id = :warehouseId and i.materialType.id = :materialTypeId and i.quantity = 0")
+    int deleteIfEmpty(@Param("warehouseId") Long warehouseId, @Param("materialTypeId") Long materialTypeId);
 }
\ No newline at end of file
@@ -0,0 +1,16 @@
+package com.example.warehouse.repository;
+
+public interface MaterialInventoryRepositoryCustom {
+
+    /**
+     * Allocates the next inventory id from the same generator Hibernate uses when persisting inventory entities.
+     */
+    Long nextInventoryId();
+
+    /**
+     * Inserts a new inventory row unless one already exists for the warehouse and material type.
+     *
+     * @return 1 if the row was inserted, 0 if a row already existed
+     */
+    int insertIfAbsent(Long warehouseId, Long materialTypeId, int quantity);
+}
@@ -0,0 +1,34 @@
+package com.example.warehouse.repository;
+
+import com.example.warehouse.entity.MaterialInventoryEntity;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.IdentifierGenerator;
+import org.hibernate.persister.entity.EntityPersister;
+
+class MaterialInventoryRepositoryImpl implements MaterialInventoryRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public Long nextInventoryId() {
+        SharedSessionContractImplementor session = entityManager.unwrap(SharedSessionContractImplementor.class);
+        EntityPersister persister = session.getFactory().getMappingMetamodel()
+                .getEntityDescriptor(MaterialInventoryEntity.class);
+        return (Long) ((IdentifierGenerator) persister.getGenerator()).generate(session, null);
+    }
+
+    @Override
+    public int insertIfAbsent(Long warehouseId, Long materialTypeId, int quantity) {
+        // relies on the unique key on (warehouse_id, material_type_id), a concurrent insert of the same row is ignored
+        return entityManager.createNativeQuery("INSERT IGNORE INTO material_inventory " +
+                        "(inventory_id, warehouse_id, material_type_id, quantity, version) VALUES (?1, ?2, ?3, ?4, 0)")
+                .setParameter(1, nextInventoryId())
+                .setParameter(2, warehouseId)
+                .setParameter(3, materialTypeId)
+                .setParameter(4, quantity)
+                .executeUpdate();
+    }
+}
@@ -0,0 +1,15 @@
+package com.example.warehouse.repository;
+
+/**
+ * One inventory row of a warehouse listing, with exactly the material type columns the response needs.
+ * Read with a constructor expression, so no entities or proxies are created for it.
+ */
+public record MaterialInventoryRow(Long inventoryId,
+                                   Long materialTypeId,
+                                   String materialTypeName,
+                                   String materialTypeDescription,
+                                   String materialTypeIcon,
+                                   int maxCapacity,
+                                   Integer quantity,
+                                   long version) {
+}
@@ -0,0 +1,65 @@
+package com.example.warehouse.reservation;
+
+import com.example.warehouse.dto.ReservationDto;
+import com.example.warehouse.dto.ReservationType;
+
+import java.time.Instant;
+
+/**
+ * An open reservation, held by the {@link ReservationBook} until it is confirmed, cancelled or expires.
+ */
+final class Reservation {
+
+    private final long id;
+    private final ReservationType type;
+    private final long warehouseId;
+    private final long materialTypeId;
+    private final int quantity;
+    private final long expiresAtMillis;
+    private TimingWheel.Timeout<Reservation> timeout;
+
+    Reservation(long id, ReservationType type, long warehouseId, long materialTypeId, int quantity, long expiresAtMillis) {
+        this.id = id;
+        this.type = type;
+        this.warehouseId = warehouseId;
+        this.materialTypeId = materialTypeId;
+        this.quantity = quantity;
+        this.expiresAtMillis = expiresAtMillis;
+    }
+
+    long id() {
+        return id;
+    }
+
+    ReservationType type() {
+        return type;
+    }
+
+    long warehouseId() {
+        return warehouseId;
+    }
+
+    long materialTypeId() {
+        return materialTypeId;
+    }
+
+    int quantity() {
+        return quantity;
+    }
+
+    long expiresAtMillis() {
+        return expiresAtMillis;
+    }
+
+    TimingWheel.Timeout<Reservation> timeout() {
+        return timeout;
+    }
+
+    void setTimeout(TimingWheel.Timeout<Reservation> timeout) {
+        this.timeout = timeout;
+    }
+
+    ReservationDto toDto() {
+        return new ReservationDto(id, type, warehouseId, materialTypeId, quantity, Instant.ofEpochMilli(expiresAtMillis));
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.warehouse.reservation;
+
+import com.example.warehouse.cache.MaterialTypeSnapshot;
+import com.example.warehouse.dto.ReservationType;
+import com.example.warehouse.entity.InventoryIdGenerator;
+import com.example.warehouse.exceptions.CapacityExceededException;
+import com.example.warehouse.exceptions.InsufficientInventoryException;
+import com.example.warehouse.service.InventoryKey;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The open reservations and, per warehouse and material type, the capacity reserved and the stock held by them.
+ * <p>
+ * Both inventory engines check every change against these totals while they hold the lock of the changed stock,
+ * so a reservation counts like stock that is already there (capacity) or already gone (holds). Reservations live
+ * in memory only and expire through a {@link TimingWheel}, open ones are lost on a restart.
+ */
+@Component
+public class ReservationBook {
+
+    //capacity reserved and stock held for one warehouse and material type, replaced as a whole on every change
+    private record Totals(int reserved, int held) {
+    }
+
+    private final Map<Long, Reservation> open = new ConcurrentHashMap<>();
+    private final Map<InventoryKey, Totals> totals = new ConcurrentHashMap<>();
+    private final TimingWheel<Reservation> wheel;
+    private final InventoryIdGenerator idGenerator = new InventoryIdGenerator();
+    private final Counter expired;
+
+    public ReservationBook(MeterRegistry meterRegistry,
+                           @Value("${warehouse.reservations.tick-ms:100}") long tickMillis,
+                           @Value("${warehouse.reservations.wheel-size:4096}") int wheelSize) {
+        this.wheel = new TimingWheel<>(tickMillis, wheelSize, System.currentTimeMillis());
+        this.expired = Counter.builder("inventory.reservations.expired")
+                .description("Reservations released because they were neither confirmed nor cancelled in time")
+                .register(meterRegistry);
+        Gauge.builder("inventory.reservations.open", open, Map::size)
+                .description("Open capacity reservations and stock holds")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Throws if the quantity a change leaves behind plus the capacity reserved by others exceeds maxCapacity.
+     *
+     * @param ownReserved reserved capacity the change itself is using up
+     */
+    public void checkCapacity(long warehouseId, MaterialTypeSnapshot materialType, long quantityAfter, int ownReserved) {
+        Totals current = totals.get(new InventoryKey(warehouseId, materialType.id()));
+        int reserved = current == null ? 0 : current.reserved() - ownReserved;
+        if (reserved > 0 && quantityAfter + reserved > materialType.maxCapacity()) {
+            throw new CapacityExceededException("Quantity " + quantityAfter + " plus " + reserved + " reserved units exceeds the maximum capacity of "
+                    + materialType.maxCapacity() + " for this material type: " + materialType.name());
+        }
+    }
+
+    /**
+     * Throws if the quantity a change leaves behind is less than the stock held by others.
+     *
+     * @param ownHeld held stock the change itself is taking
+     */
+    public void checkAvailable(long warehouseId, long materialTypeId, long quantityAfter, int ownHeld) {
+        Totals current = totals.get(new InventoryKey(warehouseId, materialTypeId));
+        int held = current == null ? 0 : current.held() - ownHeld;
+        if (held > 0 && quantityAfter < held) {
+            throw new InsufficientInventoryException("Only " + quantityAfter + " units would be left, but " + held + " units are held for picks.");
+        }
+    }
+
+    Reservation open(ReservationType type, long warehouseId, long materialTypeId, int quantity, Duration ttl) {
+        long id = (Long) idGenerator.generate(null, null);
+        Reservation reservation = new Reservation(id, type, warehouseId, materialTypeId, quantity, System.currentTimeMillis() + ttl.toMillis());
+        adjust(reservation, 1);
+        open.put(id, reservation);
+        reservation.setTimeout(wheel.schedule(reservation, reservation.expiresAtMillis()));
+        return reservation;
+    }
+
+    Reservation find(long id) {
+        return open.get(id);
+    }
+
+    /**
+     * Removes the reservation from the open ones so it can neither expire nor be taken twice, its quantity keeps
+     * counting until it is {@link #release released}.
+     *
+     * @return the reservation, or null if it is not open
+     */
+    Reservation take(long id) {
+        Reservation reservation = open.remove(id);
+        if (reservation != null) {
+            reservation.timeout().cancel();
+        }
+        return reservation;
+    }
+
+    void release(Reservation reservation) {
+        adjust(reservation, -1);
+    }
+
+    @Scheduled(fixedRateString = "${warehouse.reservations.tick-ms:100}")
+    public void expire() {
+        wheel.advance(System.currentTimeMillis(), reservation -> {
+            // a reservation taken after the wheel picked it up is the taker's to release
+            if (open.remove(reservation.id(), reservation)) {
+                release(reservation);
+                expired.increment();
+            }
+        });
+    }
+
+    private void adjust(Reservation reservation, int sign) {
+        int reserved = reservation.type() == ReservationType.CAPACITY ? sign * reservation.quantity() : 0;
+        int held = reservation.type() == ReservationType.STOCK ? sign * reservation.quantity() : 0;
+        totals.compute(new InventoryKey(reservation.warehouseId(), reservation.materialTypeId()), (key, current) -> {
+            Totals updated = current == null ? new Totals(reserved, held)
+                    : new Totals(current.reserved() + reserved, current.held() + held);
+            return updated.reserved() == 0 && updated.held() == 0 ? null : updated;
+        });
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.warehouse.reservation;
+
+import com.example.warehouse.cache.MaterialTypeSnapshot;
+import com.example.warehouse.cache.ReferenceDataCache;
+import com.example.warehouse.dto.MaterialInventoryDto;
+import com.example.warehouse.dto.ReservationDto;
+import com.example.warehouse.dto.ReservationRequestDto;
+import com.example.warehouse.dto.ReservationType;
+import com.example.warehouse.exceptions.MaterialTypeNotFoundException;
+import com.example.warehouse.exceptions.ReservationNotFoundException;
+import com.example.warehouse.exceptions.WarehouseNotFoundException;
+import com.example.warehouse.service.MaterialInventoryService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+
+/**
+ * Capacity reservations for inbound deliveries and stock holds for outbound picks.
+ * <p>
+ * A reservation is booked first and checked against the settled quantity afterwards: a change that locked the
+ * stock before the booking has finished by the time the quantity is read, one that locks it after the booking
+ * sees the reservation. Either way the two can't both take the same units. Confirming a reservation applies the
+ * change with the reservation's own units excluded from the check and releases them once it is done.
+ */
+@Service
+public class ReservationService {
+
+    private final ReservationBook reservationBook;
+    private final MaterialInventoryService materialInventoryService;
+    private final ReferenceDataCache referenceDataCache;
+    private final Duration defaultTtl;
+    private final Duration maxTtl;
+
+    public ReservationService(ReservationBook reservationBook,
+                              MaterialInventoryService materialInventoryService,
+                              ReferenceDataCache referenceDataCache,
+                              @Value("${warehouse.reservations.default-ttl:15m}") Duration defaultTtl,
+                              @Value("${warehouse.reservations.max-ttl:24h}") Duration maxTtl) {
+        this.reservationBook = reservationBook;
+        this.materialInventoryService = materialInventoryService;
+        this.referenceDataCache = referenceDataCache;
+        this.defaultTtl = defaultTtl;
+        this.maxTtl = maxTtl;
+    }
+
+    public ReservationDto createReservation(ReservationRequestDto request) {
+        referenceDataCache.findWarehouse(request.getWarehouseId())
+                .orElseThrow(() -> new WarehouseNotFoundException("Warehouse not found with ID: " + request.getWarehouseId()));
+        MaterialTypeSnapshot materialType = referenceDataCache.findMaterialType(request.getMaterialTypeId())
+                .orElseThrow(() -> new MaterialTypeNotFoundException("Material type not found with ID: " + request.getMaterialTypeId()));
+        if (request.getQuantity() <= 0) {
+            throw new IllegalArgumentException("Quantity must be positive, got " + request.getQuantity());
+        }
+        Duration ttl = request.getTtlSeconds() == null ? defaultTtl : Duration.ofSeconds(request.getTtlSeconds());
+        if (ttl.compareTo(maxTtl) > 0) {
+            throw new IllegalArgumentException("Reservations can be held for at most " + maxTtl.toSeconds() + " seconds");
+        }
+
+        Reservation reservation = reservationBook.open(request.getType(), request.getWarehouseId(), materialType.id(), request.getQuantity(), ttl);
+        try {
+            int quantity = materialInventoryService.getSettledQuantity(request.getWarehouseId(), materialType.id());
+            // the new reservation is already booked, so it is counted like everyone else's
+            if (request.getType() == ReservationType.CAPACITY) {
+                reservationBook.checkCapacity(request.getWarehouseId(), materialType, quantity, 0);
+            } else {
+                reservationBook.checkAvailable(request.getWarehouseId(), materialType.id(), quantity, 0);
+            }
+        } catch (RuntimeException e) {
+            if (reservationBook.take(reservation.id()) != null) {
+                reservationBook.release(reservation);
+            }
+            throw e;
+        }
+        return reservation.toDto();
+    }
+
+    public ReservationDto getReservation(Long reservationId) {
+        Reservation reservation = reservationBook.find(reservationId);
+        if (reservation == null) {
+            throw notFound(reservationId);
+        }
+        return reservation.toDto();
+    }
+
+    /**
+     * Adds the reserved quantity (capacity) or removes the held one (stock).
+     *
+     * @return the updated inventory, or null if a confirmed hold emptied it
+     */
+    public MaterialInventoryDto confirmReservation(Long reservationId) {
+        Reservation reservation = reservationBook.take(reservationId);
+        if (reservation == null) {
+            throw notFound(reservationId);
+        }
+        try {
+            return reservation.type() == ReservationType.CAPACITY
+                    ? materialInventoryService.addReservedMaterial(reservation.warehouseId(), reservation.materialTypeId(), reservation.quantity(), reservation.quantity())
+                    : materialInventoryService.removeHeldMaterial(reservation.warehouseId(), reservation.materialTypeId(), reservation.quantity(), reservation.quantity());
+        } finally {
+            // released after the change, so nobody else can take the units in between
+            reservationBook.release(reservation);
+        }
+    }
+
+    public void cancelReservation(Long reservationId) {
+        Reservation reservation = reservationBook.take(reservationId);
+        if (reservation == null) {
+            throw notFound(reservationId);
+        }
+        reservationBook.release(reservation);
+    }
+
+    private static ReservationNotFoundException notFound(Long reservationId) {
+        return new ReservationNotFoundException("Reservation not found, or already confirmed, cancelled or expired: " + reservationId);
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.warehouse.reservation;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Hashed timing wheel: timeouts are hashed by their deadline tick into a fixed ring of buckets, and every tick only
+ * the bucket of that tick is visited. Scheduling and cancelling are O(1), expiring costs the size of one bucket,
+ * so the number of pending timeouts does not matter. Deadlines are rounded up to the next tick, timeouts further
+ * out than one revolution stay in their bucket until their round comes.
+ */
+class TimingWheel<T> {
+
+    static final class Timeout<T> {
+        private final T item;
+        private final long tick;
+        private volatile boolean cancelled;
+
+        private Timeout(T item, long tick) {
+            this.item = item;
+            this.tick = tick;
+        }
+
+        //the entry is dropped the next time its bucket is visited
+        void cancel() {
+            cancelled = true;
+        }
+    }
+
+    private final long tickMillis;
+    private final List<Timeout<T>>[] buckets;
+    private final int mask;
+    //the last tick whose bucket was expired
+    private long currentTick;
+
+    @SuppressWarnings("unchecked")
+    TimingWheel(long tickMillis, int bucketCount, long startMillis) {
+        if (Integer.bitCount(bucketCount) != 1) {
+            throw new IllegalArgumentException("Bucket count must be a power of two, got " + bucketCount);
+        }
+        this.tickMillis = tickMillis;
+        this.buckets = new List[bucketCount];
+        for (int i = 0; i < bucketCount; i++) {
+            buckets[i] = new ArrayList<>();
+        }
+        this.mask = bucketCount - 1;
+        this.currentTick = startMillis / tickMillis;
+    }
+
+    synchronized Timeout<T> schedule(T item, long deadlineMillis) {
+        // never into a bucket that was already passed, that would delay it by a whole revolution
+        long tick = Math.max((deadlineMillis + tickMillis - 1) / tickMillis, currentTick + 1);
+        Timeout<T> timeout = new Timeout<>(item, tick);
+        buckets[(int) (tick & mask)].add(timeout);
+        return timeout;
+    }
+
+    /**
+     * Expires everything due up to the given time.
+     *
+     * @return the number of expired timeouts
+     */
+    int advance(long nowMillis, Consumer<T> onExpiry) {
+        List<T> expired = new ArrayList<>();
+        synchronized (this) {
+            long targetTick = nowMillis / tickMillis;
+            // after a long pause one revolution visits every bucket once
+            long lastTick = Math.min(targetTick, currentTick + buckets.length);
+            while (currentTick < lastTick) {
+                currentTick++;
+                Iterator<Timeout<T>> timeouts = buckets[(int) (currentTick & mask)].iterator();
+                while (timeouts.hasNext()) {
+                    Timeout<T> timeout = timeouts.next();
+                    if (timeout.cancelled) {
+                        timeouts.remove();
+                    } else if (timeout.tick <= targetTick) {
+                        timeouts.remove();
+                        expired.add(timeout.item);
+                    }
+                }
+            }
+            currentTick = Math.max(currentTick, targetTick);
+        }
+        // outside the lock, expiry callbacks may schedule again
+        expired.forEach(onExpiry);
+        return expired.size();
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.warehouse.service;
+
+import java.util.Comparator;
+
+/**
+ * Identifies a single inventory row, one material type in one warehouse.
+ * Keys are ordered by warehouse id and then by material type id.
+ */
+public record InventoryKey(Long warehouseId, Long materialTypeId) implements Comparable<InventoryKey> {
+
+    private static final Comparator<InventoryKey> ORDER = Comparator
+            .comparing(InventoryKey::warehouseId)
+            .thenComparing(InventoryKey::materialTypeId);
+
+    @Override
+    public int compareTo(InventoryKey other) {
+        return ORDER.compare(this, other);
+    }
+}
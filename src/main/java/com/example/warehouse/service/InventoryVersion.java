@@ -0,0 +1,12 @@
+package com.example.warehouse.service;
+
+/**
+ * The version of an inventory row a client has seen. The inventory id is part of it, so a row that was emptied,
+ * removed and created again never matches a version of the row it replaced.
+ */
+public record InventoryVersion(long inventoryId, long version) {
+
+    public boolean matches(long inventoryId, long version) {
+        return this.inventoryId == inventoryId && this.version == version;
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.warehouse.service;
+
+import com.example.warehouse.dto.MaterialInventoryDto;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
+
+/**
+ * Collects the adds and removals that arrive for the same inventory within a short window and hands them to the
+ * engine as one batch, which applies them in one transaction and one update of the row.
+ * <p>
+ * The first caller for a key opens the batch and becomes its leader: it waits for the window, closes the batch
+ * and applies it on its own thread. Later callers join the open batch and wait for their own result, so there is no
+ * background thread and a key nobody writes to costs nothing. Each write still succeeds or fails on its own, the
+ * applier checks them in arrival order against the quantity the writes before them left.
+ */
+final class InventoryWriteCombiner {
+
+    /**
+     * One caller's change, completed by the applier with the inventory it left, null for an emptied inventory,
+     * or the exception it failed with.
+     */
+    static final class Write {
+
+        private final int delta;
+        private final CompletableFuture<MaterialInventoryDto> result = new CompletableFuture<>();
+
+        private Write(int delta) {
+            this.delta = delta;
+        }
+
+        int delta() {
+            return delta;
+        }
+
+        void succeed(MaterialInventoryDto inventory) {
+            result.complete(inventory);
+        }
+
+        void fail(RuntimeException failure) {
+            result.completeExceptionally(failure);
+        }
+    }
+
+    private final long windowNanos;
+    private final BiConsumer<InventoryKey, List<Write>> applier;
+    private final DistributionSummary batchSizes;
+    // the open batch per key, writes are only added while the key maps to it
+    private final Map<InventoryKey, List<Write>> open = new ConcurrentHashMap<>();
+
+    InventoryWriteCombiner(Duration window, BiConsumer<InventoryKey, List<Write>> applier, MeterRegistry meterRegistry) {
+        this.windowNanos = window.toNanos();
+        this.applier = applier;
+        this.batchSizes = DistributionSummary.builder("inventory.write.combined.batch.size")
+                .description("Writes applied together by one combined update")
+                .register(meterRegistry);
+    }
+
+    MaterialInventoryDto submit(InventoryKey key, int delta) {
+        Write write = new Write(delta);
+        List<Write> opened = new ArrayList<>();
+        List<Write> joined = open.compute(key, (k, batch) -> {
+            List<Write> writes = batch == null ? opened : batch;
+            writes.add(write);
+            return writes;
+        });
+        if (joined == opened) {
+            lead(key, opened);
+        }
+        try {
+            return write.result.join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException failure) {
+                throw failure;
+            }
+            throw ex;
+        }
+    }
+
+    private void lead(InventoryKey key, List<Write> batch) {
+        LockSupport.parkNanos(windowNanos);
+        // once the key no longer maps to the batch nobody can join it, a later write opens the next one
+        open.remove(key, batch);
+        batchSizes.record(batch.size());
+        try {
+            applier.accept(key, batch);
+        } catch (RuntimeException failure) {
+            // the transaction failed as a whole, so did every write that was still waiting for it
+            batch.forEach(write -> write.fail(failure));
+        }
+    }
+}
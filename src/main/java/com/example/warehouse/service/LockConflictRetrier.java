@@ -0,0 +1,65 @@
+package com.example.warehouse.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.dao.PessimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * Re-runs a unit of work that lost a deadlock, timed out waiting for a row lock or found a row it read without a lock
+ * changed when writing it back, with bounded exponential backoff.
+ * The work must start its own transaction, retrying inside a transaction that was already rolled back has no effect.
+ */
+@Component
+public class LockConflictRetrier {
+
+    private final int maxAttempts;
+    private final int maxOptimisticAttempts;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+
+    public LockConflictRetrier(@Value("${warehouse.inventory.lock-retry.max-attempts:5}") int maxAttempts,
+                               @Value("${warehouse.inventory.lock-retry.initial-backoff-ms:10}") long initialBackoffMillis,
+                               @Value("${warehouse.inventory.lock-retry.max-backoff-ms:200}") long maxBackoffMillis,
+                               @Value("${warehouse.inventory.lock-retry.max-optimistic-attempts:20}") int maxOptimisticAttempts) {
+        this.maxAttempts = maxAttempts;
+        this.maxOptimisticAttempts = maxOptimisticAttempts;
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+    }
+
+    public <T> T execute(Supplier<T> work) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return work.get();
+            } catch (PessimisticLockingFailureException ex) {
+                // covers MySQL deadlocks (1213) and lock wait timeouts (1205)
+                if (attempt >= maxAttempts) {
+                    throw ex;
+                }
+                backOff(attempt);
+            } catch (OptimisticLockingFailureException ex) {
+                // a lost optimistic update held no locks and is cheap to repeat, but loses more often on a busy row
+                if (attempt >= maxOptimisticAttempts) {
+                    throw ex;
+                }
+                backOff(attempt);
+            }
+        }
+    }
+
+    private void backOff(int attempt) {
+        long ceiling = Math.min(maxBackoffMillis, initialBackoffMillis << Math.min(attempt - 1, 20));
+        // full jitter, so transactions that collided once don't collide again on the same schedule
+        long sleepMillis = ThreadLocalRandom.current().nextLong(ceiling + 1);
+        try {
+            Thread.sleep(sleepMillis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting to retry after a lock conflict", ex);
+        }
+    }
+}
@@ -1,14 +1,37 @@
 package com.example.warehouse.service;
 
+import com.example.warehouse.dto.InventoryBatchLineDto;
+import com.example.warehouse.dto.InventoryBatchResultDto;
 import com.example.warehouse.dto.MaterialInventoryDto;
+import com.example.warehouse.dto.MaterialInventoryPageDto;
+import com.example.warehouse.dto.TransferLegDto;
+import com.example.warehouse.dto.TransferOrderResultDto;
+import com.example.warehouse.dto.WarehouseDto;
 import com.example.warehouse.dto.WarehouseMaterialsDto;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface MaterialInventoryService {
     MaterialInventoryDto addMaterialToWarehouse(Long warehouseId, Long materialTypeId, int quantityToAdd);
     MaterialInventoryDto removeMaterialFromWarehouse(Long warehouseId, Long materialTypeId, int quantityToRemove);
     MaterialInventoryDto moveMaterialBetweenWarehouses(Long sourceWarehouseId, Long destinationWarehouseId, Long materialTypeId, int quantityToMove);
+    // the If-Match variants: the change is only made to the inventory in the expected version, the source one for a move
+    MaterialInventoryDto addMaterialToWarehouse(Long warehouseId, Long materialTypeId, int quantityToAdd, InventoryVersion expectedVersion);
+    MaterialInventoryDto removeMaterialFromWarehouse(Long warehouseId, Long materialTypeId, int quantityToRemove, InventoryVersion expectedVersion);
+    MaterialInventoryDto moveMaterialBetweenWarehouses(Long sourceWarehouseId, Long destinationWarehouseId, Long materialTypeId, int quantityToMove, InventoryVersion expectedSourceVersion);
+    WarehouseDto getWarehouse(Long warehouseId);
     WarehouseMaterialsDto getWarehouseMaterials(Long warehouseId);
     List<MaterialInventoryDto> getMaterialsByWarehouseId(Long warehouseId);
+    MaterialInventoryPageDto getWarehouseMaterialsPage(Long warehouseId, Long afterInventoryId, int limit);
+    void streamWarehouseMaterials(Long warehouseId, Consumer<MaterialInventoryDto> consumer);
+    InventoryBatchResultDto applyInventoryBatch(List<InventoryBatchLineDto> lines);
+    // all legs or none, unlike a batch
+    TransferOrderResultDto applyTransferOrder(List<TransferLegDto> legs);
+
+    // the reservation variants: the quantity the caller reserved or held is not counted against its own change
+    MaterialInventoryDto addReservedMaterial(Long warehouseId, Long materialTypeId, int quantityToAdd, int reservedQuantity);
+    MaterialInventoryDto removeHeldMaterial(Long warehouseId, Long materialTypeId, int quantityToRemove, int heldQuantity);
+    // the quantity once every change in flight for the inventory has finished
+    int getSettledQuantity(Long warehouseId, Long materialTypeId);
 }
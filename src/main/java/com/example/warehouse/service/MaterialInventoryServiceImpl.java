@@ -1,42 +1,149 @@
 package com.example.warehouse.service;
 
+import com.example.warehouse.cache.MaterialTypeSnapshot;
+import com.example.warehouse.cache.ReferenceDataCache;
+import com.example.warehouse.cache.WarehouseSnapshot;
+import com.example.warehouse.dto.InventoryBatchLineDto;
+import com.example.warehouse.dto.InventoryBatchLineResultDto;
+import com.example.warehouse.dto.InventoryBatchResultDto;
 import com.example.warehouse.dto.MaterialInventoryDto;
+import com.example.warehouse.dto.MaterialInventoryPageDto;
+import com.example.warehouse.dto.TransferLegDto;
+import com.example.warehouse.dto.TransferOrderResultDto;
+import com.example.warehouse.dto.WarehouseDto;
 import com.example.warehouse.dto.WarehouseMaterialsDto;
+import com.example.warehouse.entity.CrossShardMoveEntity;
 import com.example.warehouse.entity.MaterialInventoryEntity;
 import com.example.warehouse.entity.MaterialTypeEntity;
 import com.example.warehouse.entity.WarehouseEntity;
+import com.example.warehouse.event.InventoryAction;
 import com.example.warehouse.event.InventoryChangeEvent;
+import com.example.warehouse.mapper.InventoryMapper;
+import com.example.warehouse.metrics.VersionConflictMetrics;
 import com.example.warehouse.exceptions.*;
+import com.example.warehouse.repository.CrossShardMoveRepository;
 import com.example.warehouse.repository.MaterialInventoryRepository;
+import com.example.warehouse.repository.MaterialInventoryRow;
 import com.example.warehouse.repository.MaterialTypeRepository;
 import com.example.warehouse.repository.WarehouseRepository;
+import com.example.warehouse.reservation.ReservationBook;
+import com.example.warehouse.shard.ShardContext;
+import com.example.warehouse.shard.ShardDirectory;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.ApplicationEventPublisher;
-import org.springframework.transaction.annotation.Transactional;
-import org.modelmapper.ModelMapper;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+// the default engine, see InMemoryLedgerInventoryService for the alternative
 @Service
+@ConditionalOnProperty(name = "warehouse.inventory.engine", havingValue = "jpa", matchIfMissing = true)
 public class MaterialInventoryServiceImpl implements MaterialInventoryService{
 
+    // how often a conditional update is retried when the row changes between the update and the follow-up read
+    private static final int MAX_ATOMIC_ATTEMPTS = 3;
+    private static final int MAX_PAGE_SIZE = 1000;
+    // settled cross-shard moves are only asked about while their pending counterpart is around, which is far shorter
+    private static final Duration SETTLED_MOVE_RETENTION = Duration.ofDays(1);
+    private static final int MOVE_RECOVERY_BATCH = 500;
+
+    private static final Logger log = LoggerFactory.getLogger(MaterialInventoryServiceImpl.class);
+
     private final WarehouseRepository warehouseRepository;
     private final MaterialInventoryRepository materialInventoryRepository;
     private final MaterialTypeRepository materialTypeRepository;
+    private final CrossShardMoveRepository crossShardMoveRepository;
     private final ApplicationEventPublisher publisher;
-    private final ModelMapper modelMapper;
+    private final InventoryMapper inventoryMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate writeTransactionTemplate;
+    private final TransactionTemplate readTransactionTemplate;
+    private final LockConflictRetrier lockConflictRetrier;
+    private final MoveConcurrencyMode moveConcurrencyMode;
+    private final ReferenceDataCache referenceDataCache;
+    private final ReservationBook reservationBook;
+    private final VersionConflictMetrics versionConflictMetrics;
+    // null unless write combining is switched on
+    private final InventoryWriteCombiner writeCombiner;
+    // null unless sharding is switched on
+    private final ShardDirectory shardDirectory;
+    private final Duration moveRecoveryAfter;
+    private final Counter revertedMoves;
 
 
     public MaterialInventoryServiceImpl(WarehouseRepository warehouseRepository,
                                         MaterialInventoryRepository materialInventoryRepository,
                                         MaterialTypeRepository materialTypeRepository,
-                                        ApplicationEventPublisher publisher, ModelMapper modelMapper) {
+                                        CrossShardMoveRepository crossShardMoveRepository,
+                                        ApplicationEventPublisher publisher, InventoryMapper inventoryMapper,
+                                        PlatformTransactionManager transactionManager,
+                                        LockConflictRetrier lockConflictRetrier,
+                                        ReferenceDataCache referenceDataCache,
+                                        ReservationBook reservationBook,
+                                        VersionConflictMetrics versionConflictMetrics,
+                                        MeterRegistry meterRegistry,
+                                        ObjectProvider<ShardDirectory> shardDirectory,
+                                        @Value("${warehouse.inventory.move-concurrency-mode:ORDERED_LOCKING}") MoveConcurrencyMode moveConcurrencyMode,
+                                        @Value("${warehouse.inventory.write-combining.enabled:false}") boolean writeCombining,
+                                        @Value("${warehouse.inventory.write-combining.window-ms:2}") long writeCombiningWindowMillis,
+                                        @Value("${warehouse.inventory.sharding.move-recovery-after-ms:60000}") long moveRecoveryAfterMillis) {
         this.warehouseRepository = warehouseRepository;
         this.materialInventoryRepository = materialInventoryRepository;
         this.materialTypeRepository = materialTypeRepository;
+        this.crossShardMoveRepository = crossShardMoveRepository;
         this.publisher = publisher;
-        this.modelMapper = modelMapper;
+        this.inventoryMapper = inventoryMapper;
+        // transactions are started here rather than declared, a shard has to be picked before they begin
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.writeTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.writeTransactionTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_READ_COMMITTED);
+        this.readTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.readTransactionTemplate.setReadOnly(true);
+        this.lockConflictRetrier = lockConflictRetrier;
+        this.moveConcurrencyMode = moveConcurrencyMode;
+        this.referenceDataCache = referenceDataCache;
+        this.reservationBook = reservationBook;
+        this.versionConflictMetrics = versionConflictMetrics;
+        this.writeCombiner = writeCombining
+                ? new InventoryWriteCombiner(Duration.ofMillis(writeCombiningWindowMillis), this::applyCombinedWrites, meterRegistry)
+                : null;
+        this.shardDirectory = shardDirectory.getIfAvailable();
+        this.moveRecoveryAfter = Duration.ofMillis(moveRecoveryAfterMillis);
+        this.revertedMoves = Counter.builder("inventory.moves.reverted")
+                .description("Moves between shards whose quantity went back to the source warehouse")
+                .register(meterRegistry);
     }
 
     //Method for adding material to warehouse
@@ -44,163 +151,901 @@ public class MaterialInventoryServiceImpl implements MaterialInventoryService{
     public MaterialInventoryDto addMaterialToWarehouse(Long warehouseId,
                                                        Long materialTypeId,
                                                        int quantityToAdd) {
+        if (combinesWrites()) {
+            validateWarehouseExists(warehouseId);
+            validateMaterialTypeExists(materialTypeId);
+            return writeCombiner.submit(new InventoryKey(warehouseId, materialTypeId), quantityToAdd);
+        }
+        return writeOnShardOf(warehouseId, () -> writeTransactionTemplate.execute(status -> addMaterial(warehouseId, materialTypeId, quantityToAdd, 0, null)));
+    }
+
+    //Method for adding material to warehouse, if its inventory is still in the version the client has seen
+    @Override
+    public MaterialInventoryDto addMaterialToWarehouse(Long warehouseId, Long materialTypeId, int quantityToAdd, InventoryVersion expectedVersion) {
+        if (expectedVersion == null) {
+            //nothing to check, so the add may be combined like any other
+            return addMaterialToWarehouse(warehouseId, materialTypeId, quantityToAdd);
+        }
+        return writeOnShardOf(warehouseId, () -> writeTransactionTemplate.execute(status -> addMaterial(warehouseId, materialTypeId, quantityToAdd, 0, expectedVersion)));
+    }
+
+    //Method for adding material to warehouse into capacity reserved for it
+    @Override
+    public MaterialInventoryDto addReservedMaterial(Long warehouseId, Long materialTypeId, int quantityToAdd, int reservedQuantity) {
+        return writeOnShardOf(warehouseId, () -> writeTransactionTemplate.execute(status -> addMaterial(warehouseId, materialTypeId, quantityToAdd, reservedQuantity, null)));
+    }
+
+    private MaterialInventoryDto addMaterial(Long warehouseId, Long materialTypeId, int quantityToAdd, int reservedQuantity, InventoryVersion expectedVersion) {
         //check if warehouse exists with given id
-        WarehouseEntity warehouse = validateWarehouseExists(warehouseId);
+        validateWarehouseExists(warehouseId);
         //check if materialType exists with given id
-        MaterialTypeEntity materialType = validateMaterialTypeExists(materialTypeId);
-
-        //trying to get or create inventory based on warehouse id and materialType
-        MaterialInventoryEntity inventory = materialInventoryRepository
-                .findByWarehouseAndMaterialType(warehouse, materialType)
-                .orElse(new MaterialInventoryEntity());
-
-        //if inventory doesn't exist create a new one
-        if (inventory.getInventoryId() == null) {
-            validateCapacity(materialType, quantityToAdd);
-            inventory.setWarehouse(warehouse);
-            inventory.setMaterialType(materialType);
-            inventory.setQuantity(quantityToAdd);
+        MaterialTypeSnapshot materialType = validateMaterialTypeExists(materialTypeId);
+
+        // capacity is enforced by the update itself, so concurrent adds can neither overshoot it nor lose each other's changes
+        if (expectedVersion == null) {
+            applyAddition(warehouseId, materialType, quantityToAdd);
         } else {
-            // if inventory already exists check if new quantity
-            // doesn't exceed maximum quantity of given material
-            int newQuantity = inventory.getQuantity() + quantityToAdd;
-            validateCapacity(materialType, newQuantity);
-            inventory.setQuantity(newQuantity);
-        }
-        // saving inventory to database
-        MaterialInventoryEntity savedInventory = materialInventoryRepository.save(inventory);
+            applyVersionedDelta(warehouseId, materialType, quantityToAdd, expectedVersion);
+        }
+
+        MaterialInventoryEntity savedInventory = validateInventoryExists(warehouseId, materialTypeId);
+        // the row is locked by now, so a reservation made meanwhile is either seen here or sees this quantity
+        reservationBook.checkCapacity(warehouseId, materialType, savedInventory.getQuantity(), reservedQuantity);
         // Publish an event after updating inventory
-        InventoryChangeEvent event = new InventoryChangeEvent(this, warehouseId, materialTypeId, quantityToAdd, "add");
+        InventoryChangeEvent event = new InventoryChangeEvent(this, warehouseId, materialTypeId, quantityToAdd, InventoryAction.ADD, savedInventory.getQuantity());
         publisher.publishEvent(event);
-        return modelMapper.map(savedInventory, MaterialInventoryDto.class);
+        return toDto(savedInventory);
     }
 
 
     //Method for removing material from warehouse
     @Override
-    @Transactional
     public MaterialInventoryDto removeMaterialFromWarehouse(Long warehouseId, Long materialTypeId, int quantityToRemove) {
+        if (combinesWrites()) {
+            validateWarehouseExists(warehouseId);
+            validateMaterialTypeExists(materialTypeId);
+            return writeCombiner.submit(new InventoryKey(warehouseId, materialTypeId), -quantityToRemove);
+        }
+        return writeOnShardOf(warehouseId, () -> writeTransactionTemplate.execute(status -> removeMaterial(warehouseId, materialTypeId, quantityToRemove, 0, null)));
+    }
+
+    //Method for removing material from warehouse, if its inventory is still in the version the client has seen
+    @Override
+    public MaterialInventoryDto removeMaterialFromWarehouse(Long warehouseId, Long materialTypeId, int quantityToRemove, InventoryVersion expectedVersion) {
+        if (expectedVersion == null) {
+            //nothing to check, so the removal may be combined like any other
+            return removeMaterialFromWarehouse(warehouseId, materialTypeId, quantityToRemove);
+        }
+        return writeOnShardOf(warehouseId, () -> writeTransactionTemplate.execute(status -> removeMaterial(warehouseId, materialTypeId, quantityToRemove, 0, expectedVersion)));
+    }
+
+    //Method for removing material held for a pick from warehouse
+    @Override
+    public MaterialInventoryDto removeHeldMaterial(Long warehouseId, Long materialTypeId, int quantityToRemove, int heldQuantity) {
+        return writeOnShardOf(warehouseId, () -> writeTransactionTemplate.execute(status -> removeMaterial(warehouseId, materialTypeId, quantityToRemove, heldQuantity, null)));
+    }
+
+    private MaterialInventoryDto removeMaterial(Long warehouseId, Long materialTypeId, int quantityToRemove, int heldQuantity, InventoryVersion expectedVersion) {
         //check if warehouse exists with given id
-        WarehouseEntity warehouse = validateWarehouseExists(warehouseId);
+        validateWarehouseExists(warehouseId);
         //check if materialType exists with given id
-        MaterialTypeEntity materialType = validateMaterialTypeExists(materialTypeId);
-        //check if inventory exists with warehouse id and material type
-        MaterialInventoryEntity inventory = validateInventoryExists(warehouse,materialType);
-        //the quantity we want to remove couldn't be greater than quantity that exists in inventory
-        if (inventory.getQuantity() < quantityToRemove) {
-            throw new InsufficientInventoryException("Attempting to remove " + quantityToRemove + " units, but only " + inventory.getQuantity() + " units are available.");
+        MaterialTypeSnapshot materialType = validateMaterialTypeExists(materialTypeId);
+        //the quantity we want to remove couldn't be greater than quantity that exists in inventory,
+        //the update only matches when enough stock is left
+        if (expectedVersion == null) {
+            applyRemoval(warehouseId, materialTypeId, quantityToRemove);
+        } else {
+            applyVersionedDelta(warehouseId, materialType, -quantityToRemove, expectedVersion);
         }
 
-        inventory.setQuantity(inventory.getQuantity() - quantityToRemove);
+        // If the quantity now becomes 0, we should remove the inventory record
+        MaterialInventoryEntity remaining = materialInventoryRepository.deleteIfEmpty(warehouseId, materialTypeId) == 1
+                ? null
+                : materialInventoryRepository.findByWarehouseIdAndMaterialTypeId(warehouseId, materialTypeId).orElse(null);
+        reservationBook.checkAvailable(warehouseId, materialTypeId, remaining == null ? 0 : remaining.getQuantity(), heldQuantity);
+
         // Publish an event after removing inventory
-        InventoryChangeEvent removalEvent = new InventoryChangeEvent(this, warehouseId, materialTypeId, -quantityToRemove, "remove");
+        InventoryChangeEvent removalEvent = new InventoryChangeEvent(this, warehouseId, materialTypeId, -quantityToRemove, InventoryAction.REMOVE,
+                remaining == null ? 0 : remaining.getQuantity());
         publisher.publishEvent(removalEvent);
 
-        // If the quantity now becomes 0, we should remove the inventory record
-        if (inventory.getQuantity() == 0) {
-            materialInventoryRepository.delete(inventory);
-            return null;
-        } else {
-            MaterialInventoryEntity savedInventory = materialInventoryRepository.save(inventory);
-            return modelMapper.map(savedInventory, MaterialInventoryDto.class);
+        return remaining == null ? null : toDto(remaining);
+    }
+
+    // a combined write commits in a transaction of its own, a caller that is in one already keeps its write in it
+    private boolean combinesWrites() {
+        return writeCombiner != null && !TransactionSynchronizationManager.isActualTransactionActive();
+    }
+
+    // runs a batch of the write combiner: one transaction, one locked read and one update for all of its writes
+    private void applyCombinedWrites(InventoryKey key, List<InventoryWriteCombiner.Write> writes) {
+        List<Object> outcomes = lockConflictRetrier.execute(() -> writeOnShardOf(key.warehouseId(),
+                () -> writeTransactionTemplate.execute(status -> combineWrites(key, writes))));
+        // only answered once the transaction committed
+        for (int i = 0; i < writes.size(); i++) {
+            if (outcomes.get(i) instanceof RuntimeException failure) {
+                writes.get(i).fail(failure);
+            } else {
+                writes.get(i).succeed((MaterialInventoryDto) outcomes.get(i));
+            }
+        }
+    }
+
+    private List<Object> combineWrites(InventoryKey key, List<InventoryWriteCombiner.Write> writes) {
+        Long warehouseId = key.warehouseId();
+        Long materialTypeId = key.materialTypeId();
+        MaterialTypeSnapshot materialType = validateMaterialTypeExists(materialTypeId);
+        MaterialInventoryEntity inventory = materialInventoryRepository.findForUpdate(warehouseId, materialTypeId).orElse(null);
+        if (inventory == null && writes.stream().anyMatch(write -> write.delta() > 0)) {
+            materialInventoryRepository.insertIfAbsent(warehouseId, materialTypeId, 0);
+            inventory = materialInventoryRepository.findForUpdate(warehouseId, materialTypeId).orElseThrow();
+        }
+
+        // every write is checked against what the writes before it left, exactly as if they had run one by one
+        int quantity = inventory == null ? 0 : inventory.getQuantity();
+        int accepted = 0;
+        List<Object> outcomes = new ArrayList<>(writes.size());
+        for (InventoryWriteCombiner.Write write : writes) {
+            int delta = write.delta();
+            int quantityAfter = quantity + delta;
+            try {
+                if (delta > 0) {
+                    validateCapacity(materialType, quantityAfter);
+                    reservationBook.checkCapacity(warehouseId, materialType, quantityAfter, 0);
+                } else {
+                    if (quantity == 0) {
+                        throw new InventoryNotFoundException("Inventory record not found for warehouse ID: " + warehouseId + " and material type ID: " + materialTypeId);
+                    }
+                    if (quantityAfter < 0) {
+                        throw new InsufficientInventoryException("Attempting to remove " + -delta + " units, but only " + quantity + " units are available.");
+                    }
+                    reservationBook.checkAvailable(warehouseId, materialTypeId, quantityAfter, 0);
+                }
+            } catch (RuntimeException rejected) {
+                outcomes.add(rejected);
+                continue;
+            }
+            quantity = quantityAfter;
+            accepted++;
+            publisher.publishEvent(new InventoryChangeEvent(this, warehouseId, materialTypeId, delta,
+                    delta > 0 ? InventoryAction.ADD : InventoryAction.REMOVE, quantityAfter));
+            // a removal that empties the inventory answers null, like it does on its own
+            MaterialInventoryDto result = null;
+            if (quantityAfter > 0) {
+                result = toDto(inventory);
+                result.setQuantity(quantityAfter);
+                result.setVersion(inventory.getVersion() + accepted);
+            }
+            outcomes.add(result);
+        }
+
+        if (accepted > 0) {
+            materialInventoryRepository.applyCombinedDelta(inventory.getInventoryId(), quantity - inventory.getQuantity(), accepted);
+        }
+        if (inventory != null && quantity == 0) {
+            materialInventoryRepository.deleteIfEmpty(warehouseId, materialTypeId);
+        }
+        return outcomes;
+    }
+
+    private void applyAddition(Long warehouseId, MaterialTypeSnapshot materialType, int quantityToAdd) {
+        Long materialTypeId = materialType.id();
+        for (int attempt = 0; attempt < MAX_ATOMIC_ATTEMPTS; attempt++) {
+            if (materialInventoryRepository.applyQuantityDelta(warehouseId, materialTypeId, quantityToAdd, materialType.maxCapacity()) == 1) {
+                return;
+            }
+            // nothing matched, either there is no inventory yet or the row can't take the quantity
+            if (quantityToAdd <= materialType.maxCapacity()
+                    && materialInventoryRepository.insertIfAbsent(warehouseId, materialTypeId, quantityToAdd) == 1) {
+                return;
+            }
+            int currentQuantity = materialInventoryRepository.findByWarehouseIdAndMaterialTypeId(warehouseId, materialTypeId)
+                    .map(MaterialInventoryEntity::getQuantity)
+                    .orElse(0);
+            validateCapacity(materialType, currentQuantity + quantityToAdd);
+            // the row changed between the statements, try again against the new state
+        }
+        throw new ConcurrencyFailureException("Inventory for warehouse ID: " + warehouseId + " and material type ID: " + materialTypeId + " kept changing, giving up after " + MAX_ATOMIC_ATTEMPTS + " attempts");
+    }
+
+    private void applyRemoval(Long warehouseId, Long materialTypeId, int quantityToRemove) {
+        for (int attempt = 0; attempt < MAX_ATOMIC_ATTEMPTS; attempt++) {
+            if (materialInventoryRepository.applyQuantityDelta(warehouseId, materialTypeId, -quantityToRemove, Integer.MAX_VALUE) == 1) {
+                return;
+            }
+            MaterialInventoryEntity inventory = validateInventoryExists(warehouseId, materialTypeId);
+            if (inventory.getQuantity() < quantityToRemove) {
+                throw new InsufficientInventoryException("Attempting to remove " + quantityToRemove + " units, but only " + inventory.getQuantity() + " units are available.");
+            }
+            // the row changed between the statements, try again against the new state
+        }
+        throw new ConcurrencyFailureException("Inventory for warehouse ID: " + warehouseId + " and material type ID: " + materialTypeId + " kept changing, giving up after " + MAX_ATOMIC_ATTEMPTS + " attempts");
+    }
+
+    // only changes the row in the version the client has seen, any other version fails the precondition
+    private void applyVersionedDelta(Long warehouseId, MaterialTypeSnapshot materialType, int delta, InventoryVersion expectedVersion) {
+        Long materialTypeId = materialType.id();
+        int maxCapacity = delta > 0 ? materialType.maxCapacity() : Integer.MAX_VALUE;
+        if (materialInventoryRepository.applyQuantityDeltaIfVersion(warehouseId, materialTypeId,
+                expectedVersion.inventoryId(), expectedVersion.version(), delta, maxCapacity) == 1) {
+            return;
+        }
+        MaterialInventoryEntity current = materialInventoryRepository.findByWarehouseIdAndMaterialTypeId(warehouseId, materialTypeId).orElse(null);
+        checkVersion(warehouseId, materialTypeId, current, expectedVersion);
+        // the version matched, so the new quantity was out of bounds
+        if (delta > 0) {
+            validateCapacity(materialType, current.getQuantity() + delta);
+        } else if (current.getQuantity() < -delta) {
+            throw new InsufficientInventoryException("Attempting to remove " + -delta + " units, but only " + current.getQuantity() + " units are available.");
+        }
+        throw new ConcurrencyFailureException("Inventory for warehouse ID: " + warehouseId + " and material type ID: " + materialTypeId + " changed while it was updated");
+    }
+
+    private void checkVersion(Long warehouseId, Long materialTypeId, MaterialInventoryEntity current, InventoryVersion expectedVersion) {
+        if (expectedVersion != null && (current == null || !expectedVersion.matches(current.getInventoryId(), current.getVersion()))) {
+            versionConflictMetrics.rejected(materialTypeId);
+            throw new InventoryVersionMismatchException("Inventory for warehouse ID: " + warehouseId + " and material type ID: " + materialTypeId
+                    + " is no longer in version " + expectedVersion.version() + " of inventory ID: " + expectedVersion.inventoryId());
         }
     }
 
     //method for moving material from one warehouse to another
     @Override
-    @Transactional
     public MaterialInventoryDto moveMaterialBetweenWarehouses(Long sourceWarehouseId, Long destinationWarehouseId, Long materialTypeId, int quantityToMove) {
+        return moveMaterialBetweenWarehouses(sourceWarehouseId, destinationWarehouseId, materialTypeId, quantityToMove, null);
+    }
+
+    //method for moving material from one warehouse to another, if the source inventory is still in the version the client has seen
+    @Override
+    public MaterialInventoryDto moveMaterialBetweenWarehouses(Long sourceWarehouseId, Long destinationWarehouseId, Long materialTypeId, int quantityToMove,
+                                                              InventoryVersion expectedSourceVersion) {
+        if (shardDirectory != null && !shardDirectory.sameShard(sourceWarehouseId, destinationWarehouseId)) {
+            return moveAcrossShards(sourceWarehouseId, destinationWarehouseId, materialTypeId, quantityToMove, expectedSourceVersion);
+        }
+        // every attempt runs in its own transaction, so the loser of a deadlock or a version race can simply be run again
+        return lockConflictRetrier.execute(() -> writeOnShardOf(Arrays.asList(sourceWarehouseId, destinationWarehouseId),
+                () -> writeTransactionTemplate.execute(status ->
+                        moveMaterialInTransaction(sourceWarehouseId, destinationWarehouseId, materialTypeId, quantityToMove, expectedSourceVersion))));
+    }
+
+    private MaterialInventoryDto moveMaterialInTransaction(Long sourceWarehouseId, Long destinationWarehouseId, Long materialTypeId, int quantityToMove,
+                                                           InventoryVersion expectedSourceVersion) {
         // //check if source warehouse exists with given id
-        WarehouseEntity sourceWarehouse = warehouseRepository.findById(sourceWarehouseId)
+        referenceDataCache.findWarehouse(sourceWarehouseId)
                 .orElseThrow(() -> new WarehouseNotFoundException("Source warehouse not found with ID: " + sourceWarehouseId));
         //check if destination warehouse exists with given id
-        WarehouseEntity destinationWarehouse = warehouseRepository.findById(destinationWarehouseId)
+        referenceDataCache.findWarehouse(destinationWarehouseId)
                 .orElseThrow(() -> new WarehouseNotFoundException("Destination warehouse not found with ID: " + destinationWarehouseId));
         //check if material exists with given id
-        MaterialTypeEntity materialType = materialTypeRepository.findById(materialTypeId)
+        MaterialTypeSnapshot materialType = referenceDataCache.findMaterialType(materialTypeId)
                 .orElseThrow(() -> new MaterialTypeNotFoundException("Material type not found with ID: " + materialTypeId));
 
-        // Fetch inventory records
-        MaterialInventoryEntity sourceInventory = materialInventoryRepository
-                .findByWarehouseAndMaterialType(sourceWarehouse, materialType)
-                .orElseThrow(() -> new InventoryNotFoundException("Material not found in source warehouse with ID: " + sourceWarehouseId + " and Material Type ID: " + materialTypeId));
+        InventoryKey sourceKey = new InventoryKey(sourceWarehouseId, materialTypeId);
+        InventoryKey destinationKey = new InventoryKey(destinationWarehouseId, materialTypeId);
+        MovedInventory moved = switch (moveConcurrencyMode) {
+            case ORDERED_LOCKING -> moveWithOrderedLocking(sourceKey, destinationKey, materialType, quantityToMove, expectedSourceVersion);
+            case ATOMIC_UPDATES -> moveWithAtomicUpdates(sourceKey, destinationKey, materialType, quantityToMove, expectedSourceVersion);
+            case OPTIMISTIC -> moveOptimistically(sourceKey, destinationKey, materialType, quantityToMove, expectedSourceVersion);
+        };
+        reservationBook.checkAvailable(sourceWarehouseId, materialTypeId, moved.sourceQuantity(), 0);
+        reservationBook.checkCapacity(destinationWarehouseId, materialType, moved.destination().getQuantity(), 0);
 
-        MaterialInventoryEntity destinationInventory = materialInventoryRepository
-                .findByWarehouseAndMaterialType(destinationWarehouse, materialType)
-                .orElse(new MaterialInventoryEntity(destinationWarehouse, materialType, 0));
+        // Publish events after moving inventory
+        InventoryChangeEvent sourceEvent = new InventoryChangeEvent(this, sourceWarehouseId, materialTypeId, -quantityToMove, InventoryAction.MOVE_FROM, moved.sourceQuantity());
+        InventoryChangeEvent destinationEvent = new InventoryChangeEvent(this, destinationWarehouseId, materialTypeId, quantityToMove, InventoryAction.MOVE_TO, moved.destination().getQuantity());
+        publisher.publishEvent(sourceEvent);
+        publisher.publishEvent(destinationEvent);
+
+        // Return the updated inventory of the destination warehouse
+        return toDto(moved.destination());
+    }
+
+    /*
+     * A move between warehouses on different shards can't be one transaction. The source takes the quantity out and
+     * records the move as pending, then the destination puts it in and records it as deposited, each in a transaction
+     * of its own. If the deposit fails, or the instance dies in between, the move is settled: the destination records
+     * it as voided unless it was deposited, which keeps a late deposit out, and the source gives the quantity back
+     * unless it was deposited. Deleting the pending record is what makes the settlement happen once.
+     */
+    private MaterialInventoryDto moveAcrossShards(Long sourceWarehouseId, Long destinationWarehouseId, Long materialTypeId, int quantityToMove,
+                                                  InventoryVersion expectedSourceVersion) {
+        referenceDataCache.findWarehouse(sourceWarehouseId)
+                .orElseThrow(() -> new WarehouseNotFoundException("Source warehouse not found with ID: " + sourceWarehouseId));
+        referenceDataCache.findWarehouse(destinationWarehouseId)
+                .orElseThrow(() -> new WarehouseNotFoundException("Destination warehouse not found with ID: " + destinationWarehouseId));
+        MaterialTypeSnapshot materialType = referenceDataCache.findMaterialType(materialTypeId)
+                .orElseThrow(() -> new MaterialTypeNotFoundException("Material type not found with ID: " + materialTypeId));
 
+        // what the destination plainly can't take is refused before anything is withdrawn, the deposit checks again
+        int destinationQuantity = readOnShardOf(destinationWarehouseId, () -> readTransactionTemplate.execute(status ->
+                materialInventoryRepository.findByWarehouseIdAndMaterialTypeId(destinationWarehouseId, materialTypeId)
+                        .map(MaterialInventoryEntity::getQuantity)
+                        .orElse(0)));
+        if (destinationQuantity + quantityToMove > materialType.maxCapacity()) {
+            throw new CapacityExceededException("Destination warehouse cannot accommodate the materials due to max capacity constraints. Max capacity is " + materialType.maxCapacity() + ", attempted new quantity is " + (destinationQuantity + quantityToMove) + ".");
+        }
 
+        Long moveId = lockConflictRetrier.execute(() -> writeOnShardOf(sourceWarehouseId, () -> writeTransactionTemplate.execute(status ->
+                withdraw(sourceWarehouseId, destinationWarehouseId, materialTypeId, quantityToMove, expectedSourceVersion))));
+        MaterialInventoryDto deposited;
+        try {
+            deposited = lockConflictRetrier.execute(() -> writeOnShardOf(destinationWarehouseId, () -> writeTransactionTemplate.execute(status ->
+                    deposit(moveId, sourceWarehouseId, destinationWarehouseId, materialType, quantityToMove))));
+        } catch (RuntimeException ex) {
+            try {
+                settleCrossShardMove(moveId, sourceWarehouseId, destinationWarehouseId, materialTypeId, quantityToMove);
+            } catch (RuntimeException settleEx) {
+                // the recovery settles it later
+                ex.addSuppressed(settleEx);
+            }
+            throw ex;
+        }
+        try {
+            writeOnShardOf(sourceWarehouseId, () -> writeTransactionTemplate.execute(status -> crossShardMoveRepository.deletePending(moveId)));
+        } catch (RuntimeException ex) {
+            // the move is done, the recovery finds it deposited and only removes the pending record
+            log.warn("Pending record of the deposited move {} couldn't be removed, leaving it to the recovery", moveId, ex);
+        }
+        return deposited;
+    }
+
+    private Long withdraw(Long sourceWarehouseId, Long destinationWarehouseId, Long materialTypeId, int quantityToMove,
+                          InventoryVersion expectedSourceVersion) {
+        MaterialInventoryEntity sourceInventory = materialInventoryRepository.findForUpdate(sourceWarehouseId, materialTypeId).orElse(null);
+        checkVersion(sourceWarehouseId, materialTypeId, sourceInventory, expectedSourceVersion);
+        if (sourceInventory == null) {
+            throw new InventoryNotFoundException("Material not found in source warehouse with ID: " + sourceWarehouseId + " and Material Type ID: " + materialTypeId);
+        }
+        if (sourceInventory.getQuantity() < quantityToMove) {
+            throw new InsufficientInventoryException("Insufficient material in source warehouse. Attempting to move " + quantityToMove + " units, but only " + sourceInventory.getQuantity() + " units are available.");
+        }
+        sourceInventory.setQuantity(sourceInventory.getQuantity() - quantityToMove);
+        materialInventoryRepository.flush();
+        reservationBook.checkAvailable(sourceWarehouseId, materialTypeId, sourceInventory.getQuantity(), 0);
+
+        // the id is unique across shards, the destination records the move under the same one
+        Long moveId = materialInventoryRepository.nextInventoryId();
+        crossShardMoveRepository.insert(moveId, sourceWarehouseId, destinationWarehouseId, materialTypeId, quantityToMove,
+                CrossShardMoveEntity.State.PENDING.name(), Instant.now());
+        publisher.publishEvent(new InventoryChangeEvent(this, sourceWarehouseId, materialTypeId, -quantityToMove, InventoryAction.MOVE_FROM, sourceInventory.getQuantity()));
+        return moveId;
+    }
+
+    private MaterialInventoryDto deposit(Long moveId, Long sourceWarehouseId, Long destinationWarehouseId, MaterialTypeSnapshot materialType, int quantityToMove) {
+        Long materialTypeId = materialType.id();
+        // a voided move was given back to the source already, a settlement racing this one makes the insert below fail
+        if (crossShardMoveRepository.existsById(moveId)) {
+            throw new ConcurrencyFailureException("Move " + moveId + " to warehouse ID: " + destinationWarehouseId + " was given up on, the material stayed in the source warehouse");
+        }
+        crossShardMoveRepository.insert(moveId, sourceWarehouseId, destinationWarehouseId, materialTypeId, quantityToMove,
+                CrossShardMoveEntity.State.DEPOSITED.name(), Instant.now());
+
+        MaterialInventoryEntity destinationInventory = materialInventoryRepository.findForUpdate(destinationWarehouseId, materialTypeId).orElse(null);
+        if (destinationInventory == null) {
+            materialInventoryRepository.insertIfAbsent(destinationWarehouseId, materialTypeId, 0);
+            destinationInventory = materialInventoryRepository.findForUpdate(destinationWarehouseId, materialTypeId).orElseThrow();
+        }
+        int destinationPotentialNewQuantity = destinationInventory.getQuantity() + quantityToMove;
+        if (destinationPotentialNewQuantity > materialType.maxCapacity()) {
+            throw new CapacityExceededException("Destination warehouse cannot accommodate the materials due to max capacity constraints. Max capacity is " + materialType.maxCapacity() + ", attempted new quantity is " + destinationPotentialNewQuantity + ".");
+        }
+        destinationInventory.setQuantity(destinationPotentialNewQuantity);
+        materialInventoryRepository.flush();
+        reservationBook.checkCapacity(destinationWarehouseId, materialType, destinationPotentialNewQuantity, 0);
+
+        publisher.publishEvent(new InventoryChangeEvent(this, destinationWarehouseId, materialTypeId, quantityToMove, InventoryAction.MOVE_TO, destinationPotentialNewQuantity));
+        return toDto(destinationInventory);
+    }
+
+    private void settleCrossShardMove(Long moveId, Long sourceWarehouseId, Long destinationWarehouseId, Long materialTypeId, int quantity) {
+        boolean deposited = writeOnShardOf(destinationWarehouseId, () -> writeTransactionTemplate.execute(status -> {
+            CrossShardMoveEntity settled = crossShardMoveRepository.findById(moveId).orElse(null);
+            if (settled != null) {
+                return settled.getState() == CrossShardMoveEntity.State.DEPOSITED;
+            }
+            crossShardMoveRepository.insert(moveId, sourceWarehouseId, destinationWarehouseId, materialTypeId, quantity,
+                    CrossShardMoveEntity.State.VOIDED.name(), Instant.now());
+            return false;
+        }));
+        boolean reverted = writeOnShardOf(sourceWarehouseId, () -> writeTransactionTemplate.execute(status -> {
+            if (crossShardMoveRepository.deletePending(moveId) == 0 || deposited) {
+                return false;
+            }
+            // the quantity was there before the move, so it goes back whatever the capacity says now; the row can come
+            // or go between the statements, after a few attempts the move is left pending for recovery to settle
+            int attempt = 0;
+            while (materialInventoryRepository.applyQuantityDelta(sourceWarehouseId, materialTypeId, quantity, Integer.MAX_VALUE) == 0
+                    && materialInventoryRepository.insertIfAbsent(sourceWarehouseId, materialTypeId, quantity) == 0) {
+                if (++attempt == MAX_ATOMIC_ATTEMPTS) {
+                    throw new ConcurrencyFailureException("Inventory for warehouse ID: " + sourceWarehouseId + " and material type ID: " + materialTypeId + " kept changing, giving up reverting move " + moveId + " after " + MAX_ATOMIC_ATTEMPTS + " attempts");
+                }
+            }
+            int sourceQuantity = validateInventoryExists(sourceWarehouseId, materialTypeId).getQuantity();
+            publisher.publishEvent(new InventoryChangeEvent(this, sourceWarehouseId, materialTypeId, quantity, InventoryAction.MOVE_REVERTED, sourceQuantity));
+            return true;
+        }));
+        if (reverted) {
+            revertedMoves.increment();
+        }
+    }
+
+    /**
+     * Settles the moves between shards that got stuck halfway, because the instance running them stopped or the
+     * settlement after a failed deposit failed as well. Settled moves are kept for a day, then removed.
+     *
+     * @return the number of moves settled
+     */
+    @Scheduled(initialDelayString = "${warehouse.inventory.sharding.move-recovery-interval-ms:30000}",
+            fixedDelayString = "${warehouse.inventory.sharding.move-recovery-interval-ms:30000}")
+    public int recoverCrossShardMoves() {
+        if (shardDirectory == null) {
+            return 0;
+        }
+        Instant stuckBefore = Instant.now().minus(moveRecoveryAfter);
+        int settled = 0;
+        for (int shard = 0; shard < shardDirectory.shardCount(); shard++) {
+            List<CrossShardMoveEntity> pending = ShardContext.call(shard, () -> readTransactionTemplate.execute(status ->
+                    crossShardMoveRepository.findByStateAndCreatedAtBeforeOrderByIdAsc(CrossShardMoveEntity.State.PENDING, stuckBefore, Limit.of(MOVE_RECOVERY_BATCH))));
+            for (CrossShardMoveEntity move : pending) {
+                try {
+                    settleCrossShardMove(move.getId(), move.getSourceWarehouseId(), move.getDestinationWarehouseId(), move.getMaterialTypeId(), move.getQuantity());
+                    settled++;
+                } catch (RuntimeException ex) {
+                    log.warn("Move {} between shards couldn't be settled, trying again later", move.getId(), ex);
+                }
+            }
+            ShardContext.run(shard, () -> transactionTemplate.execute(status ->
+                    crossShardMoveRepository.deleteSettledBefore(Instant.now().minus(SETTLED_MOVE_RETENTION))));
+        }
+        return settled;
+    }
+
+    private record MovedInventory(int sourceQuantity, MaterialInventoryEntity destination) {
+    }
+
+    private MovedInventory moveWithOrderedLocking(InventoryKey sourceKey, InventoryKey destinationKey,
+                                                           MaterialTypeSnapshot materialType, int quantityToMove,
+                                                           InventoryVersion expectedSourceVersion) {
+        Map<InventoryKey, MaterialInventoryEntity> locked = lockInventories(List.of(sourceKey, destinationKey));
+
+        MaterialInventoryEntity sourceInventory = locked.get(sourceKey);
+        checkVersion(sourceKey.warehouseId(), sourceKey.materialTypeId(), sourceInventory, expectedSourceVersion);
+        if (sourceInventory == null) {
+            throw new InventoryNotFoundException("Material not found in source warehouse with ID: " + sourceKey.warehouseId() + " and Material Type ID: " + sourceKey.materialTypeId());
+        }
         // Check if source has enough material
         if (sourceInventory.getQuantity() < quantityToMove) {
             throw new InsufficientInventoryException("Insufficient material in source warehouse. Attempting to move " + quantityToMove + " units, but only " + sourceInventory.getQuantity() + " units are available.");
         }
 
+        MaterialInventoryEntity destinationInventory = locked.get(destinationKey);
+        if (destinationInventory == null) {
+            // the source row is already locked at this point, so creating the destination late doesn't break the lock order
+            materialInventoryRepository.insertIfAbsent(destinationKey.warehouseId(), destinationKey.materialTypeId(), 0);
+            destinationInventory = materialInventoryRepository.findForUpdate(destinationKey.warehouseId(), destinationKey.materialTypeId())
+                    .orElseThrow();
+        }
+
         // Check if destination can hold more material
         int destinationPotentialNewQuantity = destinationInventory.getQuantity() + quantityToMove;
-
-        if (destinationPotentialNewQuantity > materialType.getMaxCapacity()) {
-            throw new CapacityExceededException("Destination warehouse cannot accommodate the materials due to max capacity constraints. Max capacity is " + materialType.getMaxCapacity() + ", attempted new quantity is " + destinationPotentialNewQuantity + ".");
+        if (destinationPotentialNewQuantity > materialType.maxCapacity()) {
+            throw new CapacityExceededException("Destination warehouse cannot accommodate the materials due to max capacity constraints. Max capacity is " + materialType.maxCapacity() + ", attempted new quantity is " + destinationPotentialNewQuantity + ".");
         }
 
-        // Update inventories
+        // Update inventories, both rows are locked so the versioned updates can't fail,
+        // flushed right away so the returned inventory carries its new version
         sourceInventory.setQuantity(sourceInventory.getQuantity() - quantityToMove);
-        destinationInventory.setQuantity(destinationInventory.getQuantity() + quantityToMove);
+        destinationInventory.setQuantity(destinationPotentialNewQuantity);
+        materialInventoryRepository.flush();
+        return new MovedInventory(sourceInventory.getQuantity(), destinationInventory);
+    }
 
-        // Publish events after moving inventory
-        InventoryChangeEvent sourceEvent = new InventoryChangeEvent(this, sourceWarehouseId, materialTypeId, -quantityToMove, "move from");
-        InventoryChangeEvent destinationEvent = new InventoryChangeEvent(this, destinationWarehouseId, materialTypeId, quantityToMove, "move to");
-        publisher.publishEvent(sourceEvent);
-        publisher.publishEvent(destinationEvent);
+    private MovedInventory moveWithAtomicUpdates(InventoryKey sourceKey, InventoryKey destinationKey,
+                                                          MaterialTypeSnapshot materialType, int quantityToMove,
+                                                          InventoryVersion expectedSourceVersion) {
+        Runnable removal = expectedSourceVersion == null
+                ? () -> applyRemoval(sourceKey.warehouseId(), sourceKey.materialTypeId(), quantityToMove)
+                : () -> applyVersionedDelta(sourceKey.warehouseId(), materialType, -quantityToMove, expectedSourceVersion);
+        // the conditional updates lock the rows they change, so they are issued in key order as well
+        if (sourceKey.compareTo(destinationKey) <= 0) {
+            removal.run();
+            applyAddition(destinationKey.warehouseId(), materialType, quantityToMove);
+        } else {
+            applyAddition(destinationKey.warehouseId(), materialType, quantityToMove);
+            removal.run();
+        }
+        int sourceQuantity = validateInventoryExists(sourceKey.warehouseId(), sourceKey.materialTypeId()).getQuantity();
+        return new MovedInventory(sourceQuantity, validateInventoryExists(destinationKey.warehouseId(), destinationKey.materialTypeId()));
+    }
 
-        // Save changes
-        materialInventoryRepository.save(sourceInventory);
-        materialInventoryRepository.save(destinationInventory);
+    private MovedInventory moveOptimistically(InventoryKey sourceKey, InventoryKey destinationKey,
+                                              MaterialTypeSnapshot materialType, int quantityToMove,
+                                              InventoryVersion expectedSourceVersion) {
+        // plain reads, nothing is locked before the versioned updates at the end
+        MaterialInventoryEntity sourceInventory = materialInventoryRepository
+                .findByWarehouseIdAndMaterialTypeId(sourceKey.warehouseId(), sourceKey.materialTypeId()).orElse(null);
+        checkVersion(sourceKey.warehouseId(), sourceKey.materialTypeId(), sourceInventory, expectedSourceVersion);
+        if (sourceInventory == null) {
+            throw new InventoryNotFoundException("Material not found in source warehouse with ID: " + sourceKey.warehouseId() + " and Material Type ID: " + sourceKey.materialTypeId());
+        }
+        if (sourceInventory.getQuantity() < quantityToMove) {
+            throw new InsufficientInventoryException("Insufficient material in source warehouse. Attempting to move " + quantityToMove + " units, but only " + sourceInventory.getQuantity() + " units are available.");
+        }
+        MaterialInventoryEntity destinationInventory = materialInventoryRepository
+                .findByWarehouseIdAndMaterialTypeId(destinationKey.warehouseId(), destinationKey.materialTypeId()).orElse(null);
+        if (destinationInventory == null) {
+            materialInventoryRepository.insertIfAbsent(destinationKey.warehouseId(), destinationKey.materialTypeId(), 0);
+            destinationInventory = materialInventoryRepository
+                    .findByWarehouseIdAndMaterialTypeId(destinationKey.warehouseId(), destinationKey.materialTypeId()).orElseThrow();
+        }
+        int destinationPotentialNewQuantity = destinationInventory.getQuantity() + quantityToMove;
+        if (destinationPotentialNewQuantity > materialType.maxCapacity()) {
+            throw new CapacityExceededException("Destination warehouse cannot accommodate the materials due to max capacity constraints. Max capacity is " + materialType.maxCapacity() + ", attempted new quantity is " + destinationPotentialNewQuantity + ".");
+        }
 
-        // Return the updated inventory of the destination warehouse
-        return modelMapper.map(destinationInventory, MaterialInventoryDto.class);
+        // in key order like the other modes, a lost race rolls back the other update with the transaction
+        int sourceNewQuantity = sourceInventory.getQuantity() - quantityToMove;
+        if (sourceKey.compareTo(destinationKey) <= 0) {
+            updateIfUnchanged(sourceInventory, sourceNewQuantity, materialType);
+            updateIfUnchanged(destinationInventory, destinationPotentialNewQuantity, materialType);
+        } else {
+            updateIfUnchanged(destinationInventory, destinationPotentialNewQuantity, materialType);
+            updateIfUnchanged(sourceInventory, sourceNewQuantity, materialType);
+        }
+        return new MovedInventory(sourceNewQuantity, destinationInventory);
+    }
+
+    private void updateIfUnchanged(MaterialInventoryEntity inventory, int quantity, MaterialTypeSnapshot materialType) {
+        if (materialInventoryRepository.updateQuantityIfVersion(inventory.getInventoryId(), inventory.getVersion(), quantity) == 0) {
+            versionConflictMetrics.retried(materialType.id());
+            throw new OptimisticLockingFailureException("Inventory ID: " + inventory.getInventoryId() + " changed since it was read");
+        }
+        // the update cleared the persistence context, the detached copy is brought up to date for the response
+        inventory.setQuantity(quantity);
+        inventory.setVersion(inventory.getVersion() + 1);
+    }
+
+    // locks the existing rows for the given keys in key order, missing rows are left out of the result
+    private Map<InventoryKey, MaterialInventoryEntity> lockInventories(Collection<InventoryKey> keys) {
+        Map<InventoryKey, MaterialInventoryEntity> locked = new HashMap<>();
+        for (InventoryKey key : new TreeSet<>(keys)) {
+            materialInventoryRepository.findForUpdate(key.warehouseId(), key.materialTypeId())
+                    .ifPresent(inventory -> locked.put(key, inventory));
+        }
+        return locked;
+    }
+
+    // the locking read waits for uncommitted changes of the row
+    @Override
+    public int getSettledQuantity(Long warehouseId, Long materialTypeId) {
+        return readOnShardOf(warehouseId, () -> writeTransactionTemplate.execute(status -> materialInventoryRepository.findForUpdate(warehouseId, materialTypeId)
+                .map(MaterialInventoryEntity::getQuantity)
+                .orElse(0)));
+    }
+
+    //method for getting a warehouse without its materials
+    @Override
+    public WarehouseDto getWarehouse(Long warehouseId) {
+        return inventoryMapper.toWarehouseDto(validateWarehouseExists(warehouseId));
     }
 
     //method for getting warehouse (its name and materials  there)
     @Override
     public WarehouseMaterialsDto getWarehouseMaterials(Long warehouseId) {
-        WarehouseEntity warehouse = warehouseRepository.findById(warehouseId)
-                .orElseThrow(() -> new WarehouseNotFoundException("Warehouse not found with ID: " + warehouseId));
-
-        List<MaterialInventoryDto> materials = getMaterialsByWarehouseId(warehouseId);
+        WarehouseSnapshot warehouse = validateWarehouseExists(warehouseId);
 
-        WarehouseMaterialsDto response = new WarehouseMaterialsDto();
-        response.setId(warehouse.getId());
-        response.setName(warehouse.getName());
-        response.setMaterials(materials);
+        List<MaterialInventoryDto> materials = readOnShardOf(warehouseId, () -> readTransactionTemplate.execute(status -> getMaterials(warehouse)));
 
-        return response;
+        return inventoryMapper.toWarehouseMaterialsDto(warehouse, materials);
     }
 
     @Override
     public List<MaterialInventoryDto> getMaterialsByWarehouseId(Long warehouseId) {
-        List<MaterialInventoryEntity> materialInventoryEntities = materialInventoryRepository.findByWarehouseId(warehouseId);
-        return materialInventoryEntities.stream()
-                .map(entity -> modelMapper.map(entity, MaterialInventoryDto.class))
+        // inventory rows can only exist for an existing warehouse, an unknown one simply has no materials
+        WarehouseSnapshot warehouse = referenceDataCache.findWarehouse(warehouseId).orElse(null);
+        return warehouse == null ? List.of() : readOnShardOf(warehouseId, () -> readTransactionTemplate.execute(status -> getMaterials(warehouse)));
+    }
+
+    //method for getting one page of a warehouse's materials, ordered by inventory id
+    @Override
+    public MaterialInventoryPageDto getWarehouseMaterialsPage(Long warehouseId, Long afterInventoryId, int limit) {
+        WarehouseSnapshot warehouse = validateWarehouseExists(warehouseId);
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+
+        // one extra row tells whether there is a next page without a count query
+        List<MaterialInventoryRow> rows = readOnShardOf(warehouseId, () -> readTransactionTemplate.execute(status ->
+                materialInventoryRepository.findRowsByWarehouseIdAfter(warehouseId,
+                        afterInventoryId == null ? Long.MIN_VALUE : afterInventoryId, Limit.of(pageSize + 1))));
+        boolean hasNext = rows.size() > pageSize;
+        if (hasNext) {
+            rows = rows.subList(0, pageSize);
+        }
+
+        WarehouseDto warehouseDto = inventoryMapper.toWarehouseDto(warehouse);
+        List<MaterialInventoryDto> materials = rows.stream()
+                .map(row -> inventoryMapper.toMaterialInventoryDto(row, warehouseDto))
                 .collect(Collectors.toList());
+        Long nextCursor = hasNext ? rows.get(rows.size() - 1).inventoryId() : null;
+        return new MaterialInventoryPageDto(warehouse.id(), warehouse.name(), materials, nextCursor);
     }
-    private void validateCapacity(MaterialTypeEntity materialType, int quantity) {
-        if (quantity > materialType.getMaxCapacity()) {
-            throw new CapacityExceededException("Quantity " + quantity + " exceeds the maximum capacity for this material type: " + materialType.getName());
+
+    //method for handing every material of a warehouse to the consumer while it is read from the database
+    @Override
+    public void streamWarehouseMaterials(Long warehouseId, Consumer<MaterialInventoryDto> consumer) {
+        WarehouseSnapshot warehouse = validateWarehouseExists(warehouseId);
+        WarehouseDto warehouseDto = inventoryMapper.toWarehouseDto(warehouse);
+        readOnShardOf(warehouseId, () -> readTransactionTemplate.execute(status -> {
+            try (Stream<MaterialInventoryRow> rows = materialInventoryRepository.streamRowsByWarehouseId(warehouseId)) {
+                rows.forEach(row -> consumer.accept(inventoryMapper.toMaterialInventoryDto(row, warehouseDto)));
+            }
+            return null;
+        }));
+    }
+
+    private List<MaterialInventoryDto> getMaterials(WarehouseSnapshot warehouse) {
+        // the warehouse is the same for every row, so all of them share one WarehouseDto
+        WarehouseDto warehouseDto = inventoryMapper.toWarehouseDto(warehouse);
+        return materialInventoryRepository.findRowsByWarehouseId(warehouse.id()).stream()
+                .map(row -> inventoryMapper.toMaterialInventoryDto(row, warehouseDto))
+                .collect(Collectors.toList());
+    }
+
+    //method for applying many add/remove/move lines in one transaction
+    @Override
+    public InventoryBatchResultDto applyInventoryBatch(List<InventoryBatchLineDto> lines) {
+        Set<Long> warehouseIds = new HashSet<>();
+        Set<Long> materialTypeIds = new HashSet<>();
+        for (InventoryBatchLineDto line : lines) {
+            if (line.getWarehouseId() != null) {
+                warehouseIds.add(line.getWarehouseId());
+            }
+            if (line.getDestinationWarehouseId() != null) {
+                warehouseIds.add(line.getDestinationWarehouseId());
+            }
+            if (line.getMaterialTypeId() != null) {
+                materialTypeIds.add(line.getMaterialTypeId());
+            }
+        }
+        // one transaction, so every warehouse of the batch has to be on the same shard; a batch that lost a lock
+        // conflict runs again from the start, line results included
+        return lockConflictRetrier.execute(() -> writeOnShardOf(warehouseIds,
+                () -> writeTransactionTemplate.execute(status -> applyBatch(lines, warehouseIds, materialTypeIds))));
+    }
+
+    private InventoryBatchResultDto applyBatch(List<InventoryBatchLineDto> lines, Set<Long> warehouseIds, Set<Long> materialTypeIds) {
+        // prefetch everything the batch touches with one IN query per table instead of several lookups per line
+        Map<Long, WarehouseEntity> warehouses = warehouseRepository.findAllById(warehouseIds).stream()
+                .collect(Collectors.toMap(WarehouseEntity::getId, Function.identity()));
+        Map<Long, MaterialTypeEntity> materialTypes = materialTypeRepository.findAllById(materialTypeIds).stream()
+                .collect(Collectors.toMap(MaterialTypeEntity::getId, Function.identity()));
+        Map<InventoryKey, MaterialInventoryEntity> inventories = new HashMap<>();
+        if (!warehouses.isEmpty() && !materialTypes.isEmpty()) {
+            for (MaterialInventoryEntity inventory : materialInventoryRepository
+                    .findByWarehouseIdInAndMaterialTypeIdInOrderByWarehouseIdAscMaterialTypeIdAsc(warehouses.keySet(), materialTypes.keySet())) {
+                inventories.put(new InventoryKey(inventory.getWarehouse().getId(), inventory.getMaterialType().getId()), inventory);
+            }
+        }
+
+        // every line is validated before it changes anything, so a failing line leaves the others untouched
+        List<InventoryBatchLineResultDto> results = new ArrayList<>(lines.size());
+        int failed = 0;
+        for (int i = 0; i < lines.size(); i++) {
+            try {
+                MaterialInventoryEntity inventory = applyBatchLine(lines.get(i), warehouses, materialTypes, inventories);
+                MaterialInventoryDto dto = inventory.getQuantity() == 0 ? null : toDto(inventory);
+                if (dto != null) {
+                    // the rows are only written on commit, however many lines changed them, so the new version isn't known yet
+                    dto.setVersion(null);
+                }
+                results.add(new InventoryBatchLineResultDto(i, true, null, dto));
+            } catch (WarehouseNotFoundException | MaterialTypeNotFoundException | InventoryNotFoundException
+                     | InsufficientInventoryException | CapacityExceededException | IllegalArgumentException ex) {
+                failed++;
+                results.add(new InventoryBatchLineResultDto(i, false, ex.getMessage(), null));
+            }
+        }
+
+        // rows emptied by the batch are removed like in removeMaterialFromWarehouse,
+        // everything else is written by dirty checking in JDBC batches on commit
+        List<MaterialInventoryEntity> emptied = inventories.values().stream()
+                .filter(inventory -> inventory.getQuantity() == 0)
+                .toList();
+        materialInventoryRepository.deleteAll(emptied);
+
+        return new InventoryBatchResultDto(lines.size() - failed, failed, results);
+    }
+
+    private MaterialInventoryEntity applyBatchLine(InventoryBatchLineDto line,
+                                                   Map<Long, WarehouseEntity> warehouses,
+                                                   Map<Long, MaterialTypeEntity> materialTypes,
+                                                   Map<InventoryKey, MaterialInventoryEntity> inventories) {
+        if (line.getOperation() == null) {
+            throw new IllegalArgumentException("Operation must be specified");
+        }
+        if (line.getQuantity() <= 0) {
+            throw new IllegalArgumentException("Quantity must be positive, got " + line.getQuantity());
+        }
+        WarehouseEntity warehouse = warehouses.get(line.getWarehouseId());
+        if (warehouse == null) {
+            throw new WarehouseNotFoundException("Warehouse not found with ID: " + line.getWarehouseId());
+        }
+        MaterialTypeEntity materialType = materialTypes.get(line.getMaterialTypeId());
+        if (materialType == null) {
+            throw new MaterialTypeNotFoundException("Material Type not found with ID: " + line.getMaterialTypeId());
+        }
+        InventoryKey key = new InventoryKey(warehouse.getId(), materialType.getId());
+        MaterialInventoryEntity inventory = inventories.get(key);
+        int quantity = line.getQuantity();
+
+        switch (line.getOperation()) {
+            case ADD -> {
+                inventory = batchInventory(inventories, key);
+                int newQuantity = inventory.getQuantity() + quantity;
+                validateCapacity(MaterialTypeSnapshot.of(materialType), newQuantity);
+                reservationBook.checkCapacity(key.warehouseId(), MaterialTypeSnapshot.of(materialType), newQuantity, 0);
+                inventory.setQuantity(newQuantity);
+                publisher.publishEvent(new InventoryChangeEvent(this, key.warehouseId(), key.materialTypeId(), quantity, InventoryAction.ADD, inventory.getQuantity()));
+                return inventory;
+            }
+            case REMOVE -> {
+                if (inventory == null || inventory.getQuantity() == 0) {
+                    throw new InventoryNotFoundException("Inventory record not found for warehouse ID: " + key.warehouseId() + " and material type ID: " + key.materialTypeId());
+                }
+                if (inventory.getQuantity() < quantity) {
+                    throw new InsufficientInventoryException("Attempting to remove " + quantity + " units, but only " + inventory.getQuantity() + " units are available.");
+                }
+                reservationBook.checkAvailable(key.warehouseId(), key.materialTypeId(), inventory.getQuantity() - quantity, 0);
+                inventory.setQuantity(inventory.getQuantity() - quantity);
+                publisher.publishEvent(new InventoryChangeEvent(this, key.warehouseId(), key.materialTypeId(), -quantity, InventoryAction.REMOVE, inventory.getQuantity()));
+                return inventory;
+            }
+            case MOVE -> {
+                WarehouseEntity destinationWarehouse = warehouses.get(line.getDestinationWarehouseId());
+                if (destinationWarehouse == null) {
+                    throw new WarehouseNotFoundException("Destination warehouse not found with ID: " + line.getDestinationWarehouseId());
+                }
+                if (destinationWarehouse.getId().equals(warehouse.getId())) {
+                    throw new IllegalArgumentException("Source and destination warehouse must differ, got " + warehouse.getId());
+                }
+                if (inventory == null || inventory.getQuantity() == 0) {
+                    throw new InventoryNotFoundException("Material not found in source warehouse with ID: " + key.warehouseId() + " and Material Type ID: " + key.materialTypeId());
+                }
+                if (inventory.getQuantity() < quantity) {
+                    throw new InsufficientInventoryException("Insufficient material in source warehouse. Attempting to move " + quantity + " units, but only " + inventory.getQuantity() + " units are available.");
+                }
+                InventoryKey destinationKey = new InventoryKey(destinationWarehouse.getId(), materialType.getId());
+                MaterialInventoryEntity destinationInventory = batchInventory(inventories, destinationKey);
+                int destinationNewQuantity = destinationInventory.getQuantity() + quantity;
+                if (destinationNewQuantity > materialType.getMaxCapacity()) {
+                    throw new CapacityExceededException("Destination warehouse cannot accommodate the materials due to max capacity constraints. Max capacity is " + materialType.getMaxCapacity() + ", attempted new quantity is " + destinationNewQuantity + ".");
+                }
+                reservationBook.checkAvailable(key.warehouseId(), key.materialTypeId(), inventory.getQuantity() - quantity, 0);
+                reservationBook.checkCapacity(destinationKey.warehouseId(), MaterialTypeSnapshot.of(materialType), destinationNewQuantity, 0);
+                inventory.setQuantity(inventory.getQuantity() - quantity);
+                destinationInventory.setQuantity(destinationNewQuantity);
+                publisher.publishEvent(new InventoryChangeEvent(this, key.warehouseId(), key.materialTypeId(), -quantity, InventoryAction.MOVE_FROM, inventory.getQuantity()));
+                publisher.publishEvent(new InventoryChangeEvent(this, destinationKey.warehouseId(), destinationKey.materialTypeId(), quantity, InventoryAction.MOVE_TO, destinationInventory.getQuantity()));
+                return destinationInventory;
+            }
+            default -> throw new IllegalArgumentException("Unsupported operation: " + line.getOperation());
+        }
+    }
+
+    // a row the batch hasn't locked yet is created like the destination of a move and locked, a line that then fails
+    // leaves it empty and it is removed with the rows the batch emptied
+    private MaterialInventoryEntity batchInventory(Map<InventoryKey, MaterialInventoryEntity> inventories, InventoryKey key) {
+        MaterialInventoryEntity inventory = inventories.get(key);
+        if (inventory == null) {
+            inventory = createAndLockInventory(key.warehouseId(), key.materialTypeId());
+            inventories.put(key, inventory);
+        }
+        return inventory;
+    }
+
+    // a concurrent insert of the same row is ignored and its row locked instead; if that insert is rolled back the
+    // row is gone again by the time it is read, so both are tried a few times
+    private MaterialInventoryEntity createAndLockInventory(Long warehouseId, Long materialTypeId) {
+        for (int attempt = 0; attempt < MAX_ATOMIC_ATTEMPTS; attempt++) {
+            materialInventoryRepository.insertIfAbsent(warehouseId, materialTypeId, 0);
+            Optional<MaterialInventoryEntity> inventory = materialInventoryRepository.findForUpdate(warehouseId, materialTypeId);
+            if (inventory.isPresent()) {
+                return inventory.get();
+            }
+        }
+        throw new ConcurrencyFailureException("Inventory for warehouse ID: " + warehouseId + " and material type ID: " + materialTypeId + " kept changing, giving up after " + MAX_ATOMIC_ATTEMPTS + " attempts");
+    }
+
+    //method for moving many materials between many warehouses as one unit
+    @Override
+    public TransferOrderResultDto applyTransferOrder(List<TransferLegDto> legs) {
+        // the legs are validated before the transaction, a bad leg doesn't hold any locks
+        TransferPlan plan = TransferPlan.of(legs, referenceDataCache);
+        return lockConflictRetrier.execute(() -> writeOnShardOf(plan.warehouseIds(),
+                () -> writeTransactionTemplate.execute(status -> applyTransferPlan(plan))));
+    }
+
+    private TransferOrderResultDto applyTransferPlan(TransferPlan plan) {
+        Map<Long, List<Long>> materialTypeIdsByWarehouse = new TreeMap<>();
+        plan.deltas().keySet().forEach(key ->
+                materialTypeIdsByWarehouse.computeIfAbsent(key.warehouseId(), id -> new ArrayList<>()).add(key.materialTypeId()));
+
+        // one locking read per warehouse, warehouse by warehouse and in material type order within each,
+        // so the rows are locked in key order like in a move and two orders can't deadlock each other
+        Map<InventoryKey, MaterialInventoryEntity> locked = new HashMap<>();
+        materialTypeIdsByWarehouse.forEach((warehouseId, materialTypeIds) -> {
+            for (MaterialInventoryEntity inventory : materialInventoryRepository
+                    .findByWarehouseIdAndMaterialTypeIdInOrderByMaterialTypeIdAsc(warehouseId, materialTypeIds)) {
+                locked.put(new InventoryKey(warehouseId, inventory.getMaterialType().getId()), inventory);
+            }
+            for (Long materialTypeId : materialTypeIds) {
+                InventoryKey key = new InventoryKey(warehouseId, materialTypeId);
+                if (!locked.containsKey(key) && plan.deltas().get(key) > 0) {
+                    locked.put(key, createAndLockInventory(warehouseId, materialTypeId));
+                }
+            }
+        });
+
+        // every inventory is checked before any of them changes, the first failure rolls back the whole order
+        Map<InventoryKey, Integer> quantitiesAfter = new HashMap<>();
+        plan.deltas().keySet().forEach(key -> {
+            MaterialInventoryEntity inventory = locked.get(key);
+            quantitiesAfter.put(key, plan.quantityAfter(key, inventory == null ? 0 : inventory.getQuantity(), reservationBook));
+        });
+
+        // the rows are managed, so the updates go out in JDBC batches on commit together with the outbox inserts
+        List<MaterialInventoryEntity> emptied = new ArrayList<>();
+        plan.deltas().forEach((key, delta) -> {
+            MaterialInventoryEntity inventory = locked.get(key);
+            int quantityAfter = quantitiesAfter.get(key);
+            inventory.setQuantity(quantityAfter);
+            if (quantityAfter == 0) {
+                emptied.add(inventory);
+            }
+            // one change per inventory with the net effect of all legs, rather than two per leg
+            publisher.publishEvent(new InventoryChangeEvent(this, key.warehouseId(), key.materialTypeId(), delta.intValue(), InventoryAction.TRANSFER, quantityAfter));
+        });
+        materialInventoryRepository.deleteAll(emptied);
+        return plan.toResult(emptied.size());
+    }
+
+    // the work runs on the shard of the warehouses, in a transaction it starts there; without sharding there is one database
+    private <T> T writeOnShardOf(Collection<Long> warehouseIds, Supplier<T> work) {
+        return shardDirectory == null ? work.get() : shardDirectory.write(warehouseIds, work);
+    }
+
+    private <T> T writeOnShardOf(Long warehouseId, Supplier<T> work) {
+        return writeOnShardOf(Collections.singletonList(warehouseId), work);
+    }
+
+    private <T> T readOnShardOf(Long warehouseId, Supplier<T> work) {
+        return shardDirectory == null ? work.get() : shardDirectory.read(warehouseId, work);
+    }
+
+    private MaterialInventoryDto toDto(MaterialInventoryEntity inventory) {
+        // only the ids of the lazy associations are read, the rest comes from the reference cache
+        WarehouseSnapshot warehouse = validateWarehouseExists(inventory.getWarehouse().getId());
+        MaterialTypeSnapshot materialType = validateMaterialTypeExists(inventory.getMaterialType().getId());
+        return inventoryMapper.toMaterialInventoryDto(inventory, warehouse, materialType);
+    }
+
+    private void validateCapacity(MaterialTypeSnapshot materialType, int quantity) {
+        if (quantity > materialType.maxCapacity()) {
+            throw new CapacityExceededException("Quantity " + quantity + " exceeds the maximum capacity for this material type: " + materialType.name());
         }
     }
 
-    private WarehouseEntity validateWarehouseExists(Long warehouseId) {
-        return warehouseRepository.findById(warehouseId)
+    private WarehouseSnapshot validateWarehouseExists(Long warehouseId) {
+        return referenceDataCache.findWarehouse(warehouseId)
                 .orElseThrow(() -> new WarehouseNotFoundException("Warehouse not found with ID: " + warehouseId));
     }
 
-    private MaterialTypeEntity validateMaterialTypeExists(Long materialTypeId) {
-        return materialTypeRepository.findById(materialTypeId)
+    private MaterialTypeSnapshot validateMaterialTypeExists(Long materialTypeId) {
+        return referenceDataCache.findMaterialType(materialTypeId)
                 .orElseThrow(() -> new MaterialTypeNotFoundException("Material Type not found with ID: " + materialTypeId));
     }
 
-    private MaterialInventoryEntity validateInventoryExists( WarehouseEntity warehouse, MaterialTypeEntity materialType) {
-        return materialInventoryRepository.findByWarehouseAndMaterialType(warehouse, materialType)
-                .orElseThrow(() -> new InventoryNotFoundException("Inventory record not found for warehouse ID: " + warehouse.getId() + " and material type ID: " + materialType.getId()));
+    private MaterialInventoryEntity validateInventoryExists(Long warehouseId, Long materialTypeId) {
+        return materialInventoryRepository.findByWarehouseIdAndMaterialTypeId(warehouseId, materialTypeId)
+                .orElseThrow(() -> new InventoryNotFoundException("Inventory record not found for warehouse ID: " + warehouseId + " and material type ID: " + materialTypeId));
     }
 }
@@ -0,0 +1,14 @@
+package com.example.warehouse.service;
+
+/**
+ * How moveMaterialBetweenWarehouses protects the two inventory rows it changes.
+ * All modes touch the rows in {@link InventoryKey} order, so opposite transfers can't deadlock each other.
+ */
+public enum MoveConcurrencyMode {
+    // lock source and destination rows with SELECT ... FOR UPDATE, then check and change them in Java
+    ORDERED_LOCKING,
+    // apply both sides as conditional updates without reading the rows first
+    ATOMIC_UPDATES,
+    // read both rows without locks, write them back only if their versions are unchanged and retry the move otherwise
+    OPTIMISTIC
+}
@@ -0,0 +1,129 @@
+package com.example.warehouse.service;
+
+import com.example.warehouse.cache.MaterialTypeSnapshot;
+import com.example.warehouse.cache.ReferenceDataCache;
+import com.example.warehouse.dto.TransferLegDto;
+import com.example.warehouse.dto.TransferOrderResultDto;
+import com.example.warehouse.exceptions.CapacityExceededException;
+import com.example.warehouse.exceptions.InsufficientInventoryException;
+import com.example.warehouse.exceptions.InventoryNotFoundException;
+import com.example.warehouse.exceptions.MaterialTypeNotFoundException;
+import com.example.warehouse.exceptions.WarehouseNotFoundException;
+import com.example.warehouse.reservation.ReservationBook;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * The legs of a transfer order folded into one net change per inventory, in key order.
+ * <p>
+ * The legs are checked against the reference data when the plan is built, before anything is locked. The engines
+ * then lock every inventory of the plan and check each net change against the quantity it starts from, so the
+ * order either applies as a whole or not at all, however its legs are ordered.
+ */
+public final class TransferPlan {
+
+    // the ledger journal writes the changes of one order as a single record, which holds at most this many
+    private static final int MAX_INVENTORIES = Short.MAX_VALUE;
+
+    private final int legs;
+    private final long unitsMoved;
+    private final SortedMap<InventoryKey, Long> deltas;
+    private final Map<Long, MaterialTypeSnapshot> materialTypes;
+
+    private TransferPlan(int legs, long unitsMoved, SortedMap<InventoryKey, Long> deltas, Map<Long, MaterialTypeSnapshot> materialTypes) {
+        this.legs = legs;
+        this.unitsMoved = unitsMoved;
+        this.deltas = deltas;
+        this.materialTypes = materialTypes;
+    }
+
+    public static TransferPlan of(List<TransferLegDto> legs, ReferenceDataCache referenceDataCache) {
+        if (legs == null || legs.isEmpty()) {
+            throw new IllegalArgumentException("Transfer order must contain at least one leg");
+        }
+        SortedMap<InventoryKey, Long> deltas = new TreeMap<>();
+        Map<Long, MaterialTypeSnapshot> materialTypes = new HashMap<>();
+        long unitsMoved = 0;
+        for (int i = 0; i < legs.size(); i++) {
+            TransferLegDto leg = legs.get(i);
+            String prefix = "Leg " + i + ": ";
+            if (leg.getQuantity() <= 0) {
+                throw new IllegalArgumentException(prefix + "Quantity must be positive, got " + leg.getQuantity());
+            }
+            referenceDataCache.findWarehouse(leg.getSourceWarehouseId())
+                    .orElseThrow(() -> new WarehouseNotFoundException(prefix + "Source warehouse not found with ID: " + leg.getSourceWarehouseId()));
+            referenceDataCache.findWarehouse(leg.getDestinationWarehouseId())
+                    .orElseThrow(() -> new WarehouseNotFoundException(prefix + "Destination warehouse not found with ID: " + leg.getDestinationWarehouseId()));
+            if (leg.getSourceWarehouseId().equals(leg.getDestinationWarehouseId())) {
+                throw new IllegalArgumentException(prefix + "Source and destination warehouse must differ, got " + leg.getSourceWarehouseId());
+            }
+            if (!materialTypes.containsKey(leg.getMaterialTypeId())) {
+                materialTypes.put(leg.getMaterialTypeId(), referenceDataCache.findMaterialType(leg.getMaterialTypeId())
+                        .orElseThrow(() -> new MaterialTypeNotFoundException(prefix + "Material type not found with ID: " + leg.getMaterialTypeId())));
+            }
+            deltas.merge(new InventoryKey(leg.getSourceWarehouseId(), leg.getMaterialTypeId()), (long) -leg.getQuantity(), Long::sum);
+            deltas.merge(new InventoryKey(leg.getDestinationWarehouseId(), leg.getMaterialTypeId()), (long) leg.getQuantity(), Long::sum);
+            unitsMoved += leg.getQuantity();
+        }
+        // legs that cancel each other out leave the inventory alone, it isn't even locked
+        deltas.values().removeIf(delta -> delta == 0);
+        if (deltas.size() > MAX_INVENTORIES) {
+            throw new IllegalArgumentException("Transfer order must not change more than " + MAX_INVENTORIES + " inventories, got " + deltas.size());
+        }
+        return new TransferPlan(legs.size(), unitsMoved, Collections.unmodifiableSortedMap(deltas), materialTypes);
+    }
+
+    //the net change of every inventory the order changes, ordered by key so they can be locked in that order
+    public SortedMap<InventoryKey, Long> deltas() {
+        return deltas;
+    }
+
+    public SortedSet<Long> warehouseIds() {
+        SortedSet<Long> warehouseIds = new TreeSet<>();
+        deltas.keySet().forEach(key -> warehouseIds.add(key.warehouseId()));
+        return warehouseIds;
+    }
+
+    public MaterialTypeSnapshot materialType(Long materialTypeId) {
+        return materialTypes.get(materialTypeId);
+    }
+
+    /**
+     * Checks the net change of one inventory against the quantity it starts from, which must be locked by the caller.
+     *
+     * @return the quantity once the change is applied
+     */
+    public int quantityAfter(InventoryKey key, int quantity, ReservationBook reservationBook) {
+        long delta = deltas.get(key);
+        long quantityAfter = quantity + delta;
+        MaterialTypeSnapshot materialType = materialTypes.get(key.materialTypeId());
+        if (quantityAfter < 0) {
+            if (quantity == 0) {
+                throw new InventoryNotFoundException("Material not found in source warehouse with ID: " + key.warehouseId() + " and Material Type ID: " + key.materialTypeId());
+            }
+            throw new InsufficientInventoryException("Insufficient material in warehouse ID: " + key.warehouseId() + " for material type ID: " + key.materialTypeId()
+                    + ". The transfer order takes " + -delta + " units, but only " + quantity + " units are available.");
+        }
+        if (quantityAfter > materialType.maxCapacity()) {
+            throw new CapacityExceededException("Warehouse ID: " + key.warehouseId() + " cannot accommodate the materials due to max capacity constraints. Max capacity is "
+                    + materialType.maxCapacity() + ", attempted new quantity is " + quantityAfter + ".");
+        }
+        if (delta < 0) {
+            reservationBook.checkAvailable(key.warehouseId(), key.materialTypeId(), (int) quantityAfter, 0);
+        } else {
+            reservationBook.checkCapacity(key.warehouseId(), materialType, (int) quantityAfter, 0);
+        }
+        return (int) quantityAfter;
+    }
+
+    public TransferOrderResultDto toResult(int inventoriesEmptied) {
+        return new TransferOrderResultDto(legs, unitsMoved, deltas.size(), inventoriesEmptied);
+    }
+}
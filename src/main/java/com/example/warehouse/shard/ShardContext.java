@@ -0,0 +1,44 @@
+package com.example.warehouse.shard;
+
+import java.util.function.Supplier;
+
+/**
+ * The shard the current thread works on. It has to be bound before a transaction starts, the transaction takes its
+ * connection from the shard bound at that moment and keeps it to the end. Nothing bound means the home shard.
+ */
+public final class ShardContext {
+
+    // spring.datasource, which also holds the shard directory
+    public static final int HOME = 0;
+
+    private static final ThreadLocal<Integer> BOUND = new ThreadLocal<>();
+
+    private ShardContext() {
+    }
+
+    public static int current() {
+        Integer shard = BOUND.get();
+        return shard == null ? HOME : shard;
+    }
+
+    public static <T> T call(int shard, Supplier<T> work) {
+        Integer previous = BOUND.get();
+        BOUND.set(shard);
+        try {
+            return work.get();
+        } finally {
+            if (previous == null) {
+                BOUND.remove();
+            } else {
+                BOUND.set(previous);
+            }
+        }
+    }
+
+    public static void run(int shard, Runnable work) {
+        call(shard, () -> {
+            work.run();
+            return null;
+        });
+    }
+}
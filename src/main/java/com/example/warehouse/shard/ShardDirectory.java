@@ -0,0 +1,250 @@
+package com.example.warehouse.shard;
+
+import com.example.warehouse.cache.ReferenceDataCache;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Which shard holds the inventory of which warehouse, kept in {@code warehouse_shard} on the home shard and in
+ * memory on every instance, refreshed on a schedule.
+ * <p>
+ * Warehouses that existed before sharding was switched on stay on the home shard, a warehouse seen for the first
+ * time goes to the shard holding the fewest warehouses. Reads of a warehouse go to the shard that holds it. Writes
+ * go there as well, except while the warehouse is being relocated by the {@link ShardRebalancer}, then they wait
+ * until it arrived on its new shard. Every write holds the warehouse's fence for reading, so a relocation on this
+ * instance knows when the writes that started before it are done; writes on other instances are waited out by
+ * time, they see the relocation at their next refresh.
+ */
+public class ShardDirectory {
+
+    private static final long FENCE_POLL_MILLIS = 20;
+
+    record Placement(int shard, Integer movingTo) {
+    }
+
+    // straight to each shard's pool, outside of whatever transaction the caller has
+    private final List<JdbcTemplate> shards;
+    private final JdbcTemplate home;
+    private final ReferenceDataCache referenceDataCache;
+    private final long relocationWaitMillis;
+    private final Map<Long, Placement> placements = new ConcurrentHashMap<>();
+    private final Map<Long, ReentrantReadWriteLock> fences = new ConcurrentHashMap<>();
+
+    public ShardDirectory(List<DataSource> shards, ReferenceDataCache referenceDataCache, long relocationWaitMillis) {
+        this.shards = shards.stream().map(JdbcTemplate::new).toList();
+        this.home = this.shards.get(ShardContext.HOME);
+        this.referenceDataCache = referenceDataCache;
+        this.relocationWaitMillis = relocationWaitMillis;
+    }
+
+    public int shardCount() {
+        return shards.size();
+    }
+
+    // every warehouse without a shard yet is placed on the home shard, where its inventory was kept before sharding
+    public void bootstrap() {
+        home.update("insert ignore into warehouse_shard (warehouse_id, shard) select id, ? from warehouses", ShardContext.HOME);
+        refresh();
+    }
+
+    @Scheduled(initialDelayString = "${warehouse.inventory.sharding.directory-refresh-ms:1000}",
+            fixedDelayString = "${warehouse.inventory.sharding.directory-refresh-ms:1000}")
+    public synchronized void refresh() {
+        Map<Long, Placement> loaded = new HashMap<>();
+        home.query("select warehouse_id, shard, moving_to from warehouse_shard", row -> {
+            loaded.put(row.getLong(1), new Placement(row.getInt(2), (Integer) row.getObject(3)));
+        });
+        placements.putAll(loaded);
+        placements.keySet().retainAll(loaded.keySet());
+    }
+
+    /**
+     * Runs the work on the shard holding the warehouse, an unknown warehouse has nothing on any shard and is looked
+     * for on the home shard.
+     */
+    public <T> T read(Long warehouseId, Supplier<T> work) {
+        Placement placement = placement(warehouseId);
+        return bind(placement == null ? ShardContext.HOME : placement.shard(), work);
+    }
+
+    /**
+     * Runs the work on the shard holding the warehouses, once none of them is being relocated any more.
+     *
+     * @throws IllegalArgumentException     if the warehouses are on different shards, no transaction can span them
+     * @throws ConcurrencyFailureException if a relocation took longer than the writes are willing to wait
+     */
+    public <T> T write(Collection<Long> warehouseIds, Supplier<T> work) {
+        // fences are taken in id order, so a relocation waiting for one of them can't get in between
+        SortedSet<Long> ids = warehouseIds.stream().filter(Objects::nonNull).collect(Collectors.toCollection(TreeSet::new));
+        long deadline = System.currentTimeMillis() + relocationWaitMillis;
+        while (true) {
+            List<Lock> held = new ArrayList<>(ids.size());
+            try {
+                Integer shard = null;
+                Long relocating = null;
+                for (Long warehouseId : ids) {
+                    Lock fence = fence(warehouseId).readLock();
+                    fence.lock();
+                    held.add(fence);
+                    Placement placement = placement(warehouseId);
+                    if (placement == null) {
+                        continue;
+                    }
+                    if (placement.movingTo() != null) {
+                        relocating = warehouseId;
+                        break;
+                    }
+                    if (shard != null && shard != placement.shard()) {
+                        throw new IllegalArgumentException("Warehouses " + ids + " are kept on different shards and can't be changed together");
+                    }
+                    shard = placement.shard();
+                }
+                if (relocating == null) {
+                    return bind(shard == null ? ShardContext.HOME : shard, work);
+                }
+                // let go of everything before waiting, the relocation may need one of the other fences next
+                held.forEach(Lock::unlock);
+                held.clear();
+                awaitRelocation(relocating, deadline);
+            } finally {
+                held.forEach(Lock::unlock);
+            }
+        }
+    }
+
+    public boolean sameShard(Long firstWarehouseId, Long secondWarehouseId) {
+        Placement first = placement(firstWarehouseId);
+        Placement second = placement(secondWarehouseId);
+        return first == null || second == null || first.shard() == second.shard();
+    }
+
+    /**
+     * Runs the query on every shard and hands on the rows of a warehouse only from the shard that holds it, so a
+     * warehouse in the middle of a relocation isn't seen twice.
+     */
+    public void queryInventory(String sql, String warehouseColumn, RowCallbackHandler handler) {
+        for (int shard = 0; shard < shards.size(); shard++) {
+            int queried = shard;
+            shards.get(shard).query(sql, row -> {
+                Placement placement = placements.get(row.getLong(warehouseColumn));
+                if ((placement == null ? ShardContext.HOME : placement.shard()) == queried) {
+                    handler.processRow(row);
+                }
+            });
+        }
+    }
+
+    // a transaction that is already running keeps the connection it has, it can't be moved to another shard
+    private <T> T bind(int shard, Supplier<T> work) {
+        if (TransactionSynchronizationManager.isActualTransactionActive() && ShardContext.current() != shard) {
+            throw new IllegalStateException("A transaction on shard " + ShardContext.current() + " can't work on shard " + shard);
+        }
+        return ShardContext.call(shard, work);
+    }
+
+    private Placement placement(Long warehouseId) {
+        Placement placement = placements.get(warehouseId);
+        if (placement != null) {
+            return placement;
+        }
+        // inventory can only exist for an existing warehouse, an unknown id isn't given a shard
+        return referenceDataCache.findWarehouse(warehouseId).isPresent() ? place(warehouseId) : null;
+    }
+
+    // a new warehouse goes to the shard holding the fewest, the rebalancer evens out what they grow into
+    private synchronized Placement place(Long warehouseId) {
+        int[] warehouses = new int[shards.size()];
+        placements.values().forEach(placement -> warehouses[placement.shard()]++);
+        int shard = ShardContext.HOME;
+        for (int candidate = 1; candidate < warehouses.length; candidate++) {
+            if (warehouses[candidate] < warehouses[shard]) {
+                shard = candidate;
+            }
+        }
+        // another instance may have placed it first, its choice stands
+        home.update("insert ignore into warehouse_shard (warehouse_id, shard) values (?, ?)", warehouseId, shard);
+        return reload(warehouseId);
+    }
+
+    private void awaitRelocation(Long warehouseId, long deadline) {
+        if (System.currentTimeMillis() > deadline) {
+            throw new ConcurrencyFailureException("Warehouse ID: " + warehouseId + " is being relocated to another shard, try again shortly");
+        }
+        try {
+            Thread.sleep(FENCE_POLL_MILLIS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the relocation of warehouse ID: " + warehouseId, ex);
+        }
+        // the relocation may be run by another instance, its end only shows in the table
+        reload(warehouseId);
+    }
+
+    private synchronized Placement reload(Long warehouseId) {
+        List<Placement> loaded = home.query("select shard, moving_to from warehouse_shard where warehouse_id = ?",
+                (row, rowNum) -> new Placement(row.getInt(1), (Integer) row.getObject(2)), warehouseId);
+        if (loaded.isEmpty()) {
+            placements.remove(warehouseId);
+            return null;
+        }
+        placements.put(warehouseId, loaded.get(0));
+        return loaded.get(0);
+    }
+
+    private ReentrantReadWriteLock fence(Long warehouseId) {
+        return fences.computeIfAbsent(warehouseId, id -> new ReentrantReadWriteLock());
+    }
+
+    Placement placementOf(Long warehouseId) {
+        return placement(warehouseId);
+    }
+
+    // warehouse id to the shard holding it
+    Map<Long, Integer> owners() {
+        Map<Long, Integer> owners = new HashMap<>();
+        placements.forEach((warehouseId, placement) -> owners.put(warehouseId, placement.shard()));
+        return owners;
+    }
+
+    synchronized boolean markMoving(Long warehouseId, int target) {
+        int marked = home.update("update warehouse_shard set moving_to = ? where warehouse_id = ? and moving_to is null and shard <> ?",
+                target, warehouseId, target);
+        reload(warehouseId);
+        return marked == 1;
+    }
+
+    // returns once the writes of this instance that started before the warehouse was marked as moving are done
+    void drain(Long warehouseId) {
+        Lock fence = fence(warehouseId).writeLock();
+        fence.lock();
+        fence.unlock();
+    }
+
+    synchronized void completeMove(Long warehouseId, int target) {
+        home.update("update warehouse_shard set shard = ?, moving_to = null where warehouse_id = ?", target, warehouseId);
+        reload(warehouseId);
+    }
+
+    synchronized void abortMove(Long warehouseId) {
+        home.update("update warehouse_shard set moving_to = null where warehouse_id = ?", warehouseId);
+        reload(warehouseId);
+    }
+}
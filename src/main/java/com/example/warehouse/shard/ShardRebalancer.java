@@ -0,0 +1,201 @@
+package com.example.warehouse.shard;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Relocates warehouses between shards while the application keeps serving them.
+ * <p>
+ * A relocation marks the warehouse as moving, which holds up new writes to it, and waits for the writes already
+ * under way: on this instance through the directory's fence, on the others for {@code settleMillis}, by which they
+ * have seen the mark. Once the source shard's outbox holds no more changes of the warehouse, its inventory is
+ * copied to the target shard in one transaction and the directory is pointed there, which lets the writes go on.
+ * Reads keep going to the source shard until then, and its copy is only deleted after another settle period, when
+ * no instance reads it any more.
+ * <p>
+ * A shard added to {@code warehouse.inventory.sharding.urls} starts out empty and is filled by {@link #rebalance()},
+ * on a schedule if {@code warehouse.inventory.sharding.rebalance.enabled} is set, which should be on one instance only.
+ */
+public class ShardRebalancer {
+
+    private static final Logger log = LoggerFactory.getLogger(ShardRebalancer.class);
+
+    private static final long OUTBOX_POLL_MILLIS = 50;
+    // the cross-shard moves that go with a warehouse: the ones it is the source of and not yet settled, and the
+    // ones it received, which the source shard asks about when it settles them
+    private static final String MOVES_OF_WAREHOUSE = "(source_warehouse_id = ? and state = 'PENDING') or (destination_warehouse_id = ? and state <> 'PENDING')";
+
+    private final ShardDirectory directory;
+    private final ShardReferenceData referenceData;
+    private final List<JdbcTemplate> shards;
+    private final List<TransactionTemplate> transactions;
+    private final long settleMillis;
+    private final long relocationTimeoutMillis;
+    private final boolean scheduled;
+    private final Counter relocated;
+
+    public ShardRebalancer(ShardDirectory directory, ShardReferenceData referenceData, List<DataSource> shards,
+                           MeterRegistry meterRegistry, long settleMillis, long relocationTimeoutMillis, boolean scheduled) {
+        this.directory = directory;
+        this.referenceData = referenceData;
+        this.shards = shards.stream().map(JdbcTemplate::new).toList();
+        this.transactions = shards.stream().map(shard -> new TransactionTemplate(new DataSourceTransactionManager(shard))).toList();
+        this.settleMillis = settleMillis;
+        this.relocationTimeoutMillis = relocationTimeoutMillis;
+        this.scheduled = scheduled;
+        this.relocated = Counter.builder("warehouse.shard.relocations")
+                .description("Warehouses relocated to another shard")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(initialDelayString = "${warehouse.inventory.sharding.rebalance.interval-ms:60000}",
+            fixedDelayString = "${warehouse.inventory.sharding.rebalance.interval-ms:60000}")
+    public void rebalanceOnSchedule() {
+        if (scheduled) {
+            rebalance();
+        }
+    }
+
+    /**
+     * Relocates warehouses from the shard holding the most inventory rows to the one holding the fewest, one at a
+     * time, for as long as that narrows the gap between them.
+     *
+     * @return the number of warehouses relocated
+     */
+    public int rebalance() {
+        int relocations = 0;
+        while (true) {
+            Map<Long, Integer> owners = directory.owners();
+            long[] rows = new long[shards.size()];
+            Map<Long, Long> rowsByWarehouse = new HashMap<>();
+            for (int shard = 0; shard < shards.size(); shard++) {
+                int counted = shard;
+                shards.get(shard).query("select warehouse_id, count(*) from material_inventory group by warehouse_id", row -> {
+                    long warehouseId = row.getLong(1);
+                    if (owners.getOrDefault(warehouseId, ShardContext.HOME) == counted) {
+                        rowsByWarehouse.put(warehouseId, row.getLong(2));
+                        rows[counted] += row.getLong(2);
+                    }
+                });
+            }
+            int fullest = 0;
+            int emptiest = 0;
+            for (int shard = 1; shard < rows.length; shard++) {
+                fullest = rows[shard] > rows[fullest] ? shard : fullest;
+                emptiest = rows[shard] < rows[emptiest] ? shard : emptiest;
+            }
+
+            // the warehouse that brings the two closest together, one that would only turn the gap around stays
+            long gap = rows[fullest] - rows[emptiest];
+            Long best = null;
+            long bestGap = gap;
+            for (Map.Entry<Long, Long> warehouse : rowsByWarehouse.entrySet()) {
+                long gapAfter = Math.abs(gap - 2 * warehouse.getValue());
+                if (owners.getOrDefault(warehouse.getKey(), ShardContext.HOME) == fullest && gapAfter < bestGap) {
+                    best = warehouse.getKey();
+                    bestGap = gapAfter;
+                }
+            }
+            if (best == null) {
+                return relocations;
+            }
+            relocate(best, emptiest);
+            relocations++;
+        }
+    }
+
+    /**
+     * Moves the inventory of a warehouse to another shard, see the class description for how it stays available.
+     *
+     * @throws IllegalStateException if the warehouse is already being relocated, or the source shard's outbox didn't
+     *                               drain in time; the warehouse then stays where it was
+     */
+    public void relocate(Long warehouseId, int target) {
+        if (target < 0 || target >= shards.size()) {
+            throw new IllegalArgumentException("There is no shard " + target + ", shards are numbered 0 to " + (shards.size() - 1));
+        }
+        ShardDirectory.Placement placement = directory.placementOf(warehouseId);
+        if (placement == null) {
+            throw new IllegalArgumentException("Warehouse not found with ID: " + warehouseId);
+        }
+        int source = placement.shard();
+        if (source == target) {
+            return;
+        }
+        referenceData.sync(target);
+        if (!directory.markMoving(warehouseId, target)) {
+            throw new IllegalStateException("Warehouse ID: " + warehouseId + " is already being relocated");
+        }
+        try {
+            directory.drain(warehouseId);
+            pause(settleMillis);
+            awaitOutboxDrained(warehouseId, source);
+            copy(warehouseId, source, target);
+            directory.completeMove(warehouseId, target);
+        } catch (RuntimeException ex) {
+            directory.abortMove(warehouseId);
+            throw ex;
+        }
+
+        // instances that haven't refreshed yet still read the old copy
+        pause(settleMillis);
+        transactions.get(source).executeWithoutResult(status -> delete(shards.get(source), warehouseId));
+        relocated.increment();
+        log.info("Relocated warehouse {} from shard {} to shard {}", warehouseId, source, target);
+    }
+
+    // the changes of a warehouse reach the sinks in order, the ones made on the new shard must not overtake these
+    private void awaitOutboxDrained(Long warehouseId, int source) {
+        long deadline = System.currentTimeMillis() + relocationTimeoutMillis;
+        while (shards.get(source).queryForObject("select count(*) from inventory_outbox where warehouse_id = ?", Long.class, warehouseId) > 0) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException("The outbox of shard " + source + " still holds changes of warehouse ID: " + warehouseId
+                        + " after " + relocationTimeoutMillis + " ms, is an outbox dispatcher running?");
+            }
+            pause(OUTBOX_POLL_MILLIS);
+        }
+    }
+
+    private void copy(Long warehouseId, int source, int target) {
+        JdbcTemplate from = shards.get(source);
+        List<Object[]> inventories = from.query("select inventory_id, warehouse_id, material_type_id, quantity, version from material_inventory where warehouse_id = ?",
+                (row, rowNum) -> new Object[]{row.getLong(1), row.getLong(2), row.getLong(3), row.getInt(4), row.getLong(5)}, warehouseId);
+        List<Object[]> moves = from.query("select id, source_warehouse_id, destination_warehouse_id, material_type_id, quantity, state, created_at " +
+                        "from cross_shard_move where " + MOVES_OF_WAREHOUSE,
+                (row, rowNum) -> new Object[]{row.getLong(1), row.getLong(2), row.getLong(3), row.getLong(4), row.getInt(5), row.getString(6), row.getTimestamp(7)},
+                warehouseId, warehouseId);
+        JdbcTemplate to = shards.get(target);
+        transactions.get(target).executeWithoutResult(status -> {
+            // left behind on the target by an earlier relocation away from it that didn't get to clean up
+            delete(to, warehouseId);
+            to.batchUpdate("insert into material_inventory (inventory_id, warehouse_id, material_type_id, quantity, version) values (?, ?, ?, ?, ?)", inventories);
+            to.batchUpdate("insert into cross_shard_move (id, source_warehouse_id, destination_warehouse_id, material_type_id, quantity, state, created_at) " +
+                    "values (?, ?, ?, ?, ?, ?, ?)", moves);
+        });
+    }
+
+    private static void delete(JdbcTemplate shard, Long warehouseId) {
+        shard.update("delete from material_inventory where warehouse_id = ?", warehouseId);
+        shard.update("delete from cross_shard_move where " + MOVES_OF_WAREHOUSE, warehouseId, warehouseId);
+    }
+
+    private static void pause(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while relocating a warehouse", ex);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.warehouse.shard;
+
+import com.example.warehouse.entity.MaterialTypeEntity;
+import com.example.warehouse.entity.WarehouseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+/**
+ * Copies warehouses and material types from the home shard to the other shards. Inventory rows refer to them by
+ * foreign key and listings join them, so every shard needs its own copy; the home shard is where they are written.
+ * Rows written through JPA are copied as soon as they commit (see {@link ShardReferenceReplicator}), everything
+ * else by the scheduled full copy. Deleted rows are not removed from the copies.
+ */
+public class ShardReferenceData {
+
+    private static final String UPSERT_WAREHOUSE = "insert into warehouses (id, name) values (?, ?) on duplicate key update name = values(name)";
+    private static final String UPSERT_MATERIAL_TYPE = "insert into material_type (id, name, description, icon, max_capacity) values (?, ?, ?, ?, ?) " +
+            "on duplicate key update name = values(name), description = values(description), icon = values(icon), max_capacity = values(max_capacity)";
+
+    private final List<JdbcTemplate> shards;
+
+    public ShardReferenceData(List<DataSource> shards) {
+        this.shards = shards.stream().map(JdbcTemplate::new).toList();
+    }
+
+    @Scheduled(initialDelayString = "${warehouse.inventory.sharding.reference-sync-interval-ms:60000}",
+            fixedDelayString = "${warehouse.inventory.sharding.reference-sync-interval-ms:60000}")
+    public void syncAll() {
+        for (int shard = ShardContext.HOME + 1; shard < shards.size(); shard++) {
+            sync(shard);
+        }
+    }
+
+    public void sync(int shard) {
+        if (shard == ShardContext.HOME) {
+            return;
+        }
+        JdbcTemplate home = shards.get(ShardContext.HOME);
+        JdbcTemplate target = shards.get(shard);
+        target.batchUpdate(UPSERT_WAREHOUSE, home.query("select id, name from warehouses",
+                (row, rowNum) -> new Object[]{row.getLong(1), row.getString(2)}));
+        target.batchUpdate(UPSERT_MATERIAL_TYPE, home.query("select id, name, description, icon, max_capacity from material_type",
+                (row, rowNum) -> new Object[]{row.getLong(1), row.getString(2), row.getString(3), row.getString(4), row.getInt(5)}));
+    }
+
+    void replicate(Object entity) {
+        for (int shard = ShardContext.HOME + 1; shard < shards.size(); shard++) {
+            if (entity instanceof WarehouseEntity warehouse) {
+                shards.get(shard).update(UPSERT_WAREHOUSE, warehouse.getId(), warehouse.getName());
+            } else if (entity instanceof MaterialTypeEntity materialType) {
+                shards.get(shard).update(UPSERT_MATERIAL_TYPE, materialType.getId(), materialType.getName(),
+                        materialType.getDescription(), materialType.getIcon(), materialType.getMaxCapacity());
+            }
+        }
+    }
+}
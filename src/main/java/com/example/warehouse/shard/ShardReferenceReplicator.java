@@ -0,0 +1,40 @@
+package com.example.warehouse.shard;
+
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostUpdate;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * JPA entity listener that copies written warehouses and material types to the other shards once the write
+ * committed on the home shard. Does nothing unless sharding is switched on.
+ */
+public class ShardReferenceReplicator {
+
+    // looked up lazily like the cache in ReferenceDataCacheInvalidator, and missing without sharding
+    private final ObjectProvider<ShardReferenceData> referenceData;
+
+    public ShardReferenceReplicator(ObjectProvider<ShardReferenceData> referenceData) {
+        this.referenceData = referenceData;
+    }
+
+    @PostPersist
+    @PostUpdate
+    public void onWrite(Object entity) {
+        ShardReferenceData shards = referenceData.getIfAvailable();
+        if (shards == null) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            shards.replicate(entity);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                shards.replicate(entity);
+            }
+        });
+    }
+}
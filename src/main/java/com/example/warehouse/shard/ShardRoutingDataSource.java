@@ -0,0 +1,48 @@
+package com.example.warehouse.shard;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hands out connections of the shard bound in {@link ShardContext}. The first shard is the home shard, the
+ * connection pools of the other shards are owned and closed by this data source.
+ */
+public class ShardRoutingDataSource extends AbstractRoutingDataSource implements AutoCloseable {
+
+    private final List<DataSource> shards;
+
+    public ShardRoutingDataSource(List<DataSource> shards) {
+        this.shards = List.copyOf(shards);
+        Map<Object, Object> targets = new HashMap<>();
+        for (int shard = 0; shard < shards.size(); shard++) {
+            targets.put(shard, shards.get(shard));
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(shards.get(ShardContext.HOME));
+        // a shard that isn't configured is a bug, not a reason to quietly write to the home shard
+        setLenientFallback(false);
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return ShardContext.current();
+    }
+
+    public List<DataSource> shards() {
+        return shards;
+    }
+
+    @Override
+    public void close() {
+        for (int shard = ShardContext.HOME + 1; shard < shards.size(); shard++) {
+            if (shards.get(shard) instanceof HikariDataSource pool) {
+                pool.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.warehouse.shard;
+
+import org.hibernate.boot.Metadata;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.boot.spi.BootstrapContext;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.integrator.spi.Integrator;
+import org.hibernate.service.spi.SessionFactoryServiceRegistry;
+import org.hibernate.tool.schema.spi.SchemaManagementToolCoordinator;
+
+import javax.sql.DataSource;
+import java.util.Map;
+
+/**
+ * Gives the other shards the schema Hibernate gives the home shard. Hibernate only sees the home shard when it
+ * starts, so this keeps hold of the mapping it built and runs the schema update against each other shard with it.
+ */
+public class ShardSchema implements Integrator {
+
+    private volatile Metadata metadata;
+
+    @Override
+    public void integrate(Metadata metadata, BootstrapContext bootstrapContext, SessionFactoryImplementor sessionFactory) {
+        this.metadata = metadata;
+    }
+
+    @Override
+    public void disintegrate(SessionFactoryImplementor sessionFactory, SessionFactoryServiceRegistry serviceRegistry) {
+    }
+
+    // creates what is missing on the shard and leaves everything else alone, like ddl-auto=update
+    public void update(DataSource shard) {
+        if (metadata == null) {
+            throw new IllegalStateException("The entity manager factory has to be built before the shards get their schema");
+        }
+        StandardServiceRegistry serviceRegistry = new StandardServiceRegistryBuilder()
+                .applySetting(AvailableSettings.DATASOURCE, shard)
+                .build();
+        try {
+            SchemaManagementToolCoordinator.process(metadata, serviceRegistry, Map.of(AvailableSettings.HBM2DDL_AUTO, "update"), null);
+        } finally {
+            StandardServiceRegistryBuilder.destroy(serviceRegistry);
+        }
+    }
+}
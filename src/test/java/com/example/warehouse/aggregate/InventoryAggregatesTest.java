@@ -0,0 +1,101 @@
+package com.example.warehouse.aggregate;
+
+import com.example.warehouse.dto.MaterialTotalsDto;
+import com.example.warehouse.dto.WarehouseUtilizationDto;
+import com.example.warehouse.entity.MaterialTypeEntity;
+import com.example.warehouse.entity.WarehouseEntity;
+import com.example.warehouse.repository.MaterialTypeRepository;
+import com.example.warehouse.repository.WarehouseRepository;
+import com.example.warehouse.service.MaterialInventoryService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest
+class InventoryAggregatesTest {
+
+    @Autowired
+    private MaterialInventoryService materialInventoryService;
+    @Autowired
+    private InventoryAggregates inventoryAggregates;
+    @Autowired
+    private WarehouseRepository warehouseRepository;
+    @Autowired
+    private MaterialTypeRepository materialTypeRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    void maintainsTotalsAndRanksWarehousesByUtilization() {
+        WarehouseEntity first = warehouseRepository.save(new WarehouseEntity(null, "warehouse-" + UUID.randomUUID()));
+        WarehouseEntity second = warehouseRepository.save(new WarehouseEntity(null, "warehouse-" + UUID.randomUUID()));
+        WarehouseEntity third = warehouseRepository.save(new WarehouseEntity(null, "warehouse-" + UUID.randomUUID()));
+        MaterialTypeEntity materialType = materialTypeRepository.save(
+                new MaterialTypeEntity(null, "material-" + UUID.randomUUID(), "description", "icon", 100));
+        Long materialTypeId = materialType.getId();
+
+        materialInventoryService.addMaterialToWarehouse(first.getId(), materialTypeId, 80);
+        materialInventoryService.addMaterialToWarehouse(second.getId(), materialTypeId, 30);
+        materialInventoryService.moveMaterialBetweenWarehouses(first.getId(), third.getId(), materialTypeId, 20);
+        materialInventoryService.removeMaterialFromWarehouse(second.getId(), materialTypeId, 30);
+
+        MaterialTotalsDto totals = inventoryAggregates.getTotals(materialTypeId);
+        assertEquals(80, totals.getTotalQuantity());
+        assertEquals(2, totals.getWarehouseCount());
+        assertEquals(0.4, totals.getUtilization(), 1e-9);
+
+        List<WarehouseUtilizationDto> fullest = inventoryAggregates.getWarehouseUtilization(materialTypeId, true, 10);
+        assertEquals(List.of(first.getId(), third.getId()), fullest.stream().map(WarehouseUtilizationDto::getWarehouseId).toList());
+        assertEquals(0.6, fullest.get(0).getUtilization(), 1e-9);
+        assertEquals(third.getId(), inventoryAggregates.getWarehouseUtilization(materialTypeId, false, 1).get(0).getWarehouseId());
+    }
+
+    @Test
+    void reconciliationRepairsDrift() {
+        WarehouseEntity warehouse = warehouseRepository.save(new WarehouseEntity(null, "warehouse-" + UUID.randomUUID()));
+        MaterialTypeEntity materialType = materialTypeRepository.save(
+                new MaterialTypeEntity(null, "material-" + UUID.randomUUID(), "description", "icon", 100));
+        materialInventoryService.addMaterialToWarehouse(warehouse.getId(), materialType.getId(), 10);
+
+        // changed behind the service's back, no event
+        jdbcTemplate.update("update material_inventory set quantity = 25 where warehouse_id = ? and material_type_id = ?",
+                warehouse.getId(), materialType.getId());
+        assertEquals(10, inventoryAggregates.getTotals(materialType.getId()).getTotalQuantity());
+
+        inventoryAggregates.reconcile();
+        assertEquals(25, inventoryAggregates.getTotals(materialType.getId()).getTotalQuantity());
+        assertEquals(0, inventoryAggregates.reconcile());
+    }
+
+    @Test
+    void reconciliationLeavesChangesOfUncompletedTransactionsAlone() {
+        WarehouseEntity warehouse = warehouseRepository.save(new WarehouseEntity(null, "warehouse-" + UUID.randomUUID()));
+        MaterialTypeEntity materialType = materialTypeRepository.save(
+                new MaterialTypeEntity(null, "material-" + UUID.randomUUID(), "description", "icon", 100));
+
+        // runs when the row is committed but before the change reaches the aggregate
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            materialInventoryService.addMaterialToWarehouse(warehouse.getId(), materialType.getId(), 10);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    inventoryAggregates.reconcile();
+                }
+            });
+        });
+
+        assertEquals(10, inventoryAggregates.getTotals(materialType.getId()).getTotalQuantity());
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.warehouse.alert;
+
+import com.example.warehouse.dto.AlertCondition;
+import com.example.warehouse.dto.AlertRuleDto;
+import com.example.warehouse.entity.MaterialTypeEntity;
+import com.example.warehouse.entity.WarehouseEntity;
+import com.example.warehouse.exceptions.AlertRuleNotFoundException;
+import com.example.warehouse.repository.MaterialTypeRepository;
+import com.example.warehouse.repository.WarehouseRepository;
+import com.example.warehouse.service.MaterialInventoryService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(properties = "warehouse.outbox.poll-interval-ms=20")
+class AlertEngineTest {
+
+    @Autowired
+    private MaterialInventoryService materialInventoryService;
+    @Autowired
+    private AlertRuleService alertRuleService;
+    @Autowired
+    private WarehouseRepository warehouseRepository;
+    @Autowired
+    private MaterialTypeRepository materialTypeRepository;
+    @Autowired
+    private RecordingAlertSink sink;
+
+    @Test
+    void lowStockAlertIsRaisedOnceAndClearedPastTheHysteresis() throws Exception {
+        Long warehouseId = warehouse();
+        Long materialTypeId = materialType(1_000);
+        AlertRuleDto rule = alertRuleService.createRule(new AlertRuleDto(null, warehouseId, materialTypeId, AlertCondition.QUANTITY_BELOW, 10, 5));
+
+        materialInventoryService.addMaterialToWarehouse(warehouseId, materialTypeId, 20);
+        materialInventoryService.removeMaterialFromWarehouse(warehouseId, materialTypeId, 12);
+        // still below threshold + hysteresis, then still alerted lower down
+        materialInventoryService.addMaterialToWarehouse(warehouseId, materialTypeId, 4);
+        materialInventoryService.removeMaterialFromWarehouse(warehouseId, materialTypeId, 6);
+        materialInventoryService.addMaterialToWarehouse(warehouseId, materialTypeId, 9);
+        materialInventoryService.removeMaterialFromWarehouse(warehouseId, materialTypeId, 8);
+
+        String id = rule.getRuleId() + ":";
+        assertEquals(List.of("raised:" + id + 8, "cleared:" + id + 15, "raised:" + id + 7), sink.await(rule.getRuleId(), 3));
+        assertEquals(1, alertRuleService.getActiveAlerts(warehouseId).size());
+        assertEquals(7, alertRuleService.getActiveAlerts(warehouseId).get(0).getQuantity());
+    }
+
+    @Test
+    void capacityRuleForAMaterialTypeCoversEveryWarehouse() throws Exception {
+        Long first = warehouse();
+        Long second = warehouse();
+        Long materialTypeId = materialType(200);
+        AlertRuleDto rule = alertRuleService.createRule(new AlertRuleDto(null, null, materialTypeId, AlertCondition.CAPACITY_ABOVE_PERCENT, 80, 10));
+
+        materialInventoryService.addMaterialToWarehouse(first, materialTypeId, 160);
+        materialInventoryService.addMaterialToWarehouse(second, materialTypeId, 161);
+        // 75% is back under 80% but not under 70%, 140 is
+        materialInventoryService.removeMaterialFromWarehouse(second, materialTypeId, 11);
+        materialInventoryService.removeMaterialFromWarehouse(second, materialTypeId, 10);
+
+        String id = rule.getRuleId() + ":";
+        assertEquals(List.of("raised:" + id + 161, "cleared:" + id + 140), sink.await(rule.getRuleId(), 2));
+        assertTrue(alertRuleService.getActiveAlerts(null).stream().noneMatch(alert -> alert.getRuleId().equals(rule.getRuleId())));
+    }
+
+    @Test
+    void deletedRulesStopAlerting() throws Exception {
+        Long warehouseId = warehouse();
+        Long materialTypeId = materialType(1_000);
+        AlertRuleDto deleted = alertRuleService.createRule(new AlertRuleDto(null, warehouseId, null, AlertCondition.QUANTITY_BELOW, 5, 0));
+        AlertRuleDto kept = alertRuleService.createRule(new AlertRuleDto(null, warehouseId, null, AlertCondition.QUANTITY_BELOW, 3, 0));
+        alertRuleService.deleteRule(deleted.getRuleId());
+
+        materialInventoryService.addMaterialToWarehouse(warehouseId, materialTypeId, 2);
+
+        assertEquals(List.of("raised:" + kept.getRuleId() + ":2"), sink.await(kept.getRuleId(), 1));
+        assertEquals(List.of(), sink.events(deleted.getRuleId()));
+        assertThrows(AlertRuleNotFoundException.class, () -> alertRuleService.getRule(deleted.getRuleId()));
+    }
+
+    private Long warehouse() {
+        return warehouseRepository.save(new WarehouseEntity(null, "warehouse-" + UUID.randomUUID())).getId();
+    }
+
+    private Long materialType(int maxCapacity) {
+        return materialTypeRepository.save(new MaterialTypeEntity(null, "material-" + UUID.randomUUID(), "description", "icon", maxCapacity)).getId();
+    }
+
+    @TestConfiguration
+    static class SinkConfiguration {
+        @Bean
+        RecordingAlertSink recordingAlertSink() {
+            return new RecordingAlertSink();
+        }
+    }
+
+    static class RecordingAlertSink implements AlertSink {
+        private final Queue<String> events = new ConcurrentLinkedQueue<>();
+
+        @Override
+        public void raised(Alert alert) {
+            events.add("raised:" + alert.rule().id() + ":" + alert.quantity());
+        }
+
+        @Override
+        public void cleared(Alert alert, int quantity) {
+            events.add("cleared:" + alert.rule().id() + ":" + quantity);
+        }
+
+        List<String> events(Long ruleId) {
+            return events.stream().filter(event -> event.contains(":" + ruleId + ":")).toList();
+        }
+
+        //waits for the outbox to deliver the changes, then a moment more to catch anything beyond the expected alerts
+        List<String> await(Long ruleId, int count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (events(ruleId).size() < count && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+            Thread.sleep(200);
+            return events(ruleId);
+        }
+    }
+}
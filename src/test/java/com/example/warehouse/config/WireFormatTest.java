@@ -0,0 +1,99 @@
+package com.example.warehouse.config;
+
+import com.example.warehouse.entity.MaterialTypeEntity;
+import com.example.warehouse.entity.WarehouseEntity;
+import com.example.warehouse.repository.MaterialTypeRepository;
+import com.example.warehouse.repository.WarehouseRepository;
+import com.example.warehouse.service.MaterialInventoryService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class WireFormatTest {
+
+    @LocalServerPort
+    private int port;
+    @Autowired
+    private WarehouseRepository warehouseRepository;
+    @Autowired
+    private MaterialTypeRepository materialTypeRepository;
+    @Autowired
+    private MaterialInventoryService materialInventoryService;
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private final ObjectMapper cborMapper = new ObjectMapper(new CBORFactory());
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @Test
+    void listingsAreNegotiated() throws Exception {
+        WarehouseEntity warehouse = warehouseRepository.save(new WarehouseEntity(null, "warehouse-" + UUID.randomUUID()));
+        for (int i = 0; i < 10; i++) {
+            MaterialTypeEntity materialType = materialTypeRepository.save(
+                    new MaterialTypeEntity(null, "material-" + UUID.randomUUID(), "a description of the material", "icon.png", 1_000));
+            materialInventoryService.addMaterialToWarehouse(warehouse.getId(), materialType.getId(), i + 1);
+        }
+        String listing = "/api/warehouses/" + warehouse.getId() + "/materials";
+
+        HttpResponse<byte[]> json = send(listing, "application/json", "GET");
+        HttpResponse<byte[]> cbor = send(listing, "application/cbor", "GET");
+        HttpResponse<byte[]> slimJson = send(listing, "application/vnd.warehouse.slim+json", "GET");
+        HttpResponse<byte[]> slimCbor = send(listing, "application/vnd.warehouse.slim+cbor", "GET");
+        // clients that don't ask for anything in particular keep getting JSON
+        assertEquals("application/json", send(listing, "*/*", "GET").headers().firstValue("Content-Type").orElseThrow());
+        assertEquals("application/cbor", cbor.headers().firstValue("Content-Type").orElseThrow());
+        assertEquals("application/vnd.warehouse.slim+json", slimJson.headers().firstValue("Content-Type").orElseThrow());
+
+        // CBOR carries the same document
+        assertEquals(objectMapper.readTree(json.body()), cborMapper.readTree(cbor.body()));
+        JsonNode slim = objectMapper.readTree(slimJson.body());
+        assertEquals(slim, cborMapper.readTree(slimCbor.body()));
+        JsonNode material = slim.get("materials").get(0);
+        assertEquals(warehouse.getId(), material.get("warehouseId").asLong());
+        assertTrue(material.has("materialTypeId"));
+        assertTrue(material.has("version"));
+        assertFalse(material.has("materialType"));
+
+        assertTrue(cbor.body().length < json.body().length);
+        assertTrue(slimJson.body().length < json.body().length / 2);
+        assertTrue(slimCbor.body().length < slimJson.body().length);
+    }
+
+    @Test
+    void mutationsAnswerSlim() throws Exception {
+        WarehouseEntity warehouse = warehouseRepository.save(new WarehouseEntity(null, "warehouse-" + UUID.randomUUID()));
+        MaterialTypeEntity materialType = materialTypeRepository.save(
+                new MaterialTypeEntity(null, "material-" + UUID.randomUUID(), "description", "icon", 1_000));
+
+        HttpResponse<byte[]> added = send("/api/warehouses/" + warehouse.getId() + "/materials/" + materialType.getId() + "?quantityToAdd=5",
+                "application/vnd.warehouse.slim+cbor", "POST");
+        assertEquals(200, added.statusCode());
+        JsonNode inventory = cborMapper.readTree(added.body());
+        assertEquals(5, inventory.get("quantity").asInt());
+        assertEquals(materialType.getId(), inventory.get("materialTypeId").asLong());
+        assertTrue(added.headers().firstValue("ETag").isPresent());
+    }
+
+    private HttpResponse<byte[]> send(String path, String accept, String method) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + path))
+                .header("Accept", accept)
+                .method(method, HttpRequest.BodyPublishers.noBody())
+                .build();
+        return client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+    }
+}
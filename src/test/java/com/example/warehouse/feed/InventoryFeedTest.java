@@ -0,0 +1,154 @@
+package com.example.warehouse.feed;
+
+import com.example.warehouse.entity.MaterialTypeEntity;
+import com.example.warehouse.entity.WarehouseEntity;
+import com.example.warehouse.repository.MaterialTypeRepository;
+import com.example.warehouse.repository.WarehouseRepository;
+import com.example.warehouse.service.MaterialInventoryService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "warehouse.outbox.poll-interval-ms=20")
+class InventoryFeedTest {
+
+    @LocalServerPort
+    private int port;
+    @Autowired
+    private MaterialInventoryService materialInventoryService;
+    @Autowired
+    private WarehouseRepository warehouseRepository;
+    @Autowired
+    private MaterialTypeRepository materialTypeRepository;
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @Test
+    void sendsSnapshotThenDeltasAndResumesFromLastEventId() throws Exception {
+        WarehouseEntity warehouse = warehouseRepository.save(new WarehouseEntity(null, "warehouse-" + UUID.randomUUID()));
+        MaterialTypeEntity materialType = materialTypeRepository.save(
+                new MaterialTypeEntity(null, "material-" + UUID.randomUUID(), "description", "icon", 1_000));
+        materialInventoryService.addMaterialToWarehouse(warehouse.getId(), materialType.getId(), 5);
+
+        long deltaId;
+        try (EventReader feed = subscribe(warehouse.getId(), null)) {
+            Event snapshot = feed.next();
+            assertEquals("snapshot", snapshot.name());
+            assertEquals(5, objectMapper.readTree(snapshot.data()).get("materials").get(0).get("quantity").asInt());
+
+            materialInventoryService.addMaterialToWarehouse(warehouse.getId(), materialType.getId(), 3);
+            // the first add may still be on its way through the outbox, the feed converges on the latest quantity
+            Event delta = feed.nextWithQuantity(objectMapper, 8);
+            deltaId = delta.id();
+        }
+
+        materialInventoryService.removeMaterialFromWarehouse(warehouse.getId(), materialType.getId(), 8);
+        try (EventReader feed = subscribe(warehouse.getId(), deltaId)) {
+            // resumed, so no snapshot, just what happened since the last event
+            Event missed = feed.next();
+            assertEquals("delta", missed.name());
+            JsonNode data = objectMapper.readTree(missed.data());
+            assertEquals("remove", data.get("action").asText());
+            assertEquals(0, data.get("quantity").asInt());
+        }
+
+        try (EventReader feed = subscribe(warehouse.getId(), 42L)) {
+            assertEquals("snapshot", feed.next().name());
+        }
+    }
+
+    private EventReader subscribe(Long warehouseId, Long lastEventId) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/warehouses/" + warehouseId + "/feed"))
+                .header("Accept", "text/event-stream");
+        if (lastEventId != null) {
+            request.header("Last-Event-ID", lastEventId.toString());
+        }
+        HttpResponse<InputStream> response = client.send(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+        assertEquals(200, response.statusCode());
+        return new EventReader(response.body());
+    }
+
+    private record Event(long id, String name, String data) {
+    }
+
+    private static class EventReader implements AutoCloseable {
+        private final InputStream body;
+        private final BlockingQueue<Event> events = new LinkedBlockingQueue<>();
+
+        EventReader(InputStream body) {
+            this.body = body;
+            Thread reader = new Thread(this::read);
+            reader.setDaemon(true);
+            reader.start();
+        }
+
+        private void read() {
+            try (BufferedReader lines = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8))) {
+                long id = -1;
+                String name = null;
+                StringBuilder data = new StringBuilder();
+                String line;
+                while ((line = lines.readLine()) != null) {
+                    if (line.isEmpty()) {
+                        if (name != null) {
+                            events.add(new Event(id, name, data.toString()));
+                        }
+                        id = -1;
+                        name = null;
+                        data.setLength(0);
+                    } else if (line.startsWith("id:")) {
+                        id = Long.parseLong(line.substring(3));
+                    } else if (line.startsWith("event:")) {
+                        name = line.substring(6);
+                    } else if (line.startsWith("data:")) {
+                        data.append(line.substring(5));
+                    }
+                }
+            } catch (Exception ignored) {
+                // connection closed by the test
+            }
+        }
+
+        Event next() throws InterruptedException {
+            Event event = events.poll(10, TimeUnit.SECONDS);
+            assertNotNull(event, "no event received");
+            return event;
+        }
+
+        Event nextWithQuantity(ObjectMapper objectMapper, int quantity) throws Exception {
+            while (true) {
+                Event event = next();
+                if (objectMapper.readTree(event.data()).get("quantity").asInt() == quantity) {
+                    return event;
+                }
+            }
+        }
+
+        @Override
+        public void close() throws Exception {
+            body.close();
+        }
+    }
+}
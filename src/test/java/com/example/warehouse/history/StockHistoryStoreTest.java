@@ -0,0 +1,110 @@
+package com.example.warehouse.history;
+
+import com.example.warehouse.dto.HistoryResolution;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StockHistoryStoreTest {
+
+    private static final long DAY = Duration.ofDays(1).toMillis();
+    private static final long HOUR = Duration.ofHours(1).toMillis();
+    private static final long MINUTE = Duration.ofMinutes(1).toMillis();
+    private static final Instant FIRST_DAY = Instant.parse("2026-01-01T00:00:00Z");
+    private static final long T0 = FIRST_DAY.toEpochMilli();
+    private static final SeriesKey PAIR = new SeriesKey(1, 10);
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    void rollsUpChangesBeforeAndAfterSealingAndAcrossRestarts() throws IOException {
+        try (StockHistoryStore store = open()) {
+            store.append(1, T0 + 10_000, 1, 10, 5);
+            store.append(2, T0 + 30_000, 1, 10, 8);
+            store.append(3, T0 + 90_000, 1, 10, 3);
+            store.append(4, T0 + HOUR + 5_000, 1, 10, 7);
+            store.append(5, T0 + DAY, 1, 10, 9);
+            assertRollups(store);
+
+            // the second day ended less than the seal delay ago
+            assertEquals(1, store.seal(Instant.ofEpochMilli(T0 + 2 * DAY + 30 * MINUTE)));
+            assertTrue(Files.exists(directory.resolve("raw/2026-01-01.ts")));
+            assertTrue(Files.exists(directory.resolve("day/2026-01.ts")));
+            assertFalse(Files.exists(directory.resolve("head-2026-01-01.log")));
+            // delivered again by the outbox
+            store.append(2, T0 + 30_000, 1, 10, 8);
+            assertRollups(store);
+        }
+
+        try (StockHistoryStore store = open()) {
+            assertRollups(store);
+            // too late for the sealed day, recorded at the start of the next one
+            store.append(6, T0 + 2 * HOUR, 1, 10, 4);
+            assertEquals(List.of(new HistoryBucket(T0 + DAY, 9, 9, 9), new HistoryBucket(T0 + DAY, 4, 4, 4)),
+                    store.query(PAIR, HistoryResolution.RAW, FIRST_DAY.plusMillis(DAY), FIRST_DAY.plusMillis(2 * DAY)));
+        }
+    }
+
+    @Test
+    void keepsTotalsPerMaterialTypeAndListsAWarehouse() throws IOException {
+        try (StockHistoryStore store = open()) {
+            store.writeBaseline(Map.of(new SeriesKey(1, 10), 5L, new SeriesKey(2, 10), 7L), FIRST_DAY);
+            store.append(1, T0 + MINUTE, 1, 11, 3);
+            store.append(2, T0 + 2 * MINUTE, 1, 10, 2);
+            store.append(3, T0 + 3 * MINUTE, 2, 10, 0);
+            store.seal(Instant.ofEpochMilli(T0 + 2 * DAY));
+
+            assertEquals(List.of(new HistoryBucket(T0, 2, 12, 2)),
+                    store.query(SeriesKey.total(10), HistoryResolution.DAY, FIRST_DAY, FIRST_DAY.plus(Duration.ofDays(365))));
+            assertEquals(List.of(new HistoryBucket(T0, 5, 5, 5), new HistoryBucket(T0, 12, 12, 12),
+                            new HistoryBucket(T0 + 2 * MINUTE, 9, 9, 9), new HistoryBucket(T0 + 3 * MINUTE, 2, 2, 2)),
+                    store.query(SeriesKey.total(10), HistoryResolution.RAW, FIRST_DAY, FIRST_DAY.plusMillis(DAY)));
+
+            Map<SeriesKey, List<HistoryBucket>> warehouse = store.queryWarehouse(1, HistoryResolution.HOUR, FIRST_DAY, FIRST_DAY.plusMillis(DAY));
+            assertEquals(List.of(new SeriesKey(1, 10), new SeriesKey(1, 11)), List.copyOf(warehouse.keySet()));
+            assertEquals(List.of(new HistoryBucket(T0, 2, 5, 2)), warehouse.get(new SeriesKey(1, 10)));
+        }
+    }
+
+    @Test
+    void dropsFineResolutionsAfterTheirRetentionAndKeepsDays() throws IOException {
+        try (StockHistoryStore store = open()) {
+            store.append(1, T0 + MINUTE, 1, 10, 5);
+            store.append(2, T0 + 40 * DAY, 1, 10, 6);
+            store.seal(Instant.ofEpochMilli(T0 + 45 * DAY));
+
+            assertFalse(Files.exists(directory.resolve("raw/2026-01-01.ts")));
+            assertTrue(Files.exists(directory.resolve("minute/2026-01-01.ts")));
+            assertEquals(List.of(), store.query(PAIR, HistoryResolution.RAW, FIRST_DAY, FIRST_DAY.plusMillis(DAY)));
+            assertEquals(List.of(new HistoryBucket(T0, 5, 5, 5), new HistoryBucket(T0 + 40 * DAY, 6, 6, 6)),
+                    store.query(PAIR, HistoryResolution.DAY, FIRST_DAY, FIRST_DAY.plus(Duration.ofDays(365))));
+        }
+    }
+
+    private StockHistoryStore open() throws IOException {
+        return new StockHistoryStore(directory, Duration.ofHours(1), Duration.ofDays(30), Duration.ofDays(90), Duration.ofDays(730));
+    }
+
+    private static void assertRollups(StockHistoryStore store) throws IOException {
+        Instant to = FIRST_DAY.plusMillis(DAY);
+        assertEquals(List.of(new HistoryBucket(T0, 5, 8, 8), new HistoryBucket(T0 + MINUTE, 3, 3, 3), new HistoryBucket(T0 + HOUR, 7, 7, 7)),
+                store.query(PAIR, HistoryResolution.MINUTE, FIRST_DAY, to));
+        assertEquals(List.of(new HistoryBucket(T0, 3, 8, 3), new HistoryBucket(T0 + HOUR, 7, 7, 7)),
+                store.query(PAIR, HistoryResolution.HOUR, FIRST_DAY, to));
+        assertEquals(List.of(new HistoryBucket(T0, 3, 8, 7), new HistoryBucket(T0 + DAY, 9, 9, 9)),
+                store.query(PAIR, HistoryResolution.DAY, FIRST_DAY, FIRST_DAY.plus(Duration.ofDays(365))));
+        assertEquals(4, store.query(PAIR, HistoryResolution.RAW, FIRST_DAY, to).size());
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.warehouse.idempotency;
+
+import com.example.warehouse.dto.MaterialInventoryDto;
+import com.example.warehouse.entity.MaterialTypeEntity;
+import com.example.warehouse.entity.WarehouseEntity;
+import com.example.warehouse.exceptions.IdempotencyKeyInUseException;
+import com.example.warehouse.repository.MaterialInventoryRepository;
+import com.example.warehouse.repository.MaterialTypeRepository;
+import com.example.warehouse.repository.WarehouseRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.ResponseEntity;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class IdempotencyTest {
+
+    @LocalServerPort
+    private int port;
+    @Autowired
+    private WarehouseRepository warehouseRepository;
+    @Autowired
+    private MaterialTypeRepository materialTypeRepository;
+    @Autowired
+    private MaterialInventoryRepository materialInventoryRepository;
+    @Autowired
+    private IdempotencyStore idempotencyStore;
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @TempDir
+    private Path directory;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @Test
+    void retriesWithTheSameKeyAreAnsweredFromTheStore() throws Exception {
+        WarehouseEntity warehouse = warehouseRepository.save(new WarehouseEntity(null, "warehouse-" + UUID.randomUUID()));
+        MaterialTypeEntity materialType = materialTypeRepository.save(
+                new MaterialTypeEntity(null, "material-" + UUID.randomUUID(), "description", "icon", 1_000));
+        String key = UUID.randomUUID().toString();
+
+        HttpResponse<String> first = add(warehouse.getId(), materialType.getId(), 5, key);
+        HttpResponse<String> retry = add(warehouse.getId(), materialType.getId(), 5, key);
+        assertEquals(200, first.statusCode());
+        assertEquals(200, retry.statusCode());
+        assertEquals(first.body(), retry.body());
+        assertTrue(retry.headers().firstValue("Idempotent-Replayed").isPresent());
+        assertEquals(5, materialInventoryRepository.findAll().stream()
+                .filter(inventory -> inventory.getWarehouse().getId().equals(warehouse.getId()))
+                .mapToInt(inventory -> inventory.getQuantity()).sum());
+
+        assertEquals(422, add(warehouse.getId(), materialType.getId(), 6, key).statusCode());
+        assertEquals(200, add(warehouse.getId(), materialType.getId(), 5, null).statusCode());
+    }
+
+    @Test
+    void rejectsDuplicatesWhileTheFirstRequestRuns() {
+        String key = UUID.randomUUID().toString();
+        assertThrows(IdempotencyKeyInUseException.class, () -> idempotencyStore.execute(key, "add", () ->
+                idempotencyStore.execute(key, "add", () -> ResponseEntity.ok(null))));
+        // the failed request is forgotten, a retry runs
+        assertEquals(204, idempotencyStore.execute(key, "add", () -> ResponseEntity.noContent().build()).getStatusCode().value());
+    }
+
+    @Test
+    void sizeBoundNeverDropsRunningRequests() {
+        IdempotencyStore store = new IdempotencyStore(objectMapper, new SimpleMeterRegistry(), 1, Duration.ofHours(1), "");
+        assertThrows(IdempotencyKeyInUseException.class, () -> store.execute("running", "add", () -> {
+            // far more completed keys than the store holds, all while the first request runs
+            for (int i = 0; i < 1_000; i++) {
+                store.execute("key-" + i, "add", () -> ResponseEntity.noContent().build());
+            }
+            return store.execute("running", "add", () -> ResponseEntity.ok(null));
+        }));
+    }
+
+    @Test
+    void keepsCompletedKeysAcrossRestarts() {
+        String file = directory.resolve("idempotency.json").toString();
+        IdempotencyStore before = new IdempotencyStore(objectMapper, new SimpleMeterRegistry(), 100, Duration.ofHours(1), file);
+        MaterialInventoryDto added = new MaterialInventoryDto(7L, null, null, 5, 1L);
+        before.execute("key", "add", () -> ResponseEntity.ok(added));
+        before.persist();
+
+        IdempotencyStore after = new IdempotencyStore(objectMapper, new SimpleMeterRegistry(), 100, Duration.ofHours(1), file);
+        after.restore();
+        ResponseEntity<MaterialInventoryDto> replayed = after.execute("key", "add", () -> {
+            throw new AssertionError("should have been replayed");
+        });
+        assertEquals(5, replayed.getBody().getQuantity());
+    }
+
+    private HttpResponse<String> add(Long warehouseId, Long materialTypeId, int quantity, String key) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/warehouses/" + warehouseId
+                        + "/materials/" + materialTypeId + "?quantityToAdd=" + quantity))
+                .POST(HttpRequest.BodyPublishers.noBody());
+        if (key != null) {
+            request.header("Idempotency-Key", key);
+        }
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.warehouse.journal;
+
+import com.example.warehouse.event.InventoryAction;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class InventoryJournalTest {
+
+    //four records per segment
+    private static final int SEGMENT_BYTES = 4 * JournalRecord.SIZE;
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    void replaysQuantitiesAtAnyPointInTimeAcrossSegments() throws IOException {
+        try (InventoryJournal journal = new InventoryJournal(directory, SEGMENT_BYTES, 100)) {
+            journal.writeBaseline(Map.of(new StockPosition(1, 1), 50), Instant.ofEpochMilli(0));
+            for (int i = 1; i <= 10; i++) {
+                journal.append(new JournalRecord(i, i * 1000L, 1, 1, 10, 50 + i * 10, InventoryAction.ADD));
+            }
+            journal.append(new JournalRecord(11, 11_000, 1, 1, -150, 0, InventoryAction.MOVE_FROM));
+            journal.append(new JournalRecord(12, 11_000, 2, 1, 150, 150, InventoryAction.MOVE_TO));
+            journal.force();
+
+            assertEquals(Map.of(new StockPosition(1, 1), 50), journal.quantitiesAt(Instant.ofEpochMilli(500)));
+            assertEquals(Map.of(new StockPosition(1, 1), 100), journal.quantitiesAt(Instant.ofEpochMilli(5000)));
+            assertEquals(Map.of(new StockPosition(1, 1), 150), journal.quantitiesAt(Instant.ofEpochMilli(10_999)));
+            assertEquals(Map.of(new StockPosition(2, 1), 150), journal.quantitiesAt(Instant.ofEpochMilli(11_000)));
+        }
+        // three segments, the two full ones folded into snapshots
+        assertEquals(3, count("segment-"));
+        assertEquals(3, count("snapshot-"));
+    }
+
+    @Test
+    void compactsOldSegmentsIntoSnapshots() throws IOException {
+        try (InventoryJournal journal = new InventoryJournal(directory, SEGMENT_BYTES, 2)) {
+            journal.writeBaseline(Map.of(), Instant.ofEpochMilli(0));
+            for (int i = 1; i <= 40; i++) {
+                journal.append(new JournalRecord(i, i * 1000L, 1, 1, 1, i, InventoryAction.ADD));
+            }
+
+            assertEquals(3, count("segment-"));
+            assertEquals(3, count("snapshot-"));
+            assertEquals(Map.of(new StockPosition(1, 1), 40), journal.quantitiesAt(Instant.now()));
+            Instant earliest = journal.earliestPointInTime().orElseThrow();
+            assertEquals(Map.of(new StockPosition(1, 1), 30), journal.quantitiesAt(Instant.ofEpochMilli(30_000)));
+            assertThrows(IllegalStateException.class, () -> journal.quantitiesAt(earliest.minusMillis(1)));
+        }
+    }
+
+    @Test
+    void continuesTheLastSegmentAfterRestart() throws IOException {
+        try (InventoryJournal journal = new InventoryJournal(directory, SEGMENT_BYTES, 100)) {
+            journal.writeBaseline(Map.of(), Instant.ofEpochMilli(0));
+            journal.append(new JournalRecord(1, 1000, 1, 2, 5, 5, InventoryAction.ADD));
+            journal.append(new JournalRecord(2, 2000, 1, 2, -2, 3, InventoryAction.REMOVE));
+        }
+        try (InventoryJournal journal = new InventoryJournal(directory, SEGMENT_BYTES, 100)) {
+            journal.append(new JournalRecord(3, 3000, 1, 2, 4, 7, InventoryAction.ADD));
+
+            assertEquals(1, count("segment-"));
+            assertEquals(Map.of(new StockPosition(1, 2), 3), journal.quantitiesAt(Instant.ofEpochMilli(2000)));
+            assertEquals(Map.of(new StockPosition(1, 2), 7), journal.quantitiesAt(Instant.ofEpochMilli(3000)));
+        }
+    }
+
+    @Test
+    void keepsIdsBeyond32BitsApartThroughSnapshots() throws IOException {
+        long wideId = (1L << 32) + 1;
+        try (InventoryJournal journal = new InventoryJournal(directory, SEGMENT_BYTES, 2)) {
+            journal.writeBaseline(Map.of(new StockPosition(1, 1), 5, new StockPosition(1, wideId), 8), Instant.ofEpochMilli(0));
+            for (int i = 1; i <= 40; i++) {
+                journal.append(new JournalRecord(i, i * 1000L, wideId, wideId, 1, i, InventoryAction.ADD));
+            }
+
+            assertEquals(Map.of(new StockPosition(1, 1), 5, new StockPosition(1, wideId), 8, new StockPosition(wideId, wideId), 40),
+                    journal.quantitiesAt(Instant.now()));
+        }
+    }
+
+    private long count(String prefix) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().startsWith(prefix)).count();
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.example.warehouse.outbox;
+
+import com.example.warehouse.entity.MaterialTypeEntity;
+import com.example.warehouse.entity.WarehouseEntity;
+import com.example.warehouse.event.InventoryAction;
+import com.example.warehouse.exceptions.InsufficientInventoryException;
+import com.example.warehouse.repository.InventoryOutboxRepository;
+import com.example.warehouse.repository.MaterialTypeRepository;
+import com.example.warehouse.repository.WarehouseRepository;
+import com.example.warehouse.service.MaterialInventoryService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(properties = {"warehouse.outbox.poll-interval-ms=20", "warehouse.outbox.batch-size=5"})
+class InventoryOutboxTest {
+
+    @Autowired
+    private MaterialInventoryService materialInventoryService;
+    @Autowired
+    private WarehouseRepository warehouseRepository;
+    @Autowired
+    private MaterialTypeRepository materialTypeRepository;
+    @Autowired
+    private InventoryOutboxRepository outboxRepository;
+    @Autowired
+    private RecordingSink sink;
+
+    @Test
+    void deliversCommittedChangesInOrderAndSkipsRolledBackOnes() throws Exception {
+        WarehouseEntity warehouse = warehouseRepository.save(new WarehouseEntity(null, "warehouse-" + UUID.randomUUID()));
+        MaterialTypeEntity materialType = materialTypeRepository.save(
+                new MaterialTypeEntity(null, "material-" + UUID.randomUUID(), "description", "icon", 1_000));
+        sink.failNext.set(true);
+
+        for (int i = 1; i <= 20; i++) {
+            materialInventoryService.addMaterialToWarehouse(warehouse.getId(), materialType.getId(), i);
+        }
+        //rolls back, must never reach a sink
+        assertThrows(InsufficientInventoryException.class,
+                () -> materialInventoryService.removeMaterialFromWarehouse(warehouse.getId(), materialType.getId(), 10_000));
+        materialInventoryService.removeMaterialFromWarehouse(warehouse.getId(), materialType.getId(), 5);
+
+        assertTrue(sink.awaitRecords(warehouse.getId(), 21), "outbox was not drained");
+        List<InventoryChangeRecord> records = sink.recordsOf(warehouse.getId());
+        assertEquals(21, records.size());
+        for (int i = 0; i < 20; i++) {
+            assertEquals(InventoryAction.ADD, records.get(i).action());
+            assertEquals(i + 1, records.get(i).changeQuantity());
+        }
+        assertEquals(InventoryAction.REMOVE, records.get(20).action());
+        assertEquals(-5, records.get(20).changeQuantity());
+        //the rows are deleted only after every lane has delivered, a moment after the sink saw them
+        assertTrue(awaitOutboxEmpty(), "delivered rows were not deleted");
+    }
+
+    @Test
+    void failingWarehouseDoesNotHoldUpTheOthers() throws Exception {
+        WarehouseEntity failing = warehouseRepository.save(new WarehouseEntity(null, "warehouse-" + UUID.randomUUID()));
+        WarehouseEntity healthy = warehouseRepository.save(new WarehouseEntity(null, "warehouse-" + UUID.randomUUID()));
+        MaterialTypeEntity materialType = materialTypeRepository.save(
+                new MaterialTypeEntity(null, "material-" + UUID.randomUUID(), "description", "icon", 1_000));
+        sink.unavailable.add(failing.getId());
+
+        //more than a batch of the failing warehouse ahead of the healthy one
+        for (int i = 1; i <= 10; i++) {
+            materialInventoryService.addMaterialToWarehouse(failing.getId(), materialType.getId(), i);
+        }
+        for (int i = 1; i <= 3; i++) {
+            materialInventoryService.addMaterialToWarehouse(healthy.getId(), materialType.getId(), i);
+        }
+
+        assertTrue(sink.awaitRecords(healthy.getId(), 3), "healthy warehouse was held up");
+        sink.unavailable.remove(failing.getId());
+        assertTrue(sink.awaitRecords(failing.getId(), 10), "failing warehouse was not retried");
+        List<InventoryChangeRecord> records = sink.recordsOf(failing.getId());
+        assertEquals(10, records.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i + 1, records.get(i).changeQuantity());
+        }
+    }
+
+    private boolean awaitOutboxEmpty() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (outboxRepository.count() != 0) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            Thread.sleep(20);
+        }
+        return true;
+    }
+
+    @TestConfiguration
+    static class SinkConfiguration {
+        @Bean
+        RecordingSink recordingSink() {
+            return new RecordingSink();
+        }
+    }
+
+    static class RecordingSink implements InventoryEventSink {
+        private final Queue<InventoryChangeRecord> records = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean failNext = new AtomicBoolean();
+        private final Set<Long> unavailable = ConcurrentHashMap.newKeySet();
+
+        @Override
+        public void deliver(List<InventoryChangeRecord> batch) {
+            //the first delivery fails, so the same records have to come back on the next poll
+            if (failNext.compareAndSet(true, false) || unavailable.contains(batch.get(0).warehouseId())) {
+                throw new IllegalStateException("sink unavailable");
+            }
+            records.addAll(batch);
+        }
+
+        List<InventoryChangeRecord> recordsOf(Long warehouseId) {
+            return records.stream().filter(record -> record.warehouseId().equals(warehouseId)).toList();
+        }
+
+        boolean awaitRecords(Long warehouseId, int count) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (recordsOf(warehouseId).size() < count) {
+                if (System.nanoTime() > deadline) {
+                    return false;
+                }
+                Thread.sleep(20);
+            }
+            return true;
+        }
+    }
+}
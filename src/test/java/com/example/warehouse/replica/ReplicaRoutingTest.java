@@ -0,0 +1,156 @@
+package com.example.warehouse.replica;
+
+import com.example.warehouse.config.ConnectionLimitingDataSource;
+import com.example.warehouse.entity.MaterialTypeEntity;
+import com.example.warehouse.entity.WarehouseEntity;
+import com.example.warehouse.repository.MaterialTypeRepository;
+import com.example.warehouse.repository.WarehouseRepository;
+import com.example.warehouse.service.MaterialInventoryService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+
+// two embedded databases, the replica is brought up to date by copying the primary over when the test says so
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "warehouse.datasource.replicas.enabled=true",
+        "warehouse.datasource.replicas.urls=" + ReplicaRoutingTest.REPLICA_URL,
+        "warehouse.datasource.replicas.heartbeat-interval-ms=3600000",
+        "warehouse.datasource.replicas.max-lag-ms=5000",
+        "warehouse.datasource.queue.enabled=true"})
+class ReplicaRoutingTest {
+
+    static final String REPLICA_URL = "jdbc:h2:mem:replica-routing-test;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+
+    @LocalServerPort
+    private int port;
+    @Autowired
+    private MaterialInventoryService materialInventoryService;
+    @Autowired
+    private WarehouseRepository warehouseRepository;
+    @Autowired
+    private MaterialTypeRepository materialTypeRepository;
+    @Autowired
+    private ReplicaHeartbeat replicaHeartbeat;
+    @Autowired
+    private JdbcTemplate primary;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private DataSource dataSource;
+    @Autowired
+    @Qualifier("primaryDataSource")
+    private DataSource primaryDataSource;
+
+    private final JdbcTemplate replica = new JdbcTemplate(new DriverManagerDataSource(REPLICA_URL, "sa", ""));
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @Test
+    void onlyThePrimaryPoolIsQueuedFor() {
+        assertInstanceOf(LazyConnectionDataSourceProxy.class, dataSource);
+        assertInstanceOf(ConnectionLimitingDataSource.class, primaryDataSource);
+    }
+
+    @Test
+    void readsComeFromAFreshReplicaUnlessTheClientJustWrote() throws Exception {
+        WarehouseEntity warehouse = warehouseRepository.save(new WarehouseEntity(null, "warehouse-" + UUID.randomUUID()));
+        MaterialTypeEntity materialType = materialTypeRepository.save(
+                new MaterialTypeEntity(null, "material-" + UUID.randomUUID(), "description", "icon", 1_000));
+        materialInventoryService.addMaterialToWarehouse(warehouse.getId(), materialType.getId(), 10);
+        replicate();
+        materialInventoryService.addMaterialToWarehouse(warehouse.getId(), materialType.getId(), 5);
+
+        // the replica is a few milliseconds behind, well within the bound, and doesn't have the second add yet
+        assertEquals(10, listedQuantity(warehouse));
+        assertEquals(10, listedQuantity(warehouse, null));
+
+        HttpResponse<String> added = client.send(HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/warehouses/"
+                        + warehouse.getId() + "/materials/" + materialType.getId() + "?quantityToAdd=1"))
+                .POST(HttpRequest.BodyPublishers.noBody()).build(), HttpResponse.BodyHandlers.ofString());
+        String cookie = added.headers().firstValue("Set-Cookie").orElseThrow().split(";")[0];
+        assertEquals(ReadYourWritesFilter.COOKIE, cookie.substring(0, cookie.indexOf('=')));
+        // the client that wrote reads its own write from the primary, everybody else still gets the replica
+        assertEquals(16, listedQuantity(warehouse, cookie));
+        assertEquals(10, listedQuantity(warehouse, null));
+    }
+
+    @Test
+    void replicasBeyondTheStalenessBoundAreSkipped() {
+        WarehouseEntity warehouse = warehouseRepository.save(new WarehouseEntity(null, "warehouse-" + UUID.randomUUID()));
+        MaterialTypeEntity materialType = materialTypeRepository.save(
+                new MaterialTypeEntity(null, "material-" + UUID.randomUUID(), "description", "icon", 1_000));
+        materialInventoryService.addMaterialToWarehouse(warehouse.getId(), materialType.getId(), 10);
+        replicate();
+        materialInventoryService.addMaterialToWarehouse(warehouse.getId(), materialType.getId(), 5);
+        assertEquals(10, listedQuantity(warehouse));
+
+        // replication stalled a minute ago
+        replica.update("update replica_heartbeat set beat_at = beat_at - 60000");
+        replicaHeartbeat.beat();
+        assertEquals(15, listedQuantity(warehouse));
+    }
+
+    @Test
+    void feedSnapshotIsReadFromThePrimaryNotALaggingReplica() throws Exception {
+        WarehouseEntity warehouse = warehouseRepository.save(new WarehouseEntity(null, "warehouse-" + UUID.randomUUID()));
+        MaterialTypeEntity materialType = materialTypeRepository.save(
+                new MaterialTypeEntity(null, "material-" + UUID.randomUUID(), "description", "icon", 1_000));
+        materialInventoryService.addMaterialToWarehouse(warehouse.getId(), materialType.getId(), 10);
+        replicate();
+        materialInventoryService.addMaterialToWarehouse(warehouse.getId(), materialType.getId(), 5);
+        assertEquals(10, listedQuantity(warehouse, null));
+
+        // the feed only sends deltas after the snapshot, so a snapshot without the second add would never catch up
+        HttpResponse<InputStream> feed = client.send(HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/warehouses/"
+                        + warehouse.getId() + "/feed")).header("Accept", "text/event-stream").build(),
+                HttpResponse.BodyHandlers.ofInputStream());
+        try (BufferedReader lines = new BufferedReader(new InputStreamReader(feed.body(), StandardCharsets.UTF_8))) {
+            String line;
+            while (!(line = lines.readLine()).startsWith("data:")) {
+            }
+            assertEquals(15, objectMapper.readTree(line.substring(5)).get("materials").get(0).get("quantity").asInt());
+        }
+    }
+
+    // copies the primary over the replica, with a heartbeat before and after so the replica gets measured as current
+    private void replicate() {
+        replicaHeartbeat.beat();
+        List<String> script = primary.queryForList("script", String.class);
+        replica.execute("drop all objects");
+        script.stream().filter(statement -> !statement.startsWith("CREATE USER")).forEach(replica::execute);
+        replicaHeartbeat.beat();
+    }
+
+    private int listedQuantity(WarehouseEntity warehouse) {
+        return materialInventoryService.getWarehouseMaterials(warehouse.getId()).getMaterials().get(0).getQuantity();
+    }
+
+    private int listedQuantity(WarehouseEntity warehouse, String cookie) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/warehouses/" + warehouse.getId() + "/materials"));
+        if (cookie != null) {
+            request.header("Cookie", cookie);
+        }
+        String body = client.send(request.build(), HttpResponse.BodyHandlers.ofString()).body();
+        return objectMapper.readTree(body).get("materials").get(0).get("quantity").asInt();
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.warehouse.reservation;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimingWheelTest {
+
+    @Test
+    void expiresOnlyWhatIsDue() {
+        TimingWheel<String> wheel = new TimingWheel<>(100, 8, 0);
+        wheel.schedule("soon", 250);
+        wheel.schedule("later", 2_000); //more than one revolution out
+        TimingWheel.Timeout<String> cancelled = wheel.schedule("cancelled", 250);
+        cancelled.cancel();
+
+        List<String> expired = new ArrayList<>();
+        assertEquals(0, wheel.advance(200, expired::add));
+        assertEquals(1, wheel.advance(300, expired::add));
+        assertEquals(List.of("soon"), expired);
+
+        assertEquals(0, wheel.advance(1_900, expired::add));
+        assertEquals(1, wheel.advance(2_000, expired::add));
+        assertEquals(List.of("soon", "later"), expired);
+    }
+
+    @Test
+    void catchesUpAfterALongPause() {
+        TimingWheel<Integer> wheel = new TimingWheel<>(10, 4, 0);
+        for (int i = 1; i <= 20; i++) {
+            wheel.schedule(i, i * 10L);
+        }
+        List<Integer> expired = new ArrayList<>();
+        assertEquals(20, wheel.advance(10_000, expired::add));
+        assertTrue(expired.containsAll(List.of(1, 10, 20)));
+    }
+}
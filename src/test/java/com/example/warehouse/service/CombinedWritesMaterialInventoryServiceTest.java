@@ -0,0 +1,131 @@
+package com.example.warehouse.service;
+
+import com.example.warehouse.dto.MaterialInventoryDto;
+import com.example.warehouse.entity.MaterialTypeEntity;
+import com.example.warehouse.entity.WarehouseEntity;
+import com.example.warehouse.exceptions.CapacityExceededException;
+import com.example.warehouse.exceptions.InsufficientInventoryException;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// the jpa engine with adds and removals going through the write combiner, a long window so batches surely form
+@SpringBootTest(properties = {
+        "warehouse.inventory.write-combining.enabled=true",
+        "warehouse.inventory.write-combining.window-ms=20"})
+@AutoConfigureMockMvc
+class CombinedWritesMaterialInventoryServiceTest extends MaterialInventoryServiceContractTest {
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Test
+    void everyCombinedWriteGetsItsOwnOutcome() throws Exception {
+        WarehouseEntity warehouse = createWarehouse();
+        MaterialTypeEntity materialType = createMaterialType(100);
+        materialInventoryService.addMaterialToWarehouse(warehouse.getId(), materialType.getId(), 50);
+        DistributionSummary batchSizes = meterRegistry.get("inventory.write.combined.batch.size").summary();
+        long batchesBefore = batchSizes.count();
+
+        // 40 adds of 5 against 50 free units and 40 removals of 5 against the stock, however they interleave
+        // the row never leaves 0..100, so some of each have to be turned down
+        int writers = 80;
+        ExecutorService executor = Executors.newFixedThreadPool(writers);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<MaterialInventoryDto>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < writers; i++) {
+                boolean add = i % 2 == 0;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return add
+                            ? materialInventoryService.addMaterialToWarehouse(warehouse.getId(), materialType.getId(), 5)
+                            : materialInventoryService.removeMaterialFromWarehouse(warehouse.getId(), materialType.getId(), 5);
+                }));
+            }
+            start.countDown();
+
+            int added = 0;
+            int removed = 0;
+            Set<Long> versions = new HashSet<>();
+            for (int i = 0; i < writers; i++) {
+                try {
+                    MaterialInventoryDto result = futures.get(i).get();
+                    if (i % 2 == 0) {
+                        added++;
+                    } else {
+                        removed++;
+                    }
+                    if (result != null) {
+                        assertTrue(result.getQuantity() >= 0 && result.getQuantity() <= 100);
+                        assertTrue(versions.add(result.getVersion()), "every write is a version of its own");
+                    }
+                } catch (Exception ex) {
+                    Throwable cause = ex.getCause();
+                    assertTrue(cause instanceof CapacityExceededException || cause instanceof InsufficientInventoryException, cause::toString);
+                }
+            }
+            assertEquals(50 + 5 * (added - removed), quantityOf(warehouse, materialType));
+        } finally {
+            executor.shutdown();
+        }
+        long batches = batchSizes.count() - batchesBefore;
+        assertTrue(batches < writers, writers + " writes took " + batches + " updates");
+    }
+
+    @Test
+    void addsWithoutIfMatchAreCombinedOverRest() throws Exception {
+        WarehouseEntity warehouse = createWarehouse();
+        MaterialTypeEntity materialType = createMaterialType(1000);
+        DistributionSummary batchSizes = meterRegistry.get("inventory.write.combined.batch.size").summary();
+        long batchesBefore = batchSizes.count();
+        double combinedBefore = batchSizes.totalAmount();
+
+        int writers = 40;
+        ExecutorService executor = Executors.newFixedThreadPool(writers);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < writers; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    mockMvc.perform(post("/api/warehouses/{warehouseId}/materials/{materialTypeId}", warehouse.getId(), materialType.getId())
+                                    .param("quantityToAdd", "5"))
+                            .andExpect(status().isOk());
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(5 * writers, quantityOf(warehouse, materialType));
+        long batches = batchSizes.count() - batchesBefore;
+        assertEquals(writers, batchSizes.totalAmount() - combinedBefore, "every post went through the combiner");
+        assertTrue(batches < writers, writers + " posts took " + batches + " updates");
+    }
+}
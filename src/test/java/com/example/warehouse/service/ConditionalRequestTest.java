@@ -0,0 +1,61 @@
+package com.example.warehouse.service;
+
+import com.example.warehouse.entity.MaterialTypeEntity;
+import com.example.warehouse.entity.WarehouseEntity;
+import com.example.warehouse.repository.MaterialTypeRepository;
+import com.example.warehouse.repository.WarehouseRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class ConditionalRequestTest {
+
+    @LocalServerPort
+    private int port;
+    @Autowired
+    private WarehouseRepository warehouseRepository;
+    @Autowired
+    private MaterialTypeRepository materialTypeRepository;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @Test
+    void staleETagsFailThePrecondition() throws Exception {
+        WarehouseEntity warehouse = warehouseRepository.save(new WarehouseEntity(null, "warehouse-" + UUID.randomUUID()));
+        MaterialTypeEntity materialType = materialTypeRepository.save(
+                new MaterialTypeEntity(null, "material-" + UUID.randomUUID(), "description", "icon", 1_000));
+
+        HttpResponse<String> first = add(warehouse.getId(), materialType.getId(), null);
+        String firstTag = first.headers().firstValue("ETag").orElseThrow();
+        HttpResponse<String> second = add(warehouse.getId(), materialType.getId(), firstTag);
+        assertEquals(200, second.statusCode());
+        String secondTag = second.headers().firstValue("ETag").orElseThrow();
+        assertNotEquals(firstTag, secondTag);
+
+        assertEquals(412, add(warehouse.getId(), materialType.getId(), firstTag).statusCode());
+        assertEquals(412, add(warehouse.getId(), materialType.getId(), "W/" + secondTag).statusCode());
+        assertEquals(412, add(warehouse.getId(), materialType.getId(), "\"not-a-version\"").statusCode());
+        assertEquals(200, add(warehouse.getId(), materialType.getId(), "*").statusCode());
+    }
+
+    private HttpResponse<String> add(Long warehouseId, Long materialTypeId, String ifMatch) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/warehouses/" + warehouseId
+                        + "/materials/" + materialTypeId + "?quantityToAdd=1"))
+                .POST(HttpRequest.BodyPublishers.noBody());
+        if (ifMatch != null) {
+            request.header("If-Match", ifMatch);
+        }
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.warehouse.service;
+
+import com.example.warehouse.entity.MaterialTypeEntity;
+import com.example.warehouse.entity.WarehouseEntity;
+import com.example.warehouse.exceptions.InsufficientInventoryException;
+import com.example.warehouse.repository.MaterialTypeRepository;
+import com.example.warehouse.repository.WarehouseRepository;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {"management.endpoints.web.exposure.include=prometheus",
+                "management.metrics.distribution.percentiles-histogram.inventory.operations=true"})
+@AutoConfigureObservability
+class InventoryMetricsTest {
+
+    @LocalServerPort
+    private int port;
+    @Autowired
+    private MaterialInventoryService materialInventoryService;
+    @Autowired
+    private WarehouseRepository warehouseRepository;
+    @Autowired
+    private MaterialTypeRepository materialTypeRepository;
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @Test
+    void timesOperationsByOutcomeAndCountsStatementsPerRequest() throws Exception {
+        WarehouseEntity warehouse = warehouseRepository.save(new WarehouseEntity(null, "warehouse-" + UUID.randomUUID()));
+        MaterialTypeEntity materialType = materialTypeRepository.save(
+                new MaterialTypeEntity(null, "material-" + UUID.randomUUID(), "description", "icon", 1_000));
+        materialInventoryService.addMaterialToWarehouse(warehouse.getId(), materialType.getId(), 5);
+        assertThrows(InsufficientInventoryException.class,
+                () -> materialInventoryService.removeMaterialFromWarehouse(warehouse.getId(), materialType.getId(), 6));
+
+        assertEquals(1, meterRegistry.get("inventory.operations")
+                .tags("operation", "addMaterialToWarehouse", "outcome", "success").timer().count());
+        assertEquals(1, meterRegistry.get("inventory.operations")
+                .tags("operation", "removeMaterialFromWarehouse", "outcome", "insufficient_inventory").timer().count());
+
+        HttpResponse<String> materials = client.send(HttpRequest.newBuilder(
+                URI.create("http://localhost:" + port + "/api/warehouses/" + warehouse.getId() + "/materials")).build(),
+                HttpResponse.BodyHandlers.ofString());
+        assertEquals(200, materials.statusCode());
+        DistributionSummary statements = meterRegistry.get("http.server.requests.sql")
+                .tags("method", "GET", "uri", "/api/warehouses/{warehouseId}/materials").summary();
+        assertEquals(1, statements.count());
+        assertTrue(statements.totalAmount() >= 1);
+
+        HttpResponse<String> prometheus = client.send(HttpRequest.newBuilder(
+                URI.create("http://localhost:" + port + "/actuator/prometheus")).build(), HttpResponse.BodyHandlers.ofString());
+        assertEquals(200, prometheus.statusCode());
+        assertTrue(prometheus.body().contains("inventory_operations_seconds_bucket"));
+        assertTrue(prometheus.body().contains("cache_hit_ratio"));
+    }
+}
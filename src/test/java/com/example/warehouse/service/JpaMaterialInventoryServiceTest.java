@@ -0,0 +1,7 @@
+package com.example.warehouse.service;
+
+import org.springframework.boot.test.context.SpringBootTest;
+
+@SpringBootTest
+class JpaMaterialInventoryServiceTest extends MaterialInventoryServiceContractTest {
+}
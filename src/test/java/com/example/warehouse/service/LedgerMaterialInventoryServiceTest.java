@@ -0,0 +1,189 @@
+package com.example.warehouse.service;
+
+import com.example.warehouse.cache.ReferenceDataCache;
+import com.example.warehouse.dto.MaterialInventoryDto;
+import com.example.warehouse.entity.MaterialInventoryEntity;
+import com.example.warehouse.entity.MaterialTypeEntity;
+import com.example.warehouse.entity.WarehouseEntity;
+import com.example.warehouse.ledger.InMemoryLedgerInventoryService;
+import com.example.warehouse.mapper.InventoryMapper;
+import com.example.warehouse.metrics.VersionConflictMetrics;
+import com.example.warehouse.reservation.ReservationBook;
+import com.example.warehouse.repository.MaterialInventoryRepository;
+import jakarta.persistence.EntityManagerFactory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// flushes are triggered by the tests, so they can look at the database before and after
+@SpringBootTest(properties = {
+        "warehouse.inventory.engine=ledger",
+        "warehouse.ledger.flush-interval-ms=3600000",
+        "warehouse.ledger.journal-dir=${java.io.tmpdir}/warehouse-ledger-${random.uuid}"})
+class LedgerMaterialInventoryServiceTest extends MaterialInventoryServiceContractTest {
+
+    @Autowired
+    private InMemoryLedgerInventoryService ledger;
+    @Autowired
+    private MaterialInventoryRepository materialInventoryRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private ApplicationEventPublisher publisher;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+    @Autowired
+    private ReferenceDataCache referenceDataCache;
+    @Autowired
+    private InventoryMapper inventoryMapper;
+    @Autowired
+    private ReservationBook reservationBook;
+    @Autowired
+    private VersionConflictMetrics versionConflictMetrics;
+
+    @Test
+    void changesReachTheDatabaseCoalescedOnFlush() {
+        WarehouseEntity warehouse = createWarehouse();
+        MaterialTypeEntity materialType = createMaterialType(1_000);
+        for (int i = 0; i < 10; i++) {
+            materialInventoryService.addMaterialToWarehouse(warehouse.getId(), materialType.getId(), 5);
+        }
+        assertTrue(materialInventoryRepository.findByWarehouseIdAndMaterialTypeId(warehouse.getId(), materialType.getId()).isEmpty());
+
+        ledger.flush();
+        assertEquals(50, storedQuantity(warehouse, materialType));
+
+        materialInventoryService.removeMaterialFromWarehouse(warehouse.getId(), materialType.getId(), 50);
+        ledger.flush();
+        assertTrue(materialInventoryRepository.findByWarehouseIdAndMaterialTypeId(warehouse.getId(), materialType.getId()).isEmpty());
+    }
+
+    @Test
+    void journalRestoresChangesThatWereNeverFlushed(@TempDir Path journalDirectory) throws Exception {
+        WarehouseEntity source = createWarehouse();
+        WarehouseEntity destination = createWarehouse();
+        MaterialTypeEntity materialType = createMaterialType(1_000);
+
+        InMemoryLedgerInventoryService crashed = newLedger(journalDirectory);
+        crashed.addMaterialToWarehouse(source.getId(), materialType.getId(), 70);
+        crashed.moveMaterialBetweenWarehouses(source.getId(), destination.getId(), materialType.getId(), 30);
+        // never flushed nor shut down, all that is left is the journal
+        assertTrue(materialInventoryRepository.findByWarehouseIdAndMaterialTypeId(source.getId(), materialType.getId()).isEmpty());
+        try (var segments = Files.list(journalDirectory)) {
+            assertEquals(1, segments.count());
+        }
+
+        InMemoryLedgerInventoryService restarted = newLedger(journalDirectory);
+        assertEquals(40, storedQuantity(source, materialType));
+        assertEquals(30, storedQuantity(destination, materialType));
+        assertEquals(40, restarted.getWarehouseMaterials(source.getId()).getMaterials().get(0).getQuantity());
+        try (var segments = Files.list(journalDirectory)) {
+            assertEquals(0, segments.count());
+        }
+    }
+
+    @Test
+    void segmentsWrittenButNotDeletedAreNotReplayed(@TempDir Path journalDirectory, @TempDir Path copies) throws Exception {
+        WarehouseEntity warehouse = createWarehouse();
+        MaterialTypeEntity materialType = createMaterialType(1_000);
+        InMemoryLedgerInventoryService crashed = newLedger(journalDirectory);
+        crashed.addMaterialToWarehouse(warehouse.getId(), materialType.getId(), 70);
+        try (var segments = Files.list(journalDirectory)) {
+            for (Path segment : segments.toList()) {
+                Files.copy(segment, copies.resolve(segment.getFileName()));
+            }
+        }
+        crashed.flush();
+        long version = storedVersion(warehouse, materialType);
+
+        // as if the process died between committing the batch and deleting its segment
+        try (var segments = Files.list(copies)) {
+            for (Path segment : segments.toList()) {
+                Files.copy(segment, journalDirectory.resolve(segment.getFileName()));
+            }
+        }
+        InMemoryLedgerInventoryService restarted = newLedger(journalDirectory);
+        assertEquals(70, storedQuantity(warehouse, materialType));
+        assertEquals(version, storedVersion(warehouse, materialType));
+        assertEquals(version, restarted.getWarehouseMaterials(warehouse.getId()).getMaterials().get(0).getVersion());
+        try (var segments = Files.list(journalDirectory)) {
+            assertEquals(0, segments.count());
+        }
+
+        // later segments are numbered past the written ones, so they are replayed
+        restarted.addMaterialToWarehouse(warehouse.getId(), materialType.getId(), 5);
+        newLedger(journalDirectory);
+        assertEquals(75, storedQuantity(warehouse, materialType));
+    }
+
+    @Test
+    void moveWithinAShardThatGrowsOnTheDestinationInsert(@TempDir Path journalDirectory) {
+        WarehouseEntity source = createWarehouse();
+        WarehouseEntity destination = createWarehouse();
+        MaterialTypeEntity materialType = createMaterialType(1_000);
+        // a single shard holds both warehouses
+        InMemoryLedgerInventoryService single = newLedger(journalDirectory, 1);
+        single.addMaterialToWarehouse(source.getId(), materialType.getId(), 70);
+
+        // filled up to the point where the next insert, the destination of the move, grows the table
+        Object shard = ((Object[]) ReflectionTestUtils.getField(single, "shards"))[0];
+        int free = ((long[]) ReflectionTestUtils.getField(shard, "keys")).length / 2 - (int) ReflectionTestUtils.getField(shard, "size");
+        List<MaterialTypeEntity> fillers = new ArrayList<>();
+        for (int i = 0; i < free; i++) {
+            fillers.add(new MaterialTypeEntity(null, "material-" + UUID.randomUUID(), "description", "icon", 1_000));
+        }
+        for (MaterialTypeEntity filler : materialTypeRepository.saveAll(fillers)) {
+            single.addMaterialToWarehouse(source.getId(), filler.getId(), 1);
+        }
+        int capacity = ((long[]) ReflectionTestUtils.getField(shard, "keys")).length;
+
+        single.moveMaterialBetweenWarehouses(source.getId(), destination.getId(), materialType.getId(), 30);
+        assertTrue(((long[]) ReflectionTestUtils.getField(shard, "keys")).length > capacity);
+        // the listings only look at the slots indexed for their warehouse, which moved with the growth
+        assertEquals(free + 1, single.getWarehouseMaterials(source.getId()).getMaterials().size());
+        assertEquals(List.of(30), single.getWarehouseMaterials(destination.getId()).getMaterials().stream()
+                .map(MaterialInventoryDto::getQuantity).toList());
+        single.flush();
+        assertEquals(40, storedQuantity(source, materialType));
+        assertEquals(30, storedQuantity(destination, materialType));
+    }
+
+    private InMemoryLedgerInventoryService newLedger(Path journalDirectory) {
+        return newLedger(journalDirectory, 4);
+    }
+
+    private InMemoryLedgerInventoryService newLedger(Path journalDirectory, int shardCount) {
+        InMemoryLedgerInventoryService service = new InMemoryLedgerInventoryService(jdbcTemplate, transactionManager,
+                publisher, entityManagerFactory, referenceDataCache, inventoryMapper, reservationBook, versionConflictMetrics, shardCount, journalDirectory);
+        ReflectionTestUtils.invokeMethod(service, "recover");
+        return service;
+    }
+
+    private long storedVersion(WarehouseEntity warehouse, MaterialTypeEntity materialType) {
+        return materialInventoryRepository.findByWarehouseIdAndMaterialTypeId(warehouse.getId(), materialType.getId())
+                .map(MaterialInventoryEntity::getVersion)
+                .orElseThrow();
+    }
+
+    private int storedQuantity(WarehouseEntity warehouse, MaterialTypeEntity materialType) {
+        return materialInventoryRepository.findByWarehouseIdAndMaterialTypeId(warehouse.getId(), materialType.getId())
+                .map(MaterialInventoryEntity::getQuantity)
+                .orElse(0);
+    }
+}
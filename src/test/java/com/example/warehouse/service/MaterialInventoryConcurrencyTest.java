@@ -0,0 +1,121 @@
+package com.example.warehouse.service;
+
+import com.example.warehouse.entity.MaterialInventoryEntity;
+import com.example.warehouse.entity.MaterialTypeEntity;
+import com.example.warehouse.entity.WarehouseEntity;
+import com.example.warehouse.exceptions.CapacityExceededException;
+import com.example.warehouse.repository.MaterialInventoryRepository;
+import com.example.warehouse.repository.MaterialTypeRepository;
+import com.example.warehouse.repository.WarehouseRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest
+class MaterialInventoryConcurrencyTest {
+
+    private static final int THREADS = 16;
+    private static final int OPERATIONS_PER_THREAD = 100;
+
+    @Autowired
+    private MaterialInventoryService materialInventoryService;
+    @Autowired
+    private WarehouseRepository warehouseRepository;
+    @Autowired
+    private MaterialTypeRepository materialTypeRepository;
+    @Autowired
+    private MaterialInventoryRepository materialInventoryRepository;
+
+    @Test
+    void concurrentAddsAndRemovesOnHotRowDoNotLoseUpdates() throws Exception {
+        WarehouseEntity warehouse = createWarehouse();
+        MaterialTypeEntity materialType = createMaterialType(1_000_000);
+        // seed the row so removals never run into an empty inventory
+        materialInventoryService.addMaterialToWarehouse(warehouse.getId(), materialType.getId(), 10_000);
+
+        runConcurrently(thread -> {
+            for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                materialInventoryService.addMaterialToWarehouse(warehouse.getId(), materialType.getId(), 3);
+                materialInventoryService.removeMaterialFromWarehouse(warehouse.getId(), materialType.getId(), 1);
+            }
+        });
+
+        assertEquals(10_000 + THREADS * OPERATIONS_PER_THREAD * 2, quantityOf(warehouse, materialType));
+    }
+
+    @Test
+    void concurrentAddsOnNewRowNeverExceedCapacity() throws Exception {
+        WarehouseEntity warehouse = createWarehouse();
+        MaterialTypeEntity materialType = createMaterialType(500);
+        AtomicInteger accepted = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+
+        runConcurrently(thread -> {
+            for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                try {
+                    materialInventoryService.addMaterialToWarehouse(warehouse.getId(), materialType.getId(), 1);
+                    accepted.incrementAndGet();
+                } catch (CapacityExceededException ex) {
+                    rejected.incrementAndGet();
+                }
+            }
+        });
+
+        assertEquals(500, accepted.get());
+        assertEquals(THREADS * OPERATIONS_PER_THREAD - 500, rejected.get());
+        assertEquals(500, quantityOf(warehouse, materialType));
+    }
+
+    private void runConcurrently(ThreadBody body) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int t = 0; t < THREADS; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    body.run(thread);
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(2, TimeUnit.MINUTES);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private int quantityOf(WarehouseEntity warehouse, MaterialTypeEntity materialType) {
+        return materialInventoryRepository.findByWarehouseIdAndMaterialTypeId(warehouse.getId(), materialType.getId())
+                .map(MaterialInventoryEntity::getQuantity)
+                .orElse(0);
+    }
+
+    private WarehouseEntity createWarehouse() {
+        return warehouseRepository.save(new WarehouseEntity(null, "warehouse-" + UUID.randomUUID()));
+    }
+
+    private MaterialTypeEntity createMaterialType(int maxCapacity) {
+        return materialTypeRepository.save(new MaterialTypeEntity(null, "material-" + UUID.randomUUID(), null, null, maxCapacity));
+    }
+
+    @FunctionalInterface
+    private interface ThreadBody {
+        void run(int thread) throws Exception;
+    }
+}
@@ -0,0 +1,417 @@
+package com.example.warehouse.service;
+
+import com.example.warehouse.dto.InventoryBatchLineDto;
+import com.example.warehouse.dto.InventoryBatchResultDto;
+import com.example.warehouse.dto.InventoryOperation;
+import com.example.warehouse.dto.MaterialInventoryDto;
+import com.example.warehouse.dto.MaterialInventoryPageDto;
+import com.example.warehouse.dto.ReservationDto;
+import com.example.warehouse.dto.ReservationRequestDto;
+import com.example.warehouse.dto.ReservationType;
+import com.example.warehouse.dto.TransferLegDto;
+import com.example.warehouse.dto.TransferOrderResultDto;
+import com.example.warehouse.dto.WarehouseMaterialsDto;
+import com.example.warehouse.entity.MaterialTypeEntity;
+import com.example.warehouse.entity.WarehouseEntity;
+import com.example.warehouse.exceptions.CapacityExceededException;
+import com.example.warehouse.exceptions.InsufficientInventoryException;
+import com.example.warehouse.exceptions.InventoryNotFoundException;
+import com.example.warehouse.exceptions.InventoryVersionMismatchException;
+import com.example.warehouse.exceptions.MaterialTypeNotFoundException;
+import com.example.warehouse.exceptions.ReservationNotFoundException;
+import com.example.warehouse.exceptions.WarehouseNotFoundException;
+import com.example.warehouse.repository.MaterialTypeRepository;
+import com.example.warehouse.repository.WarehouseRepository;
+import com.example.warehouse.reservation.ReservationService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Behaviour every {@link MaterialInventoryService} engine has to share, run once per engine by the subclasses.
+ */
+abstract class MaterialInventoryServiceContractTest {
+
+    @Autowired
+    protected MaterialInventoryService materialInventoryService;
+    @Autowired
+    protected WarehouseRepository warehouseRepository;
+    @Autowired
+    protected MaterialTypeRepository materialTypeRepository;
+    @Autowired
+    protected ReservationService reservationService;
+
+    @Test
+    void addCreatesInventoryAndAddsToIt() {
+        WarehouseEntity warehouse = createWarehouse();
+        MaterialTypeEntity materialType = createMaterialType(100);
+
+        MaterialInventoryDto created = materialInventoryService.addMaterialToWarehouse(warehouse.getId(), materialType.getId(), 40);
+        MaterialInventoryDto updated = materialInventoryService.addMaterialToWarehouse(warehouse.getId(), materialType.getId(), 60);
+
+        assertNotNull(created.getInventoryId());
+        assertEquals(created.getInventoryId(), updated.getInventoryId());
+        assertEquals(100, updated.getQuantity());
+        assertEquals(warehouse.getName(), updated.getWarehouse().getName());
+        assertEquals(materialType.getName(), updated.getMaterialType().getName());
+    }
+
+    @Test
+    void addBeyondCapacityIsRejectedWithoutChange() {
+        WarehouseEntity warehouse = createWarehouse();
+        MaterialTypeEntity materialType = createMaterialType(100);
+        materialInventoryService.addMaterialToWarehouse(warehouse.getId(), materialType.getId(), 90);
+
+        assertThrows(CapacityExceededException.class,
+                () -> materialInventoryService.addMaterialToWarehouse(warehouse.getId(), materialType.getId(), 11));
+        assertThrows(CapacityExceededException.class,
+                () -> materialInventoryService.addMaterialToWarehouse(warehouse.getId(), createMaterialType(5).getId(), 6));
+        assertEquals(90, quantityOf(warehouse, materialType));
+    }
+
+    @Test
+    void unknownWarehouseOrMaterialTypeIsRejected() {
+        WarehouseEntity warehouse = createWarehouse();
+        MaterialTypeEntity materialType = createMaterialType(100);
+
+        assertThrows(WarehouseNotFoundException.class,
+                () -> materialInventoryService.addMaterialToWarehouse(Long.MAX_VALUE / 2, materialType.getId(), 1));
+        assertThrows(MaterialTypeNotFoundException.class,
+                () -> materialInventoryService.addMaterialToWarehouse(warehouse.getId(), Long.MAX_VALUE / 2, 1));
+        assertThrows(WarehouseNotFoundException.class,
+                () -> materialInventoryService.getWarehouseMaterials(Long.MAX_VALUE / 2));
+        assertTrue(materialInventoryService.getMaterialsByWarehouseId(Long.MAX_VALUE / 2).isEmpty());
+    }
+
+    @Test
+    void removeTakesStockAndDropsEmptiedInventory() {
+        WarehouseEntity warehouse = createWarehouse();
+        MaterialTypeEntity materialType = createMaterialType(100);
+        materialInventoryService.addMaterialToWarehouse(warehouse.getId(), materialType.getId(), 10);
+
+        assertThrows(InsufficientInventoryException.class,
+                () -> materialInventoryService.removeMaterialFromWarehouse(warehouse.getId(), materialType.getId(), 11));
+        assertEquals(4, materialInventoryService.removeMaterialFromWarehouse(warehouse.getId(), materialType.getId(), 6).getQuantity());
+        assertNull(materialInventoryService.removeMaterialFromWarehouse(warehouse.getId(), materialType.getId(), 4));
+
+        assertTrue(materialInventoryService.getWarehouseMaterials(warehouse.getId()).getMaterials().isEmpty());
+        assertThrows(InventoryNotFoundException.class,
+                () -> materialInventoryService.removeMaterialFromWarehouse(warehouse.getId(), materialType.getId(), 1));
+    }
+
+    @Test
+    void moveTransfersStockWithinCapacity() {
+        WarehouseEntity source = createWarehouse();
+        WarehouseEntity destination = createWarehouse();
+        MaterialTypeEntity materialType = createMaterialType(50);
+        materialInventoryService.addMaterialToWarehouse(source.getId(), materialType.getId(), 40);
+        materialInventoryService.addMaterialToWarehouse(destination.getId(), materialType.getId(), 20);
+
+        MaterialInventoryDto moved = materialInventoryService.moveMaterialBetweenWarehouses(source.getId(), destination.getId(), materialType.getId(), 30);
+
+        assertEquals(destination.getId(), moved.getWarehouse().getId());
+        assertEquals(50, moved.getQuantity());
+        assertEquals(10, quantityOf(source, materialType));
+        assertThrows(CapacityExceededException.class,
+                () -> materialInventoryService.moveMaterialBetweenWarehouses(source.getId(), destination.getId(), materialType.getId(), 1));
+        assertThrows(InsufficientInventoryException.class,
+                () -> materialInventoryService.moveMaterialBetweenWarehouses(source.getId(), createWarehouse().getId(), materialType.getId(), 11));
+        assertThrows(InventoryNotFoundException.class,
+                () -> materialInventoryService.moveMaterialBetweenWarehouses(source.getId(), destination.getId(), createMaterialType(10).getId(), 1));
+        assertEquals(10, quantityOf(source, materialType));
+        assertEquals(50, quantityOf(destination, materialType));
+    }
+
+    @Test
+    void writesWithAStaleVersionAreRejected() {
+        WarehouseEntity source = createWarehouse();
+        WarehouseEntity destination = createWarehouse();
+        MaterialTypeEntity materialType = createMaterialType(100);
+        MaterialInventoryDto first = materialInventoryService.addMaterialToWarehouse(source.getId(), materialType.getId(), 10);
+        InventoryVersion stale = new InventoryVersion(first.getInventoryId(), first.getVersion());
+        MaterialInventoryDto second = materialInventoryService.addMaterialToWarehouse(source.getId(), materialType.getId(), 10);
+        assertTrue(second.getVersion() > first.getVersion());
+
+        assertThrows(InventoryVersionMismatchException.class,
+                () -> materialInventoryService.addMaterialToWarehouse(source.getId(), materialType.getId(), 1, stale));
+        assertThrows(InventoryVersionMismatchException.class,
+                () -> materialInventoryService.removeMaterialFromWarehouse(source.getId(), materialType.getId(), 1, stale));
+        assertThrows(InventoryVersionMismatchException.class,
+                () -> materialInventoryService.moveMaterialBetweenWarehouses(source.getId(), destination.getId(), materialType.getId(), 1, stale));
+        assertThrows(InventoryVersionMismatchException.class,
+                () -> materialInventoryService.addMaterialToWarehouse(destination.getId(), materialType.getId(), 1, stale));
+        assertEquals(20, quantityOf(source, materialType));
+
+        InventoryVersion current = new InventoryVersion(second.getInventoryId(), second.getVersion());
+        MaterialInventoryDto removed = materialInventoryService.removeMaterialFromWarehouse(source.getId(), materialType.getId(), 5, current);
+        assertEquals(15, removed.getQuantity());
+        materialInventoryService.moveMaterialBetweenWarehouses(source.getId(), destination.getId(), materialType.getId(), 5,
+                new InventoryVersion(removed.getInventoryId(), removed.getVersion()));
+        assertEquals(10, quantityOf(source, materialType));
+        assertEquals(5, quantityOf(destination, materialType));
+    }
+
+    @Test
+    void pagesWalkEveryMaterialOnce() {
+        WarehouseEntity warehouse = createWarehouse();
+        for (int i = 0; i < 5; i++) {
+            materialInventoryService.addMaterialToWarehouse(warehouse.getId(), createMaterialType(100).getId(), i + 1);
+        }
+
+        Set<Long> seen = new HashSet<>();
+        Long cursor = null;
+        int pages = 0;
+        do {
+            MaterialInventoryPageDto page = materialInventoryService.getWarehouseMaterialsPage(warehouse.getId(), cursor, 2);
+            page.getMaterials().forEach(material -> assertTrue(seen.add(material.getInventoryId())));
+            cursor = page.getNextCursor();
+            pages++;
+        } while (cursor != null);
+
+        assertEquals(5, seen.size());
+        assertEquals(3, pages);
+        List<MaterialInventoryDto> streamed = new ArrayList<>();
+        materialInventoryService.streamWarehouseMaterials(warehouse.getId(), streamed::add);
+        assertEquals(5, streamed.size());
+    }
+
+    @Test
+    void batchReportsEveryLine() {
+        WarehouseEntity warehouse = createWarehouse();
+        WarehouseEntity destination = createWarehouse();
+        MaterialTypeEntity materialType = createMaterialType(100);
+
+        InventoryBatchResultDto result = materialInventoryService.applyInventoryBatch(List.of(
+                new InventoryBatchLineDto(InventoryOperation.ADD, warehouse.getId(), null, materialType.getId(), 30),
+                new InventoryBatchLineDto(InventoryOperation.REMOVE, warehouse.getId(), null, materialType.getId(), 50),
+                new InventoryBatchLineDto(InventoryOperation.MOVE, warehouse.getId(), destination.getId(), materialType.getId(), 10),
+                new InventoryBatchLineDto(InventoryOperation.ADD, warehouse.getId(), null, null, 1),
+                new InventoryBatchLineDto(InventoryOperation.REMOVE, warehouse.getId(), null, materialType.getId(), 20)));
+
+        assertEquals(3, result.getSucceeded());
+        assertEquals(2, result.getFailed());
+        assertFalse(result.getResults().get(1).isSuccess());
+        assertEquals(10, result.getResults().get(2).getInventory().getQuantity());
+        assertFalse(result.getResults().get(3).isSuccess());
+        assertNull(result.getResults().get(4).getInventory());
+        assertEquals(0, quantityOf(warehouse, materialType));
+        assertEquals(10, quantityOf(destination, materialType));
+    }
+
+    @Test
+    void batchLinesBuildOnEachOther() {
+        WarehouseEntity warehouse = createWarehouse();
+        WarehouseEntity destination = createWarehouse();
+        MaterialTypeEntity materialType = createMaterialType(50);
+
+        // the second move finds the row the first one created, the last add fails and leaves no empty row behind
+        InventoryBatchResultDto result = materialInventoryService.applyInventoryBatch(List.of(
+                new InventoryBatchLineDto(InventoryOperation.ADD, warehouse.getId(), null, materialType.getId(), 40),
+                new InventoryBatchLineDto(InventoryOperation.MOVE, warehouse.getId(), destination.getId(), materialType.getId(), 15),
+                new InventoryBatchLineDto(InventoryOperation.MOVE, warehouse.getId(), destination.getId(), materialType.getId(), 25),
+                new InventoryBatchLineDto(InventoryOperation.ADD, createWarehouse().getId(), null, createMaterialType(5).getId(), 6)));
+
+        assertEquals(3, result.getSucceeded());
+        assertEquals(40, result.getResults().get(2).getInventory().getQuantity());
+        assertFalse(result.getResults().get(3).isSuccess());
+        assertEquals(0, quantityOf(warehouse, materialType));
+        assertEquals(40, quantityOf(destination, materialType));
+        assertTrue(materialInventoryService.getWarehouseMaterials(warehouse.getId()).getMaterials().isEmpty());
+    }
+
+    @Test
+    void batchesRacingSingleAddsForNewInventoryLoseNoLine() throws Exception {
+        WarehouseEntity warehouse = createWarehouse();
+        List<MaterialTypeEntity> materialTypes = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            materialTypes.add(createMaterialType(1_000));
+        }
+        List<InventoryBatchLineDto> lines = materialTypes.stream()
+                .map(materialType -> new InventoryBatchLineDto(InventoryOperation.ADD, warehouse.getId(), null, materialType.getId(), 3))
+                .toList();
+
+        // every inventory is new, batches and single adds race to create it
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<InventoryBatchResultDto>> batches = new ArrayList<>();
+            List<Future<?>> adds = new ArrayList<>();
+            for (int thread = 0; thread < 4; thread++) {
+                batches.add(executor.submit(() -> materialInventoryService.applyInventoryBatch(lines)));
+                adds.add(executor.submit(() -> materialTypes.forEach(materialType ->
+                        materialInventoryService.addMaterialToWarehouse(warehouse.getId(), materialType.getId(), 1))));
+            }
+            for (Future<InventoryBatchResultDto> batch : batches) {
+                assertEquals(lines.size(), batch.get().getSucceeded());
+            }
+            for (Future<?> add : adds) {
+                add.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        for (MaterialTypeEntity materialType : materialTypes) {
+            assertEquals(4 * 3 + 4, quantityOf(warehouse, materialType));
+        }
+    }
+
+    @Test
+    void transferOrderAppliesTheNetChangeOfAllLegs() {
+        WarehouseEntity first = createWarehouse();
+        WarehouseEntity second = createWarehouse();
+        WarehouseEntity third = createWarehouse();
+        MaterialTypeEntity bolts = createMaterialType(100);
+        MaterialTypeEntity nuts = createMaterialType(50);
+        materialInventoryService.addMaterialToWarehouse(first.getId(), bolts.getId(), 40);
+        materialInventoryService.addMaterialToWarehouse(second.getId(), nuts.getId(), 10);
+
+        // the second leg takes from stock the first one brings
+        TransferOrderResultDto result = materialInventoryService.applyTransferOrder(List.of(
+                new TransferLegDto(first.getId(), second.getId(), bolts.getId(), 30),
+                new TransferLegDto(second.getId(), third.getId(), bolts.getId(), 25),
+                new TransferLegDto(second.getId(), first.getId(), nuts.getId(), 10),
+                new TransferLegDto(first.getId(), third.getId(), nuts.getId(), 5)));
+
+        assertEquals(4, result.getLegs());
+        assertEquals(70, result.getUnitsMoved());
+        assertEquals(6, result.getInventoriesChanged());
+        assertEquals(1, result.getInventoriesEmptied());
+        assertEquals(10, quantityOf(first, bolts));
+        assertEquals(5, quantityOf(second, bolts));
+        assertEquals(25, quantityOf(third, bolts));
+        assertEquals(5, quantityOf(first, nuts));
+        assertEquals(0, quantityOf(second, nuts));
+        assertEquals(5, quantityOf(third, nuts));
+    }
+
+    @Test
+    void transferOrderAppliesAllLegsOrNone() {
+        WarehouseEntity source = createWarehouse();
+        WarehouseEntity destination = createWarehouse();
+        MaterialTypeEntity bolts = createMaterialType(100);
+        MaterialTypeEntity nuts = createMaterialType(10);
+        materialInventoryService.addMaterialToWarehouse(source.getId(), bolts.getId(), 40);
+        materialInventoryService.addMaterialToWarehouse(source.getId(), nuts.getId(), 10);
+        materialInventoryService.addMaterialToWarehouse(destination.getId(), nuts.getId(), 5);
+
+        assertThrows(CapacityExceededException.class, () -> materialInventoryService.applyTransferOrder(List.of(
+                new TransferLegDto(source.getId(), destination.getId(), bolts.getId(), 20),
+                new TransferLegDto(source.getId(), destination.getId(), nuts.getId(), 6))));
+        assertThrows(InsufficientInventoryException.class, () -> materialInventoryService.applyTransferOrder(List.of(
+                new TransferLegDto(source.getId(), destination.getId(), bolts.getId(), 20),
+                new TransferLegDto(source.getId(), destination.getId(), bolts.getId(), 21))));
+        assertThrows(WarehouseNotFoundException.class, () -> materialInventoryService.applyTransferOrder(List.of(
+                new TransferLegDto(source.getId(), destination.getId(), bolts.getId(), 20),
+                new TransferLegDto(source.getId(), -1L, bolts.getId(), 1))));
+
+        assertEquals(40, quantityOf(source, bolts));
+        assertEquals(0, quantityOf(destination, bolts));
+        assertEquals(10, quantityOf(source, nuts));
+        assertEquals(5, quantityOf(destination, nuts));
+    }
+
+    @Test
+    void concurrentChangesOnOneRowAreNotLost() throws Exception {
+        WarehouseEntity warehouse = createWarehouse();
+        MaterialTypeEntity materialType = createMaterialType(1_000_000);
+        materialInventoryService.addMaterialToWarehouse(warehouse.getId(), materialType.getId(), 1_000);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < 8; thread++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 50; i++) {
+                        materialInventoryService.addMaterialToWarehouse(warehouse.getId(), materialType.getId(), 2);
+                        materialInventoryService.removeMaterialFromWarehouse(warehouse.getId(), materialType.getId(), 1);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(1_000 + 8 * 50, quantityOf(warehouse, materialType));
+    }
+
+    @Test
+    void reservedCapacityIsKeptFreeUntilConfirmed() {
+        WarehouseEntity warehouse = createWarehouse();
+        WarehouseEntity other = createWarehouse();
+        MaterialTypeEntity materialType = createMaterialType(100);
+        materialInventoryService.addMaterialToWarehouse(warehouse.getId(), materialType.getId(), 50);
+        materialInventoryService.addMaterialToWarehouse(other.getId(), materialType.getId(), 50);
+
+        ReservationDto reservation = reservationService.createReservation(
+                new ReservationRequestDto(ReservationType.CAPACITY, warehouse.getId(), materialType.getId(), 30, null));
+        assertThrows(CapacityExceededException.class, () -> reservationService.createReservation(
+                new ReservationRequestDto(ReservationType.CAPACITY, warehouse.getId(), materialType.getId(), 21, null)));
+        assertThrows(CapacityExceededException.class,
+                () -> materialInventoryService.addMaterialToWarehouse(warehouse.getId(), materialType.getId(), 21));
+        assertThrows(CapacityExceededException.class,
+                () -> materialInventoryService.moveMaterialBetweenWarehouses(other.getId(), warehouse.getId(), materialType.getId(), 21));
+        materialInventoryService.addMaterialToWarehouse(warehouse.getId(), materialType.getId(), 20);
+
+        assertEquals(100, reservationService.confirmReservation(reservation.getReservationId()).getQuantity());
+        assertThrows(ReservationNotFoundException.class, () -> reservationService.confirmReservation(reservation.getReservationId()));
+    }
+
+    @Test
+    void heldStockCanOnlyBeTakenByItsHold() {
+        WarehouseEntity warehouse = createWarehouse();
+        MaterialTypeEntity materialType = createMaterialType(100);
+        materialInventoryService.addMaterialToWarehouse(warehouse.getId(), materialType.getId(), 10);
+
+        ReservationDto hold = reservationService.createReservation(
+                new ReservationRequestDto(ReservationType.STOCK, warehouse.getId(), materialType.getId(), 8, null));
+        ReservationDto cancelled = reservationService.createReservation(
+                new ReservationRequestDto(ReservationType.STOCK, warehouse.getId(), materialType.getId(), 2, null));
+        assertThrows(InsufficientInventoryException.class,
+                () -> materialInventoryService.removeMaterialFromWarehouse(warehouse.getId(), materialType.getId(), 1));
+        reservationService.cancelReservation(cancelled.getReservationId());
+        assertThrows(ReservationNotFoundException.class, () -> reservationService.getReservation(cancelled.getReservationId()));
+
+        assertThrows(InsufficientInventoryException.class,
+                () -> materialInventoryService.removeMaterialFromWarehouse(warehouse.getId(), materialType.getId(), 3));
+        materialInventoryService.removeMaterialFromWarehouse(warehouse.getId(), materialType.getId(), 2);
+        assertThrows(InsufficientInventoryException.class, () -> reservationService.createReservation(
+                new ReservationRequestDto(ReservationType.STOCK, warehouse.getId(), materialType.getId(), 1, null)));
+
+        assertNull(reservationService.confirmReservation(hold.getReservationId()));
+        assertEquals(0, quantityOf(warehouse, materialType));
+    }
+
+    protected int quantityOf(WarehouseEntity warehouse, MaterialTypeEntity materialType) {
+        WarehouseMaterialsDto materials = materialInventoryService.getWarehouseMaterials(warehouse.getId());
+        return materials.getMaterials().stream()
+                .filter(material -> material.getMaterialType().getId().equals(materialType.getId()))
+                .mapToInt(MaterialInventoryDto::getQuantity)
+                .sum();
+    }
+
+    protected WarehouseEntity createWarehouse() {
+        return warehouseRepository.save(new WarehouseEntity(null, "warehouse-" + UUID.randomUUID()));
+    }
+
+    protected MaterialTypeEntity createMaterialType(int maxCapacity) {
+        return materialTypeRepository.save(new MaterialTypeEntity(null, "material-" + UUID.randomUUID(), "description", "icon", maxCapacity));
+    }
+}
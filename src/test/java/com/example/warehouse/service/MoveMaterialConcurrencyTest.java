@@ -0,0 +1,127 @@
+package com.example.warehouse.service;
+
+import com.example.warehouse.entity.MaterialInventoryEntity;
+import com.example.warehouse.entity.MaterialTypeEntity;
+import com.example.warehouse.entity.WarehouseEntity;
+import com.example.warehouse.exceptions.InsufficientInventoryException;
+import com.example.warehouse.exceptions.InventoryNotFoundException;
+import com.example.warehouse.repository.MaterialInventoryRepository;
+import com.example.warehouse.repository.MaterialTypeRepository;
+import com.example.warehouse.repository.WarehouseRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.test.util.AopTestUtils;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+class MoveMaterialConcurrencyTest {
+
+    private static final int THREADS = 16;
+    private static final int TRANSFERS_PER_THREAD = 250;
+    private static final int STOCKED_WAREHOUSES = 4;
+    private static final int INITIAL_QUANTITY = 10_000;
+
+    @Autowired
+    private MaterialInventoryService materialInventoryService;
+    @Autowired
+    private WarehouseRepository warehouseRepository;
+    @Autowired
+    private MaterialTypeRepository materialTypeRepository;
+    @Autowired
+    private MaterialInventoryRepository materialInventoryRepository;
+
+    @AfterEach
+    void restoreDefaultMode() {
+        setMoveConcurrencyMode(MoveConcurrencyMode.ORDERED_LOCKING);
+    }
+
+    @ParameterizedTest
+    @EnumSource(MoveConcurrencyMode.class)
+    void crissCrossTransfersConserveStock(MoveConcurrencyMode mode) throws Exception {
+        setMoveConcurrencyMode(mode);
+        MaterialTypeEntity materialType = materialTypeRepository.save(
+                new MaterialTypeEntity(null, "material-" + UUID.randomUUID(), null, null, 1_000_000));
+        List<Long> warehouseIds = new ArrayList<>();
+        for (int i = 0; i <= STOCKED_WAREHOUSES; i++) {
+            WarehouseEntity warehouse = warehouseRepository.save(new WarehouseEntity(null, "warehouse-" + UUID.randomUUID()));
+            warehouseIds.add(warehouse.getId());
+            // the last warehouse starts empty, so its inventory row is created by concurrent transfers
+            if (i < STOCKED_WAREHOUSES) {
+                materialInventoryService.addMaterialToWarehouse(warehouse.getId(), materialType.getId(), INITIAL_QUANTITY);
+            }
+        }
+
+        AtomicInteger completed = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int t = 0; t < THREADS; t++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < TRANSFERS_PER_THREAD; i++) {
+                        Long source = warehouseIds.get(random.nextInt(warehouseIds.size()));
+                        Long destination = warehouseIds.get(random.nextInt(warehouseIds.size()));
+                        if (source.equals(destination)) {
+                            continue;
+                        }
+                        try {
+                            materialInventoryService.moveMaterialBetweenWarehouses(source, destination, materialType.getId(), 1 + random.nextInt(5));
+                            completed.incrementAndGet();
+                        } catch (InsufficientInventoryException | InventoryNotFoundException ex) {
+                            // a drained source is a legitimate outcome, it just must not break conservation
+                            rejected.incrementAndGet();
+                        } catch (OptimisticLockingFailureException ex) {
+                            // sixteen threads on five rows is the worst case for optimistic moves, one can lose every retry
+                            if (mode != MoveConcurrencyMode.OPTIMISTIC) {
+                                throw ex;
+                            }
+                            rejected.incrementAndGet();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(2, TimeUnit.MINUTES);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        int total = 0;
+        for (Long warehouseId : warehouseIds) {
+            total += materialInventoryRepository.findByWarehouseIdAndMaterialTypeId(warehouseId, materialType.getId())
+                    .map(MaterialInventoryEntity::getQuantity)
+                    .orElse(0);
+        }
+        assertEquals(STOCKED_WAREHOUSES * INITIAL_QUANTITY, total, "stock must be conserved in " + mode + " mode");
+        assertTrue(completed.get() > 0, "no transfer completed in " + mode + " mode");
+    }
+
+    private void setMoveConcurrencyMode(MoveConcurrencyMode mode) {
+        Object target = AopTestUtils.getTargetObject(materialInventoryService);
+        ReflectionTestUtils.setField(target, "moveConcurrencyMode", mode);
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.warehouse.service;
+
+import com.example.warehouse.dto.WarehouseMaterialsDto;
+import com.example.warehouse.entity.MaterialInventoryEntity;
+import com.example.warehouse.entity.MaterialTypeEntity;
+import com.example.warehouse.entity.WarehouseEntity;
+import com.example.warehouse.repository.MaterialInventoryRepository;
+import com.example.warehouse.repository.MaterialTypeRepository;
+import com.example.warehouse.repository.WarehouseRepository;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// statistics count the statements a request issues, the outbox dispatcher polls in the background and would show up in them
+@SpringBootTest(properties = {
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "warehouse.outbox.dispatcher.enabled=false"})
+class WarehouseMaterialsQueryCountTest {
+
+    @Autowired
+    private MaterialInventoryService materialInventoryService;
+    @Autowired
+    private WarehouseRepository warehouseRepository;
+    @Autowired
+    private MaterialTypeRepository materialTypeRepository;
+    @Autowired
+    private MaterialInventoryRepository materialInventoryRepository;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Test
+    void statementCountDoesNotGrowWithSkuCount() {
+        long fewSkus = statementsForListing(10);
+        long manySkus = statementsForListing(500);
+
+        assertEquals(fewSkus, manySkus, "listing issued a different number of statements for 10 and 500 SKUs");
+        assertTrue(manySkus <= 2, "listing issued " + manySkus + " statements");
+    }
+
+    private long statementsForListing(int skuCount) {
+        WarehouseEntity warehouse = warehouseRepository.save(new WarehouseEntity(null, "warehouse-" + UUID.randomUUID()));
+        // inventory is written through the repository, so none of these material types are cached yet
+        List<MaterialInventoryEntity> inventories = new ArrayList<>();
+        for (int i = 0; i < skuCount; i++) {
+            MaterialTypeEntity materialType = materialTypeRepository.save(
+                    new MaterialTypeEntity(null, "material-" + UUID.randomUUID(), "description", "icon", 1_000));
+            inventories.add(new MaterialInventoryEntity(warehouse, materialType, i + 1));
+        }
+        materialInventoryRepository.saveAll(inventories);
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        WarehouseMaterialsDto response = materialInventoryService.getWarehouseMaterials(warehouse.getId());
+        long statements = statistics.getPrepareStatementCount();
+
+        assertEquals(skuCount, response.getMaterials().size());
+        assertEquals("description", response.getMaterials().get(0).getMaterialType().getDescription());
+        return statements;
+    }
+}
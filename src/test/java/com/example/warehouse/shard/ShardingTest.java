@@ -0,0 +1,230 @@
+package com.example.warehouse.shard;
+
+import com.example.warehouse.dto.InventoryBatchLineDto;
+import com.example.warehouse.dto.InventoryOperation;
+import com.example.warehouse.entity.MaterialTypeEntity;
+import com.example.warehouse.entity.WarehouseEntity;
+import com.example.warehouse.exceptions.CapacityExceededException;
+import com.example.warehouse.repository.MaterialTypeRepository;
+import com.example.warehouse.repository.WarehouseRepository;
+import com.example.warehouse.service.MaterialInventoryService;
+import com.example.warehouse.service.MaterialInventoryServiceImpl;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+// the home shard and two more embedded databases, the directory is only reloaded when the test changes it
+@SpringBootTest(properties = {
+        "warehouse.inventory.sharding.enabled=true",
+        "warehouse.inventory.sharding.urls=" + ShardingTest.FIRST_SHARD_URL + "," + ShardingTest.SECOND_SHARD_URL,
+        "warehouse.inventory.sharding.directory-refresh-ms=3600000",
+        "warehouse.inventory.sharding.settle-ms=50",
+        "warehouse.inventory.sharding.move-recovery-interval-ms=3600000"})
+class ShardingTest {
+
+    static final String FIRST_SHARD_URL = "jdbc:h2:mem:sharding-test-1;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+    static final String SECOND_SHARD_URL = "jdbc:h2:mem:sharding-test-2;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+
+    @Autowired
+    private MaterialInventoryService materialInventoryService;
+    @Autowired
+    private MaterialInventoryServiceImpl materialInventoryServiceImpl;
+    @Autowired
+    private WarehouseRepository warehouseRepository;
+    @Autowired
+    private MaterialTypeRepository materialTypeRepository;
+    @Autowired
+    private ShardDirectory shardDirectory;
+    @Autowired
+    private ShardRebalancer shardRebalancer;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void inventoryIsKeptOnTheShardOfItsWarehouse() {
+        Long warehouseId = warehouseAwayFromHome();
+        Long materialTypeId = materialType(100);
+        int shard = shardOf(warehouseId);
+
+        materialInventoryService.addMaterialToWarehouse(warehouseId, materialTypeId, 10);
+        materialInventoryService.removeMaterialFromWarehouse(warehouseId, materialTypeId, 3);
+
+        assertEquals(7, storedQuantity(shard, warehouseId, materialTypeId));
+        assertEquals(0, storedRows(ShardContext.HOME, warehouseId));
+        assertEquals(7, materialInventoryService.getWarehouseMaterials(warehouseId).getMaterials().get(0).getQuantity());
+    }
+
+    @Test
+    void movesBetweenShardsLeaveNoPendingMove() {
+        Long source = warehouseAwayFromHome();
+        Long destination = warehouseOnOtherShardThan(source);
+        Long materialTypeId = materialType(100);
+        materialInventoryService.addMaterialToWarehouse(source, materialTypeId, 10);
+
+        assertEquals(4, materialInventoryService.moveMaterialBetweenWarehouses(source, destination, materialTypeId, 4).getQuantity());
+
+        assertEquals(6, storedQuantity(shardOf(source), source, materialTypeId));
+        assertEquals(4, storedQuantity(shardOf(destination), destination, materialTypeId));
+        assertEquals(0, ShardContext.call(shardOf(source), () -> jdbcTemplate.queryForObject(
+                "select count(*) from cross_shard_move where source_warehouse_id = ? and state = 'PENDING'", Integer.class, source)));
+    }
+
+    @Test
+    void moveTheDestinationCannotHoldIsRefusedBeforeAnythingIsWithdrawn() {
+        Long source = warehouseAwayFromHome();
+        Long destination = warehouseOnOtherShardThan(source);
+        Long materialTypeId = materialType(10);
+        materialInventoryService.addMaterialToWarehouse(source, materialTypeId, 5);
+        materialInventoryService.addMaterialToWarehouse(destination, materialTypeId, 8);
+
+        assertThrows(CapacityExceededException.class,
+                () -> materialInventoryService.moveMaterialBetweenWarehouses(source, destination, materialTypeId, 5));
+        assertEquals(5, storedQuantity(shardOf(source), source, materialTypeId));
+        assertEquals(8, storedQuantity(shardOf(destination), destination, materialTypeId));
+    }
+
+    @Test
+    void moveStuckAfterTheWithdrawalIsGivenBackOnceAndCanNoLongerBeDeposited() {
+        Long source = warehouseAwayFromHome();
+        Long destination = warehouseOnOtherShardThan(source);
+        Long materialTypeId = materialType(100);
+        materialInventoryService.addMaterialToWarehouse(source, materialTypeId, 10);
+        int sourceShard = shardOf(source);
+
+        // what an instance leaves behind when it stops between the withdrawal and the deposit
+        long moveId = System.nanoTime();
+        ShardContext.run(sourceShard, () -> {
+            jdbcTemplate.update("update material_inventory set quantity = quantity - 4 where warehouse_id = ? and material_type_id = ?", source, materialTypeId);
+            jdbcTemplate.update("insert into cross_shard_move (id, source_warehouse_id, destination_warehouse_id, material_type_id, quantity, state, created_at) " +
+                    "values (?, ?, ?, ?, 4, 'PENDING', ?)", moveId, source, destination, materialTypeId, Timestamp.from(Instant.now().minusSeconds(3600)));
+        });
+
+        assertEquals(1, materialInventoryServiceImpl.recoverCrossShardMoves());
+        assertEquals(0, materialInventoryServiceImpl.recoverCrossShardMoves());
+        assertEquals(10, storedQuantity(sourceShard, source, materialTypeId));
+        assertEquals("VOIDED", ShardContext.call(shardOf(destination), () -> jdbcTemplate.queryForObject(
+                "select state from cross_shard_move where id = ?", String.class, moveId)));
+    }
+
+    @Test
+    void batchesSpanningShardsAreRejected() {
+        Long first = warehouseAwayFromHome();
+        Long second = warehouseOnOtherShardThan(first);
+        Long materialTypeId = materialType(100);
+
+        assertThrows(IllegalArgumentException.class, () -> materialInventoryService.applyInventoryBatch(List.of(
+                new InventoryBatchLineDto(InventoryOperation.ADD, first, null, materialTypeId, 1),
+                new InventoryBatchLineDto(InventoryOperation.ADD, second, null, materialTypeId, 1))));
+        assertEquals(0, storedRows(shardOf(first), first));
+        assertEquals(0, storedRows(shardOf(second), second));
+    }
+
+    @Test
+    void relocationKeepsEveryAddMadeWhileItRuns() throws Exception {
+        Long warehouseId = warehouseAwayFromHome();
+        Long materialTypeId = materialType(1_000_000);
+        materialInventoryService.addMaterialToWarehouse(warehouseId, materialTypeId, 100);
+        int source = shardOf(warehouseId);
+        int target = source == 1 ? 2 : 1;
+
+        AtomicBoolean relocating = new AtomicBoolean(true);
+        AtomicInteger added = new AtomicInteger();
+        ExecutorService writers = Executors.newFixedThreadPool(4);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            futures.add(writers.submit(() -> {
+                while (relocating.get()) {
+                    materialInventoryService.addMaterialToWarehouse(warehouseId, materialTypeId, 1);
+                    added.incrementAndGet();
+                }
+            }));
+        }
+        try {
+            Thread.sleep(50);
+            shardRebalancer.relocate(warehouseId, target);
+            Thread.sleep(50);
+        } finally {
+            relocating.set(false);
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            writers.shutdown();
+        }
+
+        assertEquals(target, shardOf(warehouseId));
+        assertEquals(100 + added.get(), storedQuantity(target, warehouseId, materialTypeId));
+        assertEquals(0, storedRows(source, warehouseId));
+        assertEquals(100 + added.get(), materialInventoryService.getSettledQuantity(warehouseId, materialTypeId));
+    }
+
+    @Test
+    void rebalancingCountsRowsOfWarehousesNotPlacedYet() {
+        Long warehouseId = warehouse();
+        Long materialTypeId = materialType(100);
+        // written before this instance placed the warehouse, as if by another instance since the last refresh
+        ShardContext.run(ShardContext.HOME, () -> jdbcTemplate.update(
+                "insert into material_inventory (inventory_id, warehouse_id, material_type_id, quantity, version) values (?, ?, ?, ?, 0)",
+                Long.MAX_VALUE - warehouseId, warehouseId, materialTypeId, 5));
+
+        assertDoesNotThrow(() -> shardRebalancer.rebalance());
+    }
+
+    // new warehouses go to the shard holding the fewest, so one of the next few lands off the home shard
+    private Long warehouseAwayFromHome() {
+        while (true) {
+            Long warehouseId = warehouse();
+            if (shardOf(warehouseId) != ShardContext.HOME) {
+                return warehouseId;
+            }
+        }
+    }
+
+    private Long warehouseOnOtherShardThan(Long other) {
+        while (true) {
+            Long warehouseId = warehouse();
+            if (shardOf(warehouseId) != shardOf(other)) {
+                assertNotEquals(shardOf(other), shardOf(warehouseId));
+                return warehouseId;
+            }
+        }
+    }
+
+    private Long warehouse() {
+        return warehouseRepository.save(new WarehouseEntity(null, "warehouse-" + UUID.randomUUID())).getId();
+    }
+
+    private Long materialType(int maxCapacity) {
+        return materialTypeRepository.save(new MaterialTypeEntity(null, "material-" + UUID.randomUUID(), "description", "icon", maxCapacity)).getId();
+    }
+
+    private int shardOf(Long warehouseId) {
+        return shardDirectory.read(warehouseId, ShardContext::current);
+    }
+
+    private int storedQuantity(int shard, Long warehouseId, Long materialTypeId) {
+        return ShardContext.call(shard, () -> jdbcTemplate.queryForObject(
+                "select quantity from material_inventory where warehouse_id = ? and material_type_id = ?", Integer.class, warehouseId, materialTypeId));
+    }
+
+    private int storedRows(int shard, Long warehouseId) {
+        return ShardContext.call(shard, () -> jdbcTemplate.queryForObject(
+                "select count(*) from material_inventory where warehouse_id = ?", Integer.class, warehouseId));
+    }
+}